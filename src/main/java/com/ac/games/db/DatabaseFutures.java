@@ -0,0 +1,56 @@
+package com.ac.games.db;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * Helper for collecting the results of database calls that were run on another thread, so the original
+ * {@link ConfigurationException} or {@link DatabaseOperationException} reaches the caller unwrapped.
+ * 
+ * @author ac010168
+ */
+public final class DatabaseFutures {
+
+  private DatabaseFutures() {}
+  
+  /**
+   * Wait for and return the result of a database call.
+   * 
+   * @param future The pending result.
+   * @return The result of the call.
+   * 
+   * @throws ConfigurationException Throws this exception if the call threw it.
+   * @throws DatabaseOperationException Throws this exception if the call threw it, if the call failed
+   * for any other reason, or if we were interrupted while waiting.
+   */
+  public static <T> T get(Future<T> future) throws ConfigurationException, DatabaseOperationException {
+    try {
+      return future.get();
+    } catch (InterruptedException ie) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new DatabaseOperationException("Interrupted while waiting for a database call to complete", ie);
+    } catch (ExecutionException ee) {
+      throw unwrap(ee.getCause());
+    }
+  }
+  
+  /**
+   * Translate a failure from a database call back into our exception types.  {@link ConfigurationException}s
+   * are thrown directly, and anything else is returned as a {@link DatabaseOperationException} to be thrown.
+   * 
+   * @param cause The failure.
+   * @return The exception the caller should throw.
+   * 
+   * @throws ConfigurationException Throws this exception if that was the original failure.
+   */
+  public static DatabaseOperationException unwrap(Throwable cause) throws ConfigurationException {
+    if (cause instanceof ConfigurationException)     throw (ConfigurationException)cause;
+    if (cause instanceof DatabaseOperationException) return (DatabaseOperationException)cause;
+    if (cause instanceof Error)                      throw (Error)cause;
+    return new DatabaseOperationException("Database call failed", cause);
+  }
+}
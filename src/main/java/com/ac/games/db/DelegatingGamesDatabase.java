@@ -0,0 +1,622 @@
+package com.ac.games.db;
+
+import java.util.List;
+import com.ac.games.data.BGGGame;
+import com.ac.games.data.BGGGameStats;
+import com.ac.games.data.CSIDataStats;
+import com.ac.games.data.Collection;
+import com.ac.games.data.CollectionItem;
+import com.ac.games.data.CompactSearchData;
+import com.ac.games.data.CoolStuffIncPriceData;
+import com.ac.games.data.Game;
+import com.ac.games.data.GameReltn;
+import com.ac.games.data.GameType;
+import com.ac.games.data.MMDataStats;
+import com.ac.games.data.MediaItem;
+import com.ac.games.data.MiniatureMarketPriceData;
+import com.ac.games.data.PlaythruItem;
+import com.ac.games.data.User;
+import com.ac.games.data.UserCollectionStats;
+import com.ac.games.data.UserDetail;
+import com.ac.games.data.WishlistItem;
+import com.ac.games.db.dashboard.ConcurrentDashboardReader;
+import com.ac.games.db.dashboard.UserDashboard;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * Base class for any {@link GamesDatabase} decorator.  Every call is passed straight through to the
+ * wrapped delegate, so subclasses only need to override the operations they actually care about.
+ * 
+ * @author ac010168
+ */
+public abstract class DelegatingGamesDatabase implements GamesDatabase {
+
+  /** The wrapped database that all calls are forwarded to */
+  protected final GamesDatabase delegate;
+  
+  /**
+   * Basic Constructor.
+   * 
+   * @param delegate The {@link GamesDatabase} all calls should be forwarded to.
+   */
+  protected DelegatingGamesDatabase(GamesDatabase delegate) {
+    if (delegate == null)
+      throw new NullPointerException("The delegate GamesDatabase cannot be null");
+    this.delegate = delegate;
+  }
+  
+  /**
+   * Gets the wrapped database.
+   * 
+   * @return The {@link GamesDatabase} all calls are forwarded to.
+   */
+  public GamesDatabase getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public void initializeDBConnection() throws ConfigurationException {
+    delegate.initializeDBConnection();
+  }
+  
+  @Override
+  public void closeDBConnection() throws ConfigurationException {
+    delegate.closeDBConnection();
+  }
+  
+  @Override
+  public BGGGame readBGGGameData(long bggID) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readBGGGameData(bggID);
+  }
+  
+  @Override
+  public void insertBGGGameData(BGGGame game) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertBGGGameData(game);
+  }
+  
+  @Override
+  public void updateBGGGameData(BGGGame game) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateBGGGameData(game);
+  }
+  
+  @Override
+  public void deleteBGGGameData(long bggID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteBGGGameData(bggID);
+  }
+  
+  @Override
+  public CoolStuffIncPriceData readCSIPriceData(long csiID) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readCSIPriceData(csiID);
+  }
+  
+  @Override
+  public void insertCSIPriceData(CoolStuffIncPriceData csiData) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertCSIPriceData(csiData);
+  }
+  
+  @Override
+  public void updateCSIPriceData(CoolStuffIncPriceData csiData) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateCSIPriceData(csiData);
+  }
+  
+  @Override
+  public void deleteCSIPriceData(long csiID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteCSIPriceData(csiID);
+  }
+  
+  @Override
+  public MiniatureMarketPriceData readMMPriceData(long mmID) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readMMPriceData(mmID);
+  }
+  
+  @Override
+  public void insertMMPriceData(MiniatureMarketPriceData mmData) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertMMPriceData(mmData);
+  }
+  
+  @Override
+  public void updateMMPriceData(MiniatureMarketPriceData mmData) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateMMPriceData(mmData);
+  }
+  
+  @Override
+  public void deleteMMPriceData(long mmID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteMMPriceData(mmID);
+  }
+  
+  @Override
+  public Game readGame(long gameID) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readGame(gameID);
+  }
+  
+  @Override
+  public Game readGameByBGGID(long bggID) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readGameByBGGID(bggID);
+  }
+  
+  @Override
+  public List<Game> readGameByName(String gameName, boolean addWildCard, GameType gameTypeFilter) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readGameByName(gameName, addWildCard, gameTypeFilter);
+  }
+  
+  @Override
+  public CompactSearchData readGameFromAutoName(String gameName, String primaryPublisher, int yearPublished) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readGameFromAutoName(gameName, primaryPublisher, yearPublished);
+  }
+  
+  @Override
+  public void insertGame(Game game) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertGame(game);
+  }
+  
+  @Override
+  public void updateGame(Game game) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateGame(game);
+  }
+  
+  @Override
+  public void deleteGame(long gameID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteGame(gameID);
+  }
+  
+  @Override
+  public GameReltn readGameReltn(long gameID) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readGameReltn(gameID);
+  }
+  
+  @Override
+  public void insertGameReltn(GameReltn gameReltn) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertGameReltn(gameReltn);
+  }
+  
+  @Override
+  public void updateGameReltn(GameReltn gameReltn) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateGameReltn(gameReltn);
+  }
+  
+  @Override
+  public void deleteGameReltn(long reltnID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteGameReltn(reltnID);
+  }
+  
+  @Override
+  public List<Long> getBggIDList() throws ConfigurationException, DatabaseOperationException {
+    return delegate.getBggIDList();
+  }
+  
+  @Override
+  public List<Long> getCSIIDList() throws ConfigurationException, DatabaseOperationException {
+    return delegate.getCSIIDList();
+  }
+  
+  @Override
+  public List<Long> getMMIDList() throws ConfigurationException, DatabaseOperationException {
+    return delegate.getMMIDList();
+  }
+  
+  @Override
+  public List<Long> getGameIDList() throws ConfigurationException, DatabaseOperationException {
+    return delegate.getGameIDList();
+  }
+  
+  @Override
+  public List<Long> getGameReltnIDList() throws ConfigurationException, DatabaseOperationException {
+    return delegate.getGameReltnIDList();
+  }
+  
+  @Override
+  public long getMaxBGGGameID() throws ConfigurationException, DatabaseOperationException {
+    return delegate.getMaxBGGGameID();
+  }
+  
+  @Override
+  public long getMaxCSIDataID() throws ConfigurationException, DatabaseOperationException {
+    return delegate.getMaxCSIDataID();
+  }
+  
+  @Override
+  public long getMaxMMDataID() throws ConfigurationException, DatabaseOperationException {
+    return delegate.getMaxMMDataID();
+  }
+  
+  @Override
+  public long getMaxGameID() throws ConfigurationException, DatabaseOperationException {
+    return delegate.getMaxGameID();
+  }
+  
+  @Override
+  public long getMaxGameReltnID() throws ConfigurationException, DatabaseOperationException {
+    return delegate.getMaxGameReltnID();
+  }
+  
+  @Override
+  public int getBGGGameCount() throws ConfigurationException, DatabaseOperationException {
+    return delegate.getBGGGameCount();
+  }
+  
+  @Override
+  public int getCSIDataCount() throws ConfigurationException, DatabaseOperationException {
+    return delegate.getCSIDataCount();
+  }
+  
+  @Override
+  public int getMMDataCount() throws ConfigurationException, DatabaseOperationException {
+    return delegate.getMMDataCount();
+  }
+  
+  @Override
+  public int getGameCount() throws ConfigurationException, DatabaseOperationException {
+    return delegate.getGameCount();
+  }
+  
+  @Override
+  public User readUser(long userID) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readUser(userID);
+  }
+  
+  @Override
+  public User readUser(String userName) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readUser(userName);
+  }
+  
+  @Override
+  public void insertUser(User user) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertUser(user);
+  }
+  
+  @Override
+  public void updateUser(User user) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateUser(user);
+  }
+  
+  @Override
+  public void deleteUser(long userID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteUser(userID);
+  }
+  
+  @Override
+  public long getMaxUserID() throws ConfigurationException, DatabaseOperationException {
+    return delegate.getMaxUserID();
+  }
+  
+  @Override
+  public UserDetail readUserDetail(long userID) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readUserDetail(userID);
+  }
+  
+  @Override
+  public void insertUserDetail(UserDetail userDetail) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertUserDetail(userDetail);
+  }
+  
+  @Override
+  public void updateUserDetail(UserDetail userDetail) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateUserDetail(userDetail);
+  }
+  
+  @Override
+  public void deleteUserDetail(long userID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteUserDetail(userID);
+  }
+  
+  @Override
+  public Collection readCollection(long collectionID) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readCollection(collectionID);
+  }
+  
+  @Override
+  public void insertCollection(Collection collection) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertCollection(collection);
+  }
+  
+  @Override
+  public void updateCollection(Collection collection) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateCollection(collection);
+  }
+  
+  @Override
+  public void deleteCollection(long collectionID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteCollection(collectionID);
+  }
+  
+  @Override
+  public long getMaxCollectionID() throws ConfigurationException, DatabaseOperationException {
+    return delegate.getMaxCollectionID();
+  }
+  
+  @Override
+  public CollectionItem readCollectionItem(long itemID) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readCollectionItem(itemID);
+  }
+  
+  @Override
+  public void insertCollectionItem(CollectionItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertCollectionItem(item);
+  }
+  
+  @Override
+  public void updateCollectionItem(CollectionItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateCollectionItem(item);
+  }
+  
+  @Override
+  public void deleteCollectionItem(long itemID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteCollectionItem(itemID);
+  }
+  
+  @Override
+  public long getMaxCollectionItemID() throws ConfigurationException, DatabaseOperationException {
+    return delegate.getMaxCollectionItemID();
+  }
+  
+  @Override
+  public MediaItem readMediaItemByMediaID(long mediaID) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readMediaItemByMediaID(mediaID);
+  }
+  
+  @Override
+  public List<MediaItem> readMediaItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readMediaItemsByUserID(userID);
+  }
+  
+  @Override
+  public List<MediaItem> readMediaItemsByGameID(long gameID) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readMediaItemsByGameID(gameID);
+  }
+  
+  @Override
+  public void insertMediaItem(MediaItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertMediaItem(item);
+  }
+  
+  @Override
+  public void updateMediaItem(MediaItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateMediaItem(item);
+  }
+  
+  @Override
+  public void deleteMediaItem(long mediaID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteMediaItem(mediaID);
+  }
+  
+  @Override
+  public long getMaxMediaItemID() throws ConfigurationException, DatabaseOperationException {
+    return delegate.getMaxMediaItemID();
+  }
+  
+  @Override
+  public WishlistItem readWishlistItem(long wishID) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readWishlistItem(wishID);
+  }
+  
+  @Override
+  public void insertWishlistItem(WishlistItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertWishlistItem(item);
+  }
+  
+  @Override
+  public void updateWishlistItem(WishlistItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateWishlistItem(item);
+  }
+  
+  @Override
+  public void deleteWishlistItem(long wishID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteWishlistItem(wishID);
+  }
+  
+  @Override
+  public long getMaxWishlistItemID() throws ConfigurationException, DatabaseOperationException {
+    return delegate.getMaxWishlistItemID();
+  }
+  
+  @Override
+  public PlaythruItem readPlaythruItem(long playthruID) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readPlaythruItem(playthruID);
+  }
+  
+  @Override
+  public void insertPlaythruItem(PlaythruItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertPlaythruItem(item);
+  }
+  
+  @Override
+  public void updatePlaythruItem(PlaythruItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.updatePlaythruItem(item);
+  }
+  
+  @Override
+  public void deletePlaythruItem(long playthruID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deletePlaythruItem(playthruID);
+  }
+  
+  @Override
+  public long getMaxPlaythruItemID() throws ConfigurationException, DatabaseOperationException {
+    return delegate.getMaxPlaythruItemID();
+  }
+  
+  @Override
+  public void deleteStatsRow(String statType) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteStatsRow(statType);
+  }
+  
+  @Override
+  public BGGGameStats readBGGGameStats() throws ConfigurationException, DatabaseOperationException {
+    return delegate.readBGGGameStats();
+  }
+  
+  @Override
+  public void insertBGGGameStats(BGGGameStats stats) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertBGGGameStats(stats);
+  }
+  
+  @Override
+  public CSIDataStats readCSIDataStats() throws ConfigurationException, DatabaseOperationException {
+    return delegate.readCSIDataStats();
+  }
+  
+  @Override
+  public void insertCSIDataStats(CSIDataStats stats) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertCSIDataStats(stats);
+  }
+  
+  @Override
+  public MMDataStats readMMDataStats() throws ConfigurationException, DatabaseOperationException {
+    return delegate.readMMDataStats();
+  }
+  
+  @Override
+  public void insertMMDataStats(MMDataStats stats) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertMMDataStats(stats);
+  }
+  
+  @Override
+  public void replaceBGGGameStats(BGGGameStats stats) throws ConfigurationException, DatabaseOperationException {
+    delegate.replaceBGGGameStats(stats);
+  }
+  
+  @Override
+  public void replaceCSIDataStats(CSIDataStats stats) throws ConfigurationException, DatabaseOperationException {
+    delegate.replaceCSIDataStats(stats);
+  }
+  
+  @Override
+  public void replaceMMDataStats(MMDataStats stats) throws ConfigurationException, DatabaseOperationException {
+    delegate.replaceMMDataStats(stats);
+  }
+  
+  @Override
+  public List<BGGGame> readBGGGameByName(String gameName, boolean addWildCard, GameType gameTypeFilter) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readBGGGameByName(gameName, addWildCard, gameTypeFilter);
+  }
+  
+  @Override
+  public List<CompactSearchData> readBGGGameByName(String gameName, boolean addWildCard, GameType gameTypeFilter, int resultLimit) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readBGGGameByName(gameName, addWildCard, gameTypeFilter, resultLimit);
+  }
+  
+  @Override
+  public BGGGame readBGGGameForReview(String reviewType) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readBGGGameForReview(reviewType);
+  }
+  
+  @Override
+  public List<CoolStuffIncPriceData> readCSIDataByTitle(String title, boolean addWildCard) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readCSIDataByTitle(title, addWildCard);
+  }
+  
+  @Override
+  public List<CompactSearchData> readCSIDataByTitle(String title, boolean addWildCard, int rowLimit) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readCSIDataByTitle(title, addWildCard, rowLimit);
+  }
+  
+  @Override
+  public CoolStuffIncPriceData readCSIDataForReview(String reviewType) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readCSIDataForReview(reviewType);
+  }
+  
+  @Override
+  public List<MiniatureMarketPriceData> readMMDataByTitle(String title, boolean addWildCard) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readMMDataByTitle(title, addWildCard);
+  }
+  
+  @Override
+  public List<CompactSearchData> readMMDataByTitle(String title, boolean addWildCard, int rowLimit) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readMMDataByTitle(title, addWildCard, rowLimit);
+  }
+  
+  @Override
+  public MiniatureMarketPriceData readMMDataForReview(String reviewType) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readMMDataForReview(reviewType);
+  }
+  
+  @Override
+  public List<String> readGameNamesForAutoComplete() throws ConfigurationException, DatabaseOperationException {
+    return delegate.readGameNamesForAutoComplete();
+  }
+  
+  @Override
+  public List<String> readBGGGameNamesForAutoComplete() throws ConfigurationException, DatabaseOperationException {
+    return delegate.readBGGGameNamesForAutoComplete();
+  }
+  
+  @Override
+  public List<String> readCSITitlesForAutoComplete() throws ConfigurationException, DatabaseOperationException {
+    return delegate.readCSITitlesForAutoComplete();
+  }
+  
+  @Override
+  public List<String> readMMTitlesForAutoComplete() throws ConfigurationException, DatabaseOperationException {
+    return delegate.readMMTitlesForAutoComplete();
+  }
+  
+  @Override
+  public List<CompactSearchData> readGamesCompact(String gameIDs) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readGamesCompact(gameIDs);
+  }
+  
+  @Override
+  public UserCollectionStats readCollectionStats(long userID) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readCollectionStats(userID);
+  }
+  
+  @Override
+  public List<CollectionItem> getNewestCollectionItems(long userID, int topX) throws ConfigurationException, DatabaseOperationException {
+    return delegate.getNewestCollectionItems(userID, topX);
+  }
+  
+  @Override
+  public List<WishlistItem> readWishlistForUser(long userID) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readWishlistForUser(userID);
+  }
+  
+  @Override
+  public List<WishlistItem> readWishlistByGame(long gameID) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readWishlistByGame(gameID);
+  }
+  
+  @Override
+  public WishlistItem readWishlistItem(long userID, long gameID) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readWishlistItem(userID, gameID);
+  }
+  
+  @Override
+  public List<PlaythruItem> readPlaythruItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    return delegate.readPlaythruItemsByUserID(userID);
+  }
+  
+  @Override
+  public List<Collection> deleteCollectionsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    return delegate.deleteCollectionsByUserID(userID);
+  }
+  
+  @Override
+  public List<CollectionItem> deleteCollectionItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    return delegate.deleteCollectionItemsByUserID(userID);
+  }
+  
+  @Override
+  public List<WishlistItem> deleteWishlistItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    return delegate.deleteWishlistItemsByUserID(userID);
+  }
+  
+  @Override
+  public List<PlaythruItem> deletePlaythruItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    return delegate.deletePlaythruItemsByUserID(userID);
+  }
+  
+  @Override
+  public List<MediaItem> deleteMediaItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    return delegate.deleteMediaItemsByUserID(userID);
+  }
+  
+  /**
+   * Builds the dashboard from this object's own reads, rather than passing the call to the delegate, so
+   * any decorator that overrides one of those reads is still seen by the dashboard.
+   */
+  @Override
+  public UserDashboard readUserDashboard(long userID, int topX) throws ConfigurationException, DatabaseOperationException {
+    return new ConcurrentDashboardReader(this, ConcurrentDashboardReader.sharedExecutor()).readUserDashboard(userID, topX);
+  }
+
+}
@@ -0,0 +1,24 @@
+package com.ac.games.db;
+
+/**
+ * The kinds of records stored through {@link GamesDatabase}.  Used by caching and change tracking layers
+ * that need to talk about a type of record without holding one.
+ * 
+ * @author ac010168
+ */
+public enum EntityType {
+  BGG_GAME,
+  CSI_DATA,
+  MM_DATA,
+  GAME,
+  GAME_RELTN,
+  USER,
+  USER_DETAIL,
+  COLLECTION,
+  COLLECTION_ITEM,
+  MEDIA_ITEM,
+  WISHLIST_ITEM,
+  PLAYTHRU_ITEM,
+  /** The BGG, CSI and MM stats rows, which are keyed by statType and only ever invalidated as a whole */
+  STATS
+}
@@ -20,6 +20,7 @@ import com.ac.games.data.User;
 import com.ac.games.data.UserCollectionStats;
 import com.ac.games.data.UserDetail;
 import com.ac.games.data.WishlistItem;
+import com.ac.games.db.dashboard.UserDashboard;
 import com.ac.games.db.exception.ConfigurationException;
 import com.ac.games.db.exception.DatabaseOperationException;
 
@@ -977,7 +978,44 @@ public interface GamesDatabase {
    * of the requested operation.
    */
   public void insertMMDataStats(MMDataStats stats) throws ConfigurationException, DatabaseOperationException;
-  
+
+  /**
+   * Atomically swap the game stats for BGGGame data.  Unlike a {@link #deleteStatsRow(String)} followed
+   * by {@link #insertBGGGameStats(BGGGameStats)}, readers should never see a missing stats row while this
+   * runs, so implementations should use a single replace or upsert operation.
+   * 
+   * @param stats The stats for this data type
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public void replaceBGGGameStats(BGGGameStats stats) throws ConfigurationException, DatabaseOperationException;
+
+  /**
+   * Atomically swap the game stats for CSI data.  Readers should never see a missing stats row
+   * while this runs.
+   * 
+   * @param stats The stats for this data type
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public void replaceCSIDataStats(CSIDataStats stats) throws ConfigurationException, DatabaseOperationException;
+
+  /**
+   * Atomically swap the game stats for MM data.  Readers should never see a missing stats row
+   * while this runs.
+   * 
+   * @param stats The stats for this data type
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public void replaceMMDataStats(MMDataStats stats) throws ConfigurationException, DatabaseOperationException;
+
   /**
    * Read {@link BGGGame} entry or entries by gameName.
    * 
@@ -1230,4 +1268,98 @@ public interface GamesDatabase {
    * of the requested operation.
    */
   public WishlistItem readWishlistItem(long userID, long gameID)  throws ConfigurationException, DatabaseOperationException;
+  
+  //**********  Per-User Bulk Operations  **********
+  /**
+   * This method should query the database for the requested {@link PlaythruItem}(s) by userID.
+   * 
+   * @param userID The userID we want to find all plays for
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public List<PlaythruItem> readPlaythruItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException;
+  
+  /**
+   * Delete every {@link Collection} owned by a user in one operation, including any not linked to the user
+   * through their collectionID.  The per-user deletes are meant for purging users, where deleting one record
+   * at a time would cost a call per record.  Implementations should find the user's records and delete them
+   * by id in one statement, so the list returned is exactly what was removed; decorators rely on that to
+   * keep their own state in line.
+   * 
+   * @param userID The user whose collections should be deleted.
+   * @return The records deleted, or an empty list if the user had none.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public List<Collection> deleteCollectionsByUserID(long userID) throws ConfigurationException, DatabaseOperationException;
+  
+  /**
+   * Delete every {@link CollectionItem} owned by a user in one operation, as {@link #deleteCollectionsByUserID(long)}.
+   * 
+   * @param userID The user whose collection items should be deleted.
+   * @return The records deleted, or an empty list if the user had none.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public List<CollectionItem> deleteCollectionItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException;
+  
+  /**
+   * Delete every {@link WishlistItem} owned by a user in one operation, as {@link #deleteCollectionsByUserID(long)}.
+   * 
+   * @param userID The user whose wishlist items should be deleted.
+   * @return The records deleted, or an empty list if the user had none.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public List<WishlistItem> deleteWishlistItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException;
+  
+  /**
+   * Delete every {@link PlaythruItem} owned by a user in one operation, as {@link #deleteCollectionsByUserID(long)}.
+   * 
+   * @param userID The user whose plays should be deleted.
+   * @return The records deleted, or an empty list if the user had none.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public List<PlaythruItem> deletePlaythruItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException;
+  
+  /**
+   * Delete every {@link MediaItem} owned by a user in one operation, as {@link #deleteCollectionsByUserID(long)}.
+   * 
+   * @param userID The user whose media items should be deleted.
+   * @return The records deleted, or an empty list if the user had none.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public List<MediaItem> deleteMediaItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException;
+  
+  //**********  Composite Reads  **********
+  /**
+   * Read everything needed for a user's dashboard in one call: the {@link User}, {@link UserDetail},
+   * {@link UserCollectionStats}, newest collection items, wishlist and media items.  Implementations
+   * should run these reads in parallel or as a single aggregation.  Backends without a better option
+   * can delegate to {@link com.ac.games.db.dashboard.ConcurrentDashboardReader}.
+   * 
+   * @param userID The userID we want the dashboard for.
+   * @param topX The number of newest collection items to include.
+   * 
+   * @return A {@link UserDashboard}, or null if the user does not exist.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public UserDashboard readUserDashboard(long userID, int topX) throws ConfigurationException, DatabaseOperationException;
 }
@@ -0,0 +1,47 @@
+package com.ac.games.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Helper for decorators that apply the same behavior to every {@link GamesDatabase} call, such as timeouts or
+ * tracing.  Those are written as an {@link InvocationHandler} rather than a {@link DelegatingGamesDatabase},
+ * so they don't need an override for every method.
+ * 
+ * @author ac010168
+ */
+public final class GamesDatabaseProxy {
+
+  private GamesDatabaseProxy() {}
+  
+  /**
+   * Create a {@link GamesDatabase} that sends every call to the handler.
+   * 
+   * @param handler The handler for all calls.
+   * @return A new proxy.
+   */
+  public static GamesDatabase create(InvocationHandler handler) {
+    return (GamesDatabase)Proxy.newProxyInstance(GamesDatabase.class.getClassLoader(), new Class<?>[] { GamesDatabase.class }, handler);
+  }
+  
+  /**
+   * Make a call against a target database, throwing whatever the call itself threw rather than the
+   * reflection wrapper.
+   * 
+   * @param target The database to call.
+   * @param method The interface method.
+   * @param args The call arguments.
+   * @return The call result.
+   * 
+   * @throws Throwable Whatever the call threw.
+   */
+  public static Object invoke(GamesDatabase target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException ite) {
+      throw ite.getCause();
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package com.ac.games.db.admission;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.GamesDatabaseProxy;
+
+/**
+ * {@link GamesDatabase} decorator that passes every call through an {@link AdmissionController} before it
+ * reaches the delegate.  Calls are classed with {@link PriorityClass#classify(Method)}, unless the calling
+ * thread has set its own class with {@link #setThreadClass(PriorityClass)}.  That lets a crawler mark even
+ * its plain reads as batch work.  Connection management calls are never held back.
+ * 
+ * @author ac010168
+ */
+public final class AdmissionControlledGamesDatabase implements InvocationHandler {
+
+  private static final ThreadLocal<PriorityClass> threadClass = new ThreadLocal<PriorityClass>();
+  
+  private final GamesDatabase       delegate;
+  private final AdmissionController controller;
+  
+  private AdmissionControlledGamesDatabase(GamesDatabase delegate, AdmissionController controller) {
+    this.delegate   = delegate;
+    this.controller = controller;
+  }
+  
+  /**
+   * Wrap a database with admission control.
+   * 
+   * @param delegate The database to wrap.
+   * @param controller The controller that admits each call.
+   * @return The controlled database.
+   */
+  public static GamesDatabase wrap(GamesDatabase delegate, AdmissionController controller) {
+    return GamesDatabaseProxy.create(new AdmissionControlledGamesDatabase(delegate, controller));
+  }
+  
+  /**
+   * Set the class for every call made from this thread, such as {@link PriorityClass#BATCH} in a crawler.
+   * 
+   * @param priority The class to use, or null to go back to classifying each call.
+   */
+  public static void setThreadClass(PriorityClass priority) {
+    if (priority == null) threadClass.remove();
+    else                  threadClass.set(priority);
+  }
+  
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    if (method.getDeclaringClass() == Object.class) return method.invoke(this, args);
+    
+    String name = method.getName();
+    if (name.equals("initializeDBConnection") || name.equals("closeDBConnection"))
+      return GamesDatabaseProxy.invoke(delegate, method, args);
+    
+    PriorityClass priority = threadClass.get();
+    if (priority == null) priority = PriorityClass.classify(method);
+    
+    controller.acquire(priority);
+    try {
+      return GamesDatabaseProxy.invoke(delegate, method, args);
+    } finally {
+      controller.release(priority);
+    }
+  }
+}
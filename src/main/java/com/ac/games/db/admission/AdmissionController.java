@@ -0,0 +1,233 @@
+package com.ac.games.db.admission;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * Decides when each call may run, based on its {@link PriorityClass}.
+ * <p>
+ * Each class has its own concurrency limit and optional token bucket rate limit.  On top of that, priority
+ * is strict: a lower class call is never admitted while a higher class call is waiting.  Calls that can't be
+ * admitted within their class's queue timeout fail with a {@link DatabaseOperationException}.
+ * <p>
+ * Queue depth, in-flight counts and wait times are tracked per class for monitoring.
+ * 
+ * @author ac010168
+ */
+public class AdmissionController {
+
+  private final ReentrantLock lock    = new ReentrantLock();
+  private final Condition     changed = lock.newCondition();
+  
+  private final Map<PriorityClass, ClassLimits> limits;
+  private final Map<PriorityClass, TokenBucket> buckets;
+  private final int[]  waiting;
+  private final int[]  inFlight;
+  private final long[] admitted;
+  private final long[] rejected;
+  private final long[] totalWaitNanos;
+  private final long[] maxWaitNanos;
+  
+  /**
+   * Constructor.
+   * 
+   * @param limits The limits for each class.  Every class must be present.
+   */
+  public AdmissionController(Map<PriorityClass, ClassLimits> limits) {
+    int classCount = PriorityClass.values().length;
+    this.limits         = new EnumMap<PriorityClass, ClassLimits>(PriorityClass.class);
+    this.buckets        = new EnumMap<PriorityClass, TokenBucket>(PriorityClass.class);
+    this.waiting        = new int[classCount];
+    this.inFlight       = new int[classCount];
+    this.admitted       = new long[classCount];
+    this.rejected       = new long[classCount];
+    this.totalWaitNanos = new long[classCount];
+    this.maxWaitNanos   = new long[classCount];
+    
+    for (PriorityClass priority : PriorityClass.values()) {
+      ClassLimits classLimits = limits.get(priority);
+      if (classLimits == null)
+        throw new IllegalArgumentException("No limits were provided for " + priority);
+      this.limits.put(priority, classLimits);
+      if (classLimits.getRatePerSecond() > 0.0)
+        buckets.put(priority, new TokenBucket(classLimits.getRatePerSecond(), classLimits.getBurst()));
+    }
+  }
+  
+  /**
+   * Wait until a call of this class may run.  Every successful call must be followed by {@link #release(PriorityClass)}.
+   * 
+   * @param priority The class of the call.
+   * 
+   * @throws DatabaseOperationException Throws this exception if the call could not be admitted within the
+   * queue timeout, or if we were interrupted while waiting.
+   */
+  public void acquire(PriorityClass priority) throws DatabaseOperationException {
+    int index = priority.ordinal();
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.MILLISECONDS.toNanos(limits.get(priority).getQueueTimeoutMillis());
+    
+    lock.lock();
+    try {
+      waiting[index]++;
+      try {
+        while (true) {
+          long tokenWait = tryAdmit(priority);
+          if (tokenWait == 0) break;
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            rejected[index]++;
+            throw new DatabaseOperationException("Timed out waiting for admission as " + priority + " (" + inFlight[index] + " in flight, "
+                                                 + waiting[index] + " waiting)");
+          }
+          changed.awaitNanos(Math.min(remaining, tokenWait));
+        }
+      } finally {
+        waiting[index]--;
+        //A higher class leaving the queue may unblock a lower one
+        changed.signalAll();
+      }
+      
+      long waited = System.nanoTime() - start;
+      inFlight[index]++;
+      admitted[index]++;
+      totalWaitNanos[index] += waited;
+      maxWaitNanos[index] = Math.max(maxWaitNanos[index], waited);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new DatabaseOperationException("Interrupted while waiting for admission as " + priority, ie);
+    } finally {
+      lock.unlock();
+    }
+  }
+  
+  /**
+   * Mark a call as finished.
+   * 
+   * @param priority The class the call was admitted as.
+   */
+  public void release(PriorityClass priority) {
+    lock.lock();
+    try {
+      inFlight[priority.ordinal()]--;
+      changed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+  
+  /**
+   * Try to admit a call.  Must be called while holding the lock.
+   * 
+   * @return 0 if the call was admitted, otherwise how long to wait before trying again, in nanoseconds.
+   */
+  private long tryAdmit(PriorityClass priority) {
+    for (PriorityClass higher : PriorityClass.values()) {
+      if (higher == priority) break;
+      if (waiting[higher.ordinal()] > 0) return Long.MAX_VALUE;
+    }
+    if (inFlight[priority.ordinal()] >= limits.get(priority).getMaxConcurrent()) return Long.MAX_VALUE;
+    
+    TokenBucket bucket = buckets.get(priority);
+    if (bucket == null || bucket.tryAcquire()) return 0;
+    return Math.max(1, bucket.nanosUntilAvailable());
+  }
+  
+  //**********  Metrics  **********
+  /**
+   * Gets the number of calls currently waiting to be admitted.
+   * 
+   * @param priority The class.
+   * @return The queue depth.
+   */
+  public int getQueueDepth(PriorityClass priority) {
+    lock.lock();
+    try {
+      return waiting[priority.ordinal()];
+    } finally {
+      lock.unlock();
+    }
+  }
+  
+  /**
+   * Gets the number of admitted calls that haven't finished.
+   * 
+   * @param priority The class.
+   * @return The in-flight count.
+   */
+  public int getInFlight(PriorityClass priority) {
+    lock.lock();
+    try {
+      return inFlight[priority.ordinal()];
+    } finally {
+      lock.unlock();
+    }
+  }
+  
+  /**
+   * Gets the number of calls admitted since this controller was created.
+   * 
+   * @param priority The class.
+   * @return The admitted count.
+   */
+  public long getAdmittedCount(PriorityClass priority) {
+    lock.lock();
+    try {
+      return admitted[priority.ordinal()];
+    } finally {
+      lock.unlock();
+    }
+  }
+  
+  /**
+   * Gets the number of calls that timed out waiting to be admitted.
+   * 
+   * @param priority The class.
+   * @return The rejected count.
+   */
+  public long getRejectedCount(PriorityClass priority) {
+    lock.lock();
+    try {
+      return rejected[priority.ordinal()];
+    } finally {
+      lock.unlock();
+    }
+  }
+  
+  /**
+   * Gets the average time admitted calls spent waiting.
+   * 
+   * @param priority The class.
+   * @return The average wait in milliseconds, or 0 if nothing has been admitted.
+   */
+  public double getAverageWaitMillis(PriorityClass priority) {
+    lock.lock();
+    try {
+      int index = priority.ordinal();
+      if (admitted[index] == 0) return 0.0;
+      return totalWaitNanos[index] / (double)admitted[index] / TimeUnit.MILLISECONDS.toNanos(1);
+    } finally {
+      lock.unlock();
+    }
+  }
+  
+  /**
+   * Gets the longest time an admitted call spent waiting.
+   * 
+   * @param priority The class.
+   * @return The maximum wait in milliseconds.
+   */
+  public long getMaxWaitMillis(PriorityClass priority) {
+    lock.lock();
+    try {
+      return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos[priority.ordinal()]);
+    } finally {
+      lock.unlock();
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package com.ac.games.db.admission;
+
+/**
+ * Admission limits for one {@link PriorityClass}.
+ * 
+ * @author ac010168
+ */
+public class ClassLimits {
+
+  /** Maximum number of calls in flight at once */
+  private final int    maxConcurrent;
+  /** Sustained calls per second, or 0 for no rate limit */
+  private final double ratePerSecond;
+  /** Number of calls that can be made in a burst above the sustained rate */
+  private final int    burst;
+  /** Maximum time a call will wait to be admitted, in milliseconds */
+  private final long   queueTimeoutMillis;
+  
+  /**
+   * Constructor.
+   * 
+   * @param maxConcurrent Maximum number of calls in flight at once.
+   * @param ratePerSecond Sustained calls per second, or 0 for no rate limit.
+   * @param burst Number of calls that can be made in a burst above the sustained rate.
+   * @param queueTimeoutMillis Maximum time a call will wait to be admitted, in milliseconds.
+   */
+  public ClassLimits(int maxConcurrent, double ratePerSecond, int burst, long queueTimeoutMillis) {
+    if (maxConcurrent < 1)
+      throw new IllegalArgumentException("maxConcurrent must be at least 1");
+    this.maxConcurrent      = maxConcurrent;
+    this.ratePerSecond      = ratePerSecond;
+    this.burst              = Math.max(1, burst);
+    this.queueTimeoutMillis = queueTimeoutMillis;
+  }
+
+  public int getMaxConcurrent() {
+    return maxConcurrent;
+  }
+
+  public double getRatePerSecond() {
+    return ratePerSecond;
+  }
+
+  public int getBurst() {
+    return burst;
+  }
+
+  public long getQueueTimeoutMillis() {
+    return queueTimeoutMillis;
+  }
+}
@@ -0,0 +1,36 @@
+package com.ac.games.db.admission;
+
+import java.lang.reflect.Method;
+
+/**
+ * Traffic classes for admission control, highest priority first.
+ * 
+ * @author ac010168
+ */
+public enum PriorityClass {
+  /** User-facing requests */
+  INTERACTIVE,
+  /** Crawlers, review jobs and other background work */
+  BATCH;
+  
+  /**
+   * Work out the default class for a {@link com.ac.games.db.GamesDatabase} call.  Writes to the crawled
+   * BGG, CSI and MM data, the full id lists, review queue reads, table counts and the stats rows are batch
+   * work.  Everything else is interactive, including the max ID lookups, which are single indexed reads
+   * that user-facing inserts make to pick their next id.
+   * 
+   * @param method The interface method.
+   * @return The priority class.
+   */
+  public static PriorityClass classify(Method method) {
+    String name = method.getName();
+    boolean crawled = name.contains("BGGGame") || name.contains("CSI") || name.contains("MM");
+    boolean write   = name.startsWith("insert") || name.startsWith("update") || name.startsWith("delete") || name.startsWith("replace");
+    
+    if (crawled && write)                                              return BATCH;
+    if (name.endsWith("IDList") || name.contains("ForReview"))         return BATCH;
+    if (name.endsWith("Count"))                                        return BATCH;
+    if (name.endsWith("Stats") && !name.equals("readCollectionStats")) return BATCH;
+    return INTERACTIVE;
+  }
+}
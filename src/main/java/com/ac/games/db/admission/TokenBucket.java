@@ -0,0 +1,61 @@
+package com.ac.games.db.admission;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter.  Tokens refill continuously at the sustained rate, up to the burst size.
+ * This class is not thread-safe, and is guarded by the {@link AdmissionController} lock.
+ * 
+ * @author ac010168
+ */
+public class TokenBucket {
+
+  private final double tokensPerNano;
+  private final double capacity;
+  private double tokens;
+  private long   lastRefill;
+  
+  /**
+   * Constructor.  The bucket starts full.
+   * 
+   * @param ratePerSecond Sustained tokens per second.  Must be greater than 0.
+   * @param burst The bucket size.
+   */
+  public TokenBucket(double ratePerSecond, int burst) {
+    if (ratePerSecond <= 0.0)
+      throw new IllegalArgumentException("ratePerSecond must be greater than 0");
+    this.tokensPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+    this.capacity      = burst;
+    this.tokens        = burst;
+    this.lastRefill    = System.nanoTime();
+  }
+  
+  /**
+   * Take a token if one is available.
+   * 
+   * @return true if a token was taken.
+   */
+  public boolean tryAcquire() {
+    refill();
+    if (tokens < 1.0) return false;
+    tokens -= 1.0;
+    return true;
+  }
+  
+  /**
+   * Gets the time until the next token is available.
+   * 
+   * @return The wait time in nanoseconds, or 0 if a token is available now.
+   */
+  public long nanosUntilAvailable() {
+    refill();
+    if (tokens >= 1.0) return 0;
+    return (long)Math.ceil((1.0 - tokens) / tokensPerNano);
+  }
+  
+  private void refill() {
+    long now = System.nanoTime();
+    tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+    lastRefill = now;
+  }
+}
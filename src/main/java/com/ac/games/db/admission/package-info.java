@@ -0,0 +1,6 @@
+/**
+ * This package holds the admission control used to keep batch jobs from crowding out interactive traffic.
+ * 
+ * @author ac010168
+ */
+package com.ac.games.db.admission;
@@ -0,0 +1,17 @@
+package com.ac.games.db.alert;
+
+/**
+ * Receives alerts from the {@link PriceDropAlertEngine}.  Listeners are called on the thread that made
+ * the price update, so anything slow (like sending email) should be queued rather than done inline.
+ * 
+ * @author ac010168
+ */
+public interface PriceAlertListener {
+
+  /**
+   * Called once for each wishlist entry affected by a price drop.
+   * 
+   * @param alert The alert details.
+   */
+  public void priceDropped(PriceDropAlert alert);
+}
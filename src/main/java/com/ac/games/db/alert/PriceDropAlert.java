@@ -0,0 +1,72 @@
+package com.ac.games.db.alert;
+
+/**
+ * A price drop on a game that a user has wishlisted.
+ * 
+ * @author ac010168
+ */
+public class PriceDropAlert {
+
+  private final long        wishID;
+  private final long        userID;
+  private final long        gameID;
+  private final PriceSource source;
+  private final long        sourceID;
+  private final double      oldPrice;
+  private final double      newPrice;
+  
+  /**
+   * Constructor.
+   * 
+   * @param wishID The wishlist entry that matched.
+   * @param userID The user who owns the wishlist entry.
+   * @param gameID The game whose price dropped.
+   * @param source The retailer whose price dropped.
+   * @param sourceID The csiID or mmID of the listing.
+   * @param oldPrice The previous price.
+   * @param newPrice The new price.
+   */
+  public PriceDropAlert(long wishID, long userID, long gameID, PriceSource source, long sourceID, double oldPrice, double newPrice) {
+    this.wishID   = wishID;
+    this.userID   = userID;
+    this.gameID   = gameID;
+    this.source   = source;
+    this.sourceID = sourceID;
+    this.oldPrice = oldPrice;
+    this.newPrice = newPrice;
+  }
+
+  public long getWishID() {
+    return wishID;
+  }
+
+  public long getUserID() {
+    return userID;
+  }
+
+  public long getGameID() {
+    return gameID;
+  }
+
+  public PriceSource getSource() {
+    return source;
+  }
+
+  public long getSourceID() {
+    return sourceID;
+  }
+
+  public double getOldPrice() {
+    return oldPrice;
+  }
+
+  public double getNewPrice() {
+    return newPrice;
+  }
+  
+  @Override
+  public String toString() {
+    return "PriceDropAlert [wishID=" + wishID + ", userID=" + userID + ", gameID=" + gameID + ", source=" + source
+        + ", sourceID=" + sourceID + ", oldPrice=" + oldPrice + ", newPrice=" + newPrice + "]";
+  }
+}
@@ -0,0 +1,249 @@
+package com.ac.games.db.alert;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ac.games.data.WishlistItem;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * Matches price changes against wishlists and emits a {@link PriceDropAlert} for each affected wishlist entry.
+ * <p>
+ * Wishers are found through a gameID to wishlist entry index.  A game's entries are loaded with
+ * {@link GamesDatabase#readWishlistByGame(long)} the first time that game's price drops, and then kept
+ * current by the wishlist write calls, so only games whose prices actually change are ever read.  Writes that
+ * skip this engine (another node, or a direct database fix) are only picked up when a game's entries are
+ * reloaded, so each game is loaded again once it is older than the TTL, and {@link #clearWishers()} drops
+ * every game at once, such as at the start of a crawl run.
+ * <p>
+ * A load runs outside the lock, so wishlist writes that arrive while it runs are recorded against it and
+ * replayed over the loaded entries before they are installed.  Without that, a write that landed after
+ * the read but before the install would be lost.
+ * <p>
+ * A listener that throws is logged and skipped, so the other listeners still get the alert.
+ * 
+ * @author ac010168
+ */
+public class PriceDropAlertEngine {
+
+  /** Default time a game's wishlist entries are used before they are loaded again */
+  public static final long DEFAULT_TTL_MILLIS = 30L * 60L * 1000L;
+  
+  private static final Logger LOGGER = Logger.getLogger(PriceDropAlertEngine.class.getName());
+  
+  private final GamesDatabase database;
+  /** The fraction a price must drop by before we alert, such as 0.05 for 5% */
+  private final double minimumDrop;
+  private final List<PriceAlertListener> listeners;
+  private final long ttlNanos;
+  
+  /** Wishlist entries for each loaded gameID, by wishID */
+  private final Map<Long, Map<Long, WishlistItem>> wishersByGame;
+  /** gameID for each loaded wishID, so deletes can find their entry */
+  private final Map<Long, Long> gameByWish;
+  /** When each loaded gameID expires, from System.nanoTime() */
+  private final Map<Long, Long> expiresByGame;
+  /** Loads that are running now, which record every wishlist write that arrives meanwhile */
+  private final List<PendingLoad> loading;
+  
+  /**
+   * Basic Constructor, using the default TTL.
+   * 
+   * @param database The database used to load wishlist entries.
+   * @param minimumDrop The fraction a price must drop by before we alert, such as 0.05 for 5%.  Use 0
+   * to alert on any drop.
+   */
+  public PriceDropAlertEngine(GamesDatabase database, double minimumDrop) {
+    this(database, minimumDrop, DEFAULT_TTL_MILLIS);
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param database The database used to load wishlist entries.
+   * @param minimumDrop The fraction a price must drop by before we alert, such as 0.05 for 5%.  Use 0
+   * to alert on any drop.
+   * @param ttlMillis How long a game's loaded wishlist entries are used, in milliseconds.
+   */
+  public PriceDropAlertEngine(GamesDatabase database, double minimumDrop, long ttlMillis) {
+    this.database      = database;
+    this.minimumDrop   = minimumDrop;
+    this.ttlNanos      = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    this.listeners     = new CopyOnWriteArrayList<PriceAlertListener>();
+    this.wishersByGame = new HashMap<Long, Map<Long, WishlistItem>>();
+    this.gameByWish    = new HashMap<Long, Long>();
+    this.expiresByGame = new HashMap<Long, Long>();
+    this.loading       = new ArrayList<PendingLoad>();
+  }
+  
+  public void addListener(PriceAlertListener listener) {
+    listeners.add(listener);
+  }
+  
+  public void removeListener(PriceAlertListener listener) {
+    listeners.remove(listener);
+  }
+  
+  /**
+   * Drop every loaded game, so each is read from the database again on its next price drop.
+   */
+  public synchronized void clearWishers() {
+    wishersByGame.clear();
+    gameByWish.clear();
+    expiresByGame.clear();
+  }
+  
+  /**
+   * Handle a price change for a listing.  Nothing happens unless the price dropped by at least the
+   * minimum drop.
+   * 
+   * @param source The retailer.
+   * @param sourceID The csiID or mmID of the listing.
+   * @param gameID The game the listing is linked to.  Values of 0 or less mean the listing is unlinked.
+   * @param oldPrice The previous price.
+   * @param newPrice The new price.
+   * @return The number of alerts sent.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public int priceChanged(PriceSource source, long sourceID, long gameID, double oldPrice, double newPrice) throws ConfigurationException, DatabaseOperationException {
+    if (gameID <= 0 || oldPrice <= 0.0 || newPrice <= 0.0) return 0;
+    if (newPrice > oldPrice * (1.0 - minimumDrop) || newPrice >= oldPrice) return 0;
+    
+    List<WishlistItem> wishers = getWishers(gameID);
+    for (WishlistItem item : wishers) {
+      PriceDropAlert alert = new PriceDropAlert(item.getWishID(), item.getUserID(), gameID, source, sourceID, oldPrice, newPrice);
+      for (PriceAlertListener listener : listeners) {
+        try {
+          listener.priceDropped(alert);
+        } catch (RuntimeException re) {
+          LOGGER.log(Level.WARNING, "Price alert listener failed for wishID " + item.getWishID(), re);
+        }
+      }
+    }
+    return wishers.size();
+  }
+  
+  /**
+   * Record a new or changed wishlist entry.
+   * 
+   * @param item The entry as it now exists in the database.
+   */
+  public synchronized void wishlistItemChanged(WishlistItem item) {
+    for (PendingLoad load : loading)
+      load.writes.add(item);
+    
+    Long oldGameID = gameByWish.remove(item.getWishID());
+    if (oldGameID != null) wishersByGame.get(oldGameID).remove(item.getWishID());
+    
+    //Games we haven't loaded yet will pick the entry up when they are loaded
+    Map<Long, WishlistItem> wishers = wishersByGame.get(item.getGameID());
+    if (wishers != null) {
+      wishers.put(item.getWishID(), item);
+      gameByWish.put(item.getWishID(), item.getGameID());
+    }
+  }
+  
+  /**
+   * Record a deleted wishlist entry.
+   * 
+   * @param wishID The entry that was deleted.
+   */
+  public synchronized void wishlistItemDeleted(long wishID) {
+    for (PendingLoad load : loading)
+      load.writes.add(wishID);
+    
+    Long gameID = gameByWish.remove(wishID);
+    if (gameID != null) wishersByGame.get(gameID).remove(wishID);
+  }
+  
+  private List<WishlistItem> getWishers(long gameID) throws ConfigurationException, DatabaseOperationException {
+    PendingLoad load;
+    synchronized (this) {
+      Map<Long, WishlistItem> wishers = wishersByGame.get(gameID);
+      if (wishers != null) {
+        if (System.nanoTime() - expiresByGame.get(gameID) < 0L) return new ArrayList<WishlistItem>(wishers.values());
+        drop(gameID);
+      }
+      load = new PendingLoad(gameID);
+      loading.add(load);
+    }
+    
+    //Load outside the lock, and let the first loader win if two drops race
+    List<WishlistItem> loaded;
+    try {
+      loaded = database.readWishlistByGame(gameID);
+    } catch (ConfigurationException ce) {
+      abandon(load);
+      throw ce;
+    } catch (RuntimeException re) {
+      abandon(load);
+      throw re;
+    }
+    
+    synchronized (this) {
+      loading.remove(load);
+      Map<Long, WishlistItem> wishers = wishersByGame.get(gameID);
+      if (wishers == null) {
+        wishers = new HashMap<Long, WishlistItem>();
+        for (WishlistItem item : loaded)
+          wishers.put(item.getWishID(), item);
+        load.replay(wishers);
+        for (Long wishID : wishers.keySet())
+          gameByWish.put(wishID, gameID);
+        wishersByGame.put(gameID, wishers);
+        expiresByGame.put(gameID, System.nanoTime() + ttlNanos);
+      }
+      return new ArrayList<WishlistItem>(wishers.values());
+    }
+  }
+  
+  private void drop(long gameID) {
+    Map<Long, WishlistItem> wishers = wishersByGame.remove(gameID);
+    expiresByGame.remove(gameID);
+    for (Long wishID : wishers.keySet())
+      gameByWish.remove(wishID);
+  }
+  
+  private synchronized void abandon(PendingLoad load) {
+    loading.remove(load);
+  }
+  
+  /**
+   * A load of one game's wishers, and the wishlist writes that arrived while it was running.  Each write
+   * is either the changed {@link WishlistItem}, or the wishID of a deleted entry.
+   */
+  private static final class PendingLoad {
+    private final long gameID;
+    private final List<Object> writes = new ArrayList<Object>();
+    
+    private PendingLoad(long gameID) {
+      this.gameID = gameID;
+    }
+    
+    /**
+     * Apply the recorded writes, in order, to the entries read from the database.
+     */
+    private void replay(Map<Long, WishlistItem> wishers) {
+      for (Object write : writes) {
+        if (write instanceof WishlistItem) {
+          WishlistItem item = (WishlistItem)write;
+          if (item.getGameID() == gameID) wishers.put(item.getWishID(), item);
+          else                            wishers.remove(item.getWishID());
+        } else {
+          wishers.remove((Long)write);
+        }
+      }
+    }
+  }
+}
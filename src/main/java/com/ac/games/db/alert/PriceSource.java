@@ -0,0 +1,13 @@
+package com.ac.games.db.alert;
+
+/**
+ * The retailers we track prices from.
+ * 
+ * @author ac010168
+ */
+public enum PriceSource {
+  /** CoolStuffInc */
+  CSI,
+  /** Miniature Market */
+  MM
+}
@@ -0,0 +1,97 @@
+package com.ac.games.db.alert;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ac.games.data.CoolStuffIncPriceData;
+import com.ac.games.data.MiniatureMarketPriceData;
+import com.ac.games.data.WishlistItem;
+import com.ac.games.db.DelegatingGamesDatabase;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * {@link GamesDatabase} decorator that feeds CSI and MM price updates, and wishlist changes, into a
+ * {@link PriceDropAlertEngine}.  Each price update reads the previous version of the listing first, so the
+ * engine can compare the old and new prices.
+ * <p>
+ * The update has already been written by the time alerts go out, so a failure in the engine is logged
+ * rather than thrown back at the caller.
+ * 
+ * @author ac010168
+ */
+public class PriceWatchingGamesDatabase extends DelegatingGamesDatabase {
+
+  private static final Logger LOGGER = Logger.getLogger(PriceWatchingGamesDatabase.class.getName());
+  
+  private final PriceDropAlertEngine engine;
+  
+  /**
+   * Constructor.
+   * 
+   * @param delegate The database to wrap.
+   * @param engine The engine to feed price and wishlist changes into.
+   */
+  public PriceWatchingGamesDatabase(GamesDatabase delegate, PriceDropAlertEngine engine) {
+    super(delegate);
+    this.engine = engine;
+  }
+  
+  public PriceDropAlertEngine getEngine() {
+    return engine;
+  }
+  
+  @Override
+  public void updateCSIPriceData(CoolStuffIncPriceData csiData) throws ConfigurationException, DatabaseOperationException {
+    CoolStuffIncPriceData oldData = delegate.readCSIPriceData(csiData.getCsiID());
+    delegate.updateCSIPriceData(csiData);
+    if (oldData != null)
+      priceChanged(PriceSource.CSI, csiData.getCsiID(), csiData.getGameID(), oldData.getCurPrice(), csiData.getCurPrice());
+  }
+  
+  @Override
+  public void updateMMPriceData(MiniatureMarketPriceData mmData) throws ConfigurationException, DatabaseOperationException {
+    MiniatureMarketPriceData oldData = delegate.readMMPriceData(mmData.getMmID());
+    delegate.updateMMPriceData(mmData);
+    if (oldData != null)
+      priceChanged(PriceSource.MM, mmData.getMmID(), mmData.getGameID(), oldData.getCurPrice(), mmData.getCurPrice());
+  }
+  
+  @Override
+  public void insertWishlistItem(WishlistItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertWishlistItem(item);
+    engine.wishlistItemChanged(item);
+  }
+  
+  @Override
+  public void updateWishlistItem(WishlistItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateWishlistItem(item);
+    engine.wishlistItemChanged(item);
+  }
+  
+  @Override
+  public void deleteWishlistItem(long wishID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteWishlistItem(wishID);
+    engine.wishlistItemDeleted(wishID);
+  }
+  
+  @Override
+  public List<WishlistItem> deleteWishlistItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    List<WishlistItem> deleted = delegate.deleteWishlistItemsByUserID(userID);
+    for (WishlistItem item : deleted)
+      engine.wishlistItemDeleted(item.getWishID());
+    return deleted;
+  }
+  
+  private void priceChanged(PriceSource source, long sourceID, long gameID, double oldPrice, double newPrice) {
+    try {
+      engine.priceChanged(source, sourceID, gameID, oldPrice, newPrice);
+    } catch (ConfigurationException ce) {
+      LOGGER.log(Level.WARNING, "Unable to send price alerts for " + source + " " + sourceID, ce);
+    } catch (RuntimeException re) {
+      LOGGER.log(Level.WARNING, "Unable to send price alerts for " + source + " " + sourceID, re);
+    }
+  }
+}
@@ -0,0 +1,6 @@
+/**
+ * This package holds the engine that matches price drops against user wishlists.
+ * 
+ * @author ac010168
+ */
+package com.ac.games.db.alert;
@@ -0,0 +1,89 @@
+package com.ac.games.db.analytics;
+
+import java.util.Arrays;
+
+/**
+ * The plays for one calendar month, stored as parallel primitive arrays.  Deleted rows have their play time
+ * set to {@link #DELETED}, which no time range includes, so scans need no separate check.  Not thread safe;
+ * {@link PlaythruColumns} guards every segment with its lock.
+ * 
+ * @author ac010168
+ */
+final class MonthSegment {
+
+  /** Play time of a deleted row */
+  static final long DELETED = Long.MIN_VALUE;
+  
+  private static final int INITIAL_CAPACITY = 256;
+  
+  final int monthKey;
+  long[] playthruIDs;
+  long[] userIDs;
+  long[] gameIDs;
+  long[] playTimes;
+  int    size;
+  int    deletedCount;
+  
+  MonthSegment(int monthKey) {
+    this.monthKey = monthKey;
+    playthruIDs = new long[INITIAL_CAPACITY];
+    userIDs     = new long[INITIAL_CAPACITY];
+    gameIDs     = new long[INITIAL_CAPACITY];
+    playTimes   = new long[INITIAL_CAPACITY];
+  }
+  
+  /**
+   * Add a row.
+   * 
+   * @return The row number.
+   */
+  int append(long playthruID, long userID, long gameID, long playTime) {
+    if (size == playTimes.length) {
+      int capacity = size * 2;
+      playthruIDs = Arrays.copyOf(playthruIDs, capacity);
+      userIDs     = Arrays.copyOf(userIDs, capacity);
+      gameIDs     = Arrays.copyOf(gameIDs, capacity);
+      playTimes   = Arrays.copyOf(playTimes, capacity);
+    }
+    playthruIDs[size] = playthruID;
+    userIDs[size]     = userID;
+    gameIDs[size]     = gameID;
+    playTimes[size]   = playTime;
+    return size++;
+  }
+  
+  void delete(int row) {
+    if (playTimes[row] == DELETED) return;
+    playTimes[row] = DELETED;
+    deletedCount++;
+  }
+  
+  /**
+   * Checks whether enough rows are deleted to be worth compacting.
+   */
+  boolean needsCompaction() {
+    return deletedCount > 64 && deletedCount * 4 > size;
+  }
+  
+  /**
+   * Drop deleted rows, moving the rest down.  Row numbers change, so callers must re-read
+   * {@link #playthruIDs} to find where each play now lives.
+   */
+  void compact() {
+    int kept = 0;
+    for (int row = 0; row < size; row++) {
+      if (playTimes[row] == DELETED) continue;
+      playthruIDs[kept] = playthruIDs[row];
+      userIDs[kept]     = userIDs[row];
+      gameIDs[kept]     = gameIDs[row];
+      playTimes[kept]   = playTimes[row];
+      kept++;
+    }
+    size         = kept;
+    deletedCount = 0;
+  }
+  
+  int liveCount() {
+    return size - deletedCount;
+  }
+}
@@ -0,0 +1,30 @@
+package com.ac.games.db.analytics;
+
+/**
+ * A game or user id and its number of plays.
+ * 
+ * @author ac010168
+ */
+public final class PlayCount {
+
+  private final long id;
+  private final long count;
+  
+  public PlayCount(long id, long count) {
+    this.id    = id;
+    this.count = count;
+  }
+  
+  public long getID() {
+    return id;
+  }
+  
+  public long getCount() {
+    return count;
+  }
+  
+  @Override
+  public String toString() {
+    return id + "=" + count;
+  }
+}
@@ -0,0 +1,105 @@
+package com.ac.games.db.analytics;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ac.games.data.UserCollectionStats;
+
+/**
+ * {@link UserCollectionStats} with the user's play counts from a {@link PlaythruColumns} store added.  It is
+ * a full copy of the stats read from the database, so code that only knows about {@link UserCollectionStats}
+ * is unaffected.
+ * 
+ * @author ac010168
+ */
+public class PlayCountedCollectionStats extends UserCollectionStats {
+
+  /** Every play the user has logged */
+  private long totalPlays;
+  /** Plays since the start of this calendar year (UTC) */
+  private long playsThisYear;
+  /** Plays in the last 30 days */
+  private long playsLast30Days;
+  /** Number of different games the user has played */
+  private int  distinctGamesPlayed;
+  /** The user's most played game, or -1 if they have no plays */
+  private long mostPlayedGameID;
+  
+  private static volatile Field[] copiedFields;
+  
+  /**
+   * Copy constructor.  Every instance field of the stats read from the database is copied.
+   * 
+   * @param stats The stats read from the database.
+   */
+  public PlayCountedCollectionStats(UserCollectionStats stats) {
+    mostPlayedGameID = -1;
+    try {
+      for (Field field : copiedFields())
+        field.set(this, field.get(stats));
+    } catch (IllegalAccessException iae) {
+      throw new IllegalStateException("Unable to copy UserCollectionStats", iae);
+    }
+  }
+  
+  private static Field[] copiedFields() {
+    Field[] fields = copiedFields;
+    if (fields != null) return fields;
+    
+    List<Field> collected = new ArrayList<Field>();
+    for (Class<?> current = UserCollectionStats.class; current != null && current != Object.class; current = current.getSuperclass()) {
+      for (Field field : current.getDeclaredFields()) {
+        int modifiers = field.getModifiers();
+        if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers) || field.isSynthetic()) continue;
+        collected.add(field);
+      }
+    }
+    fields = collected.toArray(new Field[collected.size()]);
+    AccessibleObject.setAccessible(fields, true);
+    copiedFields = fields;
+    return fields;
+  }
+
+  public long getTotalPlays() {
+    return totalPlays;
+  }
+
+  public void setTotalPlays(long totalPlays) {
+    this.totalPlays = totalPlays;
+  }
+
+  public long getPlaysThisYear() {
+    return playsThisYear;
+  }
+
+  public void setPlaysThisYear(long playsThisYear) {
+    this.playsThisYear = playsThisYear;
+  }
+
+  public long getPlaysLast30Days() {
+    return playsLast30Days;
+  }
+
+  public void setPlaysLast30Days(long playsLast30Days) {
+    this.playsLast30Days = playsLast30Days;
+  }
+
+  public int getDistinctGamesPlayed() {
+    return distinctGamesPlayed;
+  }
+
+  public void setDistinctGamesPlayed(int distinctGamesPlayed) {
+    this.distinctGamesPlayed = distinctGamesPlayed;
+  }
+
+  public long getMostPlayedGameID() {
+    return mostPlayedGameID;
+  }
+
+  public void setMostPlayedGameID(long mostPlayedGameID) {
+    this.mostPlayedGameID = mostPlayedGameID;
+  }
+}
@@ -0,0 +1,219 @@
+package com.ac.games.db.analytics;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import com.ac.games.data.PlaythruItem;
+import com.ac.games.data.UserCollectionStats;
+import com.ac.games.db.DelegatingGamesDatabase;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * {@link GamesDatabase} decorator that mirrors {@link PlaythruItem} inserts, updates and deletes into a
+ * {@link PlaythruColumns} store, and answers play count reports from it instead of reading every play.
+ * {@link #readCollectionStats(long)} returns a {@link PlayCountedCollectionStats} with the user's play
+ * counts filled in.
+ * <p>
+ * The store is loaded by {@link #initializeDBConnection()}.  A reload fills a new store while the current one
+ * keeps answering reports.  Writes made during the reload are mirrored into the current store and logged, and
+ * the log is replayed over the new store before it is swapped in, so a load row read before a write can't
+ * overwrite it.
+ * 
+ * @author ac010168
+ */
+public class PlaythruAnalyticsDatabase extends DelegatingGamesDatabase {
+
+  /** Default number of threads used to load plays */
+  public static final int DEFAULT_PARTITION_COUNT = 4;
+  
+  private static final long THIRTY_DAYS = TimeUnit.DAYS.toMillis(30);
+  
+  private final int partitionCount;
+  private volatile PlaythruColumns columns;
+  /** Guards mirrored writes against the swap at the end of a reload */
+  private final Object mirrorLock = new Object();
+  /** Writes made while a reload runs, as the {@link PlaythruItem} put or the playthruID removed; null otherwise */
+  private List<Object> reloadLog;
+  
+  /**
+   * Basic Constructor, using the default partition count.
+   * 
+   * @param delegate The database to wrap.
+   */
+  public PlaythruAnalyticsDatabase(GamesDatabase delegate) {
+    this(delegate, DEFAULT_PARTITION_COUNT);
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param delegate The database to wrap.
+   * @param partitionCount The number of threads used to load plays.
+   */
+  public PlaythruAnalyticsDatabase(GamesDatabase delegate, int partitionCount) {
+    super(delegate);
+    this.partitionCount = partitionCount;
+    this.columns        = new PlaythruColumns();
+  }
+  
+  @Override
+  public void initializeDBConnection() throws ConfigurationException {
+    delegate.initializeDBConnection();
+    reloadPlaythrus();
+  }
+  
+  /**
+   * Replace the store with a fresh load of every play in the database.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public synchronized void reloadPlaythrus() throws ConfigurationException, DatabaseOperationException {
+    PlaythruColumns loaded = new PlaythruColumns();
+    synchronized (mirrorLock) {
+      reloadLog = new ArrayList<Object>();
+    }
+    boolean swapped = false;
+    try {
+      loaded.load(delegate, partitionCount);
+      synchronized (mirrorLock) {
+        for (Object write : reloadLog) {
+          if (write instanceof PlaythruItem) loaded.put((PlaythruItem)write);
+          else                               loaded.remove((Long)write);
+        }
+        columns = loaded;
+        reloadLog = null;
+        swapped = true;
+      }
+    } finally {
+      if (!swapped) {
+        synchronized (mirrorLock) {
+          reloadLog = null;
+        }
+      }
+    }
+  }
+  
+  /**
+   * Gets the store, for reports not covered by the methods here.
+   * 
+   * @return The current store.
+   */
+  public PlaythruColumns getPlaythruColumns() {
+    return columns;
+  }
+  
+  //**********  Play Reports  **********
+  /**
+   * Count plays per calendar month.
+   * 
+   * @param userID The user, or {@link PlaythruColumns#ANY}.
+   * @param gameID The game, or {@link PlaythruColumns#ANY}.
+   * @param fromTime Start of the range (inclusive), in milliseconds since the epoch.
+   * @param toTime End of the range (exclusive), in milliseconds since the epoch.
+   * @return Play counts keyed by month as <code>yyyymm</code>.
+   */
+  public SortedMap<Integer, Long> readPlaysByMonth(long userID, long gameID, long fromTime, long toTime) {
+    return columns.countPlaysByMonth(userID, gameID, fromTime, toTime);
+  }
+  
+  /**
+   * Gets the most played games in a time range.
+   * 
+   * @param userID The user, or {@link PlaythruColumns#ANY} for plays by everyone.
+   * @param fromTime Start of the range (inclusive), in milliseconds since the epoch.
+   * @param toTime End of the range (exclusive), in milliseconds since the epoch.
+   * @param k The number of games wanted.
+   * @return Play counts by gameID, most played first.
+   */
+  public List<PlayCount> readMostPlayedGames(long userID, long fromTime, long toTime, int k) {
+    return columns.topGames(userID, fromTime, toTime, k);
+  }
+  
+  /**
+   * Gets the users who played a game most in a time range.
+   * 
+   * @param gameID The game, or {@link PlaythruColumns#ANY} for plays of every game.
+   * @param fromTime Start of the range (inclusive), in milliseconds since the epoch.
+   * @param toTime End of the range (exclusive), in milliseconds since the epoch.
+   * @param k The number of users wanted.
+   * @return Play counts by userID, most plays first.
+   */
+  public List<PlayCount> readMostActivePlayers(long gameID, long fromTime, long toTime, int k) {
+    return columns.topUsers(gameID, fromTime, toTime, k);
+  }
+  
+  //**********  UserCollectionStats Operations  **********
+  @Override
+  public UserCollectionStats readCollectionStats(long userID) throws ConfigurationException, DatabaseOperationException {
+    UserCollectionStats stats = delegate.readCollectionStats(userID);
+    if (stats == null) return null;
+    
+    long now = System.currentTimeMillis();
+    UserPlaySummary summary = columns.summarizeUser(userID, startOfYear(now), now - THIRTY_DAYS);
+    PlayCountedCollectionStats counted = new PlayCountedCollectionStats(stats);
+    counted.setTotalPlays(summary.getTotalPlays());
+    counted.setPlaysThisYear(summary.getPlaysSinceYearStart());
+    counted.setPlaysLast30Days(summary.getPlaysSinceRecentStart());
+    counted.setDistinctGamesPlayed(summary.getDistinctGames());
+    if (summary.getTotalPlays() > 0) counted.setMostPlayedGameID(summary.getMostPlayedGameID());
+    return counted;
+  }
+  
+  //**********  PlaythruItem Operations  **********
+  @Override
+  public void insertPlaythruItem(PlaythruItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertPlaythruItem(item);
+    mirrorPut(item);
+  }
+  
+  @Override
+  public void updatePlaythruItem(PlaythruItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.updatePlaythruItem(item);
+    mirrorPut(item);
+  }
+  
+  @Override
+  public void deletePlaythruItem(long playthruID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deletePlaythruItem(playthruID);
+    mirrorRemove(playthruID);
+  }
+  
+  @Override
+  public List<PlaythruItem> deletePlaythruItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    List<PlaythruItem> deleted = delegate.deletePlaythruItemsByUserID(userID);
+    for (PlaythruItem item : deleted)
+      mirrorRemove(item.getPlaythruID());
+    return deleted;
+  }
+  
+  private void mirrorPut(PlaythruItem item) {
+    synchronized (mirrorLock) {
+      columns.put(item);
+      if (reloadLog != null) reloadLog.add(item);
+    }
+  }
+  
+  private void mirrorRemove(long playthruID) {
+    synchronized (mirrorLock) {
+      columns.remove(playthruID);
+      if (reloadLog != null) reloadLog.add(playthruID);
+    }
+  }
+  
+  private static long startOfYear(long time) {
+    Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+    calendar.setTimeInMillis(time);
+    int year = calendar.get(Calendar.YEAR);
+    calendar.clear();
+    calendar.set(year, Calendar.JANUARY, 1);
+    return calendar.getTimeInMillis();
+  }
+}
@@ -0,0 +1,436 @@
+package com.ac.games.db.analytics;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.ac.games.data.PlaythruItem;
+import com.ac.games.db.DatabaseFutures;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+import com.ac.games.db.util.LongLongHashMap;
+
+/**
+ * Columnar, in-memory copy of every {@link PlaythruItem}'s playthruID, userID, gameID and play date, for play
+ * count reports that would otherwise read every play by id.
+ * <p>
+ * Plays are split into one {@link MonthSegment} per calendar month (UTC), so a time range only touches the
+ * months it overlaps.  Within a segment each column is a primitive array, and the count aggregations are
+ * plain loops over those arrays with no per-row branching or boxing.  Updates delete the old row and append
+ * a new one; segments compact themselves once a quarter of their rows are deleted.  Plays with no date are
+ * kept at time 0.
+ * <p>
+ * Each user's rows are also indexed by userID, so {@link #summarizeUser(long, long, long)} can work out the
+ * figures for one user's collection stats from that user's rows alone.
+ * <p>
+ * Time ranges are from <code>fromTime</code> (inclusive) to <code>toTime</code> (exclusive), in milliseconds
+ * since the epoch.  Pass {@link #ANY} as a userID or gameID to include every user or game.
+ * 
+ * @author ac010168
+ */
+public class PlaythruColumns {
+
+  /** Matches every userID or gameID */
+  public static final long ANY = -1L;
+  
+  private static final long NOT_FOUND = -1L;
+  /** Initial size of the per-user maps; most users log few plays */
+  private static final int  USER_EXPECTED_PLAYS = 8;
+  private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+  /** 0001-01-01 and 9999-12-31 UTC; times outside these share the first or last month, so keys stay ordered */
+  private static final long MIN_KEYED_TIME = -62135596800000L;
+  private static final long MAX_KEYED_TIME = 253402300799999L;
+  
+  private static final Comparator<PlayCount> HIGHEST_FIRST = new Comparator<PlayCount>() {
+    @Override
+    public int compare(PlayCount a, PlayCount b) {
+      if (a.getCount() != b.getCount()) return a.getCount() > b.getCount() ? -1 : 1;
+      return a.getID() < b.getID() ? -1 : (a.getID() == b.getID() ? 0 : 1);
+    }
+  };
+  
+  private final TreeMap<Integer, MonthSegment> segments;
+  /** (monthKey << 32 | row) by playthruID */
+  private final LongLongHashMap locations;
+  /** The same locations for each user's plays, by userID */
+  private final Map<Long, LongLongHashMap> locationsByUser;
+  private final ReadWriteLock lock;
+  
+  public PlaythruColumns() {
+    segments        = new TreeMap<Integer, MonthSegment>();
+    locations       = new LongLongHashMap();
+    locationsByUser = new HashMap<Long, LongLongHashMap>();
+    lock            = new ReentrantReadWriteLock();
+  }
+  
+  /**
+   * Add every play in the database.  Plays are read by id up to {@link GamesDatabase#getMaxPlaythruItemID()},
+   * split across partitions, and each partition's plays are added under one lock acquisition.  Rows are put
+   * as they were when read, so the store should not take other writes while it loads; callers that need to
+   * keep up with live writes should log them and replay them once the load has finished.
+   * 
+   * @param database The database to read from.
+   * @param partitionCount The number of threads to read with.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public void load(final GamesDatabase database, final int partitionCount) throws ConfigurationException, DatabaseOperationException {
+    final long maxPlaythruID = database.getMaxPlaythruItemID();
+    
+    ExecutorService executor = Executors.newFixedThreadPool(partitionCount);
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>(partitionCount);
+      for (int i = 0; i < partitionCount; i++) {
+        final int partition = i;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            List<PlaythruItem> items = new ArrayList<PlaythruItem>();
+            for (long playthruID = partition + 1; playthruID <= maxPlaythruID; playthruID += partitionCount) {
+              PlaythruItem item = database.readPlaythruItem(playthruID);
+              if (item != null) items.add(item);
+            }
+            putAll(items);
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures)
+        DatabaseFutures.get(future);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+  
+  //**********  Maintenance  **********
+  /**
+   * Add or replace a play.
+   * 
+   * @param item The play as it now exists in the database.
+   */
+  public void put(PlaythruItem item) {
+    lock.writeLock().lock();
+    try {
+      putLocked(item);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+  
+  /**
+   * Add or replace a batch of plays.
+   * 
+   * @param items The plays as they now exist in the database.
+   */
+  public void putAll(List<PlaythruItem> items) {
+    lock.writeLock().lock();
+    try {
+      for (PlaythruItem item : items)
+        putLocked(item);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+  
+  /**
+   * Remove a play.
+   * 
+   * @param playthruID The playthruID that was deleted.
+   */
+  public void remove(long playthruID) {
+    lock.writeLock().lock();
+    try {
+      removeLocked(playthruID);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+  
+  private void putLocked(PlaythruItem item) {
+    long playTime = item.getPlayDate() == null ? 0L : item.getPlayDate().getTime();
+    int monthKey = monthKey(playTime);
+    removeLocked(item.getPlaythruID());
+    MonthSegment segment = segments.get(monthKey);
+    if (segment == null) {
+      segment = new MonthSegment(monthKey);
+      segments.put(monthKey, segment);
+    }
+    int row = segment.append(item.getPlaythruID(), item.getUserID(), item.getGameID(), playTime);
+    long location = location(monthKey, row);
+    locations.put(item.getPlaythruID(), location);
+    LongLongHashMap userLocations = locationsByUser.get(item.getUserID());
+    if (userLocations == null) {
+      userLocations = new LongLongHashMap(USER_EXPECTED_PLAYS);
+      locationsByUser.put(item.getUserID(), userLocations);
+    }
+    userLocations.put(item.getPlaythruID(), location);
+  }
+  
+  private void removeLocked(long playthruID) {
+    long location = locations.get(playthruID, NOT_FOUND);
+    if (location == NOT_FOUND) return;
+    locations.remove(playthruID);
+    MonthSegment segment = segments.get((int)(location >>> 32));
+    long userID = segment.userIDs[(int)location];
+    LongLongHashMap userLocations = locationsByUser.get(userID);
+    userLocations.remove(playthruID);
+    if (userLocations.size() == 0) locationsByUser.remove(userID);
+    segment.delete((int)location);
+    
+    if (segment.liveCount() == 0) {
+      segments.remove(segment.monthKey);
+    } else if (segment.needsCompaction()) {
+      segment.compact();
+      for (int row = 0; row < segment.size; row++) {
+        long moved = location(segment.monthKey, row);
+        locations.put(segment.playthruIDs[row], moved);
+        locationsByUser.get(segment.userIDs[row]).put(segment.playthruIDs[row], moved);
+      }
+    }
+  }
+  
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return locations.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+  
+  //**********  Aggregations  **********
+  /**
+   * Count plays.
+   * 
+   * @param userID The user, or {@link #ANY}.
+   * @param gameID The game, or {@link #ANY}.
+   * @param fromTime Start of the range (inclusive).
+   * @param toTime End of the range (exclusive).
+   * @return The number of plays.
+   */
+  public long countPlays(long userID, long gameID, long fromTime, long toTime) {
+    fromTime = Math.max(fromTime, MonthSegment.DELETED + 1);
+    boolean anyUser = userID == ANY;
+    boolean anyGame = gameID == ANY;
+    long count = 0;
+    lock.readLock().lock();
+    try {
+      for (MonthSegment segment : overlapping(fromTime, toTime)) {
+        long[] times = segment.playTimes;
+        long[] users = segment.userIDs;
+        long[] games = segment.gameIDs;
+        int size = segment.size;
+        for (int i = 0; i < size; i++) {
+          long time = times[i];
+          count += ((time >= fromTime) & (time < toTime) & (anyUser | users[i] == userID) & (anyGame | games[i] == gameID)) ? 1 : 0;
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    return count;
+  }
+  
+  /**
+   * Count plays per calendar month.
+   * 
+   * @param userID The user, or {@link #ANY}.
+   * @param gameID The game, or {@link #ANY}.
+   * @param fromTime Start of the range (inclusive).
+   * @param toTime End of the range (exclusive).
+   * @return Play counts keyed by month as <code>yyyymm</code>, for months with at least one play.
+   */
+  public SortedMap<Integer, Long> countPlaysByMonth(long userID, long gameID, long fromTime, long toTime) {
+    fromTime = Math.max(fromTime, MonthSegment.DELETED + 1);
+    boolean anyUser = userID == ANY;
+    boolean anyGame = gameID == ANY;
+    SortedMap<Integer, Long> byMonth = new TreeMap<Integer, Long>();
+    lock.readLock().lock();
+    try {
+      for (MonthSegment segment : overlapping(fromTime, toTime)) {
+        long[] times = segment.playTimes;
+        long[] users = segment.userIDs;
+        long[] games = segment.gameIDs;
+        int size = segment.size;
+        long count = 0;
+        for (int i = 0; i < size; i++) {
+          long time = times[i];
+          count += ((time >= fromTime) & (time < toTime) & (anyUser | users[i] == userID) & (anyGame | games[i] == gameID)) ? 1 : 0;
+        }
+        if (count > 0) byMonth.put(segment.monthKey, count);
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    return byMonth;
+  }
+  
+  /**
+   * Gets the most played games.
+   * 
+   * @param userID The user, or {@link #ANY} for plays by everyone.
+   * @param fromTime Start of the range (inclusive).
+   * @param toTime End of the range (exclusive).
+   * @param k The number of games wanted.
+   * @return Play counts by gameID, most played first.
+   */
+  public List<PlayCount> topGames(long userID, long fromTime, long toTime, int k) {
+    return top(userID, true, fromTime, toTime, k);
+  }
+  
+  /**
+   * Gets the users who played most.
+   * 
+   * @param gameID The game, or {@link #ANY} for plays of every game.
+   * @param fromTime Start of the range (inclusive).
+   * @param toTime End of the range (exclusive).
+   * @param k The number of users wanted.
+   * @return Play counts by userID, most plays first.
+   */
+  public List<PlayCount> topUsers(long gameID, long fromTime, long toTime, int k) {
+    return top(gameID, false, fromTime, toTime, k);
+  }
+  
+  /**
+   * Count the different games a user has played.
+   * 
+   * @param userID The user.
+   * @param fromTime Start of the range (inclusive).
+   * @param toTime End of the range (exclusive).
+   * @return The number of distinct gameIDs.
+   */
+  public int countDistinctGames(long userID, long fromTime, long toTime) {
+    return groupCounts(userID, true, fromTime, toTime).size();
+  }
+  
+  /**
+   * Work out the play figures for one user's collection stats in a single pass over that user's rows.
+   * 
+   * @param userID The user.
+   * @param yearStart Plays from this time on are counted in {@link UserPlaySummary#getPlaysSinceYearStart()}.
+   * @param recentStart Plays from this time on are counted in {@link UserPlaySummary#getPlaysSinceRecentStart()}.
+   * @return The user's figures, all zero if they have no plays.
+   */
+  public UserPlaySummary summarizeUser(long userID, final long yearStart, final long recentStart) {
+    final LongLongHashMap gameCounts = new LongLongHashMap(USER_EXPECTED_PLAYS);
+    final long[] totals = new long[3];
+    lock.readLock().lock();
+    try {
+      LongLongHashMap userLocations = locationsByUser.get(userID);
+      if (userLocations != null) {
+        userLocations.forEach(new LongLongHashMap.EntryVisitor() {
+          @Override
+          public void visit(long playthruID, long location) {
+            MonthSegment segment = segments.get((int)(location >>> 32));
+            int row = (int)location;
+            long time = segment.playTimes[row];
+            long gameID = segment.gameIDs[row];
+            totals[0]++;
+            if (time >= yearStart)   totals[1]++;
+            if (time >= recentStart) totals[2]++;
+            gameCounts.put(gameID, gameCounts.get(gameID, 0L) + 1);
+          }
+        });
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    
+    final long[] mostPlayed = { ANY, 0L };
+    gameCounts.forEach(new LongLongHashMap.EntryVisitor() {
+      @Override
+      public void visit(long gameID, long count) {
+        if (count > mostPlayed[1] || (count == mostPlayed[1] && gameID < mostPlayed[0])) {
+          mostPlayed[0] = gameID;
+          mostPlayed[1] = count;
+        }
+      }
+    });
+    return new UserPlaySummary(totals[0], totals[1], totals[2], gameCounts.size(), mostPlayed[0]);
+  }
+  
+  private List<PlayCount> top(long filterID, boolean byGame, long fromTime, long toTime, int k) {
+    LongLongHashMap counts = groupCounts(filterID, byGame, fromTime, toTime);
+    final PriorityQueue<PlayCount> best = new PriorityQueue<PlayCount>(Math.max(1, k + 1), Collections.reverseOrder(HIGHEST_FIRST));
+    final int limit = k;
+    counts.forEach(new LongLongHashMap.EntryVisitor() {
+      @Override
+      public void visit(long key, long value) {
+        best.add(new PlayCount(key, value));
+        if (best.size() > limit) best.poll();
+      }
+    });
+    List<PlayCount> result = new ArrayList<PlayCount>(best);
+    Collections.sort(result, HIGHEST_FIRST);
+    return result;
+  }
+  
+  /**
+   * Count plays grouped by gameID (filtered to one user) or by userID (filtered to one game).
+   */
+  private LongLongHashMap groupCounts(long filterID, boolean byGame, long fromTime, long toTime) {
+    fromTime = Math.max(fromTime, MonthSegment.DELETED + 1);
+    boolean anyFilter = filterID == ANY;
+    LongLongHashMap counts = new LongLongHashMap();
+    lock.readLock().lock();
+    try {
+      for (MonthSegment segment : overlapping(fromTime, toTime)) {
+        long[] times   = segment.playTimes;
+        long[] filters = byGame ? segment.userIDs : segment.gameIDs;
+        long[] groups  = byGame ? segment.gameIDs : segment.userIDs;
+        int size = segment.size;
+        for (int i = 0; i < size; i++) {
+          long time = times[i];
+          if ((time >= fromTime) & (time < toTime) & (anyFilter | filters[i] == filterID))
+            counts.put(groups[i], counts.get(groups[i], 0L) + 1);
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    return counts;
+  }
+  
+  private Collection<MonthSegment> overlapping(long fromTime, long toTime) {
+    if (toTime <= fromTime || segments.isEmpty()) return Collections.emptyList();
+    int fromKey = Math.max(monthKey(fromTime), segments.firstKey());
+    int toKey   = Math.min(monthKey(toTime - 1), segments.lastKey());
+    if (fromKey > toKey) return Collections.emptyList();
+    return segments.subMap(fromKey, true, toKey, true).values();
+  }
+  
+  /**
+   * Gets the month of a time, as <code>yyyymm</code> in UTC.  Times before year 1 or after year 9999 are
+   * given the first or last month of that range.
+   * 
+   * @param time Milliseconds since the epoch.
+   * @return The month key.
+   */
+  public static int monthKey(long time) {
+    Calendar calendar = Calendar.getInstance(UTC);
+    calendar.setTimeInMillis(Math.min(Math.max(time, MIN_KEYED_TIME), MAX_KEYED_TIME));
+    return calendar.get(Calendar.YEAR) * 100 + calendar.get(Calendar.MONTH) + 1;
+  }
+  
+  private static long location(int monthKey, int row) {
+    return ((long)monthKey << 32) | (row & 0xFFFFFFFFL);
+  }
+}
@@ -0,0 +1,48 @@
+package com.ac.games.db.analytics;
+
+/**
+ * A user's play figures, as worked out in one pass by {@link PlaythruColumns#summarizeUser(long, long, long)}.
+ * 
+ * @author ac010168
+ */
+public final class UserPlaySummary {
+
+  private final long totalPlays;
+  private final long playsSinceYearStart;
+  private final long playsSinceRecentStart;
+  private final int  distinctGames;
+  private final long mostPlayedGameID;
+  
+  UserPlaySummary(long totalPlays, long playsSinceYearStart, long playsSinceRecentStart, int distinctGames, long mostPlayedGameID) {
+    this.totalPlays            = totalPlays;
+    this.playsSinceYearStart   = playsSinceYearStart;
+    this.playsSinceRecentStart = playsSinceRecentStart;
+    this.distinctGames         = distinctGames;
+    this.mostPlayedGameID      = mostPlayedGameID;
+  }
+  
+  public long getTotalPlays() {
+    return totalPlays;
+  }
+  
+  public long getPlaysSinceYearStart() {
+    return playsSinceYearStart;
+  }
+  
+  public long getPlaysSinceRecentStart() {
+    return playsSinceRecentStart;
+  }
+  
+  public int getDistinctGames() {
+    return distinctGames;
+  }
+  
+  /**
+   * Gets the game with the most plays, the lowest gameID winning a tie.
+   * 
+   * @return The gameID, or {@link PlaythruColumns#ANY} if the user has no plays.
+   */
+  public long getMostPlayedGameID() {
+    return mostPlayedGameID;
+  }
+}
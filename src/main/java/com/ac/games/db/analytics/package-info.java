@@ -0,0 +1,6 @@
+/**
+ * This package holds the columnar playthru store used for play count reports.
+ * 
+ * @author ac010168
+ */
+package com.ac.games.db.analytics;
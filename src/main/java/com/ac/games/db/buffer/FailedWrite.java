@@ -0,0 +1,54 @@
+package com.ac.games.db.buffer;
+
+/**
+ * A buffered write that {@link WriteBehindGamesDatabase} gave up on after it failed too many times.  It
+ * was not written to the database, and nothing will retry it.
+ * 
+ * @author ac010168
+ */
+public final class FailedWrite {
+
+  private final Object    item;
+  private final boolean   insert;
+  private final int       attempts;
+  private final Exception lastFailure;
+  
+  FailedWrite(Object item, boolean insert, int attempts, Exception lastFailure) {
+    this.item        = item;
+    this.insert      = insert;
+    this.attempts    = attempts;
+    this.lastFailure = lastFailure;
+  }
+  
+  /**
+   * Gets the item that was not written, a {@link com.ac.games.data.PlaythruItem} or
+   * {@link com.ac.games.data.CollectionItem}.
+   * 
+   * @return The item.
+   */
+  public Object getItem() {
+    return item;
+  }
+  
+  /**
+   * Checks whether the write was an insert rather than an update.
+   * 
+   * @return true for an insert.
+   */
+  public boolean isInsert() {
+    return insert;
+  }
+  
+  public int getAttempts() {
+    return attempts;
+  }
+  
+  public Exception getLastFailure() {
+    return lastFailure;
+  }
+  
+  @Override
+  public String toString() {
+    return (insert ? "insert " : "update ") + item + " failed " + attempts + " times: " + lastFailure;
+  }
+}
@@ -0,0 +1,515 @@
+package com.ac.games.db.buffer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.ac.games.data.CollectionItem;
+import com.ac.games.data.PlaythruItem;
+import com.ac.games.db.DelegatingGamesDatabase;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * {@link GamesDatabase} decorator that buffers {@link PlaythruItem} and {@link CollectionItem} inserts
+ * and updates, writing them to the delegate in the background.
+ * <p>
+ * Repeated writes to the same item ID are coalesced, so only the latest version is written (an insert
+ * followed by updates is still written as a single insert).  Each item ID has at most one pending write,
+ * and batches are written one at a time, so writes for a single item always land in order.  A batch is
+ * written when the queue reaches the batch size, or when the flush interval passes.
+ * <p>
+ * Reads for a buffered item return the pending version.  Deletes wait for any in-flight batch, and a delete
+ * of an item whose insert was never written simply drops the insert.  The per-user deletes drop every
+ * pending write for the user's items the same way, before deleting what has already been written.  When the queue is full, callers block
+ * for up to the enqueue timeout before a {@link DatabaseOperationException} is thrown.  Errors from background
+ * writes are thrown from the next {@link #flush()}.
+ * <p>
+ * A write that fails is put back on the queue and the rest of the batch carries on, so one bad write can't
+ * hold up the others.  After <code>maxAttempts</code> failures it is moved to a dead-letter list, read with
+ * {@link #drainFailedWrites()}, and the next {@link #flush()} reports it.  If the connection itself is down
+ * ({@link ConfigurationException}), the rest of the batch is put back without counting an attempt against it.
+ * 
+ * @author ac010168
+ */
+public class WriteBehindGamesDatabase extends DelegatingGamesDatabase {
+
+  /** Default number of queued writes that will trigger a flush */
+  public static final int  DEFAULT_BATCH_SIZE        = 100;
+  /** Default maximum time a write will wait in the queue, in milliseconds */
+  public static final long DEFAULT_FLUSH_INTERVAL    = 1000L;
+  /** Default maximum number of distinct items that can be queued */
+  public static final int  DEFAULT_MAX_PENDING       = 10000;
+  /** Default time a caller will wait for room in a full queue, in milliseconds */
+  public static final long DEFAULT_ENQUEUE_TIMEOUT   = 5000L;
+  /** Default number of times a write is tried before it is dead-lettered */
+  public static final int  DEFAULT_MAX_ATTEMPTS      = 3;
+  
+  /** The kinds of items we buffer */
+  private enum ItemType { PLAYTHRU_ITEM, COLLECTION_ITEM }
+  
+  /** The kinds of writes we buffer */
+  private enum WriteOp { INSERT, UPDATE }
+  
+  private final int  batchSize;
+  private final int  maxPending;
+  private final long enqueueTimeout;
+  private final int  maxAttempts;
+  
+  /** Guards pending, inFlight, lastFailure, failedWrites and unreportedFailedWrites */
+  private final ReentrantLock lock    = new ReentrantLock();
+  private final Condition     notFull = lock.newCondition();
+  /** Held for the entire time a batch is being written, so batches never overlap */
+  private final Object        flushMonitor = new Object();
+  
+  private final LinkedHashMap<WriteKey, PendingWrite> pending;
+  private final Map<WriteKey, PendingWrite>           inFlight;
+  private Exception lastFailure;
+  private final List<FailedWrite> failedWrites;
+  private int unreportedFailedWrites;
+  
+  private final ScheduledExecutorService scheduler;
+  private final AtomicBoolean            flushRequested;
+  private final Runnable                 flushTask;
+  
+  /**
+   * Basic Constructor, using the default thresholds.
+   * 
+   * @param delegate The database to wrap.
+   */
+  public WriteBehindGamesDatabase(GamesDatabase delegate) {
+    this(delegate, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL, DEFAULT_MAX_PENDING, DEFAULT_ENQUEUE_TIMEOUT);
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param delegate The database to wrap.
+   * @param batchSize The number of queued writes that will trigger a flush.
+   * @param flushInterval The maximum time a write will wait in the queue, in milliseconds.
+   * @param maxPending The maximum number of distinct items that can be queued.
+   * @param enqueueTimeout The time a caller will wait for room in a full queue, in milliseconds.
+   */
+  public WriteBehindGamesDatabase(GamesDatabase delegate, int batchSize, long flushInterval, int maxPending, long enqueueTimeout) {
+    this(delegate, batchSize, flushInterval, maxPending, enqueueTimeout, DEFAULT_MAX_ATTEMPTS);
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param delegate The database to wrap.
+   * @param batchSize The number of queued writes that will trigger a flush.
+   * @param flushInterval The maximum time a write will wait in the queue, in milliseconds.
+   * @param maxPending The maximum number of distinct items that can be queued.
+   * @param enqueueTimeout The time a caller will wait for room in a full queue, in milliseconds.
+   * @param maxAttempts The number of times a write is tried before it is dead-lettered.
+   */
+  public WriteBehindGamesDatabase(GamesDatabase delegate, int batchSize, long flushInterval, int maxPending, long enqueueTimeout, int maxAttempts) {
+    super(delegate);
+    if (batchSize < 1 || maxPending < batchSize)
+      throw new IllegalArgumentException("batchSize must be at least 1, and no larger than maxPending");
+    if (maxAttempts < 1)
+      throw new IllegalArgumentException("maxAttempts must be at least 1");
+    this.batchSize      = batchSize;
+    this.maxPending     = maxPending;
+    this.enqueueTimeout = enqueueTimeout;
+    this.maxAttempts    = maxAttempts;
+    this.failedWrites   = new ArrayList<FailedWrite>();
+    
+    pending        = new LinkedHashMap<WriteKey, PendingWrite>();
+    inFlight       = new HashMap<WriteKey, PendingWrite>();
+    flushRequested = new AtomicBoolean(false);
+    flushTask      = new Runnable() {
+      @Override
+      public void run() {
+        flushRequested.set(false);
+        flushPending();
+      }
+    };
+    scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "games-db-write-behind");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    scheduler.scheduleWithFixedDelay(flushTask, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+  }
+  
+  /**
+   * Durability barrier.  Blocks until every write queued before this call has been written to the
+   * delegate, or failed, and throws any failure from a background write since the last call.  Writes that
+   * were dead-lettered since the last call are reported ahead of any other failure.
+   * 
+   * @throws ConfigurationException Throws this exception if a buffered write failed because the
+   * database connection was not active.
+   * @throws DatabaseOperationException Throws this exception if a buffered write failed.
+   */
+  public void flush() throws ConfigurationException, DatabaseOperationException {
+    flushPending();
+    
+    Exception failure;
+    int       deadLettered;
+    lock.lock();
+    try {
+      failure      = lastFailure;
+      deadLettered = unreportedFailedWrites;
+      lastFailure  = null;
+      unreportedFailedWrites = 0;
+    } finally {
+      lock.unlock();
+    }
+    if (deadLettered > 0)
+      throw new DatabaseOperationException(deadLettered + " buffered write(s) failed " + maxAttempts + " times and were dead-lettered", failure);
+    if (failure instanceof ConfigurationException)    throw (ConfigurationException)failure;
+    if (failure instanceof DatabaseOperationException) throw (DatabaseOperationException)failure;
+    if (failure != null) throw new DatabaseOperationException("Buffered write failed", failure);
+  }
+  
+  /**
+   * Remove and return the writes that were given up on.
+   * 
+   * @return The dead-lettered writes, oldest first.
+   */
+  public List<FailedWrite> drainFailedWrites() {
+    lock.lock();
+    try {
+      List<FailedWrite> drained = new ArrayList<FailedWrite>(failedWrites);
+      failedWrites.clear();
+      return drained;
+    } finally {
+      lock.unlock();
+    }
+  }
+  
+  /**
+   * Gets the number of distinct items currently waiting to be written.
+   * 
+   * @return The pending item count.
+   */
+  public int getPendingCount() {
+    lock.lock();
+    try {
+      return pending.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+  
+  @Override
+  public void closeDBConnection() throws ConfigurationException {
+    try {
+      flush();
+    } finally {
+      scheduler.shutdown();
+      delegate.closeDBConnection();
+    }
+  }
+  
+  //**********  Buffered PlaythruItem Operations  **********
+  @Override
+  public PlaythruItem readPlaythruItem(long playthruID) throws ConfigurationException, DatabaseOperationException {
+    Object buffered = readBuffered(new WriteKey(ItemType.PLAYTHRU_ITEM, playthruID));
+    if (buffered != null) return (PlaythruItem)buffered;
+    return delegate.readPlaythruItem(playthruID);
+  }
+  
+  @Override
+  public void insertPlaythruItem(PlaythruItem item) throws ConfigurationException, DatabaseOperationException {
+    enqueue(new WriteKey(ItemType.PLAYTHRU_ITEM, item.getPlaythruID()), WriteOp.INSERT, item);
+  }
+  
+  @Override
+  public void updatePlaythruItem(PlaythruItem item) throws ConfigurationException, DatabaseOperationException {
+    enqueue(new WriteKey(ItemType.PLAYTHRU_ITEM, item.getPlaythruID()), WriteOp.UPDATE, item);
+  }
+  
+  @Override
+  public void deletePlaythruItem(long playthruID) throws ConfigurationException, DatabaseOperationException {
+    if (discardPending(new WriteKey(ItemType.PLAYTHRU_ITEM, playthruID))) return;
+    delegate.deletePlaythruItem(playthruID);
+  }
+  
+  @Override
+  public List<PlaythruItem> deletePlaythruItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    List<PlaythruItem> deleted = new ArrayList<PlaythruItem>();
+    for (Object item : discardPendingForUser(ItemType.PLAYTHRU_ITEM, userID))
+      deleted.add((PlaythruItem)item);
+    deleted.addAll(delegate.deletePlaythruItemsByUserID(userID));
+    return deleted;
+  }
+  
+  //**********  Buffered CollectionItem Operations  **********
+  @Override
+  public CollectionItem readCollectionItem(long itemID) throws ConfigurationException, DatabaseOperationException {
+    Object buffered = readBuffered(new WriteKey(ItemType.COLLECTION_ITEM, itemID));
+    if (buffered != null) return (CollectionItem)buffered;
+    return delegate.readCollectionItem(itemID);
+  }
+  
+  @Override
+  public void insertCollectionItem(CollectionItem item) throws ConfigurationException, DatabaseOperationException {
+    enqueue(new WriteKey(ItemType.COLLECTION_ITEM, item.getItemID()), WriteOp.INSERT, item);
+  }
+  
+  @Override
+  public void updateCollectionItem(CollectionItem item) throws ConfigurationException, DatabaseOperationException {
+    enqueue(new WriteKey(ItemType.COLLECTION_ITEM, item.getItemID()), WriteOp.UPDATE, item);
+  }
+  
+  @Override
+  public void deleteCollectionItem(long itemID) throws ConfigurationException, DatabaseOperationException {
+    if (discardPending(new WriteKey(ItemType.COLLECTION_ITEM, itemID))) return;
+    delegate.deleteCollectionItem(itemID);
+  }
+  
+  @Override
+  public List<CollectionItem> deleteCollectionItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    List<CollectionItem> deleted = new ArrayList<CollectionItem>();
+    for (Object item : discardPendingForUser(ItemType.COLLECTION_ITEM, userID))
+      deleted.add((CollectionItem)item);
+    deleted.addAll(delegate.deleteCollectionItemsByUserID(userID));
+    return deleted;
+  }
+  
+  //**********  Queue Management  **********
+  /**
+   * Queue a write, coalescing it with any write already pending for the same item.
+   */
+  private void enqueue(WriteKey key, WriteOp op, Object item) throws DatabaseOperationException {
+    boolean triggerFlush;
+    lock.lock();
+    try {
+      long remaining = TimeUnit.MILLISECONDS.toNanos(enqueueTimeout);
+      PendingWrite existing = pending.get(key);
+      while (existing == null && pending.size() >= maxPending) {
+        if (remaining <= 0)
+          throw new DatabaseOperationException("The write-behind queue is full (" + maxPending + " items pending)");
+        try {
+          remaining = notFull.awaitNanos(remaining);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw new DatabaseOperationException("Interrupted while waiting for room in the write-behind queue", ie);
+        }
+        existing = pending.get(key);
+      }
+      
+      if (existing != null) {
+        existing.item = item;
+        if (op == WriteOp.INSERT) existing.op = WriteOp.INSERT;
+      } else {
+        pending.put(key, new PendingWrite(key, op, item));
+      }
+      triggerFlush = pending.size() >= batchSize;
+    } finally {
+      lock.unlock();
+    }
+    
+    if (triggerFlush && flushRequested.compareAndSet(false, true))
+      scheduler.execute(flushTask);
+  }
+  
+  /**
+   * Find the queued or in-flight version of an item, if there is one.
+   */
+  private Object readBuffered(WriteKey key) {
+    lock.lock();
+    try {
+      PendingWrite write = pending.get(key);
+      if (write == null) write = inFlight.get(key);
+      return write == null ? null : write.item;
+    } finally {
+      lock.unlock();
+    }
+  }
+  
+  /**
+   * Drop any pending write for this item ahead of a delete.  Waits for an in-flight batch first, so
+   * the delete can't overtake an earlier write.
+   * 
+   * @return true if the pending write was an insert that was never written, meaning there is
+   * nothing left to delete.
+   */
+  private boolean discardPending(WriteKey key) {
+    synchronized (flushMonitor) {
+      lock.lock();
+      try {
+        PendingWrite write = pending.remove(key);
+        notFull.signalAll();
+        return write != null && write.op == WriteOp.INSERT;
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+  
+  /**
+   * Drop every pending write of this type for a user's items ahead of a bulk delete, waiting for an
+   * in-flight batch first as {@link #discardPending(WriteKey)} does.
+   * 
+   * @return The items whose pending write was an insert that was never written.
+   */
+  private List<Object> discardPendingForUser(ItemType type, long userID) {
+    List<Object> unwritten = new ArrayList<Object>();
+    synchronized (flushMonitor) {
+      lock.lock();
+      try {
+        Iterator<PendingWrite> writes = pending.values().iterator();
+        while (writes.hasNext()) {
+          PendingWrite write = writes.next();
+          if (write.key.type != type || ownerOf(write) != userID) continue;
+          writes.remove();
+          if (write.op == WriteOp.INSERT) unwritten.add(write.item);
+        }
+        notFull.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+    return unwritten;
+  }
+  
+  private static long ownerOf(PendingWrite write) {
+    if (write.key.type == ItemType.PLAYTHRU_ITEM) return ((PlaythruItem)write.item).getUserID();
+    else                                          return ((CollectionItem)write.item).getUserID();
+  }
+  
+  /**
+   * Write everything that is currently queued.  A write that fails goes back on the queue (unless a newer
+   * version has been queued since) or, once it has failed <code>maxAttempts</code> times, to the dead-letter
+   * list, and the rest of the batch carries on.  A {@link ConfigurationException} means nothing else will
+   * get through either, so the rest of the batch goes back on the queue untouched.  The last failure is held
+   * for {@link #flush()}.
+   */
+  private void flushPending() {
+    synchronized (flushMonitor) {
+      List<PendingWrite> batch;
+      lock.lock();
+      try {
+        if (pending.isEmpty()) return;
+        batch = new ArrayList<PendingWrite>(pending.values());
+        inFlight.putAll(pending);
+        pending.clear();
+        notFull.signalAll();
+      } finally {
+        lock.unlock();
+      }
+      
+      try {
+        for (int i = 0; i < batch.size(); i++) {
+          PendingWrite write = batch.get(i);
+          try {
+            write(write);
+          } catch (ConfigurationException ce) {
+            lock.lock();
+            try {
+              for (PendingWrite unwritten : batch.subList(i, batch.size()))
+                requeue(unwritten);
+              lastFailure = ce;
+            } finally {
+              lock.unlock();
+            }
+            return;
+          } catch (Exception e) {
+            lock.lock();
+            try {
+              write.attempts++;
+              if (write.attempts >= maxAttempts && !pending.containsKey(write.key)) {
+                failedWrites.add(new FailedWrite(write.item, write.op == WriteOp.INSERT, write.attempts, e));
+                unreportedFailedWrites++;
+              } else {
+                requeue(write);
+              }
+              lastFailure = e;
+            } finally {
+              lock.unlock();
+            }
+          }
+        }
+      } finally {
+        lock.lock();
+        try {
+          inFlight.clear();
+        } finally {
+          lock.unlock();
+        }
+      }
+    }
+  }
+  
+  /**
+   * Put an unwritten write back on the queue.  If a newer version was queued meanwhile, that replaces it,
+   * keeping an insert as an insert.  Must be called while holding the lock.
+   */
+  private void requeue(PendingWrite write) {
+    PendingWrite newer = pending.get(write.key);
+    if (newer == null)
+      pending.put(write.key, write);
+    else if (write.op == WriteOp.INSERT)
+      newer.op = WriteOp.INSERT;
+  }
+  
+  private void write(PendingWrite write) throws ConfigurationException, DatabaseOperationException {
+    if (write.key.type == ItemType.PLAYTHRU_ITEM) {
+      if (write.op == WriteOp.INSERT) delegate.insertPlaythruItem((PlaythruItem)write.item);
+      else                            delegate.updatePlaythruItem((PlaythruItem)write.item);
+    } else {
+      if (write.op == WriteOp.INSERT) delegate.insertCollectionItem((CollectionItem)write.item);
+      else                            delegate.updateCollectionItem((CollectionItem)write.item);
+    }
+  }
+  
+  /**
+   * Identifies a single buffered item.
+   */
+  private static final class WriteKey {
+    private final ItemType type;
+    private final long     id;
+    
+    private WriteKey(ItemType type, long id) {
+      this.type = type;
+      this.id   = id;
+    }
+    
+    @Override
+    public int hashCode() {
+      return type.hashCode() * 31 + (int)(id ^ (id >>> 32));
+    }
+    
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof WriteKey)) return false;
+      WriteKey other = (WriteKey)obj;
+      return type == other.type && id == other.id;
+    }
+  }
+  
+  /**
+   * The latest queued version of an item.  Fields are only changed while holding the lock.
+   */
+  private static final class PendingWrite {
+    private final WriteKey key;
+    private WriteOp op;
+    private Object  item;
+    /** Failed attempts so far, for this version of the item */
+    private int     attempts;
+    
+    private PendingWrite(WriteKey key, WriteOp op, Object item) {
+      this.key  = key;
+      this.op   = op;
+      this.item = item;
+    }
+  }
+}
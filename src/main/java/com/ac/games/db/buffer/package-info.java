@@ -0,0 +1,6 @@
+/**
+ * This package holds the write-behind buffering used to absorb high-frequency item writes.
+ * 
+ * @author ac010168
+ */
+package com.ac.games.db.buffer;
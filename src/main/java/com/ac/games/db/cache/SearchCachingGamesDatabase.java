@@ -0,0 +1,259 @@
+package com.ac.games.db.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ac.games.data.BGGGame;
+import com.ac.games.data.CompactSearchData;
+import com.ac.games.data.CoolStuffIncPriceData;
+import com.ac.games.data.Game;
+import com.ac.games.data.GameType;
+import com.ac.games.data.MiniatureMarketPriceData;
+import com.ac.games.db.DelegatingGamesDatabase;
+import com.ac.games.db.EntityType;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * {@link GamesDatabase} decorator that caches the results of the name and title searches in a
+ * {@link SearchResultCache}.
+ * <p>
+ * Both the {@link CompactSearchData} searches and the searches that return full records are cached as
+ * returned.  Any insert, update or delete of a type drops every cached search over that type, so a cached
+ * search never hands out a stale record.  Callers get their own copy of each list, but the objects in it
+ * are shared and should not be modified.  The two overloads of each search are cached under separate query
+ * names, so one can never be served the other's result.
+ * 
+ * @author ac010168
+ */
+public class SearchCachingGamesDatabase extends DelegatingGamesDatabase {
+
+  /** Default number of searches to hold */
+  public static final int  DEFAULT_MAX_ENTRIES = 10000;
+  /** Default time a result may be served, in milliseconds */
+  public static final long DEFAULT_TTL_MILLIS  = 5L * 60L * 1000L;
+  
+  private final SearchResultCache cache;
+  
+  /**
+   * Basic Constructor, using the default size and TTL.
+   * 
+   * @param delegate The database to wrap.
+   */
+  public SearchCachingGamesDatabase(GamesDatabase delegate) {
+    this(delegate, new SearchResultCache(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS));
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param delegate The database to wrap.
+   * @param cache The cache to use.
+   */
+  public SearchCachingGamesDatabase(GamesDatabase delegate, SearchResultCache cache) {
+    super(delegate);
+    this.cache = cache;
+  }
+  
+  public SearchResultCache getCache() {
+    return cache;
+  }
+  
+  //**********  BGGGame Operations  **********
+  @Override
+  public List<BGGGame> readBGGGameByName(String gameName, boolean addWildCard, GameType gameTypeFilter) throws ConfigurationException, DatabaseOperationException {
+    SearchQueryKey key = new SearchQueryKey(EntityType.BGG_GAME, "readBGGGameByName", gameName, addWildCard, gameTypeFilter, -1);
+    List<BGGGame> cached = cachedList(key);
+    if (cached != null) return cached;
+    
+    long generation = cache.getGeneration(EntityType.BGG_GAME);
+    return storeList(key, delegate.readBGGGameByName(gameName, addWildCard, gameTypeFilter), generation);
+  }
+  
+  @Override
+  public List<CompactSearchData> readBGGGameByName(String gameName, boolean addWildCard, GameType gameTypeFilter, int resultLimit) throws ConfigurationException, DatabaseOperationException {
+    SearchQueryKey key = new SearchQueryKey(EntityType.BGG_GAME, "readBGGGameByName/compact", gameName, addWildCard, gameTypeFilter, resultLimit);
+    List<CompactSearchData> results = cachedList(key);
+    if (results != null) return results;
+    
+    long generation = cache.getGeneration(EntityType.BGG_GAME);
+    results = delegate.readBGGGameByName(gameName, addWildCard, gameTypeFilter, resultLimit);
+    return storeList(key, results, generation);
+  }
+  
+  @Override
+  public void insertBGGGameData(BGGGame game) throws ConfigurationException, DatabaseOperationException {
+    try {
+      delegate.insertBGGGameData(game);
+    } finally {
+      cache.invalidate(EntityType.BGG_GAME);
+    }
+  }
+  
+  @Override
+  public void updateBGGGameData(BGGGame game) throws ConfigurationException, DatabaseOperationException {
+    try {
+      delegate.updateBGGGameData(game);
+    } finally {
+      cache.invalidate(EntityType.BGG_GAME);
+    }
+  }
+  
+  @Override
+  public void deleteBGGGameData(long bggID) throws ConfigurationException, DatabaseOperationException {
+    try {
+      delegate.deleteBGGGameData(bggID);
+    } finally {
+      cache.invalidate(EntityType.BGG_GAME);
+    }
+  }
+  
+  //**********  CoolStuffIncPriceData Operations  **********
+  @Override
+  public List<CoolStuffIncPriceData> readCSIDataByTitle(String title, boolean addWildCard) throws ConfigurationException, DatabaseOperationException {
+    SearchQueryKey key = new SearchQueryKey(EntityType.CSI_DATA, "readCSIDataByTitle", title, addWildCard, null, -1);
+    List<CoolStuffIncPriceData> cached = cachedList(key);
+    if (cached != null) return cached;
+    
+    long generation = cache.getGeneration(EntityType.CSI_DATA);
+    return storeList(key, delegate.readCSIDataByTitle(title, addWildCard), generation);
+  }
+  
+  @Override
+  public List<CompactSearchData> readCSIDataByTitle(String title, boolean addWildCard, int rowLimit) throws ConfigurationException, DatabaseOperationException {
+    SearchQueryKey key = new SearchQueryKey(EntityType.CSI_DATA, "readCSIDataByTitle/compact", title, addWildCard, null, rowLimit);
+    List<CompactSearchData> results = cachedList(key);
+    if (results != null) return results;
+    
+    long generation = cache.getGeneration(EntityType.CSI_DATA);
+    results = delegate.readCSIDataByTitle(title, addWildCard, rowLimit);
+    return storeList(key, results, generation);
+  }
+  
+  @Override
+  public void insertCSIPriceData(CoolStuffIncPriceData csiData) throws ConfigurationException, DatabaseOperationException {
+    try {
+      delegate.insertCSIPriceData(csiData);
+    } finally {
+      cache.invalidate(EntityType.CSI_DATA);
+    }
+  }
+  
+  @Override
+  public void updateCSIPriceData(CoolStuffIncPriceData csiData) throws ConfigurationException, DatabaseOperationException {
+    try {
+      delegate.updateCSIPriceData(csiData);
+    } finally {
+      cache.invalidate(EntityType.CSI_DATA);
+    }
+  }
+  
+  @Override
+  public void deleteCSIPriceData(long csiID) throws ConfigurationException, DatabaseOperationException {
+    try {
+      delegate.deleteCSIPriceData(csiID);
+    } finally {
+      cache.invalidate(EntityType.CSI_DATA);
+    }
+  }
+  
+  //**********  MiniatureMarketPriceData Operations  **********
+  @Override
+  public List<MiniatureMarketPriceData> readMMDataByTitle(String title, boolean addWildCard) throws ConfigurationException, DatabaseOperationException {
+    SearchQueryKey key = new SearchQueryKey(EntityType.MM_DATA, "readMMDataByTitle", title, addWildCard, null, -1);
+    List<MiniatureMarketPriceData> cached = cachedList(key);
+    if (cached != null) return cached;
+    
+    long generation = cache.getGeneration(EntityType.MM_DATA);
+    return storeList(key, delegate.readMMDataByTitle(title, addWildCard), generation);
+  }
+  
+  @Override
+  public List<CompactSearchData> readMMDataByTitle(String title, boolean addWildCard, int rowLimit) throws ConfigurationException, DatabaseOperationException {
+    SearchQueryKey key = new SearchQueryKey(EntityType.MM_DATA, "readMMDataByTitle/compact", title, addWildCard, null, rowLimit);
+    List<CompactSearchData> results = cachedList(key);
+    if (results != null) return results;
+    
+    long generation = cache.getGeneration(EntityType.MM_DATA);
+    results = delegate.readMMDataByTitle(title, addWildCard, rowLimit);
+    return storeList(key, results, generation);
+  }
+  
+  @Override
+  public void insertMMPriceData(MiniatureMarketPriceData mmData) throws ConfigurationException, DatabaseOperationException {
+    try {
+      delegate.insertMMPriceData(mmData);
+    } finally {
+      cache.invalidate(EntityType.MM_DATA);
+    }
+  }
+  
+  @Override
+  public void updateMMPriceData(MiniatureMarketPriceData mmData) throws ConfigurationException, DatabaseOperationException {
+    try {
+      delegate.updateMMPriceData(mmData);
+    } finally {
+      cache.invalidate(EntityType.MM_DATA);
+    }
+  }
+  
+  @Override
+  public void deleteMMPriceData(long mmID) throws ConfigurationException, DatabaseOperationException {
+    try {
+      delegate.deleteMMPriceData(mmID);
+    } finally {
+      cache.invalidate(EntityType.MM_DATA);
+    }
+  }
+  
+  //**********  Game Operations  **********
+  @Override
+  public List<Game> readGameByName(String gameName, boolean addWildCard, GameType gameTypeFilter) throws ConfigurationException, DatabaseOperationException {
+    SearchQueryKey key = new SearchQueryKey(EntityType.GAME, "readGameByName", gameName, addWildCard, gameTypeFilter, -1);
+    List<Game> cached = cachedList(key);
+    if (cached != null) return cached;
+    
+    long generation = cache.getGeneration(EntityType.GAME);
+    return storeList(key, delegate.readGameByName(gameName, addWildCard, gameTypeFilter), generation);
+  }
+  
+  @Override
+  public void insertGame(Game game) throws ConfigurationException, DatabaseOperationException {
+    try {
+      delegate.insertGame(game);
+    } finally {
+      cache.invalidate(EntityType.GAME);
+    }
+  }
+  
+  @Override
+  public void updateGame(Game game) throws ConfigurationException, DatabaseOperationException {
+    try {
+      delegate.updateGame(game);
+    } finally {
+      cache.invalidate(EntityType.GAME);
+    }
+  }
+  
+  @Override
+  public void deleteGame(long gameID) throws ConfigurationException, DatabaseOperationException {
+    try {
+      delegate.deleteGame(gameID);
+    } finally {
+      cache.invalidate(EntityType.GAME);
+    }
+  }
+  
+  @SuppressWarnings("unchecked")
+  private <T> List<T> cachedList(SearchQueryKey key) {
+    List<T> results = (List<T>)cache.get(key);
+    return results == null ? null : new ArrayList<T>(results);
+  }
+  
+  private <T> List<T> storeList(SearchQueryKey key, List<T> results, long generation) {
+    if (results != null)
+      cache.put(key, new ArrayList<T>(results), generation);
+    return results;
+  }
+}
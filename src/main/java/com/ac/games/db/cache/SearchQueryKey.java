@@ -0,0 +1,81 @@
+package com.ac.games.db.cache;
+
+import java.util.Locale;
+
+import com.ac.games.data.GameType;
+import com.ac.games.db.EntityType;
+
+/**
+ * Cache key for a name or title search.  The search text is trimmed, lower-cased and has its whitespace
+ * collapsed, so trivially different spellings of the same query share an entry.
+ * 
+ * @author ac010168
+ */
+public final class SearchQueryKey {
+
+  private final EntityType entityType;
+  private final String     queryName;
+  private final String     text;
+  private final boolean    addWildCard;
+  private final GameType   gameTypeFilter;
+  private final int        limit;
+  
+  /**
+   * Constructor.
+   * 
+   * @param entityType The type of record being searched, used for invalidation.
+   * @param queryName The search being run, so different searches over the same type don't collide.
+   * @param text The search text, as provided by the caller.
+   * @param addWildCard The wildcard flag.
+   * @param gameTypeFilter The game type filter, or null if the search doesn't have one.
+   * @param limit The row limit, or -1 if the search doesn't have one.
+   */
+  public SearchQueryKey(EntityType entityType, String queryName, String text, boolean addWildCard, GameType gameTypeFilter, int limit) {
+    this.entityType     = entityType;
+    this.queryName      = queryName;
+    this.text           = normalize(text);
+    this.addWildCard    = addWildCard;
+    this.gameTypeFilter = gameTypeFilter;
+    this.limit          = limit;
+  }
+  
+  public EntityType getEntityType() {
+    return entityType;
+  }
+  
+  /**
+   * Normalize search text for use as a key.
+   * 
+   * @param text The raw text.
+   * @return The normalized text, or an empty String for null.
+   */
+  public static String normalize(String text) {
+    if (text == null) return "";
+    return text.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ENGLISH);
+  }
+  
+  @Override
+  public int hashCode() {
+    int result = entityType.hashCode();
+    result = 31 * result + queryName.hashCode();
+    result = 31 * result + text.hashCode();
+    result = 31 * result + (addWildCard ? 1 : 0);
+    result = 31 * result + (gameTypeFilter == null ? 0 : gameTypeFilter.hashCode());
+    result = 31 * result + limit;
+    return result;
+  }
+  
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) return true;
+    if (!(obj instanceof SearchQueryKey)) return false;
+    SearchQueryKey other = (SearchQueryKey)obj;
+    return entityType == other.entityType && queryName.equals(other.queryName) && text.equals(other.text)
+        && addWildCard == other.addWildCard && gameTypeFilter == other.gameTypeFilter && limit == other.limit;
+  }
+  
+  @Override
+  public String toString() {
+    return queryName + "[" + text + ", " + addWildCard + ", " + gameTypeFilter + ", " + limit + "]";
+  }
+}
@@ -0,0 +1,151 @@
+package com.ac.games.db.cache;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.ac.games.db.EntityType;
+import com.ac.games.db.invalidation.InvalidationKey;
+import com.ac.games.db.invalidation.InvalidationListener;
+
+/**
+ * Size-bounded, time-limited cache of search results.
+ * <p>
+ * Entries are evicted least recently used first once the cache is full, and expire after the TTL.  Each
+ * {@link EntityType} has a generation number, and {@link #invalidate(EntityType)} simply bumps it, so
+ * dropping every search over a type is constant time no matter how many entries there are.  Callers take
+ * the generation with {@link #getGeneration(EntityType)} before running a search and pass it to
+ * {@link #put(SearchQueryKey, Object, long)}, so a result that raced with a write is never stored.
+ * <p>
+ * As an {@link InvalidationListener}, any change to a record drops every search over its type.
+ * 
+ * @author ac010168
+ */
+public class SearchResultCache implements InvalidationListener {
+
+  private final int  maxEntries;
+  private final long ttlNanos;
+  private final LinkedHashMap<SearchQueryKey, CachedResult> entries;
+  private final Map<EntityType, Long> generations;
+  private long hitCount;
+  private long missCount;
+  
+  /**
+   * Constructor.
+   * 
+   * @param maxEntries The maximum number of searches to hold.
+   * @param ttlMillis How long a result may be served, in milliseconds.
+   */
+  public SearchResultCache(final int maxEntries, long ttlMillis) {
+    this.maxEntries  = maxEntries;
+    this.ttlNanos    = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    this.generations = new EnumMap<EntityType, Long>(EntityType.class);
+    this.entries     = new LinkedHashMap<SearchQueryKey, CachedResult>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+      
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<SearchQueryKey, CachedResult> eldest) {
+        return size() > SearchResultCache.this.maxEntries;
+      }
+    };
+    for (EntityType type : EntityType.values())
+      generations.put(type, 0L);
+  }
+  
+  /**
+   * Look up a search.
+   * 
+   * @param key The search.
+   * @return The cached result, or null if there isn't a current one.
+   */
+  public synchronized Object get(SearchQueryKey key) {
+    CachedResult entry = entries.get(key);
+    if (entry != null && (entry.generation != generations.get(key.getEntityType()) || System.nanoTime() - entry.expiresAt > 0)) {
+      entries.remove(key);
+      entry = null;
+    }
+    if (entry == null) {
+      missCount++;
+      return null;
+    }
+    hitCount++;
+    return entry.value;
+  }
+  
+  /**
+   * Store a search result, unless its type has been invalidated since the search started.
+   * 
+   * @param key The search.
+   * @param value The result.
+   * @param generation The generation taken before the search was run.
+   */
+  public synchronized void put(SearchQueryKey key, Object value, long generation) {
+    if (generation != generations.get(key.getEntityType())) return;
+    entries.put(key, new CachedResult(value, generation, System.nanoTime() + ttlNanos));
+  }
+  
+  /**
+   * Gets the current generation for a type.
+   * 
+   * @param type The entity type.
+   * @return The generation number.
+   */
+  public synchronized long getGeneration(EntityType type) {
+    return generations.get(type);
+  }
+  
+  /**
+   * Drop every cached search over a type.
+   * 
+   * @param type The entity type that changed.
+   */
+  public synchronized void invalidate(EntityType type) {
+    generations.put(type, generations.get(type) + 1);
+  }
+  
+  /**
+   * Drop every cached search.
+   */
+  public synchronized void clear() {
+    entries.clear();
+  }
+  
+  @Override
+  public synchronized void invalidate(List<InvalidationKey> keys) {
+    for (InvalidationKey key : keys)
+      invalidate(key.getEntityType());
+  }
+  
+  @Override
+  public synchronized void invalidateAll() {
+    for (EntityType type : EntityType.values())
+      invalidate(type);
+    entries.clear();
+  }
+  
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+  
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+  
+  public synchronized int size() {
+    return entries.size();
+  }
+  
+  private static final class CachedResult {
+    private final Object value;
+    private final long   generation;
+    private final long   expiresAt;
+    
+    private CachedResult(Object value, long generation, long expiresAt) {
+      this.value      = value;
+      this.generation = generation;
+      this.expiresAt  = expiresAt;
+    }
+  }
+}
@@ -0,0 +1,6 @@
+/**
+ * This package holds the caches used in front of the name and title searches.
+ * 
+ * @author ac010168
+ */
+package com.ac.games.db.cache;
@@ -0,0 +1,125 @@
+package com.ac.games.db.codec;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Input side of {@link EncodeBuffer}, reading from any {@link ByteBuffer} and advancing its position.  Keeps
+ * the string dedup table and a scratch character array between calls; {@link #reset(ByteBuffer)} points it at
+ * new input so one instance can be reused per thread.
+ * 
+ * @author ac010168
+ */
+public class DecodeBuffer {
+
+  private ByteBuffer         buffer;
+  private final List<String> strings;
+  private char[]             scratch;
+  
+  /**
+   * Constructor.
+   * 
+   * @param buffer The input, read from its current position.
+   */
+  public DecodeBuffer(ByteBuffer buffer) {
+    this.buffer  = buffer;
+    this.strings = new ArrayList<String>();
+    this.scratch = new char[64];
+  }
+  
+  /**
+   * Start reading new input, clearing the string table.
+   * 
+   * @param buffer The input, read from its current position.
+   */
+  public void reset(ByteBuffer buffer) {
+    this.buffer = buffer;
+    strings.clear();
+  }
+  
+  /**
+   * Clear the string table without changing the input, for reading records that were encoded one at a time.
+   */
+  void clearStrings() {
+    strings.clear();
+  }
+  
+  public boolean hasRemaining() {
+    return buffer.hasRemaining();
+  }
+  
+  //**********  Primitive Reads  **********
+  public int getByte() {
+    return buffer.get();
+  }
+  
+  public int getInt() {
+    return buffer.getInt();
+  }
+  
+  public long getVarLong() {
+    return VarInts.getVarLong(buffer);
+  }
+  
+  public long getSignedVarLong() {
+    return VarInts.getSignedVarLong(buffer);
+  }
+  
+  public double getDouble() {
+    return buffer.getDouble();
+  }
+  
+  public float getFloat() {
+    return buffer.getFloat();
+  }
+  
+  public byte[] getBytes() {
+    byte[] bytes = new byte[checkedLength(getVarLong())];
+    buffer.get(bytes);
+    return bytes;
+  }
+  
+  /**
+   * Read a string written by {@link EncodeBuffer#putString(String)}.
+   * 
+   * @return The string, which may be null.
+   */
+  public String getString() {
+    long marker = getVarLong();
+    if (marker == EncodeBuffer.STRING_NULL) return null;
+    if (marker >= EncodeBuffer.STRING_REF) {
+      long index = marker - EncodeBuffer.STRING_REF;
+      if (index >= strings.size()) throw new IllegalStateException("String reference " + index + " is not in the table");
+      return strings.get((int)index);
+    }
+    
+    int utf8Length = checkedLength(getVarLong());
+    if (scratch.length < utf8Length) scratch = new char[Math.max(utf8Length, scratch.length * 2)];
+    int chars = 0;
+    int end = buffer.position() + utf8Length;
+    while (buffer.position() < end) {
+      int b = buffer.get() & 0xFF;
+      if (b < 0x80) {
+        scratch[chars++] = (char)b;
+      } else if (b < 0xE0) {
+        scratch[chars++] = (char)(((b & 0x1F) << 6) | (buffer.get() & 0x3F));
+      } else if (b < 0xF0) {
+        scratch[chars++] = (char)(((b & 0x0F) << 12) | ((buffer.get() & 0x3F) << 6) | (buffer.get() & 0x3F));
+      } else {
+        int codePoint = ((b & 0x07) << 18) | ((buffer.get() & 0x3F) << 12) | ((buffer.get() & 0x3F) << 6) | (buffer.get() & 0x3F);
+        scratch[chars++] = Character.highSurrogate(codePoint);
+        scratch[chars++] = Character.lowSurrogate(codePoint);
+      }
+    }
+    String value = new String(scratch, 0, chars);
+    strings.add(value);
+    return value;
+  }
+  
+  private int checkedLength(long length) {
+    if (length > buffer.remaining()) throw new BufferUnderflowException();
+    return (int)length;
+  }
+}
@@ -0,0 +1,205 @@
+package com.ac.games.db.codec;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Growable output buffer for {@link EntityCodec}, meant to be reused.  {@link #reset()} rewinds it without
+ * freeing the backing array, so a buffer kept per thread stops allocating once it has grown to the largest
+ * record it has seen.
+ * <p>
+ * Strings are written through a dedup table.  The first time a string is written it goes out in full and
+ * is given the next table index; after that only the index is written.  The table lasts until the next
+ * {@link #reset()}, so every record in a frame shares it.  Strings are written as UTF-8 without going
+ * through a byte array.
+ * 
+ * @author ac010168
+ */
+public class EncodeBuffer {
+
+  /** String marker for null */
+  static final int STRING_NULL = 0;
+  /** String marker for a new string, followed by its UTF-8 length and bytes */
+  static final int STRING_NEW  = 1;
+  /** Markers from here up are back references, to table index (marker - STRING_REF) */
+  static final int STRING_REF  = 2;
+  
+  private static final int DEFAULT_CAPACITY = 1024;
+  
+  private ByteBuffer                 buffer;
+  private final Map<String, Integer> strings;
+  
+  public EncodeBuffer() {
+    this(DEFAULT_CAPACITY);
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param initialCapacity The starting size of the backing array, in bytes.
+   */
+  public EncodeBuffer(int initialCapacity) {
+    buffer  = ByteBuffer.allocate(Math.max(16, initialCapacity));
+    strings = new HashMap<String, Integer>();
+  }
+  
+  /**
+   * Discard everything written, and the string table, keeping the backing array.
+   */
+  public void reset() {
+    buffer.clear();
+    strings.clear();
+  }
+  
+  /**
+   * Gets the number of bytes written since the last {@link #reset()}.
+   * 
+   * @return The byte count.
+   */
+  public int size() {
+    return buffer.position();
+  }
+  
+  /**
+   * Gets a read-only view of the bytes written since the last {@link #reset()}.  The view shares the
+   * backing array, so it is only valid until the next write or reset.
+   * 
+   * @return The written bytes, from position 0 to the limit.
+   */
+  public ByteBuffer view() {
+    ByteBuffer view = buffer.asReadOnlyBuffer();
+    view.flip();
+    return view;
+  }
+  
+  /**
+   * Copy the bytes written since the last {@link #reset()} into another buffer.
+   * 
+   * @param out The buffer to copy into.
+   */
+  public void writeTo(ByteBuffer out) {
+    out.put(buffer.array(), buffer.arrayOffset(), buffer.position());
+  }
+  
+  /**
+   * Copy the bytes written since the last {@link #reset()} into a new array.
+   * 
+   * @return The written bytes.
+   */
+  public byte[] toByteArray() {
+    byte[] bytes = new byte[buffer.position()];
+    System.arraycopy(buffer.array(), buffer.arrayOffset(), bytes, 0, bytes.length);
+    return bytes;
+  }
+  
+  //**********  Primitive Writes  **********
+  public void putByte(int value) {
+    ensureRoom(1);
+    buffer.put((byte)value);
+  }
+  
+  public void putInt(int value) {
+    ensureRoom(4);
+    buffer.putInt(value);
+  }
+  
+  public void putVarLong(long value) {
+    ensureRoom(VarInts.MAX_VAR_LONG_BYTES);
+    VarInts.putVarLong(buffer, value);
+  }
+  
+  public void putSignedVarLong(long value) {
+    ensureRoom(VarInts.MAX_VAR_LONG_BYTES);
+    VarInts.putSignedVarLong(buffer, value);
+  }
+  
+  public void putDouble(double value) {
+    ensureRoom(8);
+    buffer.putDouble(value);
+  }
+  
+  public void putFloat(float value) {
+    ensureRoom(4);
+    buffer.putFloat(value);
+  }
+  
+  public void putBytes(byte[] bytes) {
+    putVarLong(bytes.length);
+    ensureRoom(bytes.length);
+    buffer.put(bytes);
+  }
+  
+  /**
+   * Write a string through the dedup table.
+   * 
+   * @param value The string, which may be null.
+   */
+  public void putString(String value) {
+    if (value == null) {
+      putVarLong(STRING_NULL);
+      return;
+    }
+    Integer index = strings.get(value);
+    if (index != null) {
+      putVarLong(STRING_REF + index);
+      return;
+    }
+    strings.put(value, strings.size());
+    
+    int length = value.length();
+    int utf8Length = utf8Length(value);
+    putVarLong(STRING_NEW);
+    putVarLong(utf8Length);
+    ensureRoom(utf8Length);
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        buffer.put((byte)c);
+      } else if (c < 0x800) {
+        buffer.put((byte)(0xC0 | (c >> 6)));
+        buffer.put((byte)(0x80 | (c & 0x3F)));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        buffer.put((byte)(0xF0 | (codePoint >> 18)));
+        buffer.put((byte)(0x80 | ((codePoint >> 12) & 0x3F)));
+        buffer.put((byte)(0x80 | ((codePoint >> 6) & 0x3F)));
+        buffer.put((byte)(0x80 | (codePoint & 0x3F)));
+      } else {
+        buffer.put((byte)(0xE0 | (c >> 12)));
+        buffer.put((byte)(0x80 | ((c >> 6) & 0x3F)));
+        buffer.put((byte)(0x80 | (c & 0x3F)));
+      }
+    }
+  }
+  
+  private static int utf8Length(String value) {
+    int length = value.length();
+    int bytes = 0;
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        bytes += 1;
+      } else if (c < 0x800) {
+        bytes += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+        bytes += 4;
+        i++;
+      } else {
+        bytes += 3;
+      }
+    }
+    return bytes;
+  }
+  
+  private void ensureRoom(int bytes) {
+    if (buffer.remaining() >= bytes) return;
+    int capacity = buffer.capacity();
+    while (capacity - buffer.position() < bytes)
+      capacity *= 2;
+    ByteBuffer grown = ByteBuffer.allocate(capacity);
+    buffer.flip();
+    grown.put(buffer);
+    buffer = grown;
+  }
+}
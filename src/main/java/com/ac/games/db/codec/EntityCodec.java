@@ -0,0 +1,290 @@
+package com.ac.games.db.codec;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.nio.BufferUnderflowException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * Compact binary encoder and decoder for one data object class.
+ * <p>
+ * The codec is planned once per class from its instance fields, in field name order, and written as plain
+ * values in that order with no per-field names or tags.  Integers are zigzag varints, strings go through the
+ * {@link EncodeBuffer} dedup table, and primitive fields are read and set without boxing.  The plan has a
+ * 32-bit schema hash over each field's name and {@link FieldType}.
+ * <p>
+ * There are two layouts:
+ * <ul>
+ * <li>{@link #encode(Object, EncodeBuffer)} writes a format version byte and the schema hash, then the
+ * fields.  It is the smallest form, for caches, and {@link #decode(DecodeBuffer)} refuses it if the
+ * schema hash differs from this class's, so a cache entry written by a different build reads as a miss.</li>
+ * <li>{@link #encodeAll(List, EncodeBuffer)} writes a frame: the format version, the full schema (field names
+ * and types), a count, and the records.  {@link #decodeAll(DecodeBuffer)} matches fields by name, so a
+ * frame written by an older or newer build still decodes: fields it lacks keep their default, fields this
+ * build lacks are skipped, and fields whose type changed are converted where Java allows it.  This is the
+ * form for snapshot files and replication.</li>
+ * </ul>
+ * Codecs are thread safe; the buffers are not, and are meant to be kept one per thread.  Records written
+ * into one buffer share its string table, so they must be read back in the same order through one
+ * {@link DecodeBuffer}.
+ * 
+ * @author ac010168
+ */
+public final class EntityCodec<T> {
+
+  /** Current layout version, written first in every record and frame */
+  public static final int FORMAT_VERSION = 1;
+  
+  private static final Comparator<Field> BY_NAME = new Comparator<Field>() {
+    @Override
+    public int compare(Field a, Field b) {
+      return a.getName().compareTo(b.getName());
+    }
+  };
+  
+  private static final ConcurrentHashMap<Class<?>, EntityCodec<?>> codecsByClass = new ConcurrentHashMap<Class<?>, EntityCodec<?>>();
+  
+  private final Class<T>           type;
+  private final Constructor<T>     constructor;
+  private final Field[]            fields;
+  private final FieldType[]        fieldTypes;
+  private final Map<String, Field> fieldsByName;
+  private final int                schemaHash;
+  
+  private EntityCodec(Class<T> type) {
+    this.type = type;
+    try {
+      constructor = type.getDeclaredConstructor();
+      constructor.setAccessible(true);
+    } catch (NoSuchMethodException nsme) {
+      throw new IllegalArgumentException(type.getName() + " has no no-argument constructor", nsme);
+    }
+    
+    List<Field> collected = new ArrayList<Field>();
+    for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+      for (Field field : current.getDeclaredFields()) {
+        int modifiers = field.getModifiers();
+        if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) continue;
+        collected.add(field);
+      }
+    }
+    Collections.sort(collected, BY_NAME);
+    fields = collected.toArray(new Field[collected.size()]);
+    AccessibleObject.setAccessible(fields, true);
+    
+    fieldTypes   = new FieldType[fields.length];
+    fieldsByName = new HashMap<String, Field>();
+    int hash = 0x811C9DC5;
+    for (int i = 0; i < fields.length; i++) {
+      fieldTypes[i] = FieldType.forClass(fields[i].getType());
+      fieldsByName.put(fields[i].getName(), fields[i]);
+      hash = fnv(hash, fields[i].getName());
+      hash = (hash ^ fieldTypes[i].getTag()) * 0x01000193;
+    }
+    schemaHash = hash;
+  }
+  
+  /**
+   * Gets the codec for a class, planning it on first use.
+   * 
+   * @param type The data object class, which must have a no-argument constructor.
+   * @return The codec.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> EntityCodec<T> forClass(Class<T> type) {
+    EntityCodec<?> codec = codecsByClass.get(type);
+    if (codec == null) {
+      codec = new EntityCodec<T>(type);
+      EntityCodec<?> raced = codecsByClass.putIfAbsent(type, codec);
+      if (raced != null) codec = raced;
+    }
+    return (EntityCodec<T>)codec;
+  }
+  
+  public Class<T> getType() {
+    return type;
+  }
+  
+  public int getSchemaHash() {
+    return schemaHash;
+  }
+  
+  //**********  Single Records  **********
+  /**
+   * Write one record with a version and schema hash header.
+   * 
+   * @param value The record.
+   * @param out The buffer to append to.
+   */
+  public void encode(T value, EncodeBuffer out) {
+    out.putByte(FORMAT_VERSION);
+    out.putInt(schemaHash);
+    writeFields(out, value, 0);
+  }
+  
+  /**
+   * Read one record written by {@link #encode(Object, EncodeBuffer)}.
+   * 
+   * @param in The buffer to read from.
+   * @return The record.
+   * 
+   * @throws DatabaseOperationException Throws this exception if the record was written with another
+   * format version or schema, or is corrupt.
+   */
+  public T decode(DecodeBuffer in) throws DatabaseOperationException {
+    try {
+      checkVersion(in.getByte());
+      int recordHash = in.getInt();
+      if (recordHash != schemaHash)
+        throw new DatabaseOperationException(type.getName() + " record was encoded with a different schema");
+      return readFields(in, 0);
+    } catch (BufferUnderflowException bue) {
+      throw new DatabaseOperationException("Truncated " + type.getName() + " record", bue);
+    } catch (IllegalStateException ise) {
+      throw new DatabaseOperationException("Corrupt " + type.getName() + " record", ise);
+    }
+  }
+  
+  //**********  Frames  **********
+  /**
+   * Write a frame of records, with the full schema so that other builds can read it.
+   * 
+   * @param values The records.
+   * @param out The buffer to append to.
+   */
+  public void encodeAll(List<T> values, EncodeBuffer out) {
+    out.putByte(FORMAT_VERSION);
+    out.putVarLong(fields.length);
+    for (int i = 0; i < fields.length; i++) {
+      out.putString(fields[i].getName());
+      out.putByte(fieldTypes[i].getTag());
+    }
+    out.putVarLong(values.size());
+    for (T value : values)
+      writeFields(out, value, 0);
+  }
+  
+  /**
+   * Read a frame written by {@link #encodeAll(List, EncodeBuffer)}, possibly by another build with a
+   * different set of fields.
+   * 
+   * @param in The buffer to read from.
+   * @return The records.
+   * 
+   * @throws DatabaseOperationException Throws this exception if the frame was written with another
+   * format version, or is corrupt.
+   */
+  public List<T> decodeAll(DecodeBuffer in) throws DatabaseOperationException {
+    try {
+      checkVersion(in.getByte());
+      int fieldCount = (int)in.getVarLong();
+      Field[]     localFields  = new Field[fieldCount];
+      FieldType[] remoteTypes  = new FieldType[fieldCount];
+      boolean[]   sameType     = new boolean[fieldCount];
+      for (int i = 0; i < fieldCount; i++) {
+        localFields[i] = fieldsByName.get(in.getString());
+        remoteTypes[i] = FieldType.forTag(in.getByte());
+        sameType[i]    = localFields[i] != null && FieldType.forClass(localFields[i].getType()) == remoteTypes[i];
+      }
+      
+      int count = (int)in.getVarLong();
+      List<T> values = new ArrayList<T>(Math.min(count, 1024));
+      for (int r = 0; r < count; r++) {
+        T value = newInstance();
+        for (int i = 0; i < fieldCount; i++) {
+          if (sameType[i]) {
+            remoteTypes[i].readInto(in, value, localFields[i], 0);
+          } else {
+            Object fieldValue = remoteTypes[i].read(in, 0);
+            if (localFields[i] != null) setConverted(value, localFields[i], fieldValue);
+          }
+        }
+        values.add(value);
+      }
+      return values;
+    } catch (BufferUnderflowException bue) {
+      throw new DatabaseOperationException("Truncated " + type.getName() + " frame", bue);
+    } catch (IllegalStateException ise) {
+      throw new DatabaseOperationException("Corrupt " + type.getName() + " frame", ise);
+    } catch (IllegalArgumentException iae) {
+      throw new DatabaseOperationException("Corrupt " + type.getName() + " frame", iae);
+    } catch (IllegalAccessException iae) {
+      throw new IllegalStateException(iae);
+    }
+  }
+  
+  //**********  Field Layout  **********
+  void writeFields(EncodeBuffer out, Object value, int depth) {
+    try {
+      for (int i = 0; i < fields.length; i++)
+        fieldTypes[i].write(out, value, fields[i], depth);
+    } catch (IllegalAccessException iae) {
+      throw new IllegalStateException(iae);
+    }
+  }
+  
+  T readFields(DecodeBuffer in, int depth) {
+    T value = newInstance();
+    try {
+      for (int i = 0; i < fields.length; i++)
+        fieldTypes[i].readInto(in, value, fields[i], depth);
+    } catch (IllegalAccessException iae) {
+      throw new IllegalStateException(iae);
+    } catch (IllegalArgumentException iae) {
+      throw new DatabaseOperationException("Corrupt " + type.getName() + " record", iae);
+    }
+    return value;
+  }
+  
+  private T newInstance() {
+    try {
+      return constructor.newInstance();
+    } catch (InstantiationException ie) {
+      throw new IllegalStateException("Unable to create " + type.getName(), ie);
+    } catch (IllegalAccessException iae) {
+      throw new IllegalStateException("Unable to create " + type.getName(), iae);
+    } catch (InvocationTargetException ite) {
+      throw new IllegalStateException("Unable to create " + type.getName(), ite.getCause());
+    }
+  }
+  
+  /**
+   * Set a field from a value written with a different type, leaving the default if Java can't convert it.
+   */
+  private static void setConverted(Object target, Field field, Object value) throws IllegalAccessException {
+    if (value == null && field.getType().isPrimitive()) return;
+    try {
+      field.set(target, value);
+    } catch (IllegalArgumentException iae) {
+      //Incompatible change of type; keep the default
+    }
+  }
+  
+  private void checkVersion(int version) {
+    if (version != FORMAT_VERSION)
+      throw new DatabaseOperationException(type.getName() + " data has unsupported format version " + version);
+  }
+  
+  private static int fnv(int hash, String value) {
+    for (int i = 0; i < value.length(); i++)
+      hash = (hash ^ value.charAt(i)) * 0x01000193;
+    return hash;
+  }
+  
+  @Override
+  public String toString() {
+    return "EntityCodec[" + type.getName() + ", fields=" + Arrays.toString(fieldTypes) + "]";
+  }
+}
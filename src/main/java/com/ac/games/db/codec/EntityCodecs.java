@@ -0,0 +1,67 @@
+package com.ac.games.db.codec;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.ac.games.data.BGGGame;
+import com.ac.games.data.Collection;
+import com.ac.games.data.CollectionItem;
+import com.ac.games.data.CoolStuffIncPriceData;
+import com.ac.games.data.Game;
+import com.ac.games.data.GameReltn;
+import com.ac.games.data.MediaItem;
+import com.ac.games.data.MiniatureMarketPriceData;
+import com.ac.games.data.PlaythruItem;
+import com.ac.games.data.User;
+import com.ac.games.data.UserDetail;
+import com.ac.games.data.WishlistItem;
+import com.ac.games.db.EntityType;
+
+/**
+ * The {@link EntityCodec} for each {@link EntityType}.
+ * 
+ * @author ac010168
+ */
+public final class EntityCodecs {
+
+  public static final EntityCodec<BGGGame>                  BGG_GAME        = EntityCodec.forClass(BGGGame.class);
+  public static final EntityCodec<CoolStuffIncPriceData>    CSI_DATA        = EntityCodec.forClass(CoolStuffIncPriceData.class);
+  public static final EntityCodec<MiniatureMarketPriceData> MM_DATA         = EntityCodec.forClass(MiniatureMarketPriceData.class);
+  public static final EntityCodec<Game>                     GAME            = EntityCodec.forClass(Game.class);
+  public static final EntityCodec<GameReltn>                GAME_RELTN      = EntityCodec.forClass(GameReltn.class);
+  public static final EntityCodec<User>                     USER            = EntityCodec.forClass(User.class);
+  public static final EntityCodec<UserDetail>               USER_DETAIL     = EntityCodec.forClass(UserDetail.class);
+  public static final EntityCodec<Collection>               COLLECTION      = EntityCodec.forClass(Collection.class);
+  public static final EntityCodec<CollectionItem>           COLLECTION_ITEM = EntityCodec.forClass(CollectionItem.class);
+  public static final EntityCodec<MediaItem>                MEDIA_ITEM      = EntityCodec.forClass(MediaItem.class);
+  public static final EntityCodec<WishlistItem>             WISHLIST_ITEM   = EntityCodec.forClass(WishlistItem.class);
+  public static final EntityCodec<PlaythruItem>             PLAYTHRU_ITEM   = EntityCodec.forClass(PlaythruItem.class);
+  
+  private static final Map<EntityType, EntityCodec<?>> codecsByType = new EnumMap<EntityType, EntityCodec<?>>(EntityType.class);
+  static {
+    codecsByType.put(EntityType.BGG_GAME,        BGG_GAME);
+    codecsByType.put(EntityType.CSI_DATA,        CSI_DATA);
+    codecsByType.put(EntityType.MM_DATA,         MM_DATA);
+    codecsByType.put(EntityType.GAME,            GAME);
+    codecsByType.put(EntityType.GAME_RELTN,      GAME_RELTN);
+    codecsByType.put(EntityType.USER,            USER);
+    codecsByType.put(EntityType.USER_DETAIL,     USER_DETAIL);
+    codecsByType.put(EntityType.COLLECTION,      COLLECTION);
+    codecsByType.put(EntityType.COLLECTION_ITEM, COLLECTION_ITEM);
+    codecsByType.put(EntityType.MEDIA_ITEM,      MEDIA_ITEM);
+    codecsByType.put(EntityType.WISHLIST_ITEM,   WISHLIST_ITEM);
+    codecsByType.put(EntityType.PLAYTHRU_ITEM,   PLAYTHRU_ITEM);
+  }
+  
+  private EntityCodecs() {}
+  
+  /**
+   * Gets the codec for a type of record.
+   * 
+   * @param type The entity type.
+   * @return The codec, or null for {@link EntityType#STATS}, which has no single record class.
+   */
+  public static EntityCodec<?> forEntityType(EntityType type) {
+    return codecsByType.get(type);
+  }
+}
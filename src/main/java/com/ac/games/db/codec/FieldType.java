@@ -0,0 +1,177 @@
+package com.ac.games.db.codec;
+
+import java.lang.reflect.Field;
+
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * How one field is written.  Primitive fields are read and set without boxing; String fields go straight
+ * through the dedup table; every other field is a tagged {@link Values} entry.  The tag is part of the
+ * schema, so a reader can decode, convert or skip a field whose type has changed.
+ * 
+ * @author ac010168
+ */
+enum FieldType {
+  LONG(1) {
+    @Override
+    void write(EncodeBuffer out, Object target, Field field, int depth) throws IllegalAccessException {
+      out.putSignedVarLong(field.getLong(target));
+    }
+    @Override
+    Object read(DecodeBuffer in, int depth) {
+      return in.getSignedVarLong();
+    }
+    @Override
+    void readInto(DecodeBuffer in, Object target, Field field, int depth) throws IllegalAccessException {
+      field.setLong(target, in.getSignedVarLong());
+    }
+  },
+  INT(2) {
+    @Override
+    void write(EncodeBuffer out, Object target, Field field, int depth) throws IllegalAccessException {
+      out.putSignedVarLong(field.getInt(target));
+    }
+    @Override
+    Object read(DecodeBuffer in, int depth) {
+      return (int)in.getSignedVarLong();
+    }
+    @Override
+    void readInto(DecodeBuffer in, Object target, Field field, int depth) throws IllegalAccessException {
+      field.setInt(target, (int)in.getSignedVarLong());
+    }
+  },
+  SHORT(3) {
+    @Override
+    void write(EncodeBuffer out, Object target, Field field, int depth) throws IllegalAccessException {
+      out.putSignedVarLong(field.getShort(target));
+    }
+    @Override
+    Object read(DecodeBuffer in, int depth) {
+      return (short)in.getSignedVarLong();
+    }
+  },
+  BYTE(4) {
+    @Override
+    void write(EncodeBuffer out, Object target, Field field, int depth) throws IllegalAccessException {
+      out.putByte(field.getByte(target));
+    }
+    @Override
+    Object read(DecodeBuffer in, int depth) {
+      return (byte)in.getByte();
+    }
+  },
+  BOOLEAN(5) {
+    @Override
+    void write(EncodeBuffer out, Object target, Field field, int depth) throws IllegalAccessException {
+      out.putByte(field.getBoolean(target) ? 1 : 0);
+    }
+    @Override
+    Object read(DecodeBuffer in, int depth) {
+      return in.getByte() != 0;
+    }
+    @Override
+    void readInto(DecodeBuffer in, Object target, Field field, int depth) throws IllegalAccessException {
+      field.setBoolean(target, in.getByte() != 0);
+    }
+  },
+  DOUBLE(6) {
+    @Override
+    void write(EncodeBuffer out, Object target, Field field, int depth) throws IllegalAccessException {
+      out.putDouble(field.getDouble(target));
+    }
+    @Override
+    Object read(DecodeBuffer in, int depth) {
+      return in.getDouble();
+    }
+    @Override
+    void readInto(DecodeBuffer in, Object target, Field field, int depth) throws IllegalAccessException {
+      field.setDouble(target, in.getDouble());
+    }
+  },
+  FLOAT(7) {
+    @Override
+    void write(EncodeBuffer out, Object target, Field field, int depth) throws IllegalAccessException {
+      out.putFloat(field.getFloat(target));
+    }
+    @Override
+    Object read(DecodeBuffer in, int depth) {
+      return in.getFloat();
+    }
+  },
+  CHAR(8) {
+    @Override
+    void write(EncodeBuffer out, Object target, Field field, int depth) throws IllegalAccessException {
+      out.putVarLong(field.getChar(target));
+    }
+    @Override
+    Object read(DecodeBuffer in, int depth) {
+      return (char)in.getVarLong();
+    }
+  },
+  STRING(9) {
+    @Override
+    void write(EncodeBuffer out, Object target, Field field, int depth) throws IllegalAccessException {
+      out.putString((String)field.get(target));
+    }
+    @Override
+    Object read(DecodeBuffer in, int depth) {
+      return in.getString();
+    }
+  },
+  VALUE(10) {
+    @Override
+    void write(EncodeBuffer out, Object target, Field field, int depth) throws IllegalAccessException {
+      Values.write(out, field.get(target), depth);
+    }
+    @Override
+    Object read(DecodeBuffer in, int depth) {
+      return Values.read(in, depth);
+    }
+  };
+  
+  private final int tag;
+  
+  private FieldType(int tag) {
+    this.tag = tag;
+  }
+  
+  int getTag() {
+    return tag;
+  }
+  
+  /**
+   * Write this field of an object.
+   */
+  abstract void write(EncodeBuffer out, Object target, Field field, int depth) throws IllegalAccessException;
+  
+  /**
+   * Read one value of this type, boxed.  Used to skip fields and to convert between types.
+   */
+  abstract Object read(DecodeBuffer in, int depth);
+  
+  /**
+   * Read one value of this type into a field of the same type.
+   */
+  void readInto(DecodeBuffer in, Object target, Field field, int depth) throws IllegalAccessException {
+    field.set(target, read(in, depth));
+  }
+  
+  static FieldType forClass(Class<?> type) {
+    if (type == long.class)    return LONG;
+    if (type == int.class)     return INT;
+    if (type == double.class)  return DOUBLE;
+    if (type == boolean.class) return BOOLEAN;
+    if (type == String.class)  return STRING;
+    if (type == short.class)   return SHORT;
+    if (type == byte.class)    return BYTE;
+    if (type == float.class)   return FLOAT;
+    if (type == char.class)    return CHAR;
+    return VALUE;
+  }
+  
+  static FieldType forTag(int tag) {
+    for (FieldType type : values())
+      if (type.tag == tag) return type;
+    throw new DatabaseOperationException("Unknown field type tag " + tag);
+  }
+}
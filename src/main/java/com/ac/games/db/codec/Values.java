@@ -0,0 +1,214 @@
+package com.ac.games.db.codec;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * Self-describing values, for fields whose declared type is not a primitive or String: boxed numbers, dates,
+ * enums, lists, sets, maps and nested data objects.  Each value is a one byte tag followed by its content.
+ * Anything else is refused.  Nested objects and enums are named by class in the stream, so only classes in
+ * {@link #DATA_PACKAGE} are written or read; a stream naming any other class is rejected before the class
+ * is loaded.
+ * 
+ * @author ac010168
+ */
+final class Values {
+
+  /** Nesting limit, which also stops cycles */
+  static final int MAX_DEPTH = 8;
+  
+  private static final int NULL       = 0;
+  private static final int LONG       = 1;
+  private static final int INT        = 2;
+  private static final int SHORT      = 3;
+  private static final int BYTE       = 4;
+  private static final int FALSE      = 5;
+  private static final int TRUE       = 6;
+  private static final int DOUBLE     = 7;
+  private static final int FLOAT      = 8;
+  private static final int CHAR       = 9;
+  private static final int STRING     = 10;
+  private static final int DATE       = 11;
+  static final int ENUM               = 12;
+  private static final int LIST       = 13;
+  private static final int SET        = 14;
+  private static final int MAP        = 15;
+  static final int OBJECT             = 16;
+  
+  /** The only package whose classes may be named in a stream */
+  static final String DATA_PACKAGE = "com.ac.games.data";
+  
+  private static final ConcurrentHashMap<String, Class<?>> classesByName = new ConcurrentHashMap<String, Class<?>>();
+  
+  private Values() {}
+  
+  static void write(EncodeBuffer out, Object value, int depth) {
+    if (depth > MAX_DEPTH) throw new IllegalArgumentException("Value is nested more than " + MAX_DEPTH + " deep, or is cyclic");
+    
+    if (value == null) {
+      out.putByte(NULL);
+    } else if (value instanceof String) {
+      out.putByte(STRING);
+      out.putString((String)value);
+    } else if (value instanceof Long) {
+      out.putByte(LONG);
+      out.putSignedVarLong((Long)value);
+    } else if (value instanceof Integer) {
+      out.putByte(INT);
+      out.putSignedVarLong((Integer)value);
+    } else if (value instanceof Double) {
+      out.putByte(DOUBLE);
+      out.putDouble((Double)value);
+    } else if (value instanceof Boolean) {
+      out.putByte((Boolean)value ? TRUE : FALSE);
+    } else if (value instanceof Date) {
+      out.putByte(DATE);
+      out.putSignedVarLong(((Date)value).getTime());
+    } else if (value instanceof Enum) {
+      if (!isDataClass(((Enum<?>)value).getDeclaringClass().getName()))
+        throw new IllegalArgumentException("Unable to encode " + ((Enum<?>)value).getDeclaringClass().getName() + "; only " + DATA_PACKAGE + " enums are supported");
+      out.putByte(ENUM);
+      out.putString(((Enum<?>)value).getDeclaringClass().getName());
+      out.putString(((Enum<?>)value).name());
+    } else if (value instanceof Short) {
+      out.putByte(SHORT);
+      out.putSignedVarLong((Short)value);
+    } else if (value instanceof Byte) {
+      out.putByte(BYTE);
+      out.putByte((Byte)value);
+    } else if (value instanceof Float) {
+      out.putByte(FLOAT);
+      out.putFloat((Float)value);
+    } else if (value instanceof Character) {
+      out.putByte(CHAR);
+      out.putVarLong((Character)value);
+    } else if (value instanceof List) {
+      out.putByte(LIST);
+      writeElements(out, (List<?>)value, depth);
+    } else if (value instanceof Set) {
+      out.putByte(SET);
+      writeElements(out, (Set<?>)value, depth);
+    } else if (value instanceof Map) {
+      out.putByte(MAP);
+      Map<?, ?> map = (Map<?, ?>)value;
+      out.putVarLong(map.size());
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        write(out, entry.getKey(), depth + 1);
+        write(out, entry.getValue(), depth + 1);
+      }
+    } else if (isDataClass(value.getClass().getName())) {
+      out.putByte(OBJECT);
+      out.putString(value.getClass().getName());
+      EntityCodec<?> codec = EntityCodec.forClass(value.getClass());
+      out.putInt(codec.getSchemaHash());
+      codec.writeFields(out, value, depth + 1);
+    } else {
+      throw new IllegalArgumentException("Unable to encode " + value.getClass().getName());
+    }
+  }
+  
+  static Object read(DecodeBuffer in, int depth) {
+    if (depth > MAX_DEPTH) throw new DatabaseOperationException("Value is nested more than " + MAX_DEPTH + " deep");
+    
+    int tag = in.getByte();
+    switch (tag) {
+      case NULL:   return null;
+      case STRING: return in.getString();
+      case LONG:   return in.getSignedVarLong();
+      case INT:    return (int)in.getSignedVarLong();
+      case DOUBLE: return in.getDouble();
+      case FALSE:  return Boolean.FALSE;
+      case TRUE:   return Boolean.TRUE;
+      case DATE:   return new Date(in.getSignedVarLong());
+      case ENUM:   return readEnum(in);
+      case SHORT:  return (short)in.getSignedVarLong();
+      case BYTE:   return (byte)in.getByte();
+      case FLOAT:  return in.getFloat();
+      case CHAR:   return (char)in.getVarLong();
+      case LIST: {
+        int size = (int)in.getVarLong();
+        List<Object> list = new ArrayList<Object>(Math.min(size, 1024));
+        for (int i = 0; i < size; i++)
+          list.add(read(in, depth + 1));
+        return list;
+      }
+      case SET: {
+        int size = (int)in.getVarLong();
+        Set<Object> set = new LinkedHashSet<Object>();
+        for (int i = 0; i < size; i++)
+          set.add(read(in, depth + 1));
+        return set;
+      }
+      case MAP: {
+        int size = (int)in.getVarLong();
+        Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+        for (int i = 0; i < size; i++)
+          map.put(read(in, depth + 1), read(in, depth + 1));
+        return map;
+      }
+      case OBJECT: {
+        Class<?> type = classForName(in.getString());
+        if (type.isEnum() || type.isInterface() || Modifier.isAbstract(type.getModifiers()))
+          throw new DatabaseOperationException(type.getName() + " cannot be decoded as a nested object");
+        EntityCodec<?> codec = EntityCodec.forClass(type);
+        int schemaHash = in.getInt();
+        if (schemaHash != codec.getSchemaHash())
+          throw new DatabaseOperationException("Nested " + codec.getType().getName() + " was encoded with a different schema");
+        return codec.readFields(in, depth + 1);
+      }
+      default:
+        throw new DatabaseOperationException("Unknown value tag " + tag);
+    }
+  }
+  
+  private static void writeElements(EncodeBuffer out, Collection<?> values, int depth) {
+    out.putVarLong(values.size());
+    for (Object element : values)
+      write(out, element, depth + 1);
+  }
+  
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static Object readEnum(DecodeBuffer in) {
+    Class enumClass = classForName(in.getString());
+    String name = in.getString();
+    if (!enumClass.isEnum())
+      throw new DatabaseOperationException(enumClass.getName() + " is not an enum");
+    try {
+      return Enum.valueOf(enumClass, name);
+    } catch (IllegalArgumentException iae) {
+      throw new DatabaseOperationException("Unknown " + enumClass.getName() + " constant " + name, iae);
+    }
+  }
+  
+  private static Class<?> classForName(String name) {
+    if (name == null || !isDataClass(name))
+      throw new DatabaseOperationException("Refusing to decode class " + name + "; only " + DATA_PACKAGE + " classes are allowed");
+    Class<?> type = classesByName.get(name);
+    if (type != null) return type;
+    try {
+      type = Class.forName(name, false, Values.class.getClassLoader());
+    } catch (ClassNotFoundException cnfe) {
+      throw new DatabaseOperationException("Unknown class " + name, cnfe);
+    }
+    classesByName.putIfAbsent(name, type);
+    return type;
+  }
+  
+  /**
+   * Checks whether a class name is directly in {@link #DATA_PACKAGE}, by name alone, so a hostile stream
+   * can't make us load or initialize anything else.
+   */
+  static boolean isDataClass(String name) {
+    return name.startsWith(DATA_PACKAGE + ".") && name.indexOf('.', DATA_PACKAGE.length() + 1) < 0;
+  }
+}
@@ -0,0 +1,87 @@
+package com.ac.games.db.codec;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Variable length integer encoding.  Each byte carries seven bits of the value, low bits first, with the
+ * high bit set on every byte but the last, so small values take one byte and a full long takes ten.
+ * Signed values are zigzag encoded first, so small negative numbers stay small.
+ * 
+ * @author ac010168
+ */
+public final class VarInts {
+
+  /** Longest encoding of a long */
+  public static final int MAX_VAR_LONG_BYTES = 10;
+  
+  private VarInts() {}
+  
+  /**
+   * Write an unsigned variable length long.
+   * 
+   * @param out The buffer to write to, which must have room for {@link #MAX_VAR_LONG_BYTES}.
+   * @param value The value, treated as unsigned.
+   */
+  public static void putVarLong(ByteBuffer out, long value) {
+    while ((value & ~0x7FL) != 0) {
+      out.put((byte)((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.put((byte)value);
+  }
+  
+  /**
+   * Read an unsigned variable length long.
+   * 
+   * @param in The buffer to read from.
+   * @return The value.
+   * 
+   * @throws BufferUnderflowException If the buffer ends mid-value, or the value is longer than ten bytes.
+   */
+  public static long getVarLong(ByteBuffer in) {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte b = in.get();
+      value |= (long)(b & 0x7F) << shift;
+      if ((b & 0x80) == 0) return value;
+    }
+    throw new BufferUnderflowException();
+  }
+  
+  /**
+   * Write a signed long, zigzag encoded.
+   * 
+   * @param out The buffer to write to.
+   * @param value The value.
+   */
+  public static void putSignedVarLong(ByteBuffer out, long value) {
+    putVarLong(out, (value << 1) ^ (value >> 63));
+  }
+  
+  /**
+   * Read a zigzag encoded signed long.
+   * 
+   * @param in The buffer to read from.
+   * @return The value.
+   */
+  public static long getSignedVarLong(ByteBuffer in) {
+    long encoded = getVarLong(in);
+    return (encoded >>> 1) ^ -(encoded & 1);
+  }
+  
+  /**
+   * Gets the number of bytes a value takes as an unsigned variable length long.
+   * 
+   * @param value The value.
+   * @return The encoded length, from 1 to {@link #MAX_VAR_LONG_BYTES}.
+   */
+  public static int varLongSize(long value) {
+    int size = 1;
+    while ((value & ~0x7FL) != 0) {
+      size++;
+      value >>>= 7;
+    }
+    return size;
+  }
+}
@@ -0,0 +1,6 @@
+/**
+ * This package holds the compact binary codec used to store and ship data objects outside the database.
+ * 
+ * @author ac010168
+ */
+package com.ac.games.db.codec;
@@ -0,0 +1,133 @@
+package com.ac.games.db.dashboard;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.ac.games.data.CollectionItem;
+import com.ac.games.data.MediaItem;
+import com.ac.games.data.User;
+import com.ac.games.data.UserCollectionStats;
+import com.ac.games.data.UserDetail;
+import com.ac.games.data.WishlistItem;
+import com.ac.games.db.DatabaseFutures;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * Default implementation of {@link GamesDatabase#readUserDashboard(long, int)}.  The six reads that make up
+ * a {@link UserDashboard} are fanned out on the provided executor, so the whole read takes about as long as
+ * the slowest of them.  Backends that can fetch everything in one aggregation should do that instead, and
+ * backends that can't can simply delegate to this class.
+ * 
+ * @author ac010168
+ */
+public class ConcurrentDashboardReader {
+
+  private final GamesDatabase   database;
+  private final ExecutorService executor;
+  
+  /**
+   * Constructor.
+   * 
+   * @param database The database to read from.
+   * @param executor The executor the reads are fanned out on.  It should allow at least five concurrent
+   * tasks, since the sixth read runs on the calling thread.
+   */
+  public ConcurrentDashboardReader(GamesDatabase database, ExecutorService executor) {
+    this.database = database;
+    this.executor = executor;
+  }
+  
+  /**
+   * Gets the executor shared by every decorator that has no executor of its own.  It is an unbounded pool
+   * of daemon threads, created on first use.
+   * 
+   * @return The shared executor.
+   */
+  public static ExecutorService sharedExecutor() {
+    return SharedExecutorHolder.EXECUTOR;
+  }
+  
+  /**
+   * Read everything needed for the user's dashboard.
+   * 
+   * @param userID The user we want the dashboard for.
+   * @param topX The number of newest collection items to include.
+   * 
+   * @return A {@link UserDashboard}, or null if the user does not exist.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public UserDashboard readUserDashboard(final long userID, final int topX) throws ConfigurationException, DatabaseOperationException {
+    Future<UserDetail> userDetail = executor.submit(new Callable<UserDetail>() {
+      @Override
+      public UserDetail call() throws Exception {
+        return database.readUserDetail(userID);
+      }
+    });
+    Future<UserCollectionStats> collectionStats = executor.submit(new Callable<UserCollectionStats>() {
+      @Override
+      public UserCollectionStats call() throws Exception {
+        return database.readCollectionStats(userID);
+      }
+    });
+    Future<List<CollectionItem>> newestItems = executor.submit(new Callable<List<CollectionItem>>() {
+      @Override
+      public List<CollectionItem> call() throws Exception {
+        return database.getNewestCollectionItems(userID, topX);
+      }
+    });
+    Future<List<WishlistItem>> wishlist = executor.submit(new Callable<List<WishlistItem>>() {
+      @Override
+      public List<WishlistItem> call() throws Exception {
+        return database.readWishlistForUser(userID);
+      }
+    });
+    Future<List<MediaItem>> mediaItems = executor.submit(new Callable<List<MediaItem>>() {
+      @Override
+      public List<MediaItem> call() throws Exception {
+        return database.readMediaItemsByUserID(userID);
+      }
+    });
+    
+    try {
+      User user = database.readUser(userID);
+      if (user == null) return null;
+      
+      UserDashboard dashboard = new UserDashboard();
+      dashboard.setUser(user);
+      dashboard.setUserDetail(DatabaseFutures.get(userDetail));
+      dashboard.setCollectionStats(DatabaseFutures.get(collectionStats));
+      dashboard.setNewestCollectionItems(DatabaseFutures.get(newestItems));
+      dashboard.setWishlist(DatabaseFutures.get(wishlist));
+      dashboard.setMediaItems(DatabaseFutures.get(mediaItems));
+      return dashboard;
+    } finally {
+      //Nothing left to wait for if we returned early or one of the reads failed
+      userDetail.cancel(true);
+      collectionStats.cancel(true);
+      newestItems.cancel(true);
+      wishlist.cancel(true);
+      mediaItems.cancel(true);
+    }
+  }
+  
+  /** Holds the shared executor, so it is only created by the first call to {@link #sharedExecutor()} */
+  private static final class SharedExecutorHolder {
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "games-db-dashboard");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+}
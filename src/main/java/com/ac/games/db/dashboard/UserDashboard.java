@@ -0,0 +1,83 @@
+package com.ac.games.db.dashboard;
+
+import java.util.List;
+
+import com.ac.games.data.CollectionItem;
+import com.ac.games.data.MediaItem;
+import com.ac.games.data.User;
+import com.ac.games.data.UserCollectionStats;
+import com.ac.games.data.UserDetail;
+import com.ac.games.data.WishlistItem;
+
+/**
+ * Everything needed to render a user's home page, read in a single call through
+ * {@link com.ac.games.db.GamesDatabase#readUserDashboard(long, int)}.
+ * 
+ * @author ac010168
+ */
+public class UserDashboard {
+
+  private User                 user;
+  private UserDetail           userDetail;
+  private UserCollectionStats  collectionStats;
+  private List<CollectionItem> newestCollectionItems;
+  private List<WishlistItem>   wishlist;
+  private List<MediaItem>      mediaItems;
+  
+  public UserDashboard() {
+    user                  = null;
+    userDetail            = null;
+    collectionStats       = null;
+    newestCollectionItems = null;
+    wishlist              = null;
+    mediaItems            = null;
+  }
+
+  public User getUser() {
+    return user;
+  }
+
+  public void setUser(User user) {
+    this.user = user;
+  }
+
+  public UserDetail getUserDetail() {
+    return userDetail;
+  }
+
+  public void setUserDetail(UserDetail userDetail) {
+    this.userDetail = userDetail;
+  }
+
+  public UserCollectionStats getCollectionStats() {
+    return collectionStats;
+  }
+
+  public void setCollectionStats(UserCollectionStats collectionStats) {
+    this.collectionStats = collectionStats;
+  }
+
+  public List<CollectionItem> getNewestCollectionItems() {
+    return newestCollectionItems;
+  }
+
+  public void setNewestCollectionItems(List<CollectionItem> newestCollectionItems) {
+    this.newestCollectionItems = newestCollectionItems;
+  }
+
+  public List<WishlistItem> getWishlist() {
+    return wishlist;
+  }
+
+  public void setWishlist(List<WishlistItem> wishlist) {
+    this.wishlist = wishlist;
+  }
+
+  public List<MediaItem> getMediaItems() {
+    return mediaItems;
+  }
+
+  public void setMediaItems(List<MediaItem> mediaItems) {
+    this.mediaItems = mediaItems;
+  }
+}
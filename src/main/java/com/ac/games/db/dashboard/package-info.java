@@ -0,0 +1,6 @@
+/**
+ * This package holds the composite user dashboard read and its default concurrent implementation.
+ * 
+ * @author ac010168
+ */
+package com.ac.games.db.dashboard;
@@ -0,0 +1,33 @@
+package com.ac.games.db.exception;
+
+/**
+ * This Exception should be thrown when a versioned update finds that the record has been changed since
+ * the caller read it.  The caller should re-read the record and decide whether to try again.
+ * 
+ * @author ac010168
+ *
+ */
+public class VersionConflictException extends DatabaseOperationException {
+
+  /**
+   * Serializable ID
+   */
+  private static final long serialVersionUID = 4417935621830447102L;
+  
+  private final long expectedVersion;
+  private final long actualVersion;
+  
+  public VersionConflictException(String message, long expectedVersion, long actualVersion) {
+    super(message);
+    this.expectedVersion = expectedVersion;
+    this.actualVersion   = actualVersion;
+  }
+  
+  public long getExpectedVersion() {
+    return expectedVersion;
+  }
+  
+  public long getActualVersion() {
+    return actualVersion;
+  }
+}
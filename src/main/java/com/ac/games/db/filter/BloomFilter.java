@@ -0,0 +1,129 @@
+package com.ac.games.db.filter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Simple thread-safe Bloom filter over long keys.  String keys are hashed down to a long first.
+ * <p>
+ * A negative answer from {@link #mightContain(long)} is always correct.  A positive answer may be wrong,
+ * at roughly the false positive rate the filter was sized for, as long as the insert count stays near
+ * the expected size.  Keys cannot be removed.
+ * 
+ * @author ac010168
+ */
+public class BloomFilter {
+
+  private final AtomicLongArray bits;
+  private final long           bitCount;
+  private final int            hashCount;
+  private final AtomicInteger  insertCount;
+  
+  /**
+   * Constructor.
+   * 
+   * @param expectedInsertions The number of keys we expect to add.
+   * @param falsePositiveRate The desired false positive rate, such as 0.01.
+   */
+  public BloomFilter(int expectedInsertions, double falsePositiveRate) {
+    if (falsePositiveRate <= 0.0 || falsePositiveRate >= 1.0)
+      throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+    long n = Math.max(1, expectedInsertions);
+    long m = (long)Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+    m = Math.max(64, (m + 63) / 64 * 64);
+    
+    bits        = new AtomicLongArray((int)(m / 64));
+    bitCount    = m;
+    hashCount   = Math.max(1, (int)Math.round((double)m / n * Math.log(2)));
+    insertCount = new AtomicInteger();
+  }
+  
+  /**
+   * Add a key to the filter.
+   * 
+   * @param key The key to add.
+   */
+  public void put(long key) {
+    long hash1 = mix(key);
+    long hash2 = mix(hash1) | 1L;
+    for (int i = 0; i < hashCount; i++) {
+      long bit  = ((hash1 + i * hash2) & Long.MAX_VALUE) % bitCount;
+      int index = (int)(bit >>> 6);
+      long mask = 1L << bit;
+      long current;
+      do {
+        current = bits.get(index);
+        if ((current & mask) != 0) break;
+      } while (!bits.compareAndSet(index, current, current | mask));
+    }
+    insertCount.incrementAndGet();
+  }
+  
+  /**
+   * Add a String key to the filter.
+   * 
+   * @param key The key to add.
+   */
+  public void put(String key) {
+    put(hash(key));
+  }
+  
+  /**
+   * Check whether this key might have been added.
+   * 
+   * @param key The key to check.
+   * @return false if the key was definitely never added, true if it may have been.
+   */
+  public boolean mightContain(long key) {
+    long hash1 = mix(key);
+    long hash2 = mix(hash1) | 1L;
+    for (int i = 0; i < hashCount; i++) {
+      long bit = ((hash1 + i * hash2) & Long.MAX_VALUE) % bitCount;
+      if ((bits.get((int)(bit >>> 6)) & (1L << bit)) == 0) return false;
+    }
+    return true;
+  }
+  
+  /**
+   * Check whether this String key might have been added.
+   * 
+   * @param key The key to check.
+   * @return false if the key was definitely never added, true if it may have been.
+   */
+  public boolean mightContain(String key) {
+    return mightContain(hash(key));
+  }
+  
+  /**
+   * Gets the number of keys added so far, including duplicates.
+   * 
+   * @return The insert count.
+   */
+  public int getInsertCount() {
+    return insertCount.get();
+  }
+  
+  /**
+   * 64-bit FNV-1a hash of the characters in a String.
+   */
+  private static long hash(String key) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < key.length(); i++) {
+      hash ^= key.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+  
+  /**
+   * Finalizer step from MurmurHash3, to spread sequential IDs across the whole bit range.
+   */
+  private static long mix(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return key;
+  }
+}
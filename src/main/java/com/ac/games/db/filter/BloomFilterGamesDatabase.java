@@ -0,0 +1,397 @@
+package com.ac.games.db.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.ac.games.data.BGGGame;
+import com.ac.games.data.CoolStuffIncPriceData;
+import com.ac.games.data.MiniatureMarketPriceData;
+import com.ac.games.data.User;
+import com.ac.games.db.DelegatingGamesDatabase;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+import com.ac.games.db.invalidation.InvalidationKey;
+import com.ac.games.db.invalidation.InvalidationListener;
+
+/**
+ * {@link GamesDatabase} decorator that keeps a {@link BloomFilter} of the bggIDs, csiIDs, mmIDs and userNames
+ * in the database, and answers definite misses from {@link #readBGGGameData(long)}, {@link #readCSIPriceData(long)},
+ * {@link #readMMPriceData(long)} and {@link #readUser(String)} with null, without a database call.
+ * <p>
+ * The filters are built by {@link #rebuildFilters()}, which is called from {@link #initializeDBConnection()}.
+ * Until then, every read goes to the delegate.  Inserts add their key before the write, so a concurrent read
+ * can never miss a new record, and inserts that run during a rebuild land in both the old and new filters.
+ * Bloom filters cannot remove keys, so deletes leave their key behind as a false positive.
+ * {@link #getDeletesSinceRebuild()} can be used to decide when to rebuild.  userNames are compared ignoring
+ * case.
+ * <p>
+ * The filters only learn keys from inserts made through this object, so a record inserted by another node or
+ * process is missing from them until the next rebuild.  Unless this object is the <code>soleWriter</code>,
+ * a miss is only trusted for ids no higher than the table's highest id when the filters were built; a miss on
+ * a newer id, and any userName miss, is confirmed with the delegate, so logins and userName checks always see
+ * users registered elsewhere.  Keys below that mark inserted elsewhere (bggIDs come from BGG, not a sequence)
+ * are picked up from the invalidation bus: register this object as an {@link InvalidationListener}, and any
+ * BGG, CSI, MM or User key a peer publishes through {@link com.ac.games.db.invalidation.InvalidatingGamesDatabase}
+ * is added to the filters.  Between the peer's insert and the bus delivering it, such a key can still miss.
+ * 
+ * @author ac010168
+ */
+public class BloomFilterGamesDatabase extends DelegatingGamesDatabase implements InvalidationListener {
+
+  /** Default target false positive rate */
+  public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+  /** Minimum filter size, so small or empty tables still have room to grow */
+  private static final int MIN_EXPECTED_SIZE = 10000;
+  
+  private final double  falsePositiveRate;
+  /** true if every write goes through this object, so every miss can be trusted */
+  private final boolean soleWriter;
+  
+  /** The filters used to answer reads, or null until the first build completes */
+  private volatile FilterSet current;
+  /** The filters being built by a rebuild in progress, or null */
+  private volatile FilterSet next;
+  /** Inserts hold the read lock, so a rebuild can't install {@link #next} in the middle of one */
+  private final ReadWriteLock rebuildLock;
+  
+  private final AtomicLong shortCircuitCount;
+  private final AtomicLong deletesSinceRebuild;
+  
+  /**
+   * Basic Constructor, using the default false positive rate.
+   * 
+   * @param delegate The database to wrap.
+   */
+  public BloomFilterGamesDatabase(GamesDatabase delegate) {
+    this(delegate, DEFAULT_FALSE_POSITIVE_RATE);
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param delegate The database to wrap.
+   * @param falsePositiveRate The target false positive rate for each filter.
+   */
+  public BloomFilterGamesDatabase(GamesDatabase delegate, double falsePositiveRate) {
+    this(delegate, falsePositiveRate, false);
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param delegate The database to wrap.
+   * @param falsePositiveRate The target false positive rate for each filter.
+   * @param soleWriter true if no other node or process inserts BGG, CSI, MM or User records, so every miss
+   * can be answered without confirming it.
+   */
+  public BloomFilterGamesDatabase(GamesDatabase delegate, double falsePositiveRate, boolean soleWriter) {
+    super(delegate);
+    this.falsePositiveRate = falsePositiveRate;
+    this.soleWriter        = soleWriter;
+    shortCircuitCount      = new AtomicLong();
+    deletesSinceRebuild    = new AtomicLong();
+    rebuildLock            = new ReentrantReadWriteLock();
+  }
+  
+  @Override
+  public void initializeDBConnection() throws ConfigurationException {
+    delegate.initializeDBConnection();
+    rebuildFilters();
+  }
+  
+  /**
+   * Rebuild all four filters from the id lists and user table.  Each filter is sized for twice its
+   * current row count, and is swapped in only when complete.  userNames are found by walking the
+   * userIDs up to {@link #getMaxUserID()}, since there is no list call for them.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public synchronized void rebuildFilters() throws ConfigurationException, DatabaseOperationException {
+    FilterSet filters = new FilterSet(newFilter(delegate.getBGGGameCount()), newFilter(delegate.getCSIDataCount()),
+                                      newFilter(delegate.getMMDataCount()), newFilter(delegate.getMaxUserID()),
+                                      delegate.getMaxBGGGameID(), delegate.getMaxCSIDataID(), delegate.getMaxMMDataID());
+    //Install the new set before reading anything, so inserts from here on land in it
+    rebuildLock.writeLock().lock();
+    try {
+      next = filters;
+    } finally {
+      rebuildLock.writeLock().unlock();
+    }
+    
+    boolean built = false;
+    try {
+      deletesSinceRebuild.set(0);
+      addAll(filters.bgg, delegate.getBggIDList());
+      addAll(filters.csi, delegate.getCSIIDList());
+      addAll(filters.mm,  delegate.getMMIDList());
+      
+      long maxUserID = delegate.getMaxUserID();
+      for (long userID = 1; userID <= maxUserID; userID++) {
+        User user = delegate.readUser(userID);
+        if (user != null && user.getUserName() != null)
+          filters.userName.put(normalize(user.getUserName()));
+      }
+      built = true;
+    } finally {
+      //Swap under the lock, so an insert in progress has put its key in whichever set ends up current
+      rebuildLock.writeLock().lock();
+      try {
+        if (built) current = filters;
+        next = null;
+      } finally {
+        rebuildLock.writeLock().unlock();
+      }
+    }
+  }
+  
+  /**
+   * Gets the number of reads answered without a database call.
+   * 
+   * @return The short-circuit count since this object was created.
+   */
+  public long getShortCircuitCount() {
+    return shortCircuitCount.get();
+  }
+  
+  /**
+   * Gets the number of deletes since the last rebuild.  Each one has left a stale key in a filter.
+   * 
+   * @return The delete count.
+   */
+  public long getDeletesSinceRebuild() {
+    return deletesSinceRebuild.get();
+  }
+  
+  //**********  Invalidation  **********
+  /**
+   * Add the keys a peer has written to the filters.  Keys for updates and deletes are added too, which only
+   * costs a false positive.  User keys are userIDs, so each is read to find its userName.
+   */
+  @Override
+  public void invalidate(List<InvalidationKey> keys) {
+    for (InvalidationKey key : keys) {
+      if (key.isAllIDs()) continue;
+      switch (key.getEntityType()) {
+        case BGG_GAME:
+          for (FilterSet filters : activeFilters()) filters.bgg.put(key.getID());
+          break;
+        case CSI_DATA:
+          for (FilterSet filters : activeFilters()) filters.csi.put(key.getID());
+          break;
+        case MM_DATA:
+          for (FilterSet filters : activeFilters()) filters.mm.put(key.getID());
+          break;
+        case USER:
+          try {
+            User user = delegate.readUser(key.getID());
+            if (user != null) addUserName(user);
+          } catch (ConfigurationException ce) {
+            throw new DatabaseOperationException("Unable to read User " + key.getID() + " for the userName filter", ce);
+          }
+          break;
+        default:
+          break;
+      }
+    }
+  }
+  
+  /**
+   * Nothing to do: filters never answer for a key they have been told about, and a full invalidation names
+   * no keys.  Call {@link #rebuildFilters()} if a peer may have inserted records the bus did not carry.
+   */
+  @Override
+  public void invalidateAll() {
+  }
+  
+  //**********  BGGGame Operations  **********
+  @Override
+  public BGGGame readBGGGameData(long bggID) throws ConfigurationException, DatabaseOperationException {
+    FilterSet filters = current;
+    if (filters != null && isDefiniteMiss(filters.bgg, bggID, filters.maxBggID)) return null;
+    return delegate.readBGGGameData(bggID);
+  }
+  
+  @Override
+  public void insertBGGGameData(BGGGame game) throws ConfigurationException, DatabaseOperationException {
+    rebuildLock.readLock().lock();
+    try {
+      for (FilterSet filters : activeFilters())
+        filters.bgg.put(game.getBggID());
+      delegate.insertBGGGameData(game);
+    } finally {
+      rebuildLock.readLock().unlock();
+    }
+  }
+  
+  @Override
+  public void deleteBGGGameData(long bggID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteBGGGameData(bggID);
+    deletesSinceRebuild.incrementAndGet();
+  }
+  
+  //**********  CoolStuffIncPriceData Operations  **********
+  @Override
+  public CoolStuffIncPriceData readCSIPriceData(long csiID) throws ConfigurationException, DatabaseOperationException {
+    FilterSet filters = current;
+    if (filters != null && isDefiniteMiss(filters.csi, csiID, filters.maxCsiID)) return null;
+    return delegate.readCSIPriceData(csiID);
+  }
+  
+  @Override
+  public void insertCSIPriceData(CoolStuffIncPriceData csiData) throws ConfigurationException, DatabaseOperationException {
+    rebuildLock.readLock().lock();
+    try {
+      for (FilterSet filters : activeFilters())
+        filters.csi.put(csiData.getCsiID());
+      delegate.insertCSIPriceData(csiData);
+    } finally {
+      rebuildLock.readLock().unlock();
+    }
+  }
+  
+  @Override
+  public void deleteCSIPriceData(long csiID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteCSIPriceData(csiID);
+    deletesSinceRebuild.incrementAndGet();
+  }
+  
+  //**********  MiniatureMarketPriceData Operations  **********
+  @Override
+  public MiniatureMarketPriceData readMMPriceData(long mmID) throws ConfigurationException, DatabaseOperationException {
+    FilterSet filters = current;
+    if (filters != null && isDefiniteMiss(filters.mm, mmID, filters.maxMmID)) return null;
+    return delegate.readMMPriceData(mmID);
+  }
+  
+  @Override
+  public void insertMMPriceData(MiniatureMarketPriceData mmData) throws ConfigurationException, DatabaseOperationException {
+    rebuildLock.readLock().lock();
+    try {
+      for (FilterSet filters : activeFilters())
+        filters.mm.put(mmData.getMmID());
+      delegate.insertMMPriceData(mmData);
+    } finally {
+      rebuildLock.readLock().unlock();
+    }
+  }
+  
+  @Override
+  public void deleteMMPriceData(long mmID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteMMPriceData(mmID);
+    deletesSinceRebuild.incrementAndGet();
+  }
+  
+  //**********  User Operations  **********
+  @Override
+  public User readUser(String userName) throws ConfigurationException, DatabaseOperationException {
+    FilterSet filters = current;
+    if (soleWriter && filters != null && userName != null && !filters.userName.mightContain(normalize(userName))) {
+      shortCircuitCount.incrementAndGet();
+      return null;
+    }
+    return delegate.readUser(userName);
+  }
+  
+  @Override
+  public void insertUser(User user) throws ConfigurationException, DatabaseOperationException {
+    rebuildLock.readLock().lock();
+    try {
+      addUserName(user);
+      delegate.insertUser(user);
+    } finally {
+      rebuildLock.readLock().unlock();
+    }
+  }
+  
+  @Override
+  public void updateUser(User user) throws ConfigurationException, DatabaseOperationException {
+    rebuildLock.readLock().lock();
+    try {
+      addUserName(user);
+      delegate.updateUser(user);
+    } finally {
+      rebuildLock.readLock().unlock();
+    }
+  }
+  
+  @Override
+  public void deleteUser(long userID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteUser(userID);
+    deletesSinceRebuild.incrementAndGet();
+  }
+  
+  private void addUserName(User user) {
+    if (user.getUserName() == null) return;
+    for (FilterSet filters : activeFilters())
+      filters.userName.put(normalize(user.getUserName()));
+  }
+  
+  /**
+   * Gets the filter sets that new keys need to be added to.
+   */
+  private List<FilterSet> activeFilters() {
+    List<FilterSet> active = new ArrayList<FilterSet>(2);
+    FilterSet filters = current;
+    if (filters != null) active.add(filters);
+    filters = next;
+    if (filters != null) active.add(filters);
+    return active;
+  }
+  
+  /**
+   * Checks whether a miss can be answered from the filter.  Unless we are the sole writer, only ids no
+   * higher than the table's highest id at build time qualify.
+   */
+  private boolean isDefiniteMiss(BloomFilter filter, long id, long maxIDAtBuild) {
+    if (!soleWriter && id > maxIDAtBuild) return false;
+    if (filter.mightContain(id)) return false;
+    shortCircuitCount.incrementAndGet();
+    return true;
+  }
+
+  
+  private static void addAll(BloomFilter filter, List<Long> ids) {
+    for (Long id : ids)
+      filter.put(id);
+  }
+  
+  private BloomFilter newFilter(long currentSize) {
+    long expected = Math.max(MIN_EXPECTED_SIZE, currentSize * 2);
+    return new BloomFilter((int)Math.min(Integer.MAX_VALUE, expected), falsePositiveRate);
+  }
+  
+  private static String normalize(String userName) {
+    return userName.toLowerCase(Locale.ENGLISH);
+  }
+  
+  /**
+   * One filter per lookup type, built and swapped together.
+   */
+  private static final class FilterSet {
+    private final BloomFilter bgg;
+    private final BloomFilter csi;
+    private final BloomFilter mm;
+    private final BloomFilter userName;
+    /** The highest id in each table when the build started; misses above these are confirmed */
+    private final long maxBggID;
+    private final long maxCsiID;
+    private final long maxMmID;
+    
+    private FilterSet(BloomFilter bgg, BloomFilter csi, BloomFilter mm, BloomFilter userName, long maxBggID, long maxCsiID, long maxMmID) {
+      this.bgg      = bgg;
+      this.csi      = csi;
+      this.mm       = mm;
+      this.userName = userName;
+      this.maxBggID = maxBggID;
+      this.maxCsiID = maxCsiID;
+      this.maxMmID  = maxMmID;
+    }
+  }
+}
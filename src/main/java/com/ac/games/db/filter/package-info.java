@@ -0,0 +1,6 @@
+/**
+ * This package holds the negative-lookup filters used to skip database calls for records we know are missing.
+ * 
+ * @author ac010168
+ */
+package com.ac.games.db.filter;
@@ -0,0 +1,159 @@
+package com.ac.games.db.fingerprint;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Computes a 64-bit fingerprint of a data object's content, so two reads of the same record can be
+ * compared without keeping either one.
+ * <p>
+ * The fingerprint is a 64-bit FNV-1a hash over every instance field, walked in field name order, including
+ * fields of nested objects, collections and arrays.  Lists and arrays are hashed in order.  Any other
+ * collection, such as a <code>HashSet</code>, has no stable order (a set of enums iterates in identity hash
+ * order, which changes from run to run), so its elements are hashed one by one and the element hashes are
+ * sorted before they are combined.  Map entries are likewise hashed independently of iteration order, and
+ * enums are hashed by name.  Fields
+ * named in <code>ignoredFields</code> are skipped, which is how crawl timestamps that change on every read are
+ * kept out of the comparison.  Two objects with the same content always have the same fingerprint; two with
+ * different content collide with probability around 2<sup>-64</sup>.
+ * 
+ * @author ac010168
+ */
+public class ContentFingerprint {
+
+  private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+  private static final long FNV_PRIME  = 0x100000001B3L;
+  private static final int  MAX_DEPTH  = 8;
+  
+  private static final long NULL_MARKER = 0x6E756C6CL;
+  
+  private static final Comparator<Field> BY_NAME = new Comparator<Field>() {
+    @Override
+    public int compare(Field a, Field b) {
+      return a.getName().compareTo(b.getName());
+    }
+  };
+  
+  private final Set<String> ignoredFields;
+  private final ConcurrentHashMap<Class<?>, Field[]> fieldsByClass;
+  
+  /**
+   * Constructor.
+   * 
+   * @param ignoredFields Names of fields to leave out of every fingerprint.
+   */
+  public ContentFingerprint(String... ignoredFields) {
+    this.ignoredFields = new HashSet<String>(Arrays.asList(ignoredFields));
+    this.fieldsByClass = new ConcurrentHashMap<Class<?>, Field[]>();
+  }
+  
+  /**
+   * Fingerprint an object.
+   * 
+   * @param value The object.
+   * @return The fingerprint.
+   */
+  public long fingerprint(Object value) {
+    return hashValue(FNV_OFFSET, value, 0);
+  }
+  
+  private long hashValue(long hash, Object value, int depth) {
+    if (value == null)                  return mix(hash, NULL_MARKER);
+    if (value instanceof String)        return hashString(hash, (String)value);
+    if (value instanceof Double)        return mix(hash, Double.doubleToLongBits((Double)value));
+    if (value instanceof Float)         return mix(hash, Float.floatToIntBits((Float)value));
+    if (value instanceof Number)        return mix(hash, ((Number)value).longValue());
+    if (value instanceof Boolean)       return mix(hash, ((Boolean)value) ? 1L : 2L);
+    if (value instanceof Character)     return mix(hash, (Character)value);
+    if (value instanceof Date)          return mix(hash, ((Date)value).getTime());
+    if (value instanceof Enum<?>)       return hashString(hash, ((Enum<?>)value).name());
+    if (depth >= MAX_DEPTH)             return hashString(hash, value.toString());
+    
+    if (value instanceof List<?>) {
+      long count = 0;
+      for (Object element : (List<?>)value) {
+        hash = hashValue(hash, element, depth + 1);
+        count++;
+      }
+      return mix(hash, count);
+    }
+    if (value instanceof Iterable<?>) {
+      List<Long> elementHashes = new ArrayList<Long>();
+      for (Object element : (Iterable<?>)value)
+        elementHashes.add(hashValue(FNV_OFFSET, element, depth + 1));
+      Collections.sort(elementHashes);
+      for (Long elementHash : elementHashes)
+        hash = mix(hash, elementHash);
+      return mix(hash, elementHashes.size());
+    }
+    if (value instanceof Map<?, ?>) {
+      long entrySum = 0;
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>)value).entrySet())
+        entrySum += hashValue(hashValue(FNV_OFFSET, entry.getKey(), depth + 1), entry.getValue(), depth + 1);
+      return mix(mix(hash, entrySum), ((Map<?, ?>)value).size());
+    }
+    if (value.getClass().isArray()) {
+      int length = Array.getLength(value);
+      for (int i = 0; i < length; i++)
+        hash = hashValue(hash, Array.get(value, i), depth + 1);
+      return mix(hash, length);
+    }
+    
+    for (Field field : fieldsOf(value.getClass())) {
+      hash = hashString(hash, field.getName());
+      try {
+        hash = hashValue(hash, field.get(value), depth + 1);
+      } catch (IllegalAccessException iae) {
+        hash = mix(hash, NULL_MARKER);
+      }
+    }
+    return hash;
+  }
+  
+  private Field[] fieldsOf(Class<?> type) {
+    Field[] fields = fieldsByClass.get(type);
+    if (fields != null) return fields;
+    
+    List<Field> collected = new ArrayList<Field>();
+    for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+      for (Field field : current.getDeclaredFields()) {
+        int modifiers = field.getModifiers();
+        if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) continue;
+        if (ignoredFields.contains(field.getName())) continue;
+        collected.add(field);
+      }
+    }
+    Collections.sort(collected, BY_NAME);
+    fields = collected.toArray(new Field[collected.size()]);
+    AccessibleObject.setAccessible(fields, true);
+    fieldsByClass.putIfAbsent(type, fields);
+    return fields;
+  }
+  
+  private static long hashString(long hash, String value) {
+    for (int i = 0; i < value.length(); i++)
+      hash = mix(hash, value.charAt(i));
+    return mix(hash, value.length());
+  }
+  
+  private static long mix(long hash, long value) {
+    for (int i = 0; i < 8; i++) {
+      hash ^= (value & 0xFF);
+      hash *= FNV_PRIME;
+      value >>>= 8;
+    }
+    return hash;
+  }
+}
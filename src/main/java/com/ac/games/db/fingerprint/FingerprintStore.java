@@ -0,0 +1,168 @@
+package com.ac.games.db.fingerprint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.ac.games.db.EntityType;
+import com.ac.games.db.exception.DatabaseOperationException;
+import com.ac.games.db.util.LongLongHashMap;
+
+/**
+ * The last written content fingerprint of each record, by entity type and id, with save and load to a
+ * local file so the fingerprints survive between crawler runs.
+ * <p>
+ * The file holds a magic number and format version, then for each entity type its name, entry count, and
+ * id/fingerprint pairs.  Saves go to a temp file which is then moved into place, so a crash mid-save leaves
+ * the previous file intact.
+ * 
+ * @author ac010168
+ */
+public class FingerprintStore {
+
+  private static final int MAGIC          = 0x41434650;
+  private static final int FORMAT_VERSION = 1;
+  
+  private final Map<EntityType, LongLongHashMap> fingerprints;
+  
+  public FingerprintStore() {
+    fingerprints = new EnumMap<EntityType, LongLongHashMap>(EntityType.class);
+    for (EntityType type : EntityType.values())
+      fingerprints.put(type, new LongLongHashMap());
+  }
+  
+  /**
+   * Checks whether a record was last written with this fingerprint.
+   * 
+   * @param type The entity type.
+   * @param id The record id.
+   * @param fingerprint The fingerprint of the content about to be written.
+   * @return true if the stored fingerprint matches.
+   */
+  public boolean matches(EntityType type, long id, long fingerprint) {
+    LongLongHashMap map = fingerprints.get(type);
+    synchronized (map) {
+      return map.containsKey(id) && map.get(id, 0L) == fingerprint;
+    }
+  }
+  
+  public void put(EntityType type, long id, long fingerprint) {
+    LongLongHashMap map = fingerprints.get(type);
+    synchronized (map) {
+      map.put(id, fingerprint);
+    }
+  }
+  
+  public void remove(EntityType type, long id) {
+    LongLongHashMap map = fingerprints.get(type);
+    synchronized (map) {
+      map.remove(id);
+    }
+  }
+  
+  public int size(EntityType type) {
+    LongLongHashMap map = fingerprints.get(type);
+    synchronized (map) {
+      return map.size();
+    }
+  }
+  
+  /**
+   * Write every fingerprint to a file, replacing it.
+   * 
+   * @param file The file to write.
+   * 
+   * @throws DatabaseOperationException Throws this exception if the file cannot be written.
+   */
+  public void save(Path file) throws DatabaseOperationException {
+    Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+    try {
+      if (file.getParent() != null) Files.createDirectories(file.getParent());
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(fingerprints.size());
+        for (Map.Entry<EntityType, LongLongHashMap> entry : fingerprints.entrySet())
+          writeMap(out, entry.getKey(), entry.getValue());
+      } finally {
+        out.close();
+      }
+      Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException ioe) {
+      throw new DatabaseOperationException("Unable to save fingerprints to " + file, ioe);
+    }
+  }
+  
+  /**
+   * Replace every fingerprint with the contents of a file.  A missing file leaves the store empty.
+   * 
+   * @param file The file to read.
+   * 
+   * @throws DatabaseOperationException Throws this exception if the file cannot be read or is not a
+   * fingerprint file.
+   */
+  public void load(Path file) throws DatabaseOperationException {
+    for (LongLongHashMap map : fingerprints.values()) {
+      synchronized (map) {
+        map.clear();
+      }
+    }
+    if (!Files.exists(file)) return;
+    
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+      try {
+        if (in.readInt() != MAGIC)
+          throw new DatabaseOperationException(file + " is not a fingerprint file");
+        int version = in.readInt();
+        if (version != FORMAT_VERSION)
+          throw new DatabaseOperationException(file + " has unsupported format version " + version);
+        int typeCount = in.readInt();
+        for (int i = 0; i < typeCount; i++) {
+          EntityType type = EntityType.valueOf(in.readUTF());
+          LongLongHashMap map = fingerprints.get(type);
+          int count = in.readInt();
+          synchronized (map) {
+            for (int j = 0; j < count; j++)
+              map.put(in.readLong(), in.readLong());
+          }
+        }
+      } finally {
+        in.close();
+      }
+    } catch (IOException ioe) {
+      throw new DatabaseOperationException("Unable to load fingerprints from " + file, ioe);
+    } catch (IllegalArgumentException iae) {
+      throw new DatabaseOperationException("Unknown entity type in " + file, iae);
+    }
+  }
+  
+  private static void writeMap(final DataOutputStream out, EntityType type, LongLongHashMap map) throws IOException {
+    synchronized (map) {
+      out.writeUTF(type.name());
+      out.writeInt(map.size());
+      final IOException[] failure = new IOException[1];
+      map.forEach(new LongLongHashMap.EntryVisitor() {
+        @Override
+        public void visit(long key, long value) {
+          if (failure[0] != null) return;
+          try {
+            out.writeLong(key);
+            out.writeLong(value);
+          } catch (IOException ioe) {
+            failure[0] = ioe;
+          }
+        }
+      });
+      if (failure[0] != null) throw failure[0];
+    }
+  }
+}
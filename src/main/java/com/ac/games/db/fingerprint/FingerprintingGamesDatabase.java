@@ -0,0 +1,241 @@
+package com.ac.games.db.fingerprint;
+
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ac.games.data.BGGGame;
+import com.ac.games.data.CoolStuffIncPriceData;
+import com.ac.games.data.MiniatureMarketPriceData;
+import com.ac.games.db.DelegatingGamesDatabase;
+import com.ac.games.db.EntityType;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * {@link GamesDatabase} decorator that drops {@link #updateBGGGameData(BGGGame)},
+ * {@link #updateCSIPriceData(CoolStuffIncPriceData)} and {@link #updateMMPriceData(MiniatureMarketPriceData)}
+ * calls whose content is the same as what was last written.
+ * <p>
+ * Each write records a {@link ContentFingerprint} of the record in a {@link FingerprintStore}, and an update
+ * whose fingerprint matches is skipped.  The store is loaded from <code>storeFile</code> when the connection
+ * is initialized and saved when it is closed or a run ends, so unchanged records are recognized from the
+ * first update of the next crawl.  A record with no fingerprint yet, or a different one, is always written.
+ * Updates to the same record are serialized so the stored fingerprint always matches the last write.
+ * <p>
+ * A stored fingerprint only says what this object last wrote.  Another node, or a fix made straight in the
+ * database, may have changed the row since, so a matching fingerprint is confirmed by reading the row and
+ * fingerprinting it, and the update is only skipped if the row really holds the same content.  An unchanged
+ * record then costs a read instead of a write.  Unless this object is the <code>soleWriter</code>, that read
+ * is never left out.
+ * 
+ * @author ac010168
+ */
+public class FingerprintingGamesDatabase extends DelegatingGamesDatabase {
+
+  private static final int LOCK_STRIPES = 64;
+  
+  private static final EntityType[] FILTERED_TYPES = { EntityType.BGG_GAME, EntityType.CSI_DATA, EntityType.MM_DATA };
+  
+  private final Path               storeFile;
+  private final boolean            soleWriter;
+  private final ContentFingerprint fingerprinter;
+  private final FingerprintStore   store;
+  private final Object[]           locks;
+  private final Map<EntityType, AtomicLong> writtenCounts;
+  private final Map<EntityType, AtomicLong> skippedCounts;
+  
+  /**
+   * Constructor, confirming every match against the stored row.
+   * 
+   * @param delegate The database to wrap.
+   * @param storeFile The file the fingerprints are kept in between runs, or null to keep them in memory only.
+   * @param ignoredFields Names of fields that change without the record really changing, such as crawl
+   * timestamps, to leave out of the fingerprints.
+   */
+  public FingerprintingGamesDatabase(GamesDatabase delegate, Path storeFile, String... ignoredFields) {
+    this(delegate, storeFile, false, ignoredFields);
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param delegate The database to wrap.
+   * @param storeFile The file the fingerprints are kept in between runs, or null to keep them in memory only.
+   * @param soleWriter true if no other node or process updates BGG, CSI or MM records, so a matching
+   * fingerprint can be trusted without reading the row.
+   * @param ignoredFields Names of fields that change without the record really changing, such as crawl
+   * timestamps, to leave out of the fingerprints.
+   */
+  public FingerprintingGamesDatabase(GamesDatabase delegate, Path storeFile, boolean soleWriter, String... ignoredFields) {
+    super(delegate);
+    this.storeFile     = storeFile;
+    this.soleWriter    = soleWriter;
+    this.fingerprinter = new ContentFingerprint(ignoredFields);
+    this.store         = new FingerprintStore();
+    this.locks         = new Object[LOCK_STRIPES];
+    for (int i = 0; i < LOCK_STRIPES; i++)
+      locks[i] = new Object();
+    
+    writtenCounts = new EnumMap<EntityType, AtomicLong>(EntityType.class);
+    skippedCounts = new EnumMap<EntityType, AtomicLong>(EntityType.class);
+    for (EntityType type : FILTERED_TYPES) {
+      writtenCounts.put(type, new AtomicLong());
+      skippedCounts.put(type, new AtomicLong());
+    }
+  }
+  
+  @Override
+  public void initializeDBConnection() throws ConfigurationException {
+    delegate.initializeDBConnection();
+    if (storeFile != null) store.load(storeFile);
+  }
+  
+  @Override
+  public void closeDBConnection() throws ConfigurationException {
+    try {
+      if (storeFile != null) store.save(storeFile);
+    } finally {
+      delegate.closeDBConnection();
+    }
+  }
+  
+  public FingerprintStore getStore() {
+    return store;
+  }
+  
+  /**
+   * Gets the written and skipped counts since the last call, without resetting them.
+   * 
+   * @return The counts.
+   */
+  public WriteFilterReport getReport() {
+    return buildReport(false);
+  }
+  
+  /**
+   * Finish a crawl run: save the fingerprints, and return and reset the written and skipped counts.
+   * 
+   * @return The counts for the run.
+   * 
+   * @throws DatabaseOperationException Throws this exception if the fingerprints cannot be saved.
+   */
+  public WriteFilterReport endRun() throws DatabaseOperationException {
+    if (storeFile != null) store.save(storeFile);
+    return buildReport(true);
+  }
+  
+  //**********  BGGGame Operations  **********
+  @Override
+  public void insertBGGGameData(BGGGame game) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertBGGGameData(game);
+    store.put(EntityType.BGG_GAME, game.getBggID(), fingerprinter.fingerprint(game));
+  }
+  
+  @Override
+  public void updateBGGGameData(BGGGame game) throws ConfigurationException, DatabaseOperationException {
+    long bggID = game.getBggID();
+    long fingerprint = fingerprinter.fingerprint(game);
+    synchronized (lockFor(EntityType.BGG_GAME, bggID)) {
+      if (skip(EntityType.BGG_GAME, bggID, fingerprint)) return;
+      store.remove(EntityType.BGG_GAME, bggID);
+      delegate.updateBGGGameData(game);
+      written(EntityType.BGG_GAME, bggID, fingerprint);
+    }
+  }
+  
+  @Override
+  public void deleteBGGGameData(long bggID) throws ConfigurationException, DatabaseOperationException {
+    store.remove(EntityType.BGG_GAME, bggID);
+    delegate.deleteBGGGameData(bggID);
+  }
+  
+  //**********  CoolStuffIncPriceData Operations  **********
+  @Override
+  public void insertCSIPriceData(CoolStuffIncPriceData csiData) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertCSIPriceData(csiData);
+    store.put(EntityType.CSI_DATA, csiData.getCsiID(), fingerprinter.fingerprint(csiData));
+  }
+  
+  @Override
+  public void updateCSIPriceData(CoolStuffIncPriceData csiData) throws ConfigurationException, DatabaseOperationException {
+    long csiID = csiData.getCsiID();
+    long fingerprint = fingerprinter.fingerprint(csiData);
+    synchronized (lockFor(EntityType.CSI_DATA, csiID)) {
+      if (skip(EntityType.CSI_DATA, csiID, fingerprint)) return;
+      store.remove(EntityType.CSI_DATA, csiID);
+      delegate.updateCSIPriceData(csiData);
+      written(EntityType.CSI_DATA, csiID, fingerprint);
+    }
+  }
+  
+  @Override
+  public void deleteCSIPriceData(long csiID) throws ConfigurationException, DatabaseOperationException {
+    store.remove(EntityType.CSI_DATA, csiID);
+    delegate.deleteCSIPriceData(csiID);
+  }
+  
+  //**********  MiniatureMarketPriceData Operations  **********
+  @Override
+  public void insertMMPriceData(MiniatureMarketPriceData mmData) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertMMPriceData(mmData);
+    store.put(EntityType.MM_DATA, mmData.getMmID(), fingerprinter.fingerprint(mmData));
+  }
+  
+  @Override
+  public void updateMMPriceData(MiniatureMarketPriceData mmData) throws ConfigurationException, DatabaseOperationException {
+    long mmID = mmData.getMmID();
+    long fingerprint = fingerprinter.fingerprint(mmData);
+    synchronized (lockFor(EntityType.MM_DATA, mmID)) {
+      if (skip(EntityType.MM_DATA, mmID, fingerprint)) return;
+      store.remove(EntityType.MM_DATA, mmID);
+      delegate.updateMMPriceData(mmData);
+      written(EntityType.MM_DATA, mmID, fingerprint);
+    }
+  }
+  
+  @Override
+  public void deleteMMPriceData(long mmID) throws ConfigurationException, DatabaseOperationException {
+    store.remove(EntityType.MM_DATA, mmID);
+    delegate.deleteMMPriceData(mmID);
+  }
+  
+  private boolean skip(EntityType type, long id, long fingerprint) throws ConfigurationException, DatabaseOperationException {
+    if (!store.matches(type, id, fingerprint)) return false;
+    if (!soleWriter && fingerprinter.fingerprint(readStored(type, id)) != fingerprint) return false;
+    skippedCounts.get(type).incrementAndGet();
+    return true;
+  }
+  
+  private Object readStored(EntityType type, long id) throws ConfigurationException, DatabaseOperationException {
+    switch (type) {
+      case BGG_GAME: return delegate.readBGGGameData(id);
+      case CSI_DATA: return delegate.readCSIPriceData(id);
+      case MM_DATA:  return delegate.readMMPriceData(id);
+      default:
+        throw new IllegalArgumentException("Unfiltered type " + type);
+    }
+  }
+  
+  private void written(EntityType type, long id, long fingerprint) {
+    store.put(type, id, fingerprint);
+    writtenCounts.get(type).incrementAndGet();
+  }
+  
+  private Object lockFor(EntityType type, long id) {
+    long hash = (id * 31 + type.ordinal()) * 0x9E3779B97F4A7C15L;
+    return locks[(int)(hash >>> 58) & (LOCK_STRIPES - 1)];
+  }
+  
+  private WriteFilterReport buildReport(boolean reset) {
+    Map<EntityType, Long> written = new EnumMap<EntityType, Long>(EntityType.class);
+    Map<EntityType, Long> skipped = new EnumMap<EntityType, Long>(EntityType.class);
+    for (EntityType type : FILTERED_TYPES) {
+      written.put(type, reset ? writtenCounts.get(type).getAndSet(0) : writtenCounts.get(type).get());
+      skipped.put(type, reset ? skippedCounts.get(type).getAndSet(0) : skippedCounts.get(type).get());
+    }
+    return new WriteFilterReport(written, skipped);
+  }
+}
@@ -0,0 +1,52 @@
+package com.ac.games.db.fingerprint;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.ac.games.db.EntityType;
+
+/**
+ * Counts of updates written and skipped by a {@link FingerprintingGamesDatabase} during one run.
+ * 
+ * @author ac010168
+ */
+public final class WriteFilterReport {
+
+  private final Map<EntityType, Long> writtenCounts;
+  private final Map<EntityType, Long> skippedCounts;
+  
+  public WriteFilterReport(Map<EntityType, Long> writtenCounts, Map<EntityType, Long> skippedCounts) {
+    this.writtenCounts = Collections.unmodifiableMap(new EnumMap<EntityType, Long>(writtenCounts));
+    this.skippedCounts = Collections.unmodifiableMap(new EnumMap<EntityType, Long>(skippedCounts));
+  }
+  
+  public long getWrittenCount(EntityType type) {
+    Long count = writtenCounts.get(type);
+    return count == null ? 0L : count;
+  }
+  
+  public long getSkippedCount(EntityType type) {
+    Long count = skippedCounts.get(type);
+    return count == null ? 0L : count;
+  }
+  
+  public Map<EntityType, Long> getWrittenCounts() {
+    return writtenCounts;
+  }
+  
+  public Map<EntityType, Long> getSkippedCounts() {
+    return skippedCounts;
+  }
+  
+  @Override
+  public String toString() {
+    StringBuilder report = new StringBuilder();
+    for (EntityType type : writtenCounts.keySet()) {
+      if (report.length() > 0) report.append(", ");
+      report.append(type).append(": ").append(getWrittenCount(type)).append(" written, ")
+            .append(getSkippedCount(type)).append(" skipped");
+    }
+    return report.toString();
+  }
+}
@@ -0,0 +1,6 @@
+/**
+ * This package holds the content fingerprints used to skip crawler updates that would not change anything.
+ * 
+ * @author ac010168
+ */
+package com.ac.games.db.fingerprint;
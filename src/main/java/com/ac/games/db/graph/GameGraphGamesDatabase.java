@@ -0,0 +1,155 @@
+package com.ac.games.db.graph;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ac.games.data.CompactSearchData;
+import com.ac.games.data.GameReltn;
+import com.ac.games.db.DelegatingGamesDatabase;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * {@link GamesDatabase} decorator that keeps a {@link GameRelationGraph} current through the
+ * {@link GameReltn} write calls, and uses it to read whole expansion trees and families in one call.
+ * 
+ * @author ac010168
+ */
+public class GameGraphGamesDatabase extends DelegatingGamesDatabase {
+
+  private final int partitionCount;
+  private volatile GameRelationGraph graph;
+  /** Guards mirrored writes against the swap at the end of a rebuild */
+  private final Object mirrorLock = new Object();
+  /** Writes made while a rebuild runs, as the relation put or the deleted reltnID; null otherwise */
+  private List<Object> rebuildLog;
+  
+  /**
+   * Basic Constructor.  The graph is built when the connection is initialized.
+   * 
+   * @param delegate The database to wrap.
+   */
+  public GameGraphGamesDatabase(GamesDatabase delegate) {
+    this(delegate, Runtime.getRuntime().availableProcessors());
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param delegate The database to wrap.
+   * @param partitionCount The number of threads used to build the graph.
+   */
+  public GameGraphGamesDatabase(GamesDatabase delegate, int partitionCount) {
+    super(delegate);
+    this.partitionCount = partitionCount;
+    this.graph          = new GameRelationGraph();
+  }
+  
+  @Override
+  public void initializeDBConnection() throws ConfigurationException {
+    delegate.initializeDBConnection();
+    rebuildGraph();
+  }
+  
+  /**
+   * Reload the graph from the database.  Relation writes made while the graph is read are logged, and
+   * replayed into the new graph before it replaces the current one.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public synchronized void rebuildGraph() throws ConfigurationException, DatabaseOperationException {
+    synchronized (mirrorLock) {
+      rebuildLog = new ArrayList<Object>();
+    }
+    try {
+      GameRelationGraph built = GameRelationGraph.build(delegate, partitionCount);
+      synchronized (mirrorLock) {
+        for (Object write : rebuildLog)
+          replay(built, write);
+        graph = built;
+      }
+    } finally {
+      synchronized (mirrorLock) {
+        rebuildLog = null;
+      }
+    }
+  }
+  
+  public GameRelationGraph getGraph() {
+    return graph;
+  }
+  
+  /**
+   * Read every expansion of a game, including expansions of expansions.
+   * 
+   * @param gameID The base game.
+   * @return The compact data for each expansion, or an empty list if there are none.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public List<CompactSearchData> readExpansionTree(long gameID) throws ConfigurationException, DatabaseOperationException {
+    return readCompact(graph.getExpansionIDs(gameID, true));
+  }
+  
+  /**
+   * Read every game in the same family as this game.
+   * 
+   * @param gameID Any game in the family.
+   * @return The compact data for each family member, or an empty list if the game has no relations.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public List<CompactSearchData> readFamily(long gameID) throws ConfigurationException, DatabaseOperationException {
+    return readCompact(graph.getFamilyIDs(gameID));
+  }
+  
+  @Override
+  public void insertGameReltn(GameReltn gameReltn) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertGameReltn(gameReltn);
+    mirror(gameReltn);
+  }
+  
+  @Override
+  public void updateGameReltn(GameReltn gameReltn) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateGameReltn(gameReltn);
+    mirror(gameReltn);
+  }
+  
+  @Override
+  public void deleteGameReltn(long reltnID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteGameReltn(reltnID);
+    mirror(Long.valueOf(reltnID));
+  }
+  
+  /**
+   * Apply a write to the current graph, and log it if a rebuild is running.
+   */
+  private void mirror(Object write) {
+    synchronized (mirrorLock) {
+      replay(graph, write);
+      if (rebuildLog != null) rebuildLog.add(write);
+    }
+  }
+  
+  private static void replay(GameRelationGraph target, Object write) {
+    if (write instanceof GameReltn) target.putRelation((GameReltn)write);
+    else                            target.removeRelation(((Long)write).longValue());
+  }
+  
+  private List<CompactSearchData> readCompact(long[] gameIDs) throws ConfigurationException, DatabaseOperationException {
+    if (gameIDs.length == 0) return new ArrayList<CompactSearchData>();
+    StringBuilder idList = new StringBuilder();
+    for (long gameID : gameIDs) {
+      if (idList.length() > 0) idList.append(',');
+      idList.append(gameID);
+    }
+    return delegate.readGamesCompact(idList.toString());
+  }
+}
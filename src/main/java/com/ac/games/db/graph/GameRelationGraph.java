@@ -0,0 +1,275 @@
+package com.ac.games.db.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.ac.games.data.GameReltn;
+import com.ac.games.db.DatabaseFutures;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * In-memory index of every {@link GameReltn}, answering transitive expansion, base game and family lookups
+ * without going back to the database.
+ * <p>
+ * Each relation links a base game to its expansions.  The relations themselves are kept in a map keyed by
+ * reltnID, which is cheap to update.  Queries run against an immutable snapshot that stores the edges as
+ * compact adjacency arrays (sorted node ids, with offset and target arrays in each direction).  The
+ * snapshot is rebuilt on the first query after a change.  A family is every game connected to the
+ * requested game through any chain of relations.
+ * 
+ * @author ac010168
+ */
+public class GameRelationGraph {
+
+  private static final long[] NO_IDS = new long[0];
+  
+  /** base gameID by reltnID */
+  private final Map<Long, Long>   baseGameByReltn;
+  /** expansion gameIDs by reltnID */
+  private final Map<Long, long[]> expansionsByReltn;
+  /** The current snapshot, or null if it needs to be rebuilt */
+  private volatile Snapshot snapshot;
+  
+  public GameRelationGraph() {
+    baseGameByReltn   = new HashMap<Long, Long>();
+    expansionsByReltn = new HashMap<Long, long[]>();
+    snapshot          = null;
+  }
+  
+  /**
+   * Build a graph from every relation in the database.  Relations are read by gameID, so this reads the
+   * relation for every game in {@link GamesDatabase#getGameIDList()}, split across partitions.
+   * 
+   * @param database The database to read from.
+   * @param partitionCount The number of threads to read with.
+   * @return A new, fully loaded graph.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public static GameRelationGraph build(final GamesDatabase database, final int partitionCount) throws ConfigurationException, DatabaseOperationException {
+    final List<Long> gameIDs = database.getGameIDList();
+    
+    ExecutorService executor = Executors.newFixedThreadPool(partitionCount);
+    try {
+      List<Future<List<GameReltn>>> futures = new ArrayList<Future<List<GameReltn>>>(partitionCount);
+      for (int i = 0; i < partitionCount; i++) {
+        final int partition = i;
+        futures.add(executor.submit(new Callable<List<GameReltn>>() {
+          @Override
+          public List<GameReltn> call() throws Exception {
+            List<GameReltn> relations = new ArrayList<GameReltn>();
+            for (int j = partition; j < gameIDs.size(); j += partitionCount) {
+              GameReltn relation = database.readGameReltn(gameIDs.get(j));
+              if (relation != null) relations.add(relation);
+            }
+            return relations;
+          }
+        }));
+      }
+      
+      GameRelationGraph graph = new GameRelationGraph();
+      for (Future<List<GameReltn>> future : futures)
+        for (GameReltn relation : DatabaseFutures.get(future))
+          graph.putRelation(relation);
+      return graph;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+  
+  /**
+   * Add or replace a relation.
+   * 
+   * @param relation The relation as it now exists in the database.
+   */
+  public synchronized void putRelation(GameReltn relation) {
+    List<Long> expansionIDs = relation.getExpansionIDs();
+    long[] expansions = new long[expansionIDs == null ? 0 : expansionIDs.size()];
+    for (int i = 0; i < expansions.length; i++)
+      expansions[i] = expansionIDs.get(i);
+    
+    baseGameByReltn.put(relation.getReltnID(), relation.getGameID());
+    expansionsByReltn.put(relation.getReltnID(), expansions);
+    snapshot = null;
+  }
+  
+  /**
+   * Remove a relation.
+   * 
+   * @param reltnID The reltnID that was deleted.
+   */
+  public synchronized void removeRelation(long reltnID) {
+    baseGameByReltn.remove(reltnID);
+    expansionsByReltn.remove(reltnID);
+    snapshot = null;
+  }
+  
+  /**
+   * Get the expansions of a game.
+   * 
+   * @param gameID The base game.
+   * @param transitive true to include expansions of expansions.
+   * @return The expansion gameIDs, in no particular order.  Never null.
+   */
+  public long[] getExpansionIDs(long gameID, boolean transitive) {
+    Snapshot current = currentSnapshot();
+    return current.traverse(gameID, transitive, current.childOffsets, current.children, false);
+  }
+  
+  /**
+   * Get the base games a game expands.
+   * 
+   * @param gameID The expansion.
+   * @param transitive true to follow the chain all the way up to the root base games.
+   * @return The base gameIDs, in no particular order.  Never null.
+   */
+  public long[] getBaseGameIDs(long gameID, boolean transitive) {
+    Snapshot current = currentSnapshot();
+    return current.traverse(gameID, transitive, current.parentOffsets, current.parents, false);
+  }
+  
+  /**
+   * Get every game in the same family as this game, following relations in both directions.
+   * 
+   * @param gameID The game to start from.
+   * @return The family gameIDs, including the requested game if it has any relations.  Never null.
+   */
+  public long[] getFamilyIDs(long gameID) {
+    Snapshot current = currentSnapshot();
+    return current.traverse(gameID, true, current.childOffsets, current.children, true);
+  }
+  
+  private Snapshot currentSnapshot() {
+    Snapshot current = snapshot;
+    if (current != null) return current;
+    synchronized (this) {
+      if (snapshot == null)
+        snapshot = new Snapshot(baseGameByReltn, expansionsByReltn);
+      return snapshot;
+    }
+  }
+  
+  /**
+   * Immutable adjacency array form of the graph.  Edges for node <code>i</code> are stored in
+   * <code>children[childOffsets[i]]</code> up to <code>children[childOffsets[i + 1]]</code>, and
+   * likewise for parents.
+   */
+  private static final class Snapshot {
+    private final long[] nodeIDs;
+    private final int[]  childOffsets;
+    private final int[]  children;
+    private final int[]  parentOffsets;
+    private final int[]  parents;
+    
+    private Snapshot(Map<Long, Long> baseGameByReltn, Map<Long, long[]> expansionsByReltn) {
+      int edgeCount = 0;
+      for (long[] expansions : expansionsByReltn.values())
+        edgeCount += expansions.length;
+      
+      long[] edgeFrom = new long[edgeCount];
+      long[] edgeTo   = new long[edgeCount];
+      long[] allIDs   = new long[edgeCount * 2];
+      int edge = 0;
+      for (Map.Entry<Long, long[]> entry : expansionsByReltn.entrySet()) {
+        long baseID = baseGameByReltn.get(entry.getKey());
+        for (long expansionID : entry.getValue()) {
+          edgeFrom[edge] = baseID;
+          edgeTo[edge]   = expansionID;
+          allIDs[edge * 2]     = baseID;
+          allIDs[edge * 2 + 1] = expansionID;
+          edge++;
+        }
+      }
+      nodeIDs = distinctSorted(allIDs);
+      
+      int[] from = new int[edgeCount];
+      int[] to   = new int[edgeCount];
+      for (int i = 0; i < edgeCount; i++) {
+        from[i] = Arrays.binarySearch(nodeIDs, edgeFrom[i]);
+        to[i]   = Arrays.binarySearch(nodeIDs, edgeTo[i]);
+      }
+      childOffsets  = new int[nodeIDs.length + 1];
+      children      = new int[edgeCount];
+      parentOffsets = new int[nodeIDs.length + 1];
+      parents       = new int[edgeCount];
+      fill(from, to, childOffsets, children);
+      fill(to, from, parentOffsets, parents);
+    }
+    
+    /**
+     * Breadth-first walk from a starting node.
+     * 
+     * @param undirected true to follow both child and parent edges, in which case the start node is included.
+     */
+    private long[] traverse(long gameID, boolean transitive, int[] offsets, int[] targets, boolean undirected) {
+      int start = Arrays.binarySearch(nodeIDs, gameID);
+      if (start < 0) return NO_IDS;
+      
+      BitSet visited = new BitSet(nodeIDs.length);
+      int[] queue = new int[nodeIDs.length];
+      int head = 0, tail = 0;
+      visited.set(start);
+      queue[tail++] = start;
+      
+      while (head < tail) {
+        int node = queue[head++];
+        tail = visit(node, offsets, targets, visited, queue, tail);
+        if (undirected)
+          tail = visit(node, parentOffsets, parents, visited, queue, tail);
+        if (!transitive) break;
+      }
+      
+      int skip = undirected ? 0 : 1;
+      long[] result = new long[tail - skip];
+      for (int i = skip; i < tail; i++)
+        result[i - skip] = nodeIDs[queue[i]];
+      return result;
+    }
+    
+    private static int visit(int node, int[] offsets, int[] targets, BitSet visited, int[] queue, int tail) {
+      for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+        int target = targets[i];
+        if (!visited.get(target)) {
+          visited.set(target);
+          queue[tail++] = target;
+        }
+      }
+      return tail;
+    }
+    
+    /**
+     * Counting sort of the edges into adjacency array form.
+     */
+    private static void fill(int[] from, int[] to, int[] offsets, int[] targets) {
+      for (int source : from)
+        offsets[source + 1]++;
+      for (int i = 1; i < offsets.length; i++)
+        offsets[i] += offsets[i - 1];
+      int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+      for (int i = 0; i < from.length; i++)
+        targets[next[from[i]]++] = to[i];
+    }
+    
+    private static long[] distinctSorted(long[] ids) {
+      if (ids.length == 0) return NO_IDS;
+      long[] sorted = ids.clone();
+      Arrays.sort(sorted);
+      int count = 1;
+      for (int i = 1; i < sorted.length; i++)
+        if (sorted[i] != sorted[count - 1]) sorted[count++] = sorted[i];
+      return Arrays.copyOf(sorted, count);
+    }
+  }
+}
@@ -0,0 +1,6 @@
+/**
+ * This package holds the in-memory graph of base game, expansion and family relationships.
+ * 
+ * @author ac010168
+ */
+package com.ac.games.db.graph;
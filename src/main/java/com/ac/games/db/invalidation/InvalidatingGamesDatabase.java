@@ -0,0 +1,318 @@
+package com.ac.games.db.invalidation;
+
+import java.util.List;
+
+import com.ac.games.data.BGGGame;
+import com.ac.games.data.BGGGameStats;
+import com.ac.games.data.CSIDataStats;
+import com.ac.games.data.Collection;
+import com.ac.games.data.CollectionItem;
+import com.ac.games.data.CoolStuffIncPriceData;
+import com.ac.games.data.Game;
+import com.ac.games.data.GameReltn;
+import com.ac.games.data.MMDataStats;
+import com.ac.games.data.MediaItem;
+import com.ac.games.data.MiniatureMarketPriceData;
+import com.ac.games.data.PlaythruItem;
+import com.ac.games.data.User;
+import com.ac.games.data.UserDetail;
+import com.ac.games.data.WishlistItem;
+import com.ac.games.db.DelegatingGamesDatabase;
+import com.ac.games.db.EntityType;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * {@link GamesDatabase} decorator that publishes an {@link InvalidationKey} to an {@link InvalidationBus}
+ * after every successful <code>update*</code> and <code>delete*</code> call, so the local caches on every
+ * node drop the record.  Place it outside the caches it feeds, so the write reaches the database before
+ * any node is told to re-read.  Inserts are published only for BGG, CSI, MM and User records, whose keys
+ * the {@link com.ac.games.db.filter.BloomFilterGamesDatabase} filters on every node need to learn; caches
+ * of search results on other nodes pick up other new records when their entries expire.  Every write to a
+ * stats row, including the inserts that write fresh stats, is published as a whole-type
+ * {@link EntityType#STATS} key, since stats rows have no numeric id.
+ * 
+ * @author ac010168
+ */
+public class InvalidatingGamesDatabase extends DelegatingGamesDatabase {
+
+  private final InvalidationBus bus;
+  
+  /**
+   * Constructor.
+   * 
+   * @param delegate The database to wrap.
+   * @param bus The bus to publish changes to.
+   */
+  public InvalidatingGamesDatabase(GamesDatabase delegate, InvalidationBus bus) {
+    super(delegate);
+    this.bus = bus;
+  }
+  
+  public InvalidationBus getBus() {
+    return bus;
+  }
+  
+  //**********  BGGGame Operations  **********
+  @Override
+  public void insertBGGGameData(BGGGame game) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertBGGGameData(game);
+    bus.publish(EntityType.BGG_GAME, game.getBggID());
+  }
+  
+  @Override
+  public void updateBGGGameData(BGGGame game) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateBGGGameData(game);
+    bus.publish(EntityType.BGG_GAME, game.getBggID());
+  }
+  
+  @Override
+  public void deleteBGGGameData(long bggID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteBGGGameData(bggID);
+    bus.publish(EntityType.BGG_GAME, bggID);
+  }
+  
+  //**********  CoolStuffIncPriceData Operations  **********
+  @Override
+  public void insertCSIPriceData(CoolStuffIncPriceData csiData) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertCSIPriceData(csiData);
+    bus.publish(EntityType.CSI_DATA, csiData.getCsiID());
+  }
+  
+  @Override
+  public void updateCSIPriceData(CoolStuffIncPriceData csiData) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateCSIPriceData(csiData);
+    bus.publish(EntityType.CSI_DATA, csiData.getCsiID());
+  }
+  
+  @Override
+  public void deleteCSIPriceData(long csiID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteCSIPriceData(csiID);
+    bus.publish(EntityType.CSI_DATA, csiID);
+  }
+  
+  //**********  MiniatureMarketPriceData Operations  **********
+  @Override
+  public void insertMMPriceData(MiniatureMarketPriceData mmData) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertMMPriceData(mmData);
+    bus.publish(EntityType.MM_DATA, mmData.getMmID());
+  }
+  
+  @Override
+  public void updateMMPriceData(MiniatureMarketPriceData mmData) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateMMPriceData(mmData);
+    bus.publish(EntityType.MM_DATA, mmData.getMmID());
+  }
+  
+  @Override
+  public void deleteMMPriceData(long mmID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteMMPriceData(mmID);
+    bus.publish(EntityType.MM_DATA, mmID);
+  }
+  
+  //**********  Game Operations  **********
+  @Override
+  public void updateGame(Game game) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateGame(game);
+    bus.publish(EntityType.GAME, game.getGameID());
+  }
+  
+  @Override
+  public void deleteGame(long gameID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteGame(gameID);
+    bus.publish(EntityType.GAME, gameID);
+  }
+  
+  //**********  GameReltn Operations  **********
+  @Override
+  public void updateGameReltn(GameReltn gameReltn) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateGameReltn(gameReltn);
+    bus.publish(EntityType.GAME_RELTN, gameReltn.getReltnID());
+  }
+  
+  @Override
+  public void deleteGameReltn(long reltnID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteGameReltn(reltnID);
+    bus.publish(EntityType.GAME_RELTN, reltnID);
+  }
+  
+  //**********  User Operations  **********
+  @Override
+  public void insertUser(User user) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertUser(user);
+    bus.publish(EntityType.USER, user.getUserID());
+  }
+  
+  @Override
+  public void updateUser(User user) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateUser(user);
+    bus.publish(EntityType.USER, user.getUserID());
+  }
+  
+  @Override
+  public void deleteUser(long userID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteUser(userID);
+    bus.publish(EntityType.USER, userID);
+  }
+  
+  //**********  UserDetail Operations  **********
+  @Override
+  public void updateUserDetail(UserDetail userDetail) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateUserDetail(userDetail);
+    bus.publish(EntityType.USER_DETAIL, userDetail.getUserID());
+  }
+  
+  @Override
+  public void deleteUserDetail(long userID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteUserDetail(userID);
+    bus.publish(EntityType.USER_DETAIL, userID);
+  }
+  
+  //**********  Collection Operations  **********
+  @Override
+  public void updateCollection(Collection collection) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateCollection(collection);
+    bus.publish(EntityType.COLLECTION, collection.getCollectionID());
+  }
+  
+  @Override
+  public void deleteCollection(long collectionID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteCollection(collectionID);
+    bus.publish(EntityType.COLLECTION, collectionID);
+  }
+  
+  @Override
+  public List<Collection> deleteCollectionsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    List<Collection> deleted = delegate.deleteCollectionsByUserID(userID);
+    for (Collection collection : deleted)
+      bus.publish(EntityType.COLLECTION, collection.getCollectionID());
+    return deleted;
+  }
+  
+  //**********  CollectionItem Operations  **********
+  @Override
+  public void updateCollectionItem(CollectionItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateCollectionItem(item);
+    bus.publish(EntityType.COLLECTION_ITEM, item.getItemID());
+  }
+  
+  @Override
+  public void deleteCollectionItem(long itemID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteCollectionItem(itemID);
+    bus.publish(EntityType.COLLECTION_ITEM, itemID);
+  }
+  
+  @Override
+  public List<CollectionItem> deleteCollectionItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    List<CollectionItem> deleted = delegate.deleteCollectionItemsByUserID(userID);
+    for (CollectionItem item : deleted)
+      bus.publish(EntityType.COLLECTION_ITEM, item.getItemID());
+    return deleted;
+  }
+  
+  //**********  MediaItem Operations  **********
+  @Override
+  public void updateMediaItem(MediaItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateMediaItem(item);
+    bus.publish(EntityType.MEDIA_ITEM, item.getMediaID());
+  }
+  
+  @Override
+  public void deleteMediaItem(long mediaID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteMediaItem(mediaID);
+    bus.publish(EntityType.MEDIA_ITEM, mediaID);
+  }
+  
+  @Override
+  public List<MediaItem> deleteMediaItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    List<MediaItem> deleted = delegate.deleteMediaItemsByUserID(userID);
+    for (MediaItem item : deleted)
+      bus.publish(EntityType.MEDIA_ITEM, item.getMediaID());
+    return deleted;
+  }
+  
+  //**********  WishlistItem Operations  **********
+  @Override
+  public void updateWishlistItem(WishlistItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateWishlistItem(item);
+    bus.publish(EntityType.WISHLIST_ITEM, item.getWishID());
+  }
+  
+  @Override
+  public void deleteWishlistItem(long wishID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteWishlistItem(wishID);
+    bus.publish(EntityType.WISHLIST_ITEM, wishID);
+  }
+  
+  @Override
+  public List<WishlistItem> deleteWishlistItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    List<WishlistItem> deleted = delegate.deleteWishlistItemsByUserID(userID);
+    for (WishlistItem item : deleted)
+      bus.publish(EntityType.WISHLIST_ITEM, item.getWishID());
+    return deleted;
+  }
+  
+  //**********  PlaythruItem Operations  **********
+  @Override
+  public void updatePlaythruItem(PlaythruItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.updatePlaythruItem(item);
+    bus.publish(EntityType.PLAYTHRU_ITEM, item.getPlaythruID());
+  }
+  
+  @Override
+  public void deletePlaythruItem(long playthruID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deletePlaythruItem(playthruID);
+    bus.publish(EntityType.PLAYTHRU_ITEM, playthruID);
+  }
+  
+  @Override
+  public List<PlaythruItem> deletePlaythruItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    List<PlaythruItem> deleted = delegate.deletePlaythruItemsByUserID(userID);
+    for (PlaythruItem item : deleted)
+      bus.publish(EntityType.PLAYTHRU_ITEM, item.getPlaythruID());
+    return deleted;
+  }
+  
+  @Override
+  public void deleteStatsRow(String statType) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteStatsRow(statType);
+    bus.publish(InvalidationKey.allOf(EntityType.STATS));
+  }
+  
+  @Override
+  public void insertBGGGameStats(BGGGameStats stats) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertBGGGameStats(stats);
+    bus.publish(InvalidationKey.allOf(EntityType.STATS));
+  }
+  
+  @Override
+  public void insertCSIDataStats(CSIDataStats stats) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertCSIDataStats(stats);
+    bus.publish(InvalidationKey.allOf(EntityType.STATS));
+  }
+  
+  @Override
+  public void insertMMDataStats(MMDataStats stats) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertMMDataStats(stats);
+    bus.publish(InvalidationKey.allOf(EntityType.STATS));
+  }
+  
+  @Override
+  public void replaceBGGGameStats(BGGGameStats stats) throws ConfigurationException, DatabaseOperationException {
+    delegate.replaceBGGGameStats(stats);
+    bus.publish(InvalidationKey.allOf(EntityType.STATS));
+  }
+  
+  @Override
+  public void replaceCSIDataStats(CSIDataStats stats) throws ConfigurationException, DatabaseOperationException {
+    delegate.replaceCSIDataStats(stats);
+    bus.publish(InvalidationKey.allOf(EntityType.STATS));
+  }
+  
+  @Override
+  public void replaceMMDataStats(MMDataStats stats) throws ConfigurationException, DatabaseOperationException {
+    delegate.replaceMMDataStats(stats);
+    bus.publish(InvalidationKey.allOf(EntityType.STATS));
+  }
+}
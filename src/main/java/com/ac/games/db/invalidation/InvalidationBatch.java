@@ -0,0 +1,108 @@
+package com.ac.games.db.invalidation;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.ac.games.db.EntityType;
+import com.ac.games.db.codec.DecodeBuffer;
+import com.ac.games.db.codec.EncodeBuffer;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * A set of {@link InvalidationKey}s published together by one node.  Each node numbers its batches from 1,
+ * so receivers can tell when one went missing.
+ * <p>
+ * Transports that leave the process use {@link #encode(EncodeBuffer)} and {@link #decode(ByteBuffer)}: a
+ * format version byte, the origin node id, the sequence number, then each key as its entity type name and
+ * zigzag varint id.  Type names go through the string dedup table, so repeated types cost a byte or two.
+ * 
+ * @author ac010168
+ */
+public final class InvalidationBatch {
+
+  private static final int FORMAT_VERSION = 1;
+  
+  private final String                originNodeID;
+  private final long                  sequence;
+  private final List<InvalidationKey> keys;
+  
+  /**
+   * Constructor.
+   * 
+   * @param originNodeID The node that published the batch.
+   * @param sequence The batch's sequence number on that node, starting at 1.
+   * @param keys The records that changed.
+   */
+  public InvalidationBatch(String originNodeID, long sequence, List<InvalidationKey> keys) {
+    this.originNodeID = originNodeID;
+    this.sequence     = sequence;
+    this.keys         = Collections.unmodifiableList(new ArrayList<InvalidationKey>(keys));
+  }
+  
+  public String getOriginNodeID() {
+    return originNodeID;
+  }
+  
+  public long getSequence() {
+    return sequence;
+  }
+  
+  public List<InvalidationKey> getKeys() {
+    return keys;
+  }
+  
+  /**
+   * Write this batch.
+   * 
+   * @param out The buffer to append to.
+   */
+  public void encode(EncodeBuffer out) {
+    out.putByte(FORMAT_VERSION);
+    out.putString(originNodeID);
+    out.putVarLong(sequence);
+    out.putVarLong(keys.size());
+    for (InvalidationKey key : keys) {
+      out.putString(key.getEntityType().name());
+      out.putSignedVarLong(key.getID());
+    }
+  }
+  
+  /**
+   * Read a batch written by {@link #encode(EncodeBuffer)}.
+   * 
+   * @param bytes The encoded batch, read from its current position.
+   * @return The batch.
+   * 
+   * @throws DatabaseOperationException Throws this exception if the batch is corrupt or from an
+   * unsupported format version.
+   */
+  public static InvalidationBatch decode(ByteBuffer bytes) throws DatabaseOperationException {
+    DecodeBuffer in = new DecodeBuffer(bytes);
+    try {
+      int version = in.getByte();
+      if (version != FORMAT_VERSION)
+        throw new DatabaseOperationException("Invalidation batch has unsupported format version " + version);
+      String originNodeID = in.getString();
+      long sequence = in.getVarLong();
+      int count = (int)in.getVarLong();
+      List<InvalidationKey> keys = new ArrayList<InvalidationKey>(Math.min(count, 1024));
+      for (int i = 0; i < count; i++)
+        keys.add(new InvalidationKey(EntityType.valueOf(in.getString()), in.getSignedVarLong()));
+      return new InvalidationBatch(originNodeID, sequence, keys);
+    } catch (BufferUnderflowException bue) {
+      throw new DatabaseOperationException("Truncated invalidation batch", bue);
+    } catch (IllegalArgumentException iae) {
+      throw new DatabaseOperationException("Unknown entity type in invalidation batch", iae);
+    } catch (IllegalStateException ise) {
+      throw new DatabaseOperationException("Corrupt invalidation batch", ise);
+    }
+  }
+  
+  @Override
+  public String toString() {
+    return originNodeID + "#" + sequence + keys;
+  }
+}
@@ -0,0 +1,307 @@
+package com.ac.games.db.invalidation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ac.games.db.EntityType;
+
+/**
+ * One node's end of the cache invalidation bus.  Changes published here are applied to this node's
+ * {@link InvalidationListener}s straight away, and queued to be sent to every other node through an
+ * {@link InvalidationTransport}.  Batches arriving from other nodes are applied to the same listeners.
+ * <p>
+ * The queue is flushed every <code>flushInterval</code> milliseconds, or sooner once it holds
+ * <code>maxBatchSize</code> keys.  Keys are coalesced while they wait: a record changed many times is sent
+ * once, and a whole-type key swallows every key of its type.  Each node numbers its batches, and a receiver
+ * that sees a gap or a restart in a peer's numbering drops every cache instead of guessing what it missed.
+ * Publishing is best effort; a batch the transport fails to send is logged, and shows up on the other nodes
+ * as a gap.
+ * 
+ * @author ac010168
+ */
+public class InvalidationBus implements InvalidationTransport.Receiver {
+
+  private static final Logger LOGGER = Logger.getLogger(InvalidationBus.class.getName());
+  
+  /** Default number of queued keys that will trigger a flush */
+  public static final int  DEFAULT_MAX_BATCH_SIZE = 500;
+  /** Default maximum time a key waits to be sent, in milliseconds */
+  public static final long DEFAULT_FLUSH_INTERVAL = 50L;
+  
+  private final String                nodeID;
+  private final InvalidationTransport transport;
+  private final int                   maxBatchSize;
+  private final long                  flushInterval;
+  
+  private final List<InvalidationListener> listeners;
+  /** Guarded by itself */
+  private final Set<InvalidationKey>       pending;
+  /** Types with a whole-type key in {@link #pending}, guarded by pending */
+  private final Set<EntityType>            pendingAllTypes;
+  /** Held while a batch is numbered and sent, so batches leave in sequence order */
+  private final Object                     flushMonitor = new Object();
+  private long                             sequence;
+  private final ConcurrentHashMap<String, Long> lastSequences;
+  
+  private final ScheduledExecutorService scheduler;
+  private final AtomicBoolean            flushRequested;
+  private final Runnable                 flushTask;
+  
+  private final AtomicLong publishedCount;
+  private final AtomicLong coalescedCount;
+  private final AtomicLong receivedCount;
+  private final AtomicLong gapCount;
+  
+  /**
+   * Basic Constructor, using a random node id and the default thresholds.
+   * 
+   * @param transport The transport shared with the other nodes.
+   */
+  public InvalidationBus(InvalidationTransport transport) {
+    this(UUID.randomUUID().toString(), transport, DEFAULT_MAX_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL);
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param nodeID This node's id, unique within the cluster.
+   * @param transport The transport shared with the other nodes.
+   * @param maxBatchSize The number of queued keys that will trigger a flush.
+   * @param flushInterval The maximum time a key waits to be sent, in milliseconds.
+   */
+  public InvalidationBus(String nodeID, InvalidationTransport transport, int maxBatchSize, long flushInterval) {
+    if (maxBatchSize < 1)
+      throw new IllegalArgumentException("maxBatchSize must be at least 1");
+    this.nodeID        = nodeID;
+    this.transport     = transport;
+    this.maxBatchSize  = maxBatchSize;
+    this.flushInterval = flushInterval;
+    
+    listeners       = new CopyOnWriteArrayList<InvalidationListener>();
+    pending         = new LinkedHashSet<InvalidationKey>();
+    pendingAllTypes = EnumSet.noneOf(EntityType.class);
+    lastSequences   = new ConcurrentHashMap<String, Long>();
+    publishedCount  = new AtomicLong();
+    coalescedCount  = new AtomicLong();
+    receivedCount   = new AtomicLong();
+    gapCount        = new AtomicLong();
+    
+    flushRequested = new AtomicBoolean(false);
+    flushTask      = new Runnable() {
+      @Override
+      public void run() {
+        flushRequested.set(false);
+        flush();
+      }
+    };
+    scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "games-db-invalidation");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+  
+  /**
+   * Start receiving from the transport and sending queued keys.
+   */
+  public void start() {
+    transport.start(this);
+    scheduler.scheduleWithFixedDelay(flushTask, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+  }
+  
+  /**
+   * Send anything still queued, then stop.
+   */
+  public void close() {
+    try {
+      flush();
+    } finally {
+      scheduler.shutdown();
+      transport.close();
+    }
+  }
+  
+  public String getNodeID() {
+    return nodeID;
+  }
+  
+  public void addListener(InvalidationListener listener) {
+    listeners.add(listener);
+  }
+  
+  public void removeListener(InvalidationListener listener) {
+    listeners.remove(listener);
+  }
+  
+  //**********  Publishing  **********
+  /**
+   * Publish a change to one record.
+   * 
+   * @param type The type of record that changed.
+   * @param id The record id.
+   */
+  public void publish(EntityType type, long id) {
+    publish(new InvalidationKey(type, id));
+  }
+  
+  /**
+   * Publish a change.
+   * 
+   * @param key The record, or type of record, that changed.
+   */
+  public void publish(InvalidationKey key) {
+    applyLocally(Collections.singletonList(key));
+    
+    boolean full;
+    synchronized (pending) {
+      if (pendingAllTypes.contains(key.getEntityType())) {
+        coalescedCount.incrementAndGet();
+        return;
+      }
+      if (key.isAllIDs()) {
+        for (Iterator<InvalidationKey> it = pending.iterator(); it.hasNext(); ) {
+          if (it.next().getEntityType() == key.getEntityType()) {
+            it.remove();
+            coalescedCount.incrementAndGet();
+          }
+        }
+        pendingAllTypes.add(key.getEntityType());
+      }
+      if (!pending.add(key)) coalescedCount.incrementAndGet();
+      full = pending.size() >= maxBatchSize;
+    }
+    if (full && flushRequested.compareAndSet(false, true))
+      scheduler.execute(flushTask);
+  }
+  
+  /**
+   * Send everything queued now, on the calling thread.
+   */
+  public void flush() {
+    synchronized (flushMonitor) {
+      List<InvalidationKey> keys;
+      synchronized (pending) {
+        if (pending.isEmpty()) return;
+        keys = new ArrayList<InvalidationKey>(pending);
+        pending.clear();
+        pendingAllTypes.clear();
+      }
+      InvalidationBatch batch = new InvalidationBatch(nodeID, ++sequence, keys);
+      try {
+        transport.publish(batch);
+        publishedCount.addAndGet(keys.size());
+      } catch (RuntimeException re) {
+        LOGGER.log(Level.WARNING, "Unable to publish invalidation batch " + batch.getSequence() + " of " + keys.size() + " keys", re);
+      }
+    }
+  }
+  
+  //**********  Receiving  **********
+  @Override
+  public void receive(InvalidationBatch batch) {
+    if (nodeID.equals(batch.getOriginNodeID())) return;
+    receivedCount.addAndGet(batch.getKeys().size());
+    
+    Long last = advanceSequence(batch.getOriginNodeID(), batch.getSequence());
+    if (last != null && batch.getSequence() != last + 1) {
+      gapCount.incrementAndGet();
+      LOGGER.warning("Invalidation batches from " + batch.getOriginNodeID() + " jumped from " + last + " to "
+                     + batch.getSequence() + "; dropping every cache");
+      for (InvalidationListener listener : listeners) {
+        try {
+          listener.invalidateAll();
+        } catch (RuntimeException re) {
+          LOGGER.log(Level.WARNING, "Invalidation listener failed", re);
+        }
+      }
+      return;
+    }
+    applyLocally(batch.getKeys());
+  }
+  
+  /**
+   * Record the newest batch seen from a peer.  The check and the update are one step per peer, so two
+   * batches from the same peer handled at once can't both see the same predecessor.  The number never
+   * moves backwards, except to 1 when the peer restarts; a late batch still counts as a gap.
+   * 
+   * @return The sequence recorded before this batch, or null for the first batch from the peer.
+   */
+  private Long advanceSequence(String originNodeID, long sequence) {
+    while (true) {
+      Long last = lastSequences.get(originNodeID);
+      if (last == null) {
+        if (lastSequences.putIfAbsent(originNodeID, sequence) == null) return null;
+      } else if (sequence <= last && sequence != 1L) {
+        return last;
+      } else if (lastSequences.replace(originNodeID, last, sequence)) {
+        return last;
+      }
+    }
+  }
+  
+  private void applyLocally(List<InvalidationKey> keys) {
+    for (InvalidationListener listener : listeners) {
+      try {
+        listener.invalidate(keys);
+      } catch (RuntimeException re) {
+        LOGGER.log(Level.WARNING, "Invalidation listener failed", re);
+      }
+    }
+  }
+  
+  //**********  Counters  **********
+  /**
+   * Gets the number of keys sent to other nodes.
+   * 
+   * @return The published key count.
+   */
+  public long getPublishedCount() {
+    return publishedCount.get();
+  }
+  
+  /**
+   * Gets the number of keys that were merged into a key already waiting to be sent.
+   * 
+   * @return The coalesced key count.
+   */
+  public long getCoalescedCount() {
+    return coalescedCount.get();
+  }
+  
+  /**
+   * Gets the number of keys received from other nodes.
+   * 
+   * @return The received key count.
+   */
+  public long getReceivedCount() {
+    return receivedCount.get();
+  }
+  
+  /**
+   * Gets the number of times a missing batch forced every cache to be dropped.
+   * 
+   * @return The gap count.
+   */
+  public long getGapCount() {
+    return gapCount.get();
+  }
+}
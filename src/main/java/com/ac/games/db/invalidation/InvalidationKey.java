@@ -0,0 +1,69 @@
+package com.ac.games.db.invalidation;
+
+import com.ac.games.db.EntityType;
+
+/**
+ * One record that changed, by entity type and id, or every record of a type.
+ * 
+ * @author ac010168
+ */
+public final class InvalidationKey {
+
+  /** Id used for a key that covers every record of its type */
+  public static final long ALL_IDS = Long.MIN_VALUE;
+  
+  private final EntityType entityType;
+  private final long       id;
+  
+  /**
+   * Constructor.
+   * 
+   * @param entityType The type of record that changed.
+   * @param id The id of the record, or {@link #ALL_IDS}.
+   */
+  public InvalidationKey(EntityType entityType, long id) {
+    if (entityType == null) throw new NullPointerException("entityType");
+    this.entityType = entityType;
+    this.id         = id;
+  }
+  
+  /**
+   * Gets a key covering every record of a type.
+   * 
+   * @param entityType The type of record that changed.
+   * @return The key.
+   */
+  public static InvalidationKey allOf(EntityType entityType) {
+    return new InvalidationKey(entityType, ALL_IDS);
+  }
+  
+  public EntityType getEntityType() {
+    return entityType;
+  }
+  
+  public long getID() {
+    return id;
+  }
+  
+  public boolean isAllIDs() {
+    return id == ALL_IDS;
+  }
+  
+  @Override
+  public int hashCode() {
+    return 31 * entityType.hashCode() + (int)(id ^ (id >>> 32));
+  }
+  
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) return true;
+    if (!(obj instanceof InvalidationKey)) return false;
+    InvalidationKey other = (InvalidationKey)obj;
+    return entityType == other.entityType && id == other.id;
+  }
+  
+  @Override
+  public String toString() {
+    return entityType + "[" + (isAllIDs() ? "*" : Long.toString(id)) + "]";
+  }
+}
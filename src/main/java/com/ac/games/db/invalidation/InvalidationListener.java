@@ -0,0 +1,25 @@
+package com.ac.games.db.invalidation;
+
+import java.util.List;
+
+/**
+ * A local cache that can be told records have changed.  Registered with an {@link InvalidationBus}, which
+ * calls it for changes made on this node and on every other node.
+ * 
+ * @author ac010168
+ */
+public interface InvalidationListener {
+
+  /**
+   * Drop any cached copies of these records.  Called from the bus's threads, and must not block for long.
+   * 
+   * @param keys The records that changed.  Keys with {@link InvalidationKey#ALL_IDS} cover their whole type.
+   */
+  public void invalidate(List<InvalidationKey> keys);
+  
+  /**
+   * Drop everything cached.  Called when this node may have missed invalidations, such as after a gap in a
+   * peer's batch sequence.
+   */
+  public void invalidateAll();
+}
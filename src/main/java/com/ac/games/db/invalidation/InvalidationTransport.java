@@ -0,0 +1,41 @@
+package com.ac.games.db.invalidation;
+
+/**
+ * Carries {@link InvalidationBatch}es between the nodes of a cluster.  Delivery may be best effort; the
+ * bus detects lost batches from their sequence numbers and falls back to dropping every cache.
+ * 
+ * @author ac010168
+ */
+public interface InvalidationTransport {
+
+  /**
+   * Receives batches from other nodes.
+   */
+  public interface Receiver {
+    /**
+     * Handle a batch published by any node, possibly this one.
+     * 
+     * @param batch The batch.
+     */
+    public void receive(InvalidationBatch batch);
+  }
+  
+  /**
+   * Start delivering batches.
+   * 
+   * @param receiver Where to deliver batches published by every node.
+   */
+  public void start(Receiver receiver);
+  
+  /**
+   * Send a batch to every node.
+   * 
+   * @param batch The batch.
+   */
+  public void publish(InvalidationBatch batch);
+  
+  /**
+   * Stop delivering and release any resources.
+   */
+  public void close();
+}
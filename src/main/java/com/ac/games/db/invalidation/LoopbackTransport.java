@@ -0,0 +1,69 @@
+package com.ac.games.db.invalidation;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.ac.games.db.codec.EncodeBuffer;
+
+/**
+ * In-process {@link InvalidationTransport}, for tests and single-process setups with several buses.  Every
+ * transport created from the same {@link Hub} receives every batch published through any of them,
+ * including its own, on the publishing thread.  Batches are encoded and decoded on the way through, so the
+ * wire format is exercised as it would be by a network transport.
+ * 
+ * @author ac010168
+ */
+public class LoopbackTransport implements InvalidationTransport {
+
+  /**
+   * A shared channel that loopback transports attach to.
+   */
+  public static final class Hub {
+    private final List<LoopbackTransport> transports = new CopyOnWriteArrayList<LoopbackTransport>();
+    
+    /**
+     * Create a transport attached to this hub.
+     * 
+     * @return The new transport.
+     */
+    public LoopbackTransport newTransport() {
+      return new LoopbackTransport(this);
+    }
+    
+    private void deliver(InvalidationBatch batch) {
+      EncodeBuffer out = new EncodeBuffer();
+      batch.encode(out);
+      for (LoopbackTransport transport : transports)
+        transport.deliver(InvalidationBatch.decode(out.view()));
+    }
+  }
+  
+  private final Hub         hub;
+  private volatile Receiver receiver;
+  
+  private LoopbackTransport(Hub hub) {
+    this.hub = hub;
+  }
+  
+  @Override
+  public void start(Receiver receiver) {
+    this.receiver = receiver;
+    hub.transports.add(this);
+  }
+  
+  @Override
+  public void publish(InvalidationBatch batch) {
+    hub.deliver(batch);
+  }
+  
+  @Override
+  public void close() {
+    hub.transports.remove(this);
+    receiver = null;
+  }
+  
+  private void deliver(InvalidationBatch batch) {
+    Receiver current = receiver;
+    if (current != null) current.receive(batch);
+  }
+}
@@ -0,0 +1,6 @@
+/**
+ * This package holds the bus that carries cache invalidations between application nodes.
+ * 
+ * @author ac010168
+ */
+package com.ac.games.db.invalidation;
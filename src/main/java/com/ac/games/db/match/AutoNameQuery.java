@@ -0,0 +1,39 @@
+package com.ac.games.db.match;
+
+/**
+ * The inputs to one {@link com.ac.games.db.GamesDatabase#readGameFromAutoName(String, String, int)} lookup,
+ * for use in batches.
+ * 
+ * @author ac010168
+ */
+public final class AutoNameQuery {
+
+  private final String gameName;
+  private final String primaryPublisher;
+  private final int    yearPublished;
+  
+  /**
+   * Constructor.
+   * 
+   * @param gameName The name of the game we want to search for
+   * @param primaryPublisher The name of the primary publisher, if available
+   * @param yearPublished The year this game was published, or 0 if not known.
+   */
+  public AutoNameQuery(String gameName, String primaryPublisher, int yearPublished) {
+    this.gameName         = gameName;
+    this.primaryPublisher = primaryPublisher;
+    this.yearPublished    = yearPublished;
+  }
+  
+  public String getGameName() {
+    return gameName;
+  }
+  
+  public String getPrimaryPublisher() {
+    return primaryPublisher;
+  }
+  
+  public int getYearPublished() {
+    return yearPublished;
+  }
+}
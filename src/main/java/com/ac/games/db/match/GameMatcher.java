@@ -0,0 +1,300 @@
+package com.ac.games.db.match;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.ac.games.data.Game;
+import com.ac.games.db.DatabaseFutures;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * In-memory index of every {@link Game} name, publisher and year, used to match crawled listings to games
+ * without a fuzzy database query per listing.
+ * <p>
+ * Candidates are found by blocking: games with exactly the same normalized name, and otherwise games that
+ * share a name token, starting from the rarest tokens and skipping tokens shared by more than
+ * <code>maxBlockSize</code> games unless nothing else is left.  Each candidate is scored on name similarity
+ * (Jaro-Winkler on the whole name, averaged with the token Dice coefficient), then nudged up or down by
+ * agreement on publisher and year.  The best candidate at or above the threshold wins.
+ * <p>
+ * The index can be read while it is being updated; a lookup racing with an update may see the game either
+ * before or after the change.
+ * 
+ * @author ac010168
+ */
+public class GameMatcher {
+
+  /** Default minimum score for a match */
+  public static final double DEFAULT_THRESHOLD      = 0.88;
+  /** Default cap on the number of games a token can block to before it is skipped */
+  public static final int    DEFAULT_MAX_BLOCK_SIZE = 2000;
+  
+  private static final double PUBLISHER_BONUS = 0.05;
+  private static final double YEAR_BONUS      = 0.05;
+  private static final double YEAR_PENALTY    = 0.10;
+  
+  private final double threshold;
+  private final int    maxBlockSize;
+  
+  private final ConcurrentHashMap<Long, Entry>         entries;
+  private final ConcurrentHashMap<String, Set<Long>> gamesByName;
+  private final ConcurrentHashMap<String, Set<Long>> gamesByToken;
+  
+  /**
+   * Constructor, for an empty index.
+   * 
+   * @param threshold The minimum score for a match.
+   * @param maxBlockSize Tokens shared by more games than this are only used if nothing else is left.
+   */
+  public GameMatcher(double threshold, int maxBlockSize) {
+    this.threshold    = threshold;
+    this.maxBlockSize = maxBlockSize;
+    entries      = new ConcurrentHashMap<Long, Entry>();
+    gamesByName  = new ConcurrentHashMap<String, Set<Long>>();
+    gamesByToken = new ConcurrentHashMap<String, Set<Long>>();
+  }
+  
+  /**
+   * Build an index from every {@link Game} in {@link GamesDatabase#getGameIDList()}, split across partitions.
+   * 
+   * @param database The database to read from.
+   * @param partitionCount The number of threads to read with.
+   * @param threshold The minimum score for a match.
+   * @param maxBlockSize Tokens shared by more games than this are only used if nothing else is left.
+   * @return A new, fully loaded index.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public static GameMatcher build(final GamesDatabase database, final int partitionCount, double threshold, int maxBlockSize) throws ConfigurationException, DatabaseOperationException {
+    final List<Long> gameIDs = database.getGameIDList();
+    final GameMatcher matcher = new GameMatcher(threshold, maxBlockSize);
+    
+    ExecutorService executor = Executors.newFixedThreadPool(partitionCount);
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>(partitionCount);
+      for (int i = 0; i < partitionCount; i++) {
+        final int partition = i;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int j = partition; j < gameIDs.size(); j += partitionCount) {
+              Game game = database.readGame(gameIDs.get(j));
+              if (game != null) matcher.putGame(game);
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures)
+        DatabaseFutures.get(future);
+      return matcher;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+  
+  /**
+   * Add or replace a game.
+   * 
+   * @param game The game as it now exists in the database.
+   */
+  public void putGame(Game game) {
+    Entry entry = new Entry(game.getGameID(), game.getName(), game.getPrimaryPublisher(), game.getYearPublished());
+    synchronized (entries) {
+      removeGame(game.getGameID());
+      entries.put(entry.gameID, entry);
+      addPosting(gamesByName, entry.name, entry.gameID);
+      for (String token : entry.tokens)
+        addPosting(gamesByToken, token, entry.gameID);
+    }
+  }
+  
+  /**
+   * Remove a game.
+   * 
+   * @param gameID The gameID that was deleted.
+   */
+  public void removeGame(long gameID) {
+    synchronized (entries) {
+      Entry entry = entries.remove(gameID);
+      if (entry == null) return;
+      removePosting(gamesByName, entry.name, gameID);
+      for (String token : entry.tokens)
+        removePosting(gamesByToken, token, gameID);
+    }
+  }
+  
+  public int size() {
+    return entries.size();
+  }
+  
+  /**
+   * Find the game best matching a listing.
+   * 
+   * @param gameName The name of the game we want to search for
+   * @param primaryPublisher The name of the primary publisher, if available
+   * @param yearPublished The year this game was published, or 0 if not known.
+   * @return The matching gameID, or -1 if no game scores at or above the threshold.
+   */
+  public long match(String gameName, String primaryPublisher, int yearPublished) {
+    Entry query = new Entry(-1L, gameName, primaryPublisher, yearPublished);
+    long bestID = -1L;
+    double bestScore = threshold;
+    for (Long candidateID : candidates(query)) {
+      Entry candidate = entries.get(candidateID);
+      if (candidate == null) continue;
+      double score = score(query, candidate);
+      if (score > bestScore || (score == bestScore && (bestID == -1L || candidate.gameID < bestID))) {
+        bestScore = score;
+        bestID    = candidate.gameID;
+      }
+    }
+    return bestID;
+  }
+  
+  /**
+   * Check whether any game is a candidate for a listing name: a game with the same normalized name, or one
+   * sharing a name token with it.  A name with no candidates can't be matched by name at all.
+   * 
+   * @param gameName The name of the game we want to search for
+   * @return true if at least one game would be scored for this name.
+   */
+  public boolean hasCandidates(String gameName) {
+    return !candidates(new Entry(-1L, gameName, null, 0)).isEmpty();
+  }
+  
+  /**
+   * Match a batch of listings, split across partitions.
+   * 
+   * @param queries The listings.
+   * @param partitionCount The number of threads to match with.
+   * @return The matching gameID for each query, in the same order, with -1 for no match.
+   */
+  public long[] matchAll(final List<AutoNameQuery> queries, final int partitionCount) {
+    final long[] results = new long[queries.size()];
+    ExecutorService executor = Executors.newFixedThreadPool(partitionCount);
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>(partitionCount);
+      for (int i = 0; i < partitionCount; i++) {
+        final int partition = i;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int j = partition; j < queries.size(); j += partitionCount) {
+              AutoNameQuery query = queries.get(j);
+              results[j] = match(query.getGameName(), query.getPrimaryPublisher(), query.getYearPublished());
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        try {
+          DatabaseFutures.get(future);
+        } catch (ConfigurationException ce) {
+          //Matching makes no database calls, so this can't happen
+          throw new DatabaseOperationException(ce);
+        }
+      }
+      return results;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+  
+  /**
+   * Find the games worth scoring for a query.
+   */
+  private Set<Long> candidates(Entry query) {
+    Set<Long> exact = gamesByName.get(query.name);
+    if (exact != null && !exact.isEmpty()) return exact;
+    
+    List<Set<Long>> blocks = new ArrayList<Set<Long>>(query.tokens.size());
+    for (String token : query.tokens) {
+      Set<Long> block = gamesByToken.get(token);
+      if (block != null && !block.isEmpty()) blocks.add(block);
+    }
+    Set<Long> candidates = new HashSet<Long>();
+    if (blocks.isEmpty()) return candidates;
+    
+    Collections.sort(blocks, SMALLEST_FIRST);
+    for (Set<Long> block : blocks) {
+      if (block.size() > maxBlockSize && !candidates.isEmpty()) break;
+      candidates.addAll(block);
+      if (block.size() > maxBlockSize) break;
+    }
+    return candidates;
+  }
+  
+  private static double score(Entry query, Entry candidate) {
+    double score = query.name.equals(candidate.name) ? 1.0
+                 : (NameSimilarity.jaroWinkler(query.name, candidate.name) + NameSimilarity.tokenDice(query.tokens, candidate.tokens)) / 2.0;
+    
+    if (!query.publisher.isEmpty() && !candidate.publisher.isEmpty()) {
+      boolean samePublisher = query.publisher.contains(candidate.publisher) || candidate.publisher.contains(query.publisher);
+      score += samePublisher ? PUBLISHER_BONUS : -PUBLISHER_BONUS;
+    }
+    if (query.year > 0 && candidate.year > 0) {
+      int yearGap = Math.abs(query.year - candidate.year);
+      if (yearGap == 0)     score += YEAR_BONUS;
+      else if (yearGap > 1) score -= YEAR_PENALTY;
+    }
+    return score;
+  }
+  
+  private static void addPosting(ConcurrentHashMap<String, Set<Long>> postings, String key, long gameID) {
+    if (key.isEmpty()) return;
+    Set<Long> ids = postings.get(key);
+    if (ids == null) {
+      ids = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+      postings.put(key, ids);
+    }
+    ids.add(gameID);
+  }
+  
+  private static void removePosting(ConcurrentHashMap<String, Set<Long>> postings, String key, long gameID) {
+    Set<Long> ids = postings.get(key);
+    if (ids == null) return;
+    ids.remove(gameID);
+    if (ids.isEmpty()) postings.remove(key);
+  }
+  
+  private static final Comparator<Set<Long>> SMALLEST_FIRST = new Comparator<Set<Long>>() {
+    @Override
+    public int compare(Set<Long> a, Set<Long> b) {
+      return a.size() - b.size();
+    }
+  };
+  
+  /**
+   * The normalized form of one game, or of a query.
+   */
+  private static final class Entry {
+    private final long         gameID;
+    private final String       name;
+    private final List<String> tokens;
+    private final String       publisher;
+    private final int          year;
+    
+    private Entry(long gameID, String name, String publisher, int year) {
+      this.gameID    = gameID;
+      this.name      = NameSimilarity.normalize(name);
+      this.tokens    = NameSimilarity.tokens(this.name);
+      this.publisher = NameSimilarity.normalize(publisher);
+      this.year      = year;
+    }
+  }
+}
@@ -0,0 +1,188 @@
+package com.ac.games.db.match;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.ac.games.data.CompactSearchData;
+import com.ac.games.data.Game;
+import com.ac.games.db.DatabaseFutures;
+import com.ac.games.db.DelegatingGamesDatabase;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * {@link GamesDatabase} decorator that narrows {@link #readGameFromAutoName(String, String, int)} lookups with a
+ * {@link GameMatcher}, kept current through the {@link Game} write calls.
+ * <p>
+ * The database's own matching rule always decides the result: the matcher never picks a game itself.  With
+ * <code>fallBackToDatabase</code> off, a listing whose name shares no token with any game, and matches no
+ * game name outright, is answered with null without a database query.  That skips the listings that can't
+ * match by name (accessories, sleeves, bundles) and gives the same answers as long as the database lookup
+ * only matches games sharing a name token with the listing.  With it on, every listing is looked up, and
+ * the results are exactly the database's.  {@link #readGamesFromAutoNames(List)} runs the lookups of a whole
+ * crawl batch in parallel.
+ * <p>
+ * A rebuild reads into a new matcher while the current one keeps answering.  Writes made during the rebuild
+ * go to the current matcher and are logged, and the log is replayed into the new matcher before it is
+ * published, so no write is lost to the swap.
+ * 
+ * @author ac010168
+ */
+public class MatchingGamesDatabase extends DelegatingGamesDatabase {
+
+  private final int     partitionCount;
+  private final double  threshold;
+  private final int     maxBlockSize;
+  private final boolean fallBackToDatabase;
+  private volatile GameMatcher matcher;
+  /** Guards mirrored writes against the swap at the end of a rebuild */
+  private final Object mirrorLock = new Object();
+  /** Writes made while a rebuild runs, as the {@link Game} put or the gameID removed; null otherwise */
+  private List<Object> rebuildLog;
+  
+  /**
+   * Basic Constructor.  The matcher is built when the connection is initialized.
+   * 
+   * @param delegate The database to wrap.
+   */
+  public MatchingGamesDatabase(GamesDatabase delegate) {
+    this(delegate, Runtime.getRuntime().availableProcessors(), GameMatcher.DEFAULT_THRESHOLD, GameMatcher.DEFAULT_MAX_BLOCK_SIZE, true);
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param delegate The database to wrap.
+   * @param partitionCount The number of threads used to build the matcher and look up batches.
+   * @param threshold The minimum score for a match.
+   * @param maxBlockSize Tokens shared by more games than this are only used if nothing else is left.
+   * @param fallBackToDatabase true to look up every listing, false to skip listings with no candidate games.
+   */
+  public MatchingGamesDatabase(GamesDatabase delegate, int partitionCount, double threshold, int maxBlockSize, boolean fallBackToDatabase) {
+    super(delegate);
+    this.partitionCount     = partitionCount;
+    this.threshold          = threshold;
+    this.maxBlockSize       = maxBlockSize;
+    this.fallBackToDatabase = fallBackToDatabase;
+    this.matcher            = new GameMatcher(threshold, maxBlockSize);
+  }
+  
+  @Override
+  public void initializeDBConnection() throws ConfigurationException {
+    delegate.initializeDBConnection();
+    rebuildMatcher();
+  }
+  
+  /**
+   * Reload the matcher from the database.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public synchronized void rebuildMatcher() throws ConfigurationException, DatabaseOperationException {
+    synchronized (mirrorLock) {
+      rebuildLog = new ArrayList<Object>();
+    }
+    try {
+      GameMatcher built = GameMatcher.build(delegate, partitionCount, threshold, maxBlockSize);
+      synchronized (mirrorLock) {
+        for (Object write : rebuildLog) {
+          if (write instanceof Game) built.putGame((Game)write);
+          else                       built.removeGame((Long)write);
+        }
+        matcher = built;
+      }
+    } finally {
+      synchronized (mirrorLock) {
+        rebuildLog = null;
+      }
+    }
+  }
+  
+  public GameMatcher getMatcher() {
+    return matcher;
+  }
+  
+  @Override
+  public CompactSearchData readGameFromAutoName(String gameName, String primaryPublisher, int yearPublished) throws ConfigurationException, DatabaseOperationException {
+    if (!fallBackToDatabase && !matcher.hasCandidates(gameName)) return null;
+    return delegate.readGameFromAutoName(gameName, primaryPublisher, yearPublished);
+  }
+  
+  /**
+   * Batch form of {@link #readGameFromAutoName(String, String, int)}, with the lookups split across
+   * partitions.
+   * 
+   * @param queries The listings to match.
+   * @return The match for each query, in the same order, with null where there is no match.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public List<CompactSearchData> readGamesFromAutoNames(final List<AutoNameQuery> queries) throws ConfigurationException, DatabaseOperationException {
+    final CompactSearchData[] results = new CompactSearchData[queries.size()];
+    final int partitions = Math.max(1, Math.min(partitionCount, queries.size()));
+    ExecutorService executor = Executors.newFixedThreadPool(partitions);
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>(partitions);
+      for (int i = 0; i < partitions; i++) {
+        final int partition = i;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int j = partition; j < queries.size(); j += partitions) {
+              AutoNameQuery query = queries.get(j);
+              results[j] = readGameFromAutoName(query.getGameName(), query.getPrimaryPublisher(), query.getYearPublished());
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures)
+        DatabaseFutures.get(future);
+      return new ArrayList<CompactSearchData>(Arrays.asList(results));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+  
+  @Override
+  public void insertGame(Game game) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertGame(game);
+    mirrorPut(game);
+  }
+  
+  @Override
+  public void updateGame(Game game) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateGame(game);
+    mirrorPut(game);
+  }
+  
+  @Override
+  public void deleteGame(long gameID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteGame(gameID);
+    mirrorRemove(gameID);
+  }
+  
+  private void mirrorPut(Game game) {
+    synchronized (mirrorLock) {
+      matcher.putGame(game);
+      if (rebuildLog != null) rebuildLog.add(game);
+    }
+  }
+  
+  private void mirrorRemove(long gameID) {
+    synchronized (mirrorLock) {
+      matcher.removeGame(gameID);
+      if (rebuildLog != null) rebuildLog.add(gameID);
+    }
+  }
+}
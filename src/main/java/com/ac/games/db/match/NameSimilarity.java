@@ -0,0 +1,108 @@
+package com.ac.games.db.match;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Name normalization and string similarity for matching listings to games.
+ * 
+ * @author ac010168
+ */
+public final class NameSimilarity {
+
+  /** Words that don't help tell one game from another */
+  private static final Set<String> STOP_WORDS = new HashSet<String>(Arrays.asList("the", "a", "an", "of", "and", "game", "board"));
+  
+  private NameSimilarity() {}
+  
+  /**
+   * Normalize a name: accents removed, lower-cased, punctuation replaced with spaces, and whitespace collapsed.
+   * 
+   * @param name The raw name.
+   * @return The normalized name, or an empty String for null.
+   */
+  public static String normalize(String name) {
+    if (name == null) return "";
+    String stripped = Normalizer.normalize(name, Normalizer.Form.NFD).replaceAll("\\p{M}+", "");
+    return stripped.toLowerCase(Locale.ENGLISH).replace("&", " and ").replaceAll("[^a-z0-9]+", " ").trim();
+  }
+  
+  /**
+   * Split a normalized name into its distinct tokens, without stop words.
+   * 
+   * @param normalized A name from {@link #normalize(String)}.
+   * @return The tokens, in order of first appearance.
+   */
+  public static List<String> tokens(String normalized) {
+    List<String> tokens = new ArrayList<String>();
+    if (normalized.isEmpty()) return tokens;
+    for (String token : normalized.split(" "))
+      if (!STOP_WORDS.contains(token) && !tokens.contains(token)) tokens.add(token);
+    return tokens;
+  }
+  
+  /**
+   * Dice coefficient of two token lists.
+   * 
+   * @return 2 * shared / (a + b), or 0 if both are empty.
+   */
+  public static double tokenDice(List<String> a, List<String> b) {
+    if (a.isEmpty() && b.isEmpty()) return 0.0;
+    int shared = 0;
+    for (String token : a)
+      if (b.contains(token)) shared++;
+    return (2.0 * shared) / (a.size() + b.size());
+  }
+  
+  /**
+   * Jaro-Winkler similarity of two strings.
+   * 
+   * @return A value between 0 (nothing in common) and 1 (identical).
+   */
+  public static double jaroWinkler(String a, String b) {
+    if (a.equals(b)) return 1.0;
+    int lengthA = a.length();
+    int lengthB = b.length();
+    if (lengthA == 0 || lengthB == 0) return 0.0;
+    
+    int window = Math.max(0, Math.max(lengthA, lengthB) / 2 - 1);
+    boolean[] matchedA = new boolean[lengthA];
+    boolean[] matchedB = new boolean[lengthB];
+    int matches = 0;
+    for (int i = 0; i < lengthA; i++) {
+      int start = Math.max(0, i - window);
+      int end   = Math.min(lengthB, i + window + 1);
+      for (int j = start; j < end; j++) {
+        if (!matchedB[j] && a.charAt(i) == b.charAt(j)) {
+          matchedA[i] = true;
+          matchedB[j] = true;
+          matches++;
+          break;
+        }
+      }
+    }
+    if (matches == 0) return 0.0;
+    
+    int transpositions = 0;
+    int j = 0;
+    for (int i = 0; i < lengthA; i++) {
+      if (!matchedA[i]) continue;
+      while (!matchedB[j]) j++;
+      if (a.charAt(i) != b.charAt(j)) transpositions++;
+      j++;
+    }
+    double m = matches;
+    double jaro = (m / lengthA + m / lengthB + (m - transpositions / 2.0) / m) / 3.0;
+    
+    int prefix = 0;
+    int maxPrefix = Math.min(4, Math.min(lengthA, lengthB));
+    while (prefix < maxPrefix && a.charAt(prefix) == b.charAt(prefix))
+      prefix++;
+    return jaro + prefix * 0.1 * (1.0 - jaro);
+  }
+}
@@ -0,0 +1,6 @@
+/**
+ * This package holds the in-memory matcher used to reconcile crawled listings with {@link com.ac.games.data.Game} records.
+ * 
+ * @author ac010168
+ */
+package com.ac.games.db.match;
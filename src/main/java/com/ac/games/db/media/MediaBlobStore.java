@@ -0,0 +1,267 @@
+package com.ac.games.db.media;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * Content-addressed store for media files on the local filesystem.
+ * <p>
+ * Each file is stored once under its SHA-256 hash (<code>blobs/ab/cd/abcd...</code>), and each mediaID holds
+ * a small reference file pointing at its hash (<code>refs/mediaID</code>), so identical uploads share one copy.
+ * Writes stream through a direct buffer into a temp file, hashing as they go, and are moved into place
+ * atomically.  Reads never copy the content onto the heap: {@link #transferTo(long, WritableByteChannel)}
+ * uses {@link FileChannel#transferTo(long, long, WritableByteChannel)}, and {@link #map(long)} returns a
+ * read-only memory mapping.
+ * 
+ * @author ac010168
+ */
+public class MediaBlobStore {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  
+  private final Path blobDir;
+  private final Path refDir;
+  private final Path tempDir;
+  /** Number of mediaIDs pointing at each hash */
+  private final Map<String, Integer> refCounts;
+  
+  /**
+   * Open a store, creating its directories if needed and loading the reference counts.
+   * 
+   * @param rootDir The directory the store lives in.
+   * 
+   * @throws ConfigurationException Throws this exception if the store directory cannot be created or read.
+   */
+  public MediaBlobStore(Path rootDir) throws ConfigurationException {
+    blobDir   = rootDir.resolve("blobs");
+    refDir    = rootDir.resolve("refs");
+    tempDir   = rootDir.resolve("tmp");
+    refCounts = new HashMap<String, Integer>();
+    
+    try {
+      Files.createDirectories(blobDir);
+      Files.createDirectories(refDir);
+      Files.createDirectories(tempDir);
+      try (DirectoryStream<Path> refs = Files.newDirectoryStream(refDir)) {
+        for (Path ref : refs) {
+          String hash = new String(Files.readAllBytes(ref), StandardCharsets.US_ASCII);
+          incrementRef(hash);
+        }
+      }
+    } catch (IOException ioe) {
+      throw new ConfigurationException("Unable to open the media store at " + rootDir, ioe);
+    }
+  }
+  
+  /**
+   * Store the content for a mediaID, replacing any content it already had.  The channel is read to the end
+   * but not closed.
+   * 
+   * @param mediaID The mediaID the content belongs to.
+   * @param content The content to store.
+   * @return The SHA-256 hash of the content, in hex.
+   * 
+   * @throws DatabaseOperationException Throws this exception if the content cannot be written.
+   */
+  public String store(long mediaID, ReadableByteChannel content) throws DatabaseOperationException {
+    Path temp = null;
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+      temp = Files.createTempFile(tempDir, "upload", ".tmp");
+      try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+        while (content.read(buffer) != -1) {
+          buffer.flip();
+          digest.update(buffer.duplicate());
+          while (buffer.hasRemaining())
+            out.write(buffer);
+          buffer.clear();
+        }
+        out.force(true);
+      }
+      
+      String hash = toHex(digest.digest());
+      Path blob = blobPath(hash);
+      Files.createDirectories(blob.getParent());
+      synchronized (this) {
+        if (Files.exists(blob)) {
+          Files.delete(temp);
+        } else {
+          try {
+            Files.move(temp, blob, StandardCopyOption.ATOMIC_MOVE);
+          } catch (FileAlreadyExistsException fae) {
+            Files.delete(temp);
+          }
+        }
+        temp = null;
+        
+        String oldHash = readRef(mediaID);
+        writeRef(mediaID, hash);
+        incrementRef(hash);
+        if (oldHash != null) decrementRef(oldHash);
+      }
+      return hash;
+    } catch (IOException ioe) {
+      throw new DatabaseOperationException("Unable to store content for media " + mediaID, ioe);
+    } catch (NoSuchAlgorithmException nsae) {
+      throw new DatabaseOperationException("SHA-256 is not available", nsae);
+    } finally {
+      if (temp != null) {
+        try {
+          Files.deleteIfExists(temp);
+        } catch (IOException ioe) {
+          //The temp file will be orphaned, but there's nothing more we can do about it here
+        }
+      }
+    }
+  }
+  
+  /**
+   * Send the content for a mediaID straight from the file to the target channel, without copying it
+   * through the heap.  The target channel is not closed.
+   * 
+   * @param mediaID The mediaID to send.
+   * @param target The channel to write to, such as a socket.
+   * @return The number of bytes sent, or -1 if there is no content for this mediaID.
+   * 
+   * @throws DatabaseOperationException Throws this exception if the content cannot be read.
+   */
+  public long transferTo(long mediaID, WritableByteChannel target) throws DatabaseOperationException {
+    try {
+      Path blob = findBlob(mediaID);
+      if (blob == null) return -1;
+      try (FileChannel in = FileChannel.open(blob, StandardOpenOption.READ)) {
+        long size = in.size();
+        long position = 0;
+        while (position < size)
+          position += in.transferTo(position, size - position, target);
+        return size;
+      }
+    } catch (IOException ioe) {
+      throw new DatabaseOperationException("Unable to read content for media " + mediaID, ioe);
+    }
+  }
+  
+  /**
+   * Memory-map the content for a mediaID.  The mapping stays valid after the file is deleted.
+   * 
+   * @param mediaID The mediaID to map.
+   * @return A read-only mapping of the content, or null if there is no content for this mediaID.
+   * 
+   * @throws DatabaseOperationException Throws this exception if the content cannot be mapped.
+   */
+  public MappedByteBuffer map(long mediaID) throws DatabaseOperationException {
+    try {
+      Path blob = findBlob(mediaID);
+      if (blob == null) return null;
+      try (FileChannel in = FileChannel.open(blob, StandardOpenOption.READ)) {
+        return in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+      }
+    } catch (IOException ioe) {
+      throw new DatabaseOperationException("Unable to map content for media " + mediaID, ioe);
+    }
+  }
+  
+  /**
+   * Gets the size of the content for a mediaID.
+   * 
+   * @param mediaID The mediaID.
+   * @return The content size in bytes, or -1 if there is no content for this mediaID.
+   * 
+   * @throws DatabaseOperationException Throws this exception if the content cannot be read.
+   */
+  public long size(long mediaID) throws DatabaseOperationException {
+    try {
+      Path blob = findBlob(mediaID);
+      return blob == null ? -1 : Files.size(blob);
+    } catch (IOException ioe) {
+      throw new DatabaseOperationException("Unable to read content for media " + mediaID, ioe);
+    }
+  }
+  
+  /**
+   * Remove the content for a mediaID.  The file itself is only deleted once no other mediaID shares it.
+   * 
+   * @param mediaID The mediaID to remove.
+   * @return true if there was content to remove.
+   * 
+   * @throws DatabaseOperationException Throws this exception if the content cannot be removed.
+   */
+  public synchronized boolean delete(long mediaID) throws DatabaseOperationException {
+    try {
+      String hash = readRef(mediaID);
+      if (hash == null) return false;
+      Files.delete(refDir.resolve(Long.toString(mediaID)));
+      decrementRef(hash);
+      return true;
+    } catch (IOException ioe) {
+      throw new DatabaseOperationException("Unable to delete content for media " + mediaID, ioe);
+    }
+  }
+  
+  private Path findBlob(long mediaID) throws IOException {
+    String hash;
+    synchronized (this) {
+      hash = readRef(mediaID);
+    }
+    return hash == null ? null : blobPath(hash);
+  }
+  
+  private Path blobPath(String hash) {
+    return blobDir.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+  }
+  
+  private String readRef(long mediaID) throws IOException {
+    Path ref = refDir.resolve(Long.toString(mediaID));
+    if (!Files.exists(ref)) return null;
+    return new String(Files.readAllBytes(ref), StandardCharsets.US_ASCII);
+  }
+  
+  private void writeRef(long mediaID, String hash) throws IOException {
+    Path temp = Files.createTempFile(tempDir, "ref", ".tmp");
+    Files.write(temp, hash.getBytes(StandardCharsets.US_ASCII));
+    Files.move(temp, refDir.resolve(Long.toString(mediaID)), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+  
+  private void incrementRef(String hash) {
+    Integer count = refCounts.get(hash);
+    refCounts.put(hash, count == null ? 1 : count + 1);
+  }
+  
+  private void decrementRef(String hash) throws IOException {
+    Integer count = refCounts.get(hash);
+    if (count == null || count <= 1) {
+      refCounts.remove(hash);
+      Files.deleteIfExists(blobPath(hash));
+    } else {
+      refCounts.put(hash, count - 1);
+    }
+  }
+  
+  private static String toHex(byte[] bytes) {
+    char[] hex = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      hex[i * 2]     = Character.forDigit((bytes[i] >> 4) & 0xF, 16);
+      hex[i * 2 + 1] = Character.forDigit(bytes[i] & 0xF, 16);
+    }
+    return new String(hex);
+  }
+}
@@ -0,0 +1,99 @@
+package com.ac.games.db.media;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+import com.ac.games.data.MediaItem;
+import com.ac.games.db.DelegatingGamesDatabase;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * {@link GamesDatabase} decorator that ties {@link MediaItem} metadata to content in a {@link MediaBlobStore}.
+ * Content is written before the metadata, so a {@link MediaItem} never points at missing content, and is
+ * removed when the {@link MediaItem} is deleted.
+ * 
+ * @author ac010168
+ */
+public class MediaContentGamesDatabase extends DelegatingGamesDatabase {
+
+  private final MediaBlobStore blobStore;
+  
+  /**
+   * Constructor.
+   * 
+   * @param delegate The database to wrap.
+   * @param blobStore The store holding the media content.
+   */
+  public MediaContentGamesDatabase(GamesDatabase delegate, MediaBlobStore blobStore) {
+    super(delegate);
+    this.blobStore = blobStore;
+  }
+  
+  public MediaBlobStore getBlobStore() {
+    return blobStore;
+  }
+  
+  /**
+   * Insert a {@link MediaItem} along with its content.
+   * 
+   * @param item The {@link MediaItem} object to be written to the database.
+   * @param content The media content.  The channel is read to the end but not closed.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public void insertMediaItem(MediaItem item, ReadableByteChannel content) throws ConfigurationException, DatabaseOperationException {
+    blobStore.store(item.getMediaID(), content);
+    boolean inserted = false;
+    try {
+      delegate.insertMediaItem(item);
+      inserted = true;
+    } finally {
+      if (!inserted) blobStore.delete(item.getMediaID());
+    }
+  }
+  
+  /**
+   * Send the content for a {@link MediaItem} straight to a channel, such as a socket.
+   * 
+   * @param mediaID The mediaID to send.
+   * @param target The channel to write to.  It is not closed.
+   * @return The number of bytes sent, or -1 if there is no content for this mediaID.
+   * 
+   * @throws DatabaseOperationException Throws this exception if the content cannot be read.
+   */
+  public long transferMediaContent(long mediaID, WritableByteChannel target) throws DatabaseOperationException {
+    return blobStore.transferTo(mediaID, target);
+  }
+  
+  /**
+   * Memory-map the content for a {@link MediaItem}.
+   * 
+   * @param mediaID The mediaID to map.
+   * @return A read-only mapping of the content, or null if there is no content for this mediaID.
+   * 
+   * @throws DatabaseOperationException Throws this exception if the content cannot be mapped.
+   */
+  public MappedByteBuffer mapMediaContent(long mediaID) throws DatabaseOperationException {
+    return blobStore.map(mediaID);
+  }
+  
+  @Override
+  public void deleteMediaItem(long mediaID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteMediaItem(mediaID);
+    blobStore.delete(mediaID);
+  }
+  
+  @Override
+  public List<MediaItem> deleteMediaItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    List<MediaItem> deleted = delegate.deleteMediaItemsByUserID(userID);
+    for (MediaItem item : deleted)
+      blobStore.delete(item.getMediaID());
+    return deleted;
+  }
+}
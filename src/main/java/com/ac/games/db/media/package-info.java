@@ -0,0 +1,6 @@
+/**
+ * This package holds the local content store for {@link com.ac.games.data.MediaItem} files.
+ * 
+ * @author ac010168
+ */
+package com.ac.games.db.media;
@@ -0,0 +1,136 @@
+package com.ac.games.db.purge;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.ac.games.db.EntityType;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * Progress of one {@link UserPurger} job: the users being purged and the entity types already finished.
+ * Saved after every step, so an interrupted purge picks up where it stopped.
+ * <p>
+ * The file holds a magic number and format version, the userIDs and the finished types by name.  Version 1
+ * files, from when purges scanned tables by id, also hold scan positions; those are read and ignored.  Saves
+ * go to a temp file which is then moved into place, so a crash mid-save leaves the previous file intact.
+ * 
+ * @author ac010168
+ */
+public class PurgeCheckpoint {
+
+  private static final int MAGIC               = 0x41435055;
+  private static final int FORMAT_VERSION      = 2;
+  /** Older version with scan positions after the finished types */
+  private static final int SCAN_FORMAT_VERSION = 1;
+  
+  private final Set<Long>             userIDs;
+  private final Set<EntityType>       completedTypes;
+  
+  /**
+   * Start a new job.
+   * 
+   * @param userIDs The users to purge.
+   */
+  public PurgeCheckpoint(Set<Long> userIDs) {
+    this.userIDs        = Collections.unmodifiableSet(new TreeSet<Long>(userIDs));
+    this.completedTypes = EnumSet.noneOf(EntityType.class);
+  }
+  
+  public Set<Long> getUserIDs() {
+    return userIDs;
+  }
+  
+  public synchronized boolean isCompleted(EntityType type) {
+    return completedTypes.contains(type);
+  }
+  
+  public synchronized void markCompleted(EntityType type) {
+    completedTypes.add(type);
+  }
+  
+  /**
+   * Write this checkpoint to a file, replacing it.
+   * 
+   * @param file The file to write.
+   * 
+   * @throws DatabaseOperationException Throws this exception if the file cannot be written.
+   */
+  public synchronized void save(Path file) throws DatabaseOperationException {
+    Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+    try {
+      if (file.getParent() != null) Files.createDirectories(file.getParent());
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(userIDs.size());
+        for (Long userID : userIDs)
+          out.writeLong(userID);
+        out.writeInt(completedTypes.size());
+        for (EntityType type : completedTypes)
+          out.writeUTF(type.name());
+      } finally {
+        out.close();
+      }
+      Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException ioe) {
+      throw new DatabaseOperationException("Unable to save purge checkpoint to " + file, ioe);
+    }
+  }
+  
+  /**
+   * Read a checkpoint from a file.
+   * 
+   * @param file The file to read.
+   * @return The checkpoint, or null if the file does not exist.
+   * 
+   * @throws DatabaseOperationException Throws this exception if the file cannot be read or is not a
+   * checkpoint file.
+   */
+  public static PurgeCheckpoint load(Path file) throws DatabaseOperationException {
+    if (!Files.exists(file)) return null;
+    
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+      try {
+        if (in.readInt() != MAGIC)
+          throw new DatabaseOperationException(file + " is not a purge checkpoint");
+        int version = in.readInt();
+        if (version != FORMAT_VERSION && version != SCAN_FORMAT_VERSION)
+          throw new DatabaseOperationException(file + " has unsupported format version " + version);
+        int userCount = in.readInt();
+        Set<Long> userIDs = new TreeSet<Long>();
+        for (int i = 0; i < userCount; i++)
+          userIDs.add(in.readLong());
+        PurgeCheckpoint checkpoint = new PurgeCheckpoint(userIDs);
+        int completedCount = in.readInt();
+        for (int i = 0; i < completedCount; i++)
+          checkpoint.completedTypes.add(EntityType.valueOf(in.readUTF()));
+        if (version == SCAN_FORMAT_VERSION) {
+          int positionCount = in.readInt();
+          for (int i = 0; i < positionCount; i++) {
+            in.readUTF();
+            in.readLong();
+          }
+        }
+        return checkpoint;
+      } finally {
+        in.close();
+      }
+    } catch (IOException ioe) {
+      throw new DatabaseOperationException("Unable to load purge checkpoint from " + file, ioe);
+    } catch (IllegalArgumentException iae) {
+      throw new DatabaseOperationException("Unknown entity type in " + file, iae);
+    }
+  }
+}
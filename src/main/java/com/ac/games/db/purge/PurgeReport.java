@@ -0,0 +1,53 @@
+package com.ac.games.db.purge;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.ac.games.db.EntityType;
+
+/**
+ * Counts of records deleted by one {@link UserPurger} run.  A resumed run only counts what it deleted itself.
+ * 
+ * @author ac010168
+ */
+public final class PurgeReport {
+
+  private final Map<EntityType, Long> deletedCounts;
+  private final boolean               resumed;
+  
+  public PurgeReport(Map<EntityType, Long> deletedCounts, boolean resumed) {
+    this.deletedCounts = Collections.unmodifiableMap(new EnumMap<EntityType, Long>(deletedCounts));
+    this.resumed       = resumed;
+  }
+  
+  public long getDeletedCount(EntityType type) {
+    Long count = deletedCounts.get(type);
+    return count == null ? 0L : count;
+  }
+  
+  public Map<EntityType, Long> getDeletedCounts() {
+    return deletedCounts;
+  }
+  
+  /**
+   * Checks whether this run continued a job from a checkpoint.
+   * 
+   * @return true if the run was resumed.
+   */
+  public boolean isResumed() {
+    return resumed;
+  }
+  
+  @Override
+  public String toString() {
+    StringBuilder report = new StringBuilder(resumed ? "resumed: " : "");
+    boolean first = true;
+    for (Map.Entry<EntityType, Long> entry : deletedCounts.entrySet()) {
+      if (!first) report.append(", ");
+      report.append(entry.getKey()).append(": ").append(entry.getValue()).append(" deleted");
+      first = false;
+    }
+    return report.toString();
+  }
+}
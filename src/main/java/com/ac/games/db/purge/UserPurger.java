@@ -0,0 +1,268 @@
+package com.ac.games.db.purge;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ac.games.db.DatabaseFutures;
+import com.ac.games.db.EntityType;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * Deletes every record owned by a set of users: their collection items, wishlist items, plays, media items,
+ * collections, user details and finally the users themselves.
+ * <p>
+ * Each type is removed with the per-user bulk deletes on {@link GamesDatabase}, one call per user and type,
+ * with the types that don't depend on each other running in parallel and the users split over a pool of
+ * <code>threadCount</code> threads.  Items go first, then collections, then the user rows, so a user is only
+ * removed once nothing they own is left.  The cost of a purge grows with the number of users in it, not the
+ * size of the tables.
+ * <p>
+ * The purge does not stop the users from writing.  A record a user adds after its type's phase has finished
+ * (a collection item added once the items phase is done, say) is not deleted and is left behind as an
+ * orphan of the deleted user.  Lock the users out before purging them.
+ * <p>
+ * With a checkpoint file, progress is saved after each finished type, and the file is removed when the job
+ * completes.  An interrupted job is finished with {@link #resume()}, or by calling {@link #purgeUsers(Set)}
+ * again with the same users.  Without one, running the purge again is still safe, since every step only
+ * finds what is left.
+ * 
+ * @author ac010168
+ */
+public class UserPurger {
+
+  /** Default number of threads used for deletes */
+  public static final int DEFAULT_THREAD_COUNT = 8;
+  /** Entity types that can be deleted alongside each other */
+  private static final int MAX_PARALLEL_TYPES = 4;
+  
+  private final GamesDatabase database;
+  private final Path          checkpointFile;
+  private final int           threadCount;
+  
+  /**
+   * Basic Constructor, using the default thread count and no checkpoint file.
+   * 
+   * @param database The database to purge from.
+   */
+  public UserPurger(GamesDatabase database) {
+    this(database, null, DEFAULT_THREAD_COUNT);
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param database The database to purge from.
+   * @param checkpointFile The file progress is saved to, or null to not save progress.
+   * @param threadCount The number of threads used for deletes.
+   */
+  public UserPurger(GamesDatabase database, Path checkpointFile, int threadCount) {
+    if (threadCount < 1)
+      throw new IllegalArgumentException("threadCount must be at least 1");
+    this.database       = database;
+    this.checkpointFile = checkpointFile;
+    this.threadCount    = threadCount;
+  }
+  
+  /**
+   * Delete everything owned by a set of users.  If the checkpoint file holds an unfinished job for the same
+   * users, it is resumed.
+   * 
+   * @param userIDs The users to purge.
+   * @return The number of records deleted, by type.
+   * 
+   * @throws IllegalStateException If the checkpoint file holds an unfinished job for different users.
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public PurgeReport purgeUsers(Set<Long> userIDs) throws ConfigurationException, DatabaseOperationException {
+    PurgeCheckpoint existing = checkpointFile == null ? null : PurgeCheckpoint.load(checkpointFile);
+    if (existing == null) return run(new PurgeCheckpoint(userIDs), false);
+    if (!existing.getUserIDs().equals(new TreeSet<Long>(userIDs)))
+      throw new IllegalStateException(checkpointFile + " holds an unfinished purge of other users; finish it with resume() first");
+    return run(existing, true);
+  }
+  
+  /**
+   * Delete everything owned by one user.
+   * 
+   * @param userID The user to purge.
+   * @return The number of records deleted, by type.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public PurgeReport purgeUser(long userID) throws ConfigurationException, DatabaseOperationException {
+    return purgeUsers(new TreeSet<Long>(Arrays.asList(userID)));
+  }
+  
+  /**
+   * Finish the job saved in the checkpoint file.
+   * 
+   * @return The number of records deleted by this run, by type, or null if there was no unfinished job.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public PurgeReport resume() throws ConfigurationException, DatabaseOperationException {
+    PurgeCheckpoint existing = checkpointFile == null ? null : PurgeCheckpoint.load(checkpointFile);
+    return existing == null ? null : run(existing, true);
+  }
+  
+  private PurgeReport run(final PurgeCheckpoint checkpoint, boolean resumed) throws ConfigurationException, DatabaseOperationException {
+    Map<EntityType, AtomicLong> counts = new EnumMap<EntityType, AtomicLong>(EntityType.class);
+    for (EntityType type : Arrays.asList(EntityType.COLLECTION_ITEM, EntityType.WISHLIST_ITEM, EntityType.PLAYTHRU_ITEM,
+                                         EntityType.MEDIA_ITEM, EntityType.COLLECTION, EntityType.USER_DETAIL, EntityType.USER))
+      counts.put(type, new AtomicLong());
+    
+    ExecutorService typeExecutor   = Executors.newFixedThreadPool(MAX_PARALLEL_TYPES);
+    ExecutorService deleteExecutor = Executors.newFixedThreadPool(threadCount);
+    try {
+      Job job = new Job(checkpoint, counts, deleteExecutor);
+      save(checkpoint);
+      runPhase(typeExecutor, job, EntityType.COLLECTION_ITEM, EntityType.WISHLIST_ITEM, EntityType.PLAYTHRU_ITEM, EntityType.MEDIA_ITEM);
+      runPhase(typeExecutor, job, EntityType.COLLECTION);
+      runPhase(typeExecutor, job, EntityType.USER_DETAIL, EntityType.USER);
+      removeCheckpoint();
+    } finally {
+      typeExecutor.shutdownNow();
+      deleteExecutor.shutdownNow();
+    }
+    
+    Map<EntityType, Long> deleted = new EnumMap<EntityType, Long>(EntityType.class);
+    for (Map.Entry<EntityType, AtomicLong> entry : counts.entrySet())
+      deleted.put(entry.getKey(), entry.getValue().get());
+    return new PurgeReport(deleted, resumed);
+  }
+  
+  /**
+   * Purge several types at once, and wait for all of them.
+   */
+  private void runPhase(ExecutorService typeExecutor, final Job job, EntityType... types) throws ConfigurationException, DatabaseOperationException {
+    List<Future<Void>> futures = new ArrayList<Future<Void>>(types.length);
+    for (final EntityType type : types) {
+      futures.add(typeExecutor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          if (job.checkpoint.isCompleted(type)) return null;
+          purgeType(job, type);
+          job.checkpoint.markCompleted(type);
+          save(job.checkpoint);
+          return null;
+        }
+      }));
+    }
+    for (Future<Void> future : futures)
+      DatabaseFutures.get(future);
+  }
+  
+  private void purgeType(Job job, EntityType type) throws ConfigurationException, DatabaseOperationException {
+    switch (type) {
+      case USER_DETAIL:
+        for (long userID : job.checkpoint.getUserIDs()) {
+          if (database.readUserDetail(userID) == null) continue;
+          database.deleteUserDetail(userID);
+          job.counts.get(type).incrementAndGet();
+        }
+        break;
+        
+      case USER:
+        for (long userID : job.checkpoint.getUserIDs()) {
+          if (database.readUser(userID) == null) continue;
+          database.deleteUser(userID);
+          job.counts.get(type).incrementAndGet();
+        }
+        break;
+        
+      default:
+        deleteOwned(job, type);
+        break;
+    }
+  }
+  
+  /**
+   * Run the per-user bulk delete for one type against every user in the job, with the users split across
+   * the delete threads.
+   */
+  private void deleteOwned(final Job job, final EntityType type) throws ConfigurationException, DatabaseOperationException {
+    final List<Long> userIDs = new ArrayList<Long>(job.checkpoint.getUserIDs());
+    int partitions = Math.min(threadCount, userIDs.size());
+    List<Future<Void>> futures = new ArrayList<Future<Void>>(partitions);
+    for (int i = 0; i < partitions; i++) {
+      final int partition      = i;
+      final int partitionCount = partitions;
+      futures.add(job.deleteExecutor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          for (int j = partition; j < userIDs.size(); j += partitionCount)
+            job.counts.get(type).addAndGet(deleteOwned(type, userIDs.get(j)));
+          return null;
+        }
+      }));
+    }
+    for (Future<Void> future : futures)
+      DatabaseFutures.get(future);
+  }
+  
+  /**
+   * Delete every record of one type owned by a user.
+   * 
+   * @return The number of records deleted.
+   */
+  private int deleteOwned(EntityType type, long userID) throws ConfigurationException, DatabaseOperationException {
+    switch (type) {
+      case COLLECTION_ITEM: return database.deleteCollectionItemsByUserID(userID).size();
+      case WISHLIST_ITEM:   return database.deleteWishlistItemsByUserID(userID).size();
+      case PLAYTHRU_ITEM:   return database.deletePlaythruItemsByUserID(userID).size();
+      case MEDIA_ITEM:      return database.deleteMediaItemsByUserID(userID).size();
+      case COLLECTION:      return database.deleteCollectionsByUserID(userID).size();
+      default:
+        throw new IllegalArgumentException("Users do not own " + type + " records");
+    }
+  }
+  
+  private void save(PurgeCheckpoint checkpoint) throws DatabaseOperationException {
+    if (checkpointFile != null) checkpoint.save(checkpointFile);
+  }
+  
+  private void removeCheckpoint() throws DatabaseOperationException {
+    if (checkpointFile == null) return;
+    try {
+      Files.deleteIfExists(checkpointFile);
+    } catch (IOException ioe) {
+      throw new DatabaseOperationException("Unable to remove purge checkpoint " + checkpointFile, ioe);
+    }
+  }
+  
+  /**
+   * The state shared by every step of one run.
+   */
+  private static final class Job {
+    private final PurgeCheckpoint             checkpoint;
+    private final Map<EntityType, AtomicLong> counts;
+    private final ExecutorService             deleteExecutor;
+    
+    private Job(PurgeCheckpoint checkpoint, Map<EntityType, AtomicLong> counts, ExecutorService deleteExecutor) {
+      this.checkpoint     = checkpoint;
+      this.counts         = counts;
+      this.deleteExecutor = deleteExecutor;
+    }
+  }
+}
@@ -0,0 +1,6 @@
+/**
+ * This package holds the tool that deletes every record owned by a set of users.
+ * 
+ * @author ac010168
+ */
+package com.ac.games.db.purge;
@@ -0,0 +1,59 @@
+package com.ac.games.db.recent;
+
+import java.util.Date;
+
+import com.ac.games.db.EntityType;
+
+/**
+ * One item in a user's recent activity feed: a collection addition, wishlist addition or play.
+ * 
+ * @author ac010168
+ */
+public final class ActivityEntry {
+
+  private final EntityType type;
+  private final long       id;
+  private final long       time;
+  private final Object     item;
+  
+  /**
+   * Constructor.
+   * 
+   * @param type {@link EntityType#COLLECTION_ITEM}, {@link EntityType#WISHLIST_ITEM} or {@link EntityType#PLAYTHRU_ITEM}.
+   * @param id The itemID, wishID or playthruID.
+   * @param time When the activity happened, in milliseconds since the epoch.
+   * @param item The item itself.
+   */
+  public ActivityEntry(EntityType type, long id, long time, Object item) {
+    this.type = type;
+    this.id   = id;
+    this.time = time;
+    this.item = item;
+  }
+  
+  public EntityType getType() {
+    return type;
+  }
+  
+  public long getID() {
+    return id;
+  }
+  
+  public Date getDate() {
+    return new Date(time);
+  }
+  
+  long getTime() {
+    return time;
+  }
+  
+  /**
+   * Gets the item, which is a {@link com.ac.games.data.CollectionItem}, {@link com.ac.games.data.WishlistItem}
+   * or {@link com.ac.games.data.PlaythruItem} depending on {@link #getType()}.
+   * 
+   * @return The item.
+   */
+  public Object getItem() {
+    return item;
+  }
+}
@@ -0,0 +1,445 @@
+package com.ac.games.db.recent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.ac.games.data.CollectionItem;
+import com.ac.games.data.PlaythruItem;
+import com.ac.games.data.WishlistItem;
+import com.ac.games.db.DelegatingGamesDatabase;
+import com.ac.games.db.EntityType;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * {@link GamesDatabase} decorator that keeps each user's newest collection items, wishlist items and plays
+ * in memory, so {@link #getNewestCollectionItems(long, int)} and the recent activity feed cost the same no
+ * matter how large the collection is.
+ * <p>
+ * Each user has one bounded window per item type, kept current by the insert, update and delete calls.
+ * Windows are filled the first time the user is read, from {@link GamesDatabase#getNewestCollectionItems(long, int)},
+ * {@link GamesDatabase#readWishlistForUser(long)} and {@link GamesDatabase#readPlaythruItemsByUserID(long)}.
+ * A read for more items than a window holds goes to the database when it can; for plays, it returns what
+ * the window holds.
+ * <p>
+ * At most <code>maxUsers</code> users are held.  Past that, the users read least recently are dropped, down
+ * to nine tenths of the limit, and are loaded again if they are read later.  Items are returned as new
+ * objects on every read, so callers may modify them.
+ * 
+ * @author ac010168
+ */
+public class RecencyGamesDatabase extends DelegatingGamesDatabase {
+
+  /** Default number of items kept per user and type */
+  public static final int DEFAULT_CAPACITY  = 50;
+  /** Default number of users held */
+  public static final int DEFAULT_MAX_USERS = 10000;
+  
+  /** Least recently read first, over {userID, lastRead} pairs */
+  private static final Comparator<long[]> LEAST_RECENT_FIRST = new Comparator<long[]>() {
+    @Override
+    public int compare(long[] a, long[] b) {
+      return a[1] < b[1] ? -1 : (a[1] == b[1] ? 0 : 1);
+    }
+  };
+  
+  private final int capacity;
+  private final int maxUsers;
+  private final ConcurrentHashMap<Long, UserActivity> activityByUser;
+  /** Set while one thread drops idle users */
+  private final AtomicBoolean evicting;
+  /** Owning userID of each item held in a window, so deletes can find it */
+  private final ConcurrentHashMap<Long, Long> collectionOwners;
+  private final ConcurrentHashMap<Long, Long> wishlistOwners;
+  private final ConcurrentHashMap<Long, Long> playthruOwners;
+  
+  /**
+   * Basic Constructor, using the default capacity and user limit.
+   * 
+   * @param delegate The database to wrap.
+   */
+  public RecencyGamesDatabase(GamesDatabase delegate) {
+    this(delegate, DEFAULT_CAPACITY, DEFAULT_MAX_USERS);
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param delegate The database to wrap.
+   * @param capacity The number of items kept per user and type.
+   * @param maxUsers The number of users held before the least recently read are dropped.
+   */
+  public RecencyGamesDatabase(GamesDatabase delegate, int capacity, int maxUsers) {
+    super(delegate);
+    this.capacity         = capacity;
+    this.maxUsers         = maxUsers;
+    this.activityByUser   = new ConcurrentHashMap<Long, UserActivity>();
+    this.evicting         = new AtomicBoolean();
+    this.collectionOwners = new ConcurrentHashMap<Long, Long>();
+    this.wishlistOwners   = new ConcurrentHashMap<Long, Long>();
+    this.playthruOwners   = new ConcurrentHashMap<Long, Long>();
+  }
+  
+  //**********  Recency Reads  **********
+  @Override
+  public List<CollectionItem> getNewestCollectionItems(long userID, int topX) throws ConfigurationException, DatabaseOperationException {
+    while (true) {
+      UserActivity activity = activityFor(userID);
+      synchronized (activity) {
+        if (activity.evicted) continue;
+        loadCollection(activity, userID);
+        if (activity.collection.canServe(topX)) return activity.collection.newestItems(topX);
+        
+        List<CollectionItem> newest = delegate.getNewestCollectionItems(userID, Math.max(topX, capacity));
+        refillCollection(activity, userID, newest, Math.max(topX, capacity));
+        return newest.size() > topX ? new ArrayList<CollectionItem>(newest.subList(0, topX)) : newest;
+      }
+    }
+  }
+  
+  /**
+   * Gets the X most recent items on a user's wishlist.
+   * 
+   * @param userID The User for our wishlist
+   * @param topX The number of most recent items we want returned
+   * @return The items, newest first.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public List<WishlistItem> readNewestWishlistItems(long userID, int topX) throws ConfigurationException, DatabaseOperationException {
+    while (true) {
+      UserActivity activity = activityFor(userID);
+      synchronized (activity) {
+        if (activity.evicted) continue;
+        if (!activity.wishlistLoaded || !activity.wishlist.canServe(topX)) {
+          List<WishlistItem> wishlist = delegate.readWishlistForUser(userID);
+          RecentWindow full = new RecentWindow(EntityType.WISHLIST_ITEM, Math.max(topX, wishlist.size()));
+          for (WishlistItem item : wishlist)
+            full.put(item.getWishID(), timeOf(item.getDateAdded()), item);
+          refillWishlist(activity, userID, wishlist);
+          return full.newestItems(topX);
+        }
+        return activity.wishlist.newestItems(topX);
+      }
+    }
+  }
+  
+  /**
+   * Gets the X most recent plays logged by a user.  Only the newest plays up to the window capacity are
+   * available.
+   * 
+   * @param userID The User whose plays we want
+   * @param topX The number of most recent plays we want returned
+   * @return The plays, newest first.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public List<PlaythruItem> readNewestPlaythruItems(long userID, int topX) throws ConfigurationException, DatabaseOperationException {
+    while (true) {
+      UserActivity activity = activityFor(userID);
+      synchronized (activity) {
+        if (activity.evicted) continue;
+        loadPlaythrus(activity, userID);
+        return activity.playthrus.newestItems(topX);
+      }
+    }
+  }
+  
+  /**
+   * Gets a user's recent activity: collection additions, wishlist additions and plays, merged newest first.
+   * 
+   * @param userID The User whose activity we want
+   * @param topX The number of entries we want returned
+   * @return The entries, newest first.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public List<ActivityEntry> readRecentActivity(long userID, int topX) throws ConfigurationException, DatabaseOperationException {
+    while (true) {
+      UserActivity activity = activityFor(userID);
+      synchronized (activity) {
+        if (activity.evicted) continue;
+        loadCollection(activity, userID);
+        loadWishlist(activity, userID);
+        loadPlaythrus(activity, userID);
+        List<ActivityEntry> merged = new ArrayList<ActivityEntry>(topX * 3);
+        merged.addAll(activity.collection.newest(topX));
+        merged.addAll(activity.wishlist.newest(topX));
+        merged.addAll(activity.playthrus.newest(topX));
+        Collections.sort(merged, RecentWindow.newestFirst());
+        return merged.size() > topX ? new ArrayList<ActivityEntry>(merged.subList(0, topX)) : merged;
+      }
+    }
+  }
+  
+  //**********  CollectionItem Operations  **********
+  @Override
+  public void insertCollectionItem(CollectionItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertCollectionItem(item);
+    putCollectionItem(item);
+  }
+  
+  @Override
+  public void updateCollectionItem(CollectionItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateCollectionItem(item);
+    removeHeld(collectionOwners, item.getItemID(), EntityType.COLLECTION_ITEM);
+    putCollectionItem(item);
+  }
+  
+  @Override
+  public void deleteCollectionItem(long itemID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteCollectionItem(itemID);
+    removeHeld(collectionOwners, itemID, EntityType.COLLECTION_ITEM);
+  }
+  
+  @Override
+  public List<CollectionItem> deleteCollectionItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    List<CollectionItem> deleted = delegate.deleteCollectionItemsByUserID(userID);
+    for (CollectionItem item : deleted)
+      removeHeld(collectionOwners, item.getItemID(), EntityType.COLLECTION_ITEM);
+    return deleted;
+  }
+  
+  //**********  WishlistItem Operations  **********
+  @Override
+  public void insertWishlistItem(WishlistItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertWishlistItem(item);
+    putWishlistItem(item);
+  }
+  
+  @Override
+  public void updateWishlistItem(WishlistItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateWishlistItem(item);
+    removeHeld(wishlistOwners, item.getWishID(), EntityType.WISHLIST_ITEM);
+    putWishlistItem(item);
+  }
+  
+  @Override
+  public void deleteWishlistItem(long wishID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteWishlistItem(wishID);
+    removeHeld(wishlistOwners, wishID, EntityType.WISHLIST_ITEM);
+  }
+  
+  @Override
+  public List<WishlistItem> deleteWishlistItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    List<WishlistItem> deleted = delegate.deleteWishlistItemsByUserID(userID);
+    for (WishlistItem item : deleted)
+      removeHeld(wishlistOwners, item.getWishID(), EntityType.WISHLIST_ITEM);
+    return deleted;
+  }
+  
+  //**********  PlaythruItem Operations  **********
+  @Override
+  public void insertPlaythruItem(PlaythruItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertPlaythruItem(item);
+    putPlaythru(item);
+  }
+  
+  @Override
+  public void updatePlaythruItem(PlaythruItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.updatePlaythruItem(item);
+    removeHeld(playthruOwners, item.getPlaythruID(), EntityType.PLAYTHRU_ITEM);
+    putPlaythru(item);
+  }
+  
+  @Override
+  public void deletePlaythruItem(long playthruID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deletePlaythruItem(playthruID);
+    removeHeld(playthruOwners, playthruID, EntityType.PLAYTHRU_ITEM);
+  }
+  
+  @Override
+  public List<PlaythruItem> deletePlaythruItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    List<PlaythruItem> deleted = delegate.deletePlaythruItemsByUserID(userID);
+    for (PlaythruItem item : deleted)
+      removeHeld(playthruOwners, item.getPlaythruID(), EntityType.PLAYTHRU_ITEM);
+    return deleted;
+  }
+  
+  //**********  Window Maintenance  **********
+  /**
+   * Get a user's windows for a read, adding the user if needed.  The caller must check
+   * {@link UserActivity#evicted} once it holds the lock, and call again if it is set.
+   */
+  private UserActivity activityFor(long userID) {
+    UserActivity activity = activityByUser.get(userID);
+    if (activity == null) {
+      UserActivity created = new UserActivity(capacity);
+      activity = activityByUser.putIfAbsent(userID, created);
+      if (activity == null) {
+        activity = created;
+        if (activityByUser.size() > maxUsers) evictIdleUsers();
+      }
+    }
+    activity.lastRead = System.nanoTime();
+    return activity;
+  }
+  
+  /**
+   * Drop the users read least recently, down to nine tenths of the limit.  Only one thread does this at a
+   * time; the others carry on.
+   */
+  private void evictIdleUsers() {
+    if (!evicting.compareAndSet(false, true)) return;
+    try {
+      List<long[]> users = new ArrayList<long[]>(activityByUser.size());
+      for (Map.Entry<Long, UserActivity> entry : activityByUser.entrySet())
+        users.add(new long[] { entry.getKey(), entry.getValue().lastRead });
+      int excess = users.size() - (maxUsers - maxUsers / 10);
+      if (excess <= 0) return;
+      Collections.sort(users, LEAST_RECENT_FIRST);
+      for (int i = 0; i < excess; i++) {
+        UserActivity activity = activityByUser.get(users.get(i)[0]);
+        if (activity != null) evict(users.get(i)[0], activity);
+      }
+    } finally {
+      evicting.set(false);
+    }
+  }
+  
+  private void evict(long userID, UserActivity activity) {
+    synchronized (activity) {
+      if (!activityByUser.remove(userID, activity)) return;
+      release(collectionOwners, activity.collection);
+      release(wishlistOwners, activity.wishlist);
+      release(playthruOwners, activity.playthrus);
+      activity.collectionLoaded = false;
+      activity.wishlistLoaded   = false;
+      activity.playthrusLoaded  = false;
+      activity.evicted          = true;
+    }
+  }
+  
+  private void loadCollection(UserActivity activity, long userID) throws ConfigurationException, DatabaseOperationException {
+    if (activity.collectionLoaded) return;
+    refillCollection(activity, userID, delegate.getNewestCollectionItems(userID, capacity), capacity);
+  }
+  
+  private void refillCollection(UserActivity activity, long userID, List<CollectionItem> newest, int requested) {
+    release(collectionOwners, activity.collection);
+    activity.collection.clear(newest.size() < requested);
+    for (CollectionItem item : newest)
+      hold(collectionOwners, activity.collection, item.getItemID(), userID, timeOf(item.getDateAdded()), item);
+    activity.collectionLoaded = true;
+  }
+  
+  private void loadWishlist(UserActivity activity, long userID) throws ConfigurationException, DatabaseOperationException {
+    if (activity.wishlistLoaded) return;
+    refillWishlist(activity, userID, delegate.readWishlistForUser(userID));
+  }
+  
+  private void refillWishlist(UserActivity activity, long userID, List<WishlistItem> wishlist) {
+    release(wishlistOwners, activity.wishlist);
+    activity.wishlist.clear(true);
+    for (WishlistItem item : wishlist)
+      hold(wishlistOwners, activity.wishlist, item.getWishID(), userID, timeOf(item.getDateAdded()), item);
+    activity.wishlistLoaded = true;
+  }
+  
+  private void loadPlaythrus(UserActivity activity, long userID) throws ConfigurationException, DatabaseOperationException {
+    if (activity.playthrusLoaded) return;
+    release(playthruOwners, activity.playthrus);
+    activity.playthrus.clear(true);
+    for (PlaythruItem item : delegate.readPlaythruItemsByUserID(userID))
+      hold(playthruOwners, activity.playthrus, item.getPlaythruID(), userID, timeOf(item.getPlayDate()), item);
+    activity.playthrusLoaded = true;
+  }
+  
+  /**
+   * Items for a user whose window hasn't been loaded are skipped, since the load will read them.
+   */
+  private void putCollectionItem(CollectionItem item) {
+    UserActivity activity = activityByUser.get(item.getUserID());
+    if (activity == null) return;
+    synchronized (activity) {
+      if (activity.collectionLoaded)
+        hold(collectionOwners, activity.collection, item.getItemID(), item.getUserID(), timeOf(item.getDateAdded()), item);
+    }
+  }
+  
+  private void putWishlistItem(WishlistItem item) {
+    UserActivity activity = activityByUser.get(item.getUserID());
+    if (activity == null) return;
+    synchronized (activity) {
+      if (activity.wishlistLoaded)
+        hold(wishlistOwners, activity.wishlist, item.getWishID(), item.getUserID(), timeOf(item.getDateAdded()), item);
+    }
+  }
+  
+  private void putPlaythru(PlaythruItem item) {
+    UserActivity activity = activityByUser.get(item.getUserID());
+    if (activity == null) return;
+    synchronized (activity) {
+      if (activity.playthrusLoaded)
+        hold(playthruOwners, activity.playthrus, item.getPlaythruID(), item.getUserID(), timeOf(item.getPlayDate()), item);
+    }
+  }
+  
+  private void hold(ConcurrentHashMap<Long, Long> owners, RecentWindow window, long id, long userID, long time, Object item) {
+    if (!window.accepts(id, time)) return;
+    owners.put(id, userID);
+    long evictedID = window.put(id, time, item);
+    if (evictedID != -1L) owners.remove(evictedID);
+  }
+  
+  private static void release(ConcurrentHashMap<Long, Long> owners, RecentWindow window) {
+    for (Long id : window.ids())
+      owners.remove(id);
+  }
+  
+  private void removeHeld(ConcurrentHashMap<Long, Long> owners, long id, EntityType type) {
+    Long userID = owners.remove(id);
+    if (userID == null) return;
+    UserActivity activity = activityByUser.get(userID);
+    if (activity == null) return;
+    synchronized (activity) {
+      activity.window(type).remove(id);
+    }
+  }
+  
+  private static long timeOf(Date date) {
+    return date == null ? 0L : date.getTime();
+  }
+  
+  /**
+   * One user's windows.  All access is synchronized on this object, except for the read time.
+   */
+  private static final class UserActivity {
+    private final RecentWindow collection;
+    private final RecentWindow wishlist;
+    private final RecentWindow playthrus;
+    private boolean collectionLoaded;
+    private boolean wishlistLoaded;
+    private boolean playthrusLoaded;
+    /** Set once the user has been dropped, so a reader still holding this object looks the user up again */
+    private boolean evicted;
+    private volatile long lastRead;
+    
+    private UserActivity(int capacity) {
+      collection = new RecentWindow(EntityType.COLLECTION_ITEM, capacity);
+      wishlist   = new RecentWindow(EntityType.WISHLIST_ITEM, capacity);
+      playthrus  = new RecentWindow(EntityType.PLAYTHRU_ITEM, capacity);
+    }
+    
+    private RecentWindow window(EntityType type) {
+      switch (type) {
+        case COLLECTION_ITEM: return collection;
+        case WISHLIST_ITEM:   return wishlist;
+        default:              return playthrus;
+      }
+    }
+  }
+}
@@ -0,0 +1,156 @@
+package com.ac.games.db.recent;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import com.ac.games.db.EntityType;
+import com.ac.games.db.codec.DecodeBuffer;
+import com.ac.games.db.codec.EncodeBuffer;
+import com.ac.games.db.codec.EntityCodec;
+import com.ac.games.db.codec.EntityCodecs;
+
+/**
+ * The newest items of one type for one user, up to a fixed capacity, kept sorted newest first so the
+ * top X can be read without looking at the rest.  Not thread safe; {@link RecencyGamesDatabase} guards
+ * each user's windows with that user's lock.
+ * <p>
+ * The window is <i>complete</i> when it is known to hold every item the user has.  Once an item has been
+ * evicted to stay within capacity, a read for more items than the window holds has to go back to the database.
+ * <p>
+ * Items are held encoded with the {@link EntityCodec} for the type, and decoded into new objects on every
+ * read, so neither the writer's instance nor one handed to an earlier reader is ever shared.
+ * 
+ * @author ac010168
+ */
+final class RecentWindow {
+
+  private static final Comparator<ActivityEntry> NEWEST_FIRST = new Comparator<ActivityEntry>() {
+    @Override
+    public int compare(ActivityEntry a, ActivityEntry b) {
+      if (a.getTime() != b.getTime()) return a.getTime() > b.getTime() ? -1 : 1;
+      return a.getID() > b.getID() ? -1 : (a.getID() == b.getID() ? 0 : 1);
+    }
+  };
+  
+  private final EntityType type;
+  private final int        capacity;
+  private final EntityCodec<Object> codec;
+  private final TreeSet<ActivityEntry>   entries;
+  private final Map<Long, ActivityEntry> entriesByID;
+  private boolean complete;
+  
+  @SuppressWarnings("unchecked")
+  RecentWindow(EntityType type, int capacity) {
+    this.type        = type;
+    this.capacity    = capacity;
+    this.codec       = (EntityCodec<Object>)EntityCodecs.forEntityType(type);
+    this.entries     = new TreeSet<ActivityEntry>(NEWEST_FIRST);
+    this.entriesByID = new HashMap<Long, ActivityEntry>();
+    this.complete    = true;
+  }
+  
+  /**
+   * Add or replace an item.
+   * 
+   * @return The id of the item evicted to make room, or -1 if none was.
+   */
+  long put(long id, long time, Object item) {
+    remove(id);
+    EncodeBuffer out = new EncodeBuffer();
+    codec.encode(item, out);
+    ActivityEntry entry = new ActivityEntry(type, id, time, out.toByteArray());
+    entries.add(entry);
+    entriesByID.put(id, entry);
+    if (entries.size() <= capacity) return -1L;
+    
+    ActivityEntry evicted = entries.pollLast();
+    entriesByID.remove(evicted.getID());
+    complete = false;
+    return evicted.getID();
+  }
+  
+  /**
+   * Checks whether an item can be added without leaving a gap.  Once items have been evicted, an item older
+   * than everything held may have newer items missing between it and the window, so it is left out.
+   */
+  boolean accepts(long id, long time) {
+    if (complete || entriesByID.containsKey(id)) return true;
+    if (entries.isEmpty()) return false;
+    return NEWEST_FIRST.compare(new ActivityEntry(type, id, time, null), entries.last()) < 0;
+  }
+  
+  boolean remove(long id) {
+    ActivityEntry entry = entriesByID.remove(id);
+    if (entry == null) return false;
+    entries.remove(entry);
+    return true;
+  }
+  
+  /**
+   * Gets the ids currently held, so they can be released before the window is reloaded.
+   */
+  List<Long> ids() {
+    return new ArrayList<Long>(entriesByID.keySet());
+  }
+  
+  void clear(boolean nowComplete) {
+    entries.clear();
+    entriesByID.clear();
+    complete = nowComplete;
+  }
+  
+  void setComplete(boolean complete) {
+    this.complete = complete;
+  }
+  
+  /**
+   * Checks whether the window can answer a read for the newest <code>topX</code> items.
+   */
+  boolean canServe(int topX) {
+    return complete || topX <= entries.size();
+  }
+  
+  int size() {
+    return entries.size();
+  }
+  
+  int getCapacity() {
+    return capacity;
+  }
+  
+  /**
+   * Gets the newest entries, each with a freshly decoded item.
+   */
+  List<ActivityEntry> newest(int topX) {
+    List<ActivityEntry> newest = new ArrayList<ActivityEntry>(Math.min(topX, entries.size()));
+    Iterator<ActivityEntry> iterator = entries.iterator();
+    while (newest.size() < topX && iterator.hasNext()) {
+      ActivityEntry held = iterator.next();
+      newest.add(new ActivityEntry(type, held.getID(), held.getTime(), decode(held)));
+    }
+    return newest;
+  }
+  
+  @SuppressWarnings("unchecked")
+  <T> List<T> newestItems(int topX) {
+    List<T> items = new ArrayList<T>(Math.min(topX, entries.size()));
+    Iterator<ActivityEntry> iterator = entries.iterator();
+    while (items.size() < topX && iterator.hasNext())
+      items.add((T)decode(iterator.next()));
+    return items;
+  }
+  
+  private Object decode(ActivityEntry held) {
+    return codec.decode(new DecodeBuffer(ByteBuffer.wrap((byte[])held.getItem())));
+  }
+  
+  static Comparator<ActivityEntry> newestFirst() {
+    return NEWEST_FIRST;
+  }
+}
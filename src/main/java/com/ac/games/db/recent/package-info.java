@@ -0,0 +1,6 @@
+/**
+ * This package holds the per-user recency index behind the newest items and recent activity reads.
+ * 
+ * @author ac010168
+ */
+package com.ac.games.db.recent;
@@ -0,0 +1,321 @@
+package com.ac.games.db.related;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.ac.games.data.CollectionItem;
+import com.ac.games.data.WishlistItem;
+import com.ac.games.db.DatabaseFutures;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * Sparse table of the top related games for each game, based on how many users have both games in their
+ * collection or wishlist.
+ * <p>
+ * Each user's collection and wishlist together make one basket of gameIDs.  A game's related list is the
+ * <code>topK</code> games sharing the most baskets with it, scored by {@link RelatedGame#getScore()}.  The
+ * lists are computed up front, so {@link #getRelatedGames(long)} is usually a single map read.
+ * <p>
+ * When a game enters or leaves a basket, the writer only marks that game and every other game in the basket
+ * as dirty.  A dirty game's list is recomputed by the first lookup that asks for it, or by
+ * {@link #refreshDirtyGames()}, so a burst of writes to one game costs one recount, and no recount runs on
+ * the write path.  A score also depends on the other game's user count, which only shows once the list is
+ * next recomputed.
+ * 
+ * @author ac010168
+ */
+public class CoOccurrenceIndex {
+
+  /** Default number of related games kept per game */
+  public static final int DEFAULT_TOP_K = 20;
+  
+  private static final List<RelatedGame> NO_GAMES = Collections.emptyList();
+  
+  /** Best first: score, then shared count, then lowest gameID */
+  private static final Comparator<RelatedGame> BEST_FIRST = new Comparator<RelatedGame>() {
+    @Override
+    public int compare(RelatedGame a, RelatedGame b) {
+      int result = Double.compare(b.getScore(), a.getScore());
+      if (result == 0) result = b.getSharedUserCount() - a.getSharedUserCount();
+      if (result == 0) result = a.getGameID() < b.getGameID() ? -1 : (a.getGameID() == b.getGameID() ? 0 : 1);
+      return result;
+    }
+  };
+  
+  private final int topK;
+  /** Reference counts of each gameID in each user's basket, since a game can be both owned and wished for */
+  private final Map<Long, Map<Long, Integer>> basketsByUser;
+  /** Users with each gameID in their basket */
+  private final Map<Long, Set<Long>> usersByGame;
+  /** {userID, gameID} by itemID */
+  private final Map<Long, long[]> collectionItems;
+  /** {userID, gameID} by wishID */
+  private final Map<Long, long[]> wishlistItems;
+  /** Related games by gameID, each list immutable and sorted best first */
+  private final ConcurrentHashMap<Long, List<RelatedGame>> relatedByGame;
+  /** Games whose list in relatedByGame is out of date */
+  private final Set<Long> dirtyGames;
+  
+  /**
+   * Constructor, for an empty index.
+   * 
+   * @param topK The number of related games to keep per game.
+   */
+  public CoOccurrenceIndex(int topK) {
+    this.topK       = topK;
+    basketsByUser   = new HashMap<Long, Map<Long, Integer>>();
+    usersByGame     = new HashMap<Long, Set<Long>>();
+    collectionItems = new HashMap<Long, long[]>();
+    wishlistItems   = new HashMap<Long, long[]>();
+    relatedByGame   = new ConcurrentHashMap<Long, List<RelatedGame>>();
+    dirtyGames      = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+  }
+  
+  /**
+   * Build an index from every {@link CollectionItem} and {@link WishlistItem} in the database.  Items are read
+   * by id up to {@link GamesDatabase#getMaxCollectionItemID()} and {@link GamesDatabase#getMaxWishlistItemID()},
+   * and then the related lists are computed, both split across partitions.
+   * 
+   * @param database The database to read from.
+   * @param partitionCount The number of threads to use.
+   * @param topK The number of related games to keep per game.
+   * @return A new, fully loaded index.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public static CoOccurrenceIndex build(final GamesDatabase database, final int partitionCount, int topK) throws ConfigurationException, DatabaseOperationException {
+    final long maxItemID = database.getMaxCollectionItemID();
+    final long maxWishID = database.getMaxWishlistItemID();
+    final CoOccurrenceIndex index = new CoOccurrenceIndex(topK);
+    
+    ExecutorService executor = Executors.newFixedThreadPool(partitionCount);
+    try {
+      //Pass 1: read every item into {itemID, userID, gameID, isWish} rows
+      List<Future<List<long[]>>> loads = new ArrayList<Future<List<long[]>>>(partitionCount);
+      for (int i = 0; i < partitionCount; i++) {
+        final int partition = i;
+        loads.add(executor.submit(new Callable<List<long[]>>() {
+          @Override
+          public List<long[]> call() throws Exception {
+            List<long[]> rows = new ArrayList<long[]>();
+            for (long itemID = partition + 1; itemID <= maxItemID; itemID += partitionCount) {
+              CollectionItem item = database.readCollectionItem(itemID);
+              if (item != null) rows.add(new long[] { itemID, item.getUserID(), item.getGameID(), 0L });
+            }
+            for (long wishID = partition + 1; wishID <= maxWishID; wishID += partitionCount) {
+              WishlistItem item = database.readWishlistItem(wishID);
+              if (item != null) rows.add(new long[] { wishID, item.getUserID(), item.getGameID(), 1L });
+            }
+            return rows;
+          }
+        }));
+      }
+      for (Future<List<long[]>> load : loads) {
+        for (long[] row : DatabaseFutures.get(load)) {
+          Map<Long, long[]> items = row[3] == 0L ? index.collectionItems : index.wishlistItems;
+          items.put(row[0], new long[] { row[1], row[2] });
+          index.addToBasket(row[1], row[2]);
+        }
+      }
+      
+      //Pass 2: compute the related list for every game.  The basket maps are only read from here on.
+      final List<Long> gameIDs = new ArrayList<Long>(index.usersByGame.keySet());
+      List<Future<Void>> computes = new ArrayList<Future<Void>>(partitionCount);
+      for (int i = 0; i < partitionCount; i++) {
+        final int partition = i;
+        computes.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int j = partition; j < gameIDs.size(); j += partitionCount)
+              index.relatedByGame.put(gameIDs.get(j), index.computeRelated(gameIDs.get(j)));
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> compute : computes)
+        DatabaseFutures.get(compute);
+      return index;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+  
+  /**
+   * Get the related games for a game.
+   * 
+   * @param gameID The game.
+   * @return The related games, best first.  Never null, and not modifiable.
+   */
+  public List<RelatedGame> getRelatedGames(long gameID) {
+    if (dirtyGames.contains(gameID)) refreshGame(gameID);
+    List<RelatedGame> related = relatedByGame.get(gameID);
+    return related == null ? NO_GAMES : related;
+  }
+  
+  /**
+   * Recompute the list of every game changed since it was last computed.  Lookups do this for the game they
+   * ask for, so calling this is only needed to keep that work off the first lookup after a change.
+   */
+  public void refreshDirtyGames() {
+    for (Long gameID : new ArrayList<Long>(dirtyGames))
+      refreshGame(gameID);
+  }
+  
+  /**
+   * Add or replace a collection item.
+   * 
+   * @param item The item as it now exists in the database.
+   */
+  public synchronized void putCollectionItem(CollectionItem item) {
+    putItem(collectionItems, item.getItemID(), item.getUserID(), item.getGameID());
+  }
+  
+  /**
+   * Remove a collection item.
+   * 
+   * @param itemID The itemID that was deleted.
+   */
+  public synchronized void removeCollectionItem(long itemID) {
+    removeItem(collectionItems, itemID);
+  }
+  
+  /**
+   * Add or replace a wishlist item.
+   * 
+   * @param item The item as it now exists in the database.
+   */
+  public synchronized void putWishlistItem(WishlistItem item) {
+    putItem(wishlistItems, item.getWishID(), item.getUserID(), item.getGameID());
+  }
+  
+  /**
+   * Remove a wishlist item.
+   * 
+   * @param wishID The wishID that was deleted.
+   */
+  public synchronized void removeWishlistItem(long wishID) {
+    removeItem(wishlistItems, wishID);
+  }
+  
+  private void putItem(Map<Long, long[]> items, long id, long userID, long gameID) {
+    long[] previous = items.get(id);
+    if (previous != null && previous[0] == userID && previous[1] == gameID) return;
+    removeItem(items, id);
+    items.put(id, new long[] { userID, gameID });
+    if (addToBasket(userID, gameID)) markDirty(userID, gameID);
+  }
+  
+  private void removeItem(Map<Long, long[]> items, long id) {
+    long[] previous = items.remove(id);
+    if (previous != null && removeFromBasket(previous[0], previous[1])) markDirty(previous[0], previous[1]);
+  }
+  
+  /**
+   * @return true if the game is new to the basket.
+   */
+  private boolean addToBasket(long userID, long gameID) {
+    Map<Long, Integer> basket = basketsByUser.get(userID);
+    if (basket == null) {
+      basket = new HashMap<Long, Integer>();
+      basketsByUser.put(userID, basket);
+    }
+    Integer count = basket.get(gameID);
+    basket.put(gameID, count == null ? 1 : count + 1);
+    if (count != null) return false;
+    
+    Set<Long> users = usersByGame.get(gameID);
+    if (users == null) {
+      users = new HashSet<Long>();
+      usersByGame.put(gameID, users);
+    }
+    users.add(userID);
+    return true;
+  }
+  
+  /**
+   * @return true if the game has left the basket.
+   */
+  private boolean removeFromBasket(long userID, long gameID) {
+    Map<Long, Integer> basket = basketsByUser.get(userID);
+    Integer count = basket == null ? null : basket.get(gameID);
+    if (count == null) return false;
+    if (count > 1) {
+      basket.put(gameID, count - 1);
+      return false;
+    }
+    basket.remove(gameID);
+    if (basket.isEmpty()) basketsByUser.remove(userID);
+    
+    Set<Long> users = usersByGame.get(gameID);
+    users.remove(userID);
+    if (users.isEmpty()) usersByGame.remove(gameID);
+    return true;
+  }
+  
+  /**
+   * Mark the lists touched by a game entering or leaving a user's basket: the game's own list, and the list
+   * of every other game in the basket.
+   */
+  private void markDirty(long userID, long gameID) {
+    dirtyGames.add(gameID);
+    Map<Long, Integer> basket = basketsByUser.get(userID);
+    if (basket != null) dirtyGames.addAll(basket.keySet());
+  }
+  
+  private synchronized void refreshGame(long gameID) {
+    if (!dirtyGames.remove(gameID)) return;
+    List<RelatedGame> related = computeRelated(gameID);
+    if (related.isEmpty()) relatedByGame.remove(gameID);
+    else                   relatedByGame.put(gameID, related);
+  }
+  
+  /**
+   * Count the baskets each other game shares with this one, and keep the best <code>topK</code>.
+   */
+  private List<RelatedGame> computeRelated(long gameID) {
+    Set<Long> users = usersByGame.get(gameID);
+    if (users == null) return NO_GAMES;
+    
+    Map<Long, int[]> sharedCounts = new HashMap<Long, int[]>();
+    for (Long userID : users) {
+      for (Long otherID : basketsByUser.get(userID).keySet()) {
+        if (otherID == gameID) continue;
+        int[] count = sharedCounts.get(otherID);
+        if (count == null) sharedCounts.put(otherID, new int[] { 1 });
+        else               count[0]++;
+      }
+    }
+    if (sharedCounts.isEmpty()) return NO_GAMES;
+    
+    //Min-heap on the best-first order, so the head is always the weakest entry kept
+    PriorityQueue<RelatedGame> best = new PriorityQueue<RelatedGame>(topK + 1, Collections.reverseOrder(BEST_FIRST));
+    for (Map.Entry<Long, int[]> entry : sharedCounts.entrySet()) {
+      int shared = entry.getValue()[0];
+      best.add(new RelatedGame(entry.getKey(), shared, score(shared, users.size(), usersByGame.get(entry.getKey()).size())));
+      if (best.size() > topK) best.poll();
+    }
+    List<RelatedGame> related = new ArrayList<RelatedGame>(best);
+    Collections.sort(related, BEST_FIRST);
+    return Collections.unmodifiableList(related);
+  }
+  
+  private static double score(int shared, int usersA, int usersB) {
+    return shared / Math.sqrt((double)usersA * (double)usersB);
+  }
+}
@@ -0,0 +1,47 @@
+package com.ac.games.db.related;
+
+/**
+ * One entry in a game's related games list.
+ * 
+ * @author ac010168
+ */
+public final class RelatedGame {
+
+  private final long   gameID;
+  private final int    sharedUserCount;
+  private final double score;
+  
+  public RelatedGame(long gameID, int sharedUserCount, double score) {
+    this.gameID          = gameID;
+    this.sharedUserCount = sharedUserCount;
+    this.score           = score;
+  }
+  
+  public long getGameID() {
+    return gameID;
+  }
+  
+  /**
+   * Gets the number of users that have both games in their collection or wishlist.
+   * 
+   * @return The shared user count.
+   */
+  public int getSharedUserCount() {
+    return sharedUserCount;
+  }
+  
+  /**
+   * Gets the similarity score, which is the shared user count divided by the geometric mean of the two
+   * games' user counts, so very popular games don't show up as related to everything.
+   * 
+   * @return The score, between 0 and 1.
+   */
+  public double getScore() {
+    return score;
+  }
+  
+  @Override
+  public String toString() {
+    return gameID + " (" + sharedUserCount + ", " + score + ")";
+  }
+}
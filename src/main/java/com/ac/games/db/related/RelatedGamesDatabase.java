@@ -0,0 +1,206 @@
+package com.ac.games.db.related;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ac.games.data.CollectionItem;
+import com.ac.games.data.CompactSearchData;
+import com.ac.games.data.WishlistItem;
+import com.ac.games.db.DelegatingGamesDatabase;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * {@link GamesDatabase} decorator that keeps a {@link CoOccurrenceIndex} current through the
+ * {@link CollectionItem} and {@link WishlistItem} write calls, and answers related game lookups from it.
+ * <p>
+ * A rebuild reads into a new index while the current one keeps answering lookups.  Writes made during the
+ * rebuild go to the current index and are logged, and the log is replayed into the new index before it is
+ * published, so no write is lost to the swap.
+ * 
+ * @author ac010168
+ */
+public class RelatedGamesDatabase extends DelegatingGamesDatabase {
+
+  private final int partitionCount;
+  private final int topK;
+  private volatile CoOccurrenceIndex index;
+  /** Guards mirrored writes against the swap at the end of a rebuild */
+  private final Object mirrorLock = new Object();
+  /** Writes made while a rebuild runs, as the item put or a {@link Removal}; null otherwise */
+  private List<Object> rebuildLog;
+  
+  /**
+   * Basic Constructor.  The index is built when the connection is initialized.
+   * 
+   * @param delegate The database to wrap.
+   */
+  public RelatedGamesDatabase(GamesDatabase delegate) {
+    this(delegate, Runtime.getRuntime().availableProcessors(), CoOccurrenceIndex.DEFAULT_TOP_K);
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param delegate The database to wrap.
+   * @param partitionCount The number of threads used to build the index.
+   * @param topK The number of related games to keep per game.
+   */
+  public RelatedGamesDatabase(GamesDatabase delegate, int partitionCount, int topK) {
+    super(delegate);
+    this.partitionCount = partitionCount;
+    this.topK           = topK;
+    this.index          = new CoOccurrenceIndex(topK);
+  }
+  
+  @Override
+  public void initializeDBConnection() throws ConfigurationException {
+    delegate.initializeDBConnection();
+    rebuildIndex();
+  }
+  
+  /**
+   * Reload the index from the database.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public synchronized void rebuildIndex() throws ConfigurationException, DatabaseOperationException {
+    synchronized (mirrorLock) {
+      rebuildLog = new ArrayList<Object>();
+    }
+    try {
+      CoOccurrenceIndex built = CoOccurrenceIndex.build(delegate, partitionCount, topK);
+      synchronized (mirrorLock) {
+        for (Object write : rebuildLog)
+          replay(built, write);
+        index = built;
+      }
+    } finally {
+      synchronized (mirrorLock) {
+        rebuildLog = null;
+      }
+    }
+  }
+  
+  public CoOccurrenceIndex getIndex() {
+    return index;
+  }
+  
+  /**
+   * Get the games most often collected or wished for by the same users as this game.
+   * 
+   * @param gameID The game.
+   * @return The related games, best first.  Never null, and not modifiable.
+   */
+  public List<RelatedGame> readRelatedGames(long gameID) {
+    return index.getRelatedGames(gameID);
+  }
+  
+  /**
+   * Read the compact data for the related games of this game.
+   * 
+   * @param gameID The game.
+   * @return The compact data for each related game, in no particular order.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public List<CompactSearchData> readRelatedGamesCompact(long gameID) throws ConfigurationException, DatabaseOperationException {
+    StringBuilder idList = new StringBuilder();
+    for (RelatedGame related : index.getRelatedGames(gameID)) {
+      if (idList.length() > 0) idList.append(',');
+      idList.append(related.getGameID());
+    }
+    if (idList.length() == 0) return new ArrayList<CompactSearchData>();
+    return delegate.readGamesCompact(idList.toString());
+  }
+  
+  @Override
+  public void insertCollectionItem(CollectionItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertCollectionItem(item);
+    mirror(item);
+  }
+  
+  @Override
+  public void updateCollectionItem(CollectionItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateCollectionItem(item);
+    mirror(item);
+  }
+  
+  @Override
+  public void deleteCollectionItem(long itemID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteCollectionItem(itemID);
+    mirror(new Removal(false, itemID));
+  }
+  
+  @Override
+  public List<CollectionItem> deleteCollectionItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    List<CollectionItem> deleted = delegate.deleteCollectionItemsByUserID(userID);
+    for (CollectionItem item : deleted)
+      mirror(new Removal(false, item.getItemID()));
+    return deleted;
+  }
+  
+  @Override
+  public void insertWishlistItem(WishlistItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertWishlistItem(item);
+    mirror(item);
+  }
+  
+  @Override
+  public void updateWishlistItem(WishlistItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateWishlistItem(item);
+    mirror(item);
+  }
+  
+  @Override
+  public void deleteWishlistItem(long wishID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteWishlistItem(wishID);
+    mirror(new Removal(true, wishID));
+  }
+  
+  @Override
+  public List<WishlistItem> deleteWishlistItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    List<WishlistItem> deleted = delegate.deleteWishlistItemsByUserID(userID);
+    for (WishlistItem item : deleted)
+      mirror(new Removal(true, item.getWishID()));
+    return deleted;
+  }
+  
+  /**
+   * Apply a write to the current index, and log it if a rebuild is running.
+   */
+  private void mirror(Object write) {
+    synchronized (mirrorLock) {
+      replay(index, write);
+      if (rebuildLog != null) rebuildLog.add(write);
+    }
+  }
+  
+  private static void replay(CoOccurrenceIndex target, Object write) {
+    if (write instanceof CollectionItem) {
+      target.putCollectionItem((CollectionItem)write);
+    } else if (write instanceof WishlistItem) {
+      target.putWishlistItem((WishlistItem)write);
+    } else {
+      Removal removal = (Removal)write;
+      if (removal.wishlist) target.removeWishlistItem(removal.id);
+      else                  target.removeCollectionItem(removal.id);
+    }
+  }
+  
+  /** A logged delete of a collection item or wishlist entry */
+  private static final class Removal {
+    private final boolean wishlist;
+    private final long    id;
+    
+    private Removal(boolean wishlist, long id) {
+      this.wishlist = wishlist;
+      this.id       = id;
+    }
+  }
+}
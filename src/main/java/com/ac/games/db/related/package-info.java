@@ -0,0 +1,6 @@
+/**
+ * This package holds the "owners also own" index, built from collection and wishlist co-occurrence.
+ * 
+ * @author ac010168
+ */
+package com.ac.games.db.related;
@@ -0,0 +1,99 @@
+package com.ac.games.db.resilience;
+
+/**
+ * Timeout, hedging and circuit breaker settings for one {@link MethodFamily}.
+ * 
+ * @author ac010168
+ */
+public class CallPolicy {
+
+  /** Maximum time a read may take, in milliseconds, or 0 for no limit.  Writes are never timed out */
+  private final long    deadlineMillis;
+  /** Whether a slow read should be repeated against the secondary backend */
+  private final boolean hedgeEnabled;
+  /** The latency percentile, from 0 to 1, after which a hedged read is sent */
+  private final double  hedgePercentile;
+  /** The minimum delay before a hedged read is sent, in milliseconds */
+  private final long    minHedgeDelayMillis;
+  /** The failure rate, from 0 to 1, that will open the circuit */
+  private final double  failureRateThreshold;
+  /** The number of recent calls the failure rate is measured over */
+  private final int     windowSize;
+  /** The number of calls needed in the window before the circuit can open */
+  private final int     minimumCalls;
+  /** How long the circuit stays open before a trial call is allowed, in milliseconds */
+  private final long    openMillis;
+  
+  /**
+   * Constructor.
+   * 
+   * @param deadlineMillis Maximum time a read may take, in milliseconds, or 0 for no limit.  Ignored for writes.
+   * @param hedgeEnabled Whether a slow read should be repeated against the secondary backend.
+   * @param hedgePercentile The latency percentile, from 0 to 1, after which a hedged read is sent.
+   * @param minHedgeDelayMillis The minimum delay before a hedged read is sent, in milliseconds.
+   * @param failureRateThreshold The failure rate, from 0 to 1, that will open the circuit.
+   * @param windowSize The number of recent calls the failure rate is measured over.
+   * @param minimumCalls The number of calls needed in the window before the circuit can open.
+   * @param openMillis How long the circuit stays open before a trial call is allowed, in milliseconds.
+   */
+  public CallPolicy(long deadlineMillis, boolean hedgeEnabled, double hedgePercentile, long minHedgeDelayMillis,
+                    double failureRateThreshold, int windowSize, int minimumCalls, long openMillis) {
+    if (windowSize < 1 || minimumCalls > windowSize)
+      throw new IllegalArgumentException("windowSize must be at least 1, and no smaller than minimumCalls");
+    this.deadlineMillis       = deadlineMillis;
+    this.hedgeEnabled         = hedgeEnabled;
+    this.hedgePercentile      = hedgePercentile;
+    this.minHedgeDelayMillis  = minHedgeDelayMillis;
+    this.failureRateThreshold = failureRateThreshold;
+    this.windowSize           = windowSize;
+    this.minimumCalls         = minimumCalls;
+    this.openMillis           = openMillis;
+  }
+  
+  /**
+   * Gets a reasonable starting policy for a family.  Writes are never hedged or timed out, since they may
+   * not be safe to repeat.
+   * 
+   * @param family The method family.
+   * @return The default policy.
+   */
+  public static CallPolicy defaultFor(MethodFamily family) {
+    switch (family) {
+      case POINT_READ: return new CallPolicy(  500L, true,  0.95,  10L, 0.5, 100, 20, 5000L);
+      case SEARCH:     return new CallPolicy( 3000L, true,  0.95,  50L, 0.5, 100, 20, 5000L);
+      default:         return new CallPolicy(    0L, false, 0.95,   0L, 0.5, 100, 20, 5000L);
+    }
+  }
+
+  public long getDeadlineMillis() {
+    return deadlineMillis;
+  }
+
+  public boolean isHedgeEnabled() {
+    return hedgeEnabled;
+  }
+
+  public double getHedgePercentile() {
+    return hedgePercentile;
+  }
+
+  public long getMinHedgeDelayMillis() {
+    return minHedgeDelayMillis;
+  }
+
+  public double getFailureRateThreshold() {
+    return failureRateThreshold;
+  }
+
+  public int getWindowSize() {
+    return windowSize;
+  }
+
+  public int getMinimumCalls() {
+    return minimumCalls;
+  }
+
+  public long getOpenMillis() {
+    return openMillis;
+  }
+}
@@ -0,0 +1,128 @@
+package com.ac.games.db.resilience;
+
+/**
+ * Failure-rate circuit breaker over a sliding window of recent calls.
+ * <p>
+ * While CLOSED, calls are allowed and their outcomes recorded.  Once the window holds at least the minimum
+ * number of calls and the failure rate reaches the threshold, the circuit OPENs and calls are refused until
+ * the open time passes.  A single trial call is then allowed (HALF_OPEN): success closes the circuit with a
+ * fresh window, and failure opens it again.  No other call is let through until the trial reports.
+ * <p>
+ * Each allowed call gets a permit naming the state it was let in under, and hands it back with its outcome.
+ * An outcome whose permit is from an earlier state is ignored, so a slow call admitted while CLOSED can't
+ * be taken for the trial, or reopen a circuit that is already open.
+ * 
+ * @author ac010168
+ */
+public class CircuitBreaker {
+
+  /** The breaker states */
+  public enum State { CLOSED, OPEN, HALF_OPEN }
+  
+  /** Returned by {@link #allowRequest()} when the call is refused */
+  public static final long REFUSED = -1L;
+  
+  private final CallPolicy policy;
+  private final boolean[]  outcomes;
+  private int   nextOutcome;
+  private int   callCount;
+  private int   failureCount;
+  private State state;
+  private long  openedAt;
+  /** Bumped on every change of state, and handed out as the permit */
+  private long  generation;
+  private boolean trialInFlight;
+  
+  /**
+   * Constructor.
+   * 
+   * @param policy The policy with the breaker settings.
+   */
+  public CircuitBreaker(CallPolicy policy) {
+    this.policy   = policy;
+    this.outcomes = new boolean[policy.getWindowSize()];
+    this.state    = State.CLOSED;
+  }
+  
+  /**
+   * Check whether a call may go ahead.  Every allowed call must be followed by exactly one call to
+   * {@link #recordSuccess(long)} or {@link #recordFailure(long)} with the permit returned here.
+   * 
+   * @return The call's permit, or {@link #REFUSED} if the call is not allowed.
+   */
+  public synchronized long allowRequest() {
+    if (state == State.OPEN && System.currentTimeMillis() - openedAt >= policy.getOpenMillis()) {
+      moveTo(State.HALF_OPEN);
+      trialInFlight = false;
+    }
+    if (state == State.CLOSED) return generation;
+    if (state == State.HALF_OPEN && !trialInFlight) {
+      trialInFlight = true;
+      return generation;
+    }
+    return REFUSED;
+  }
+  
+  /**
+   * Record a call that succeeded.
+   * 
+   * @param permit The permit from {@link #allowRequest()}.
+   */
+  public synchronized void recordSuccess(long permit) {
+    if (permit != generation) return;
+    if (state == State.HALF_OPEN) {
+      reset();
+      moveTo(State.CLOSED);
+      return;
+    }
+    record(false);
+  }
+  
+  /**
+   * Record a call that failed.
+   * 
+   * @param permit The permit from {@link #allowRequest()}.
+   */
+  public synchronized void recordFailure(long permit) {
+    if (permit != generation) return;
+    if (state == State.HALF_OPEN) {
+      open();
+      return;
+    }
+    record(true);
+    if (callCount >= policy.getMinimumCalls() && failureCount >= policy.getFailureRateThreshold() * callCount)
+      open();
+  }
+  
+  public synchronized State getState() {
+    return state;
+  }
+  
+  private void record(boolean failed) {
+    if (callCount == outcomes.length) {
+      if (outcomes[nextOutcome]) failureCount--;
+    } else {
+      callCount++;
+    }
+    outcomes[nextOutcome] = failed;
+    if (failed) failureCount++;
+    nextOutcome = (nextOutcome + 1) % outcomes.length;
+  }
+  
+  private void open() {
+    reset();
+    moveTo(State.OPEN);
+    openedAt = System.currentTimeMillis();
+  }
+  
+  private void moveTo(State next) {
+    state = next;
+    generation++;
+  }
+  
+  private void reset() {
+    nextOutcome  = 0;
+    callCount    = 0;
+    failureCount = 0;
+  }
+}
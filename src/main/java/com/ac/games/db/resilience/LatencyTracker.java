@@ -0,0 +1,58 @@
+package com.ac.games.db.resilience;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent call latencies for one method, and estimates percentiles from them.  Percentiles
+ * are recomputed every so often rather than on every call, since they only steer the hedge delay.
+ * 
+ * @author ac010168
+ */
+public class LatencyTracker {
+
+  private static final int SAMPLE_COUNT     = 256;
+  private static final int RECOMPUTE_EVERY  = 32;
+  
+  private final long[] samples;
+  private int  nextSample;
+  private int  sampleCount;
+  private int  sinceRecompute;
+  private double cachedPercentile;
+  private long   cachedValue;
+  
+  public LatencyTracker() {
+    samples     = new long[SAMPLE_COUNT];
+    cachedValue = -1;
+  }
+  
+  /**
+   * Record the latency of a successful call.
+   * 
+   * @param millis The call latency in milliseconds.
+   */
+  public synchronized void record(long millis) {
+    samples[nextSample] = millis;
+    nextSample = (nextSample + 1) % samples.length;
+    if (sampleCount < samples.length) sampleCount++;
+    sinceRecompute++;
+  }
+  
+  /**
+   * Estimate a latency percentile.
+   * 
+   * @param percentile The percentile, from 0 to 1.
+   * @return The estimated latency in milliseconds, or -1 if we have no samples yet.
+   */
+  public synchronized long getPercentile(double percentile) {
+    if (sampleCount == 0) return -1;
+    if (cachedValue >= 0 && cachedPercentile == percentile && sinceRecompute < RECOMPUTE_EVERY) return cachedValue;
+    
+    long[] sorted = Arrays.copyOf(samples, sampleCount);
+    Arrays.sort(sorted);
+    int index = (int)Math.min(sampleCount - 1, Math.ceil(percentile * sampleCount) - 1);
+    cachedValue      = sorted[Math.max(0, index)];
+    cachedPercentile = percentile;
+    sinceRecompute   = 0;
+    return cachedValue;
+  }
+}
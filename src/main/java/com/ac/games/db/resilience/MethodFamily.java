@@ -0,0 +1,34 @@
+package com.ac.games.db.resilience;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * Groups {@link com.ac.games.db.GamesDatabase} calls that should share a policy.
+ * 
+ * @author ac010168
+ */
+public enum MethodFamily {
+  /** Single record reads, counts and max ID lookups */
+  POINT_READ,
+  /** Reads that return lists, such as name searches, id lists and autocomplete */
+  SEARCH,
+  /** Anything that changes data */
+  WRITE;
+  
+  /**
+   * Work out which family a {@link com.ac.games.db.GamesDatabase} method belongs to.
+   * 
+   * @param method The interface method.
+   * @return The family, or null for connection management calls, which are never wrapped.
+   */
+  public static MethodFamily classify(Method method) {
+    String name = method.getName();
+    if (name.equals("initializeDBConnection") || name.equals("closeDBConnection")) return null;
+    if (name.startsWith("insert") || name.startsWith("update") || name.startsWith("delete") || name.startsWith("replace"))
+      return WRITE;
+    if (List.class.isAssignableFrom(method.getReturnType()) || name.contains("AutoName") || name.contains("ForReview"))
+      return SEARCH;
+    return POINT_READ;
+  }
+}
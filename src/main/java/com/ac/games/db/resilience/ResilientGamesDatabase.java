@@ -0,0 +1,191 @@
+package com.ac.games.db.resilience;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.ac.games.db.DatabaseFutures;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.GamesDatabaseProxy;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * {@link GamesDatabase} decorator that protects callers from a slow or failing backend.  Every call except
+ * connection management is run under the {@link CallPolicy} for its {@link MethodFamily}:
+ * <ul>
+ * <li>Reads that run past the deadline are cancelled and fail with a {@link DatabaseOperationException}.</li>
+ * <li>Reads that haven't returned by the policy's latency percentile for that method are repeated against
+ * the secondary backend, and whichever answers first wins.</li>
+ * <li>When the recent failure rate for a family reaches the threshold, its calls fail fast with a
+ * {@link DatabaseOperationException} until the circuit closes again.</li>
+ * </ul>
+ * <p>
+ * Writes are not given a deadline.  A write that was timed out could still land after the caller had been
+ * told it failed, and a retry would then apply it twice, so writes run on the calling thread and the caller
+ * always sees how they ended.  The circuit breaker still fails them fast while the circuit is open.
+ * 
+ * @author ac010168
+ */
+public final class ResilientGamesDatabase implements InvocationHandler {
+
+  private final GamesDatabase   primary;
+  private final GamesDatabase   secondary;
+  private final ExecutorService executor;
+  private final Map<MethodFamily, CallPolicy>     policies;
+  private final Map<MethodFamily, CircuitBreaker> breakers;
+  private final ConcurrentHashMap<Method, LatencyTracker> latencies;
+  
+  private ResilientGamesDatabase(GamesDatabase primary, GamesDatabase secondary, Map<MethodFamily, CallPolicy> policies, ExecutorService executor) {
+    this.primary   = primary;
+    this.secondary = secondary;
+    this.executor  = executor;
+    this.policies  = new EnumMap<MethodFamily, CallPolicy>(MethodFamily.class);
+    this.breakers  = new EnumMap<MethodFamily, CircuitBreaker>(MethodFamily.class);
+    this.latencies = new ConcurrentHashMap<Method, LatencyTracker>();
+    for (MethodFamily family : MethodFamily.values()) {
+      CallPolicy policy = policies.get(family);
+      if (policy == null) policy = CallPolicy.defaultFor(family);
+      this.policies.put(family, policy);
+      this.breakers.put(family, new CircuitBreaker(policy));
+    }
+  }
+  
+  /**
+   * Wrap a database with the default policies.
+   * 
+   * @param primary The database all calls go to first.
+   * @param secondary The database hedged reads go to, such as a replica, or null to disable hedging.
+   * @param executor The executor calls are run on.  It should be sized for the expected concurrency,
+   * plus room for hedged reads.
+   * @return The protected database.
+   */
+  public static GamesDatabase wrap(GamesDatabase primary, GamesDatabase secondary, ExecutorService executor) {
+    return wrap(primary, secondary, new EnumMap<MethodFamily, CallPolicy>(MethodFamily.class), executor);
+  }
+  
+  /**
+   * Wrap a database with custom policies.
+   * 
+   * @param primary The database all calls go to first.
+   * @param secondary The database hedged reads go to, such as a replica, or null to disable hedging.
+   * @param policies The policy for each family.  Missing families use {@link CallPolicy#defaultFor(MethodFamily)}.
+   * @param executor The executor calls are run on.
+   * @return The protected database.
+   */
+  public static GamesDatabase wrap(GamesDatabase primary, GamesDatabase secondary, Map<MethodFamily, CallPolicy> policies, ExecutorService executor) {
+    return GamesDatabaseProxy.create(new ResilientGamesDatabase(primary, secondary, policies, executor));
+  }
+  
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    if (method.getDeclaringClass() == Object.class) return method.invoke(this, args);
+    
+    MethodFamily family = MethodFamily.classify(method);
+    if (family == null) return GamesDatabaseProxy.invoke(primary, method, args);
+    
+    CallPolicy     policy  = policies.get(family);
+    CircuitBreaker breaker = breakers.get(family);
+    long permit = breaker.allowRequest();
+    if (permit == CircuitBreaker.REFUSED)
+      throw new DatabaseOperationException("Circuit is open for " + family + " calls, failing " + method.getName() + " fast");
+    
+    LatencyTracker tracker = latencies.get(method);
+    if (tracker == null) {
+      latencies.putIfAbsent(method, new LatencyTracker());
+      tracker = latencies.get(method);
+    }
+    
+    long start = System.nanoTime();
+    boolean succeeded = false;
+    try {
+      Object result = family == MethodFamily.WRITE ? GamesDatabaseProxy.invoke(primary, method, args) : call(method, args, policy, tracker);
+      succeeded = true;
+      tracker.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      return result;
+    } finally {
+      if (succeeded) breaker.recordSuccess(permit);
+      else           breaker.recordFailure(permit);
+    }
+  }
+  
+  private Object call(Method method, Object[] args, CallPolicy policy, LatencyTracker tracker) throws ConfigurationException, DatabaseOperationException {
+    long deadline = policy.getDeadlineMillis() > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(policy.getDeadlineMillis()) : Long.MAX_VALUE;
+    CompletionService<Object> completion = new ExecutorCompletionService<Object>(executor);
+    Future<Object> primaryCall = completion.submit(new TargetCall(primary, method, args));
+    Future<Object> hedgedCall  = null;
+    
+    try {
+      if (policy.isHedgeEnabled() && secondary != null) {
+        long hedgeDelay = Math.max(policy.getMinHedgeDelayMillis(), tracker.getPercentile(policy.getHedgePercentile()));
+        Future<Object> first = completion.poll(Math.min(TimeUnit.MILLISECONDS.toNanos(hedgeDelay), remaining(deadline)), TimeUnit.NANOSECONDS);
+        if (first != null) return DatabaseFutures.get(first);
+        if (remaining(deadline) > 0)
+          hedgedCall = completion.submit(new TargetCall(secondary, method, args));
+      }
+      
+      //Take the first successful answer, or the last failure if both calls fail
+      int outstanding = hedgedCall == null ? 1 : 2;
+      ExecutionException lastFailure = null;
+      while (outstanding > 0) {
+        Future<Object> done = completion.poll(remaining(deadline), TimeUnit.NANOSECONDS);
+        if (done == null)
+          throw new DatabaseOperationException(method.getName() + " timed out after " + policy.getDeadlineMillis() + "ms");
+        outstanding--;
+        try {
+          return done.get();
+        } catch (ExecutionException ee) {
+          lastFailure = ee;
+        }
+      }
+      throw DatabaseFutures.unwrap(lastFailure.getCause());
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new DatabaseOperationException("Interrupted while waiting for " + method.getName(), ie);
+    } finally {
+      primaryCall.cancel(true);
+      if (hedgedCall != null) hedgedCall.cancel(true);
+    }
+  }
+  
+  private static long remaining(long deadline) {
+    return deadline == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(0, deadline - System.nanoTime());
+  }
+  
+  /**
+   * A single call against one backend.
+   */
+  private static final class TargetCall implements Callable<Object> {
+    private final GamesDatabase target;
+    private final Method        method;
+    private final Object[]      args;
+    
+    private TargetCall(GamesDatabase target, Method method, Object[] args) {
+      this.target = target;
+      this.method = method;
+      this.args   = args;
+    }
+    
+    @Override
+    public Object call() throws Exception {
+      try {
+        return GamesDatabaseProxy.invoke(target, method, args);
+      } catch (Exception e) {
+        throw e;
+      } catch (Error e) {
+        throw e;
+      } catch (Throwable t) {
+        throw new DatabaseOperationException(t);
+      }
+    }
+  }
+}
@@ -0,0 +1,7 @@
+/**
+ * This package holds the timeout, hedged read and circuit breaker policies used to protect callers
+ * from a slow or failing database.
+ * 
+ * @author ac010168
+ */
+package com.ac.games.db.resilience;
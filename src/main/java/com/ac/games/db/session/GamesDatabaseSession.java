@@ -0,0 +1,630 @@
+package com.ac.games.db.session;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.ac.games.data.BGGGame;
+import com.ac.games.data.Collection;
+import com.ac.games.data.CollectionItem;
+import com.ac.games.data.CompactSearchData;
+import com.ac.games.data.CoolStuffIncPriceData;
+import com.ac.games.data.Game;
+import com.ac.games.data.GameReltn;
+import com.ac.games.data.GameType;
+import com.ac.games.data.MediaItem;
+import com.ac.games.data.MiniatureMarketPriceData;
+import com.ac.games.data.PlaythruItem;
+import com.ac.games.data.User;
+import com.ac.games.data.UserDetail;
+import com.ac.games.data.WishlistItem;
+import com.ac.games.db.DelegatingGamesDatabase;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.dashboard.UserDashboard;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * Request-scoped {@link GamesDatabase} with an identity map.  Within one session, repeated reads of the same
+ * record by ID return the same instance without another database call, including lookups that miss.  Records
+ * returned by list queries are folded into the same map, so a {@link Game} read through
+ * {@link #readGameByName(String, boolean, GameType)} is the same object later returned by {@link #readGame(long)}.
+ * Writes made through the session update the map, so the session always sees its own changes.
+ * <p>
+ * Since the map only lives for one unit of work, it needs no invalidation.  Changes made outside the session
+ * will not be seen until a new session is opened.  Create one session per request, and call {@link #close()}
+ * at the end of it.  Closing the session only drops the map, it does not close the underlying connection.
+ * Sessions are not thread-safe, so {@link #readUserDashboard(long, int)} reads its parts in turn rather than
+ * in parallel.
+ * 
+ * @author ac010168
+ */
+public class GamesDatabaseSession extends DelegatingGamesDatabase implements AutoCloseable {
+
+  /** Placeholder stored for reads that found nothing */
+  private static final Object MISSING = new Object();
+  
+  /** Records by type, then by primary ID */
+  private final Map<Class<?>, Map<Long, Object>> identityMap;
+  /** userID by lower-cased userName */
+  private final Map<String, Long> userIDsByName;
+  /** gameID by bggID */
+  private final Map<Long, Long> gameIDsByBGGID;
+  /** Compact results by the requested gameIDs string */
+  private final Map<String, List<CompactSearchData>> compactResults;
+  
+  private int hitCount;
+  private int missCount;
+  
+  /**
+   * Open a new session.
+   * 
+   * @param delegate The shared database to read through.
+   */
+  public GamesDatabaseSession(GamesDatabase delegate) {
+    super(delegate);
+    identityMap    = new HashMap<Class<?>, Map<Long, Object>>();
+    userIDsByName  = new HashMap<String, Long>();
+    gameIDsByBGGID = new HashMap<Long, Long>();
+    compactResults = new HashMap<String, List<CompactSearchData>>();
+  }
+  
+  /**
+   * Ends this unit of work, dropping everything in the identity map.
+   */
+  @Override
+  public void close() {
+    identityMap.clear();
+    userIDsByName.clear();
+    gameIDsByBGGID.clear();
+    compactResults.clear();
+  }
+  
+  /**
+   * Gets the number of reads answered from the identity map.
+   * 
+   * @return The hit count for this session.
+   */
+  public int getHitCount() {
+    return hitCount;
+  }
+  
+  /**
+   * Gets the number of reads that went to the database.
+   * 
+   * @return The miss count for this session.
+   */
+  public int getMissCount() {
+    return missCount;
+  }
+  
+  //**********  Catalog Reads  **********
+  @Override
+  public BGGGame readBGGGameData(long bggID) throws ConfigurationException, DatabaseOperationException {
+    Object found = lookup(BGGGame.class, bggID);
+    if (found != null) return found == MISSING ? null : (BGGGame)found;
+    return store(BGGGame.class, bggID, delegate.readBGGGameData(bggID));
+  }
+  
+  @Override
+  public void insertBGGGameData(BGGGame game) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertBGGGameData(game);
+    store(BGGGame.class, game.getBggID(), game);
+  }
+  
+  @Override
+  public void updateBGGGameData(BGGGame game) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateBGGGameData(game);
+    store(BGGGame.class, game.getBggID(), game);
+  }
+  
+  @Override
+  public void deleteBGGGameData(long bggID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteBGGGameData(bggID);
+    store(BGGGame.class, bggID, null);
+  }
+  
+  @Override
+  public CoolStuffIncPriceData readCSIPriceData(long csiID) throws ConfigurationException, DatabaseOperationException {
+    Object found = lookup(CoolStuffIncPriceData.class, csiID);
+    if (found != null) return found == MISSING ? null : (CoolStuffIncPriceData)found;
+    return store(CoolStuffIncPriceData.class, csiID, delegate.readCSIPriceData(csiID));
+  }
+  
+  @Override
+  public void insertCSIPriceData(CoolStuffIncPriceData csiData) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertCSIPriceData(csiData);
+    store(CoolStuffIncPriceData.class, csiData.getCsiID(), csiData);
+  }
+  
+  @Override
+  public void updateCSIPriceData(CoolStuffIncPriceData csiData) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateCSIPriceData(csiData);
+    store(CoolStuffIncPriceData.class, csiData.getCsiID(), csiData);
+  }
+  
+  @Override
+  public void deleteCSIPriceData(long csiID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteCSIPriceData(csiID);
+    store(CoolStuffIncPriceData.class, csiID, null);
+  }
+  
+  @Override
+  public MiniatureMarketPriceData readMMPriceData(long mmID) throws ConfigurationException, DatabaseOperationException {
+    Object found = lookup(MiniatureMarketPriceData.class, mmID);
+    if (found != null) return found == MISSING ? null : (MiniatureMarketPriceData)found;
+    return store(MiniatureMarketPriceData.class, mmID, delegate.readMMPriceData(mmID));
+  }
+  
+  @Override
+  public void insertMMPriceData(MiniatureMarketPriceData mmData) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertMMPriceData(mmData);
+    store(MiniatureMarketPriceData.class, mmData.getMmID(), mmData);
+  }
+  
+  @Override
+  public void updateMMPriceData(MiniatureMarketPriceData mmData) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateMMPriceData(mmData);
+    store(MiniatureMarketPriceData.class, mmData.getMmID(), mmData);
+  }
+  
+  @Override
+  public void deleteMMPriceData(long mmID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteMMPriceData(mmID);
+    store(MiniatureMarketPriceData.class, mmID, null);
+  }
+  
+  //**********  Game Reads  **********
+  @Override
+  public Game readGame(long gameID) throws ConfigurationException, DatabaseOperationException {
+    Object found = lookup(Game.class, gameID);
+    if (found != null) return found == MISSING ? null : (Game)found;
+    return internGame(gameID, delegate.readGame(gameID));
+  }
+  
+  @Override
+  public Game readGameByBGGID(long bggID) throws ConfigurationException, DatabaseOperationException {
+    Long gameID = gameIDsByBGGID.get(bggID);
+    if (gameID != null) return readGame(gameID);
+    
+    missCount++;
+    Game game = delegate.readGameByBGGID(bggID);
+    if (game == null) return null;
+    return internGame(game.getGameID(), game);
+  }
+  
+  @Override
+  public List<Game> readGameByName(String gameName, boolean addWildCard, GameType gameTypeFilter) throws ConfigurationException, DatabaseOperationException {
+    List<Game> games = new ArrayList<Game>();
+    for (Game game : delegate.readGameByName(gameName, addWildCard, gameTypeFilter)) {
+      Object found = identityMap(Game.class).get(game.getGameID());
+      if (found instanceof Game) games.add((Game)found);
+      else                       games.add(internGame(game.getGameID(), game));
+    }
+    return games;
+  }
+  
+  @Override
+  public List<CompactSearchData> readGamesCompact(String gameIDs) throws ConfigurationException, DatabaseOperationException {
+    List<CompactSearchData> results = compactResults.get(gameIDs);
+    if (results != null) {
+      hitCount++;
+      return results;
+    }
+    missCount++;
+    results = delegate.readGamesCompact(gameIDs);
+    compactResults.put(gameIDs, results);
+    return results;
+  }
+  
+  @Override
+  public void insertGame(Game game) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertGame(game);
+    internGame(game.getGameID(), game);
+    compactResults.clear();
+  }
+  
+  @Override
+  public void updateGame(Game game) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateGame(game);
+    internGame(game.getGameID(), game);
+    compactResults.clear();
+  }
+  
+  @Override
+  public void deleteGame(long gameID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteGame(gameID);
+    store(Game.class, gameID, null);
+    gameIDsByBGGID.values().remove(gameID);
+    compactResults.clear();
+  }
+  
+  @Override
+  public GameReltn readGameReltn(long gameID) throws ConfigurationException, DatabaseOperationException {
+    Object found = lookup(GameReltn.class, gameID);
+    if (found != null) return found == MISSING ? null : (GameReltn)found;
+    return store(GameReltn.class, gameID, delegate.readGameReltn(gameID));
+  }
+  
+  @Override
+  public void insertGameReltn(GameReltn gameReltn) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertGameReltn(gameReltn);
+    store(GameReltn.class, gameReltn.getGameID(), gameReltn);
+  }
+  
+  @Override
+  public void updateGameReltn(GameReltn gameReltn) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateGameReltn(gameReltn);
+    store(GameReltn.class, gameReltn.getGameID(), gameReltn);
+  }
+  
+  @Override
+  public void deleteGameReltn(long reltnID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteGameReltn(reltnID);
+    //Relations are looked up by gameID, not reltnID, so just drop them all
+    identityMap(GameReltn.class).clear();
+  }
+  
+  //**********  User Reads  **********
+  @Override
+  public User readUser(long userID) throws ConfigurationException, DatabaseOperationException {
+    Object found = lookup(User.class, userID);
+    if (found != null) return found == MISSING ? null : (User)found;
+    return internUser(userID, delegate.readUser(userID));
+  }
+  
+  @Override
+  public User readUser(String userName) throws ConfigurationException, DatabaseOperationException {
+    Long userID = userName == null ? null : userIDsByName.get(userName.toLowerCase(Locale.ENGLISH));
+    if (userID != null) return readUser(userID);
+    
+    missCount++;
+    User user = delegate.readUser(userName);
+    if (user == null) return null;
+    return internUser(user.getUserID(), user);
+  }
+  
+  @Override
+  public void insertUser(User user) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertUser(user);
+    internUser(user.getUserID(), user);
+  }
+  
+  @Override
+  public void updateUser(User user) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateUser(user);
+    userIDsByName.values().remove(user.getUserID());
+    internUser(user.getUserID(), user);
+  }
+  
+  @Override
+  public void deleteUser(long userID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteUser(userID);
+    userIDsByName.values().remove(userID);
+    store(User.class, userID, null);
+  }
+  
+  @Override
+  public UserDetail readUserDetail(long userID) throws ConfigurationException, DatabaseOperationException {
+    Object found = lookup(UserDetail.class, userID);
+    if (found != null) return found == MISSING ? null : (UserDetail)found;
+    return store(UserDetail.class, userID, delegate.readUserDetail(userID));
+  }
+  
+  @Override
+  public void insertUserDetail(UserDetail userDetail) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertUserDetail(userDetail);
+    store(UserDetail.class, userDetail.getUserID(), userDetail);
+  }
+  
+  @Override
+  public void updateUserDetail(UserDetail userDetail) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateUserDetail(userDetail);
+    store(UserDetail.class, userDetail.getUserID(), userDetail);
+  }
+  
+  @Override
+  public void deleteUserDetail(long userID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteUserDetail(userID);
+    store(UserDetail.class, userID, null);
+  }
+  
+  //**********  Collection Reads  **********
+  @Override
+  public Collection readCollection(long collectionID) throws ConfigurationException, DatabaseOperationException {
+    Object found = lookup(Collection.class, collectionID);
+    if (found != null) return found == MISSING ? null : (Collection)found;
+    return store(Collection.class, collectionID, delegate.readCollection(collectionID));
+  }
+  
+  @Override
+  public void insertCollection(Collection collection) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertCollection(collection);
+    store(Collection.class, collection.getCollectionID(), collection);
+  }
+  
+  @Override
+  public void updateCollection(Collection collection) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateCollection(collection);
+    store(Collection.class, collection.getCollectionID(), collection);
+  }
+  
+  @Override
+  public void deleteCollection(long collectionID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteCollection(collectionID);
+    store(Collection.class, collectionID, null);
+  }
+  
+  @Override
+  public CollectionItem readCollectionItem(long itemID) throws ConfigurationException, DatabaseOperationException {
+    Object found = lookup(CollectionItem.class, itemID);
+    if (found != null) return found == MISSING ? null : (CollectionItem)found;
+    return store(CollectionItem.class, itemID, delegate.readCollectionItem(itemID));
+  }
+  
+  @Override
+  public void insertCollectionItem(CollectionItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertCollectionItem(item);
+    store(CollectionItem.class, item.getItemID(), item);
+  }
+  
+  @Override
+  public void updateCollectionItem(CollectionItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateCollectionItem(item);
+    store(CollectionItem.class, item.getItemID(), item);
+  }
+  
+  @Override
+  public void deleteCollectionItem(long itemID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteCollectionItem(itemID);
+    store(CollectionItem.class, itemID, null);
+  }
+  
+  @Override
+  public List<CollectionItem> getNewestCollectionItems(long userID, int topX) throws ConfigurationException, DatabaseOperationException {
+    List<CollectionItem> items = new ArrayList<CollectionItem>();
+    for (CollectionItem item : delegate.getNewestCollectionItems(userID, topX))
+      items.add(intern(CollectionItem.class, item.getItemID(), item));
+    return items;
+  }
+  
+  //**********  MediaItem Reads  **********
+  @Override
+  public MediaItem readMediaItemByMediaID(long mediaID) throws ConfigurationException, DatabaseOperationException {
+    Object found = lookup(MediaItem.class, mediaID);
+    if (found != null) return found == MISSING ? null : (MediaItem)found;
+    return store(MediaItem.class, mediaID, delegate.readMediaItemByMediaID(mediaID));
+  }
+  
+  @Override
+  public List<MediaItem> readMediaItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    return internMediaItems(delegate.readMediaItemsByUserID(userID));
+  }
+  
+  @Override
+  public List<MediaItem> readMediaItemsByGameID(long gameID) throws ConfigurationException, DatabaseOperationException {
+    return internMediaItems(delegate.readMediaItemsByGameID(gameID));
+  }
+  
+  @Override
+  public void insertMediaItem(MediaItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertMediaItem(item);
+    store(MediaItem.class, item.getMediaID(), item);
+  }
+  
+  @Override
+  public void updateMediaItem(MediaItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateMediaItem(item);
+    store(MediaItem.class, item.getMediaID(), item);
+  }
+  
+  @Override
+  public void deleteMediaItem(long mediaID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteMediaItem(mediaID);
+    store(MediaItem.class, mediaID, null);
+  }
+  
+  //**********  WishlistItem Reads  **********
+  @Override
+  public WishlistItem readWishlistItem(long wishID) throws ConfigurationException, DatabaseOperationException {
+    Object found = lookup(WishlistItem.class, wishID);
+    if (found != null) return found == MISSING ? null : (WishlistItem)found;
+    return store(WishlistItem.class, wishID, delegate.readWishlistItem(wishID));
+  }
+  
+  @Override
+  public WishlistItem readWishlistItem(long userID, long gameID) throws ConfigurationException, DatabaseOperationException {
+    WishlistItem item = delegate.readWishlistItem(userID, gameID);
+    if (item == null) return null;
+    return intern(WishlistItem.class, item.getWishID(), item);
+  }
+  
+  @Override
+  public List<WishlistItem> readWishlistForUser(long userID) throws ConfigurationException, DatabaseOperationException {
+    return internWishlistItems(delegate.readWishlistForUser(userID));
+  }
+  
+  @Override
+  public List<WishlistItem> readWishlistByGame(long gameID) throws ConfigurationException, DatabaseOperationException {
+    return internWishlistItems(delegate.readWishlistByGame(gameID));
+  }
+  
+  @Override
+  public void insertWishlistItem(WishlistItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertWishlistItem(item);
+    store(WishlistItem.class, item.getWishID(), item);
+  }
+  
+  @Override
+  public void updateWishlistItem(WishlistItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateWishlistItem(item);
+    store(WishlistItem.class, item.getWishID(), item);
+  }
+  
+  @Override
+  public void deleteWishlistItem(long wishID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteWishlistItem(wishID);
+    store(WishlistItem.class, wishID, null);
+  }
+  
+  //**********  PlaythruItem Reads  **********
+  @Override
+  public PlaythruItem readPlaythruItem(long playthruID) throws ConfigurationException, DatabaseOperationException {
+    Object found = lookup(PlaythruItem.class, playthruID);
+    if (found != null) return found == MISSING ? null : (PlaythruItem)found;
+    return store(PlaythruItem.class, playthruID, delegate.readPlaythruItem(playthruID));
+  }
+  
+  @Override
+  public void insertPlaythruItem(PlaythruItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertPlaythruItem(item);
+    store(PlaythruItem.class, item.getPlaythruID(), item);
+  }
+  
+  @Override
+  public void updatePlaythruItem(PlaythruItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.updatePlaythruItem(item);
+    store(PlaythruItem.class, item.getPlaythruID(), item);
+  }
+  
+  @Override
+  public void deletePlaythruItem(long playthruID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deletePlaythruItem(playthruID);
+    store(PlaythruItem.class, playthruID, null);
+  }
+  
+  @Override
+  public List<PlaythruItem> readPlaythruItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    List<PlaythruItem> items = new ArrayList<PlaythruItem>();
+    for (PlaythruItem item : delegate.readPlaythruItemsByUserID(userID))
+      items.add(intern(PlaythruItem.class, item.getPlaythruID(), item));
+    return items;
+  }
+  
+  //**********  Per-User Deletes  **********
+  @Override
+  public List<Collection> deleteCollectionsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    List<Collection> deleted = delegate.deleteCollectionsByUserID(userID);
+    for (Collection collection : deleted)
+      store(Collection.class, collection.getCollectionID(), null);
+    return deleted;
+  }
+  
+  @Override
+  public List<CollectionItem> deleteCollectionItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    List<CollectionItem> deleted = delegate.deleteCollectionItemsByUserID(userID);
+    for (CollectionItem item : deleted)
+      store(CollectionItem.class, item.getItemID(), null);
+    return deleted;
+  }
+  
+  @Override
+  public List<WishlistItem> deleteWishlistItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    List<WishlistItem> deleted = delegate.deleteWishlistItemsByUserID(userID);
+    for (WishlistItem item : deleted)
+      store(WishlistItem.class, item.getWishID(), null);
+    return deleted;
+  }
+  
+  @Override
+  public List<PlaythruItem> deletePlaythruItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    List<PlaythruItem> deleted = delegate.deletePlaythruItemsByUserID(userID);
+    for (PlaythruItem item : deleted)
+      store(PlaythruItem.class, item.getPlaythruID(), null);
+    return deleted;
+  }
+  
+  @Override
+  public List<MediaItem> deleteMediaItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    List<MediaItem> deleted = delegate.deleteMediaItemsByUserID(userID);
+    for (MediaItem item : deleted)
+      store(MediaItem.class, item.getMediaID(), null);
+    return deleted;
+  }
+  
+  //**********  Dashboard Reads  **********
+  /**
+   * Reads the dashboard one part at a time on the calling thread.  The inherited version fans the reads out
+   * on other threads, and this session's maps are not thread-safe.
+   */
+  @Override
+  public UserDashboard readUserDashboard(long userID, int topX) throws ConfigurationException, DatabaseOperationException {
+    User user = readUser(userID);
+    if (user == null) return null;
+    
+    UserDashboard dashboard = new UserDashboard();
+    dashboard.setUser(user);
+    dashboard.setUserDetail(readUserDetail(userID));
+    dashboard.setCollectionStats(readCollectionStats(userID));
+    dashboard.setNewestCollectionItems(getNewestCollectionItems(userID, topX));
+    dashboard.setWishlist(readWishlistForUser(userID));
+    dashboard.setMediaItems(readMediaItemsByUserID(userID));
+    return dashboard;
+  }
+  
+  //**********  Identity Map Management  **********
+  private Map<Long, Object> identityMap(Class<?> type) {
+    Map<Long, Object> records = identityMap.get(type);
+    if (records == null) {
+      records = new HashMap<Long, Object>();
+      identityMap.put(type, records);
+    }
+    return records;
+  }
+  
+  /**
+   * Look up a record, counting the hit or miss.
+   * 
+   * @return The record, {@link #MISSING} for a cached miss, or null if we haven't read it yet.
+   */
+  private Object lookup(Class<?> type, long id) {
+    Object found = identityMap(type).get(id);
+    if (found != null) hitCount++;
+    else               missCount++;
+    return found;
+  }
+  
+  /**
+   * Put a record in the map, replacing whatever was there.  A null record is stored as a miss.
+   */
+  private <T> T store(Class<T> type, long id, T record) {
+    identityMap(type).put(id, record == null ? MISSING : record);
+    return record;
+  }
+  
+  /**
+   * Return the instance already in the map for this ID, or add this one if there isn't one.
+   */
+  private <T> T intern(Class<T> type, long id, T record) {
+    Object found = identityMap(type).get(id);
+    if (type.isInstance(found)) return type.cast(found);
+    return store(type, id, record);
+  }
+  
+  private Game internGame(long gameID, Game game) {
+    if (game != null) gameIDsByBGGID.put(game.getBggID(), gameID);
+    return store(Game.class, gameID, game);
+  }
+  
+  private User internUser(long userID, User user) {
+    if (user != null && user.getUserName() != null)
+      userIDsByName.put(user.getUserName().toLowerCase(Locale.ENGLISH), userID);
+    return store(User.class, userID, user);
+  }
+  
+  private List<MediaItem> internMediaItems(List<MediaItem> results) {
+    List<MediaItem> items = new ArrayList<MediaItem>(results.size());
+    for (MediaItem item : results)
+      items.add(intern(MediaItem.class, item.getMediaID(), item));
+    return items;
+  }
+  
+  private List<WishlistItem> internWishlistItems(List<WishlistItem> results) {
+    List<WishlistItem> items = new ArrayList<WishlistItem>(results.size());
+    for (WishlistItem item : results)
+      items.add(intern(WishlistItem.class, item.getWishID(), item));
+    return items;
+  }
+}
@@ -0,0 +1,6 @@
+/**
+ * This package holds the request-scoped session used to avoid repeat reads within one unit of work.
+ * 
+ * @author ac010168
+ */
+package com.ac.games.db.session;
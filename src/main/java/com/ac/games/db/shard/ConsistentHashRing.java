@@ -0,0 +1,73 @@
+package com.ac.games.db.shard;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring mapping userIDs to shard indexes.  Each shard is placed on the ring many times
+ * (virtual nodes) to even out the load, and adding a shard only moves the users that land on its new
+ * positions.  Rings are immutable.
+ * 
+ * @author ac010168
+ */
+public class ConsistentHashRing {
+
+  /** Default number of ring positions per shard */
+  public static final int DEFAULT_VIRTUAL_NODES = 160;
+  
+  private final int shardCount;
+  private final TreeMap<Long, Integer> ring;
+  
+  /**
+   * Basic Constructor, using the default number of virtual nodes.
+   * 
+   * @param shardCount The number of shards.
+   */
+  public ConsistentHashRing(int shardCount) {
+    this(shardCount, DEFAULT_VIRTUAL_NODES);
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param shardCount The number of shards.
+   * @param virtualNodes The number of ring positions per shard.
+   */
+  public ConsistentHashRing(int shardCount, int virtualNodes) {
+    if (shardCount < 1 || virtualNodes < 1)
+      throw new IllegalArgumentException("shardCount and virtualNodes must both be at least 1");
+    this.shardCount = shardCount;
+    this.ring       = new TreeMap<Long, Integer>();
+    for (int shard = 0; shard < shardCount; shard++)
+      for (int node = 0; node < virtualNodes; node++)
+        ring.put(hash(((long)shard << 32) | node), shard);
+  }
+  
+  /**
+   * Find the shard that owns this user's data.
+   * 
+   * @param userID The userID.
+   * @return The shard index, from 0 to {@link #getShardCount()} - 1.
+   */
+  public int shardFor(long userID) {
+    Map.Entry<Long, Integer> entry = ring.ceilingEntry(hash(userID));
+    if (entry == null) entry = ring.firstEntry();
+    return entry.getValue();
+  }
+  
+  public int getShardCount() {
+    return shardCount;
+  }
+  
+  /**
+   * Finalizer step from MurmurHash3.
+   */
+  private static long hash(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return key;
+  }
+}
@@ -0,0 +1,168 @@
+package com.ac.games.db.shard;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ac.games.data.Collection;
+import com.ac.games.data.CollectionItem;
+import com.ac.games.data.MediaItem;
+import com.ac.games.data.PlaythruItem;
+import com.ac.games.data.User;
+import com.ac.games.data.UserDetail;
+import com.ac.games.data.WishlistItem;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * Streaming migration tool for moving user-owned data between shards when the {@link ConsistentHashRing}
+ * changes, such as when shards are added.
+ * <p>
+ * Each shard is walked one record at a time by ID, so nothing is loaded in bulk.  A record whose user maps
+ * to a different shard under the new ring is copied to its new shard (unless it is already there) and then
+ * deleted from the old one.  This means an interrupted migration can simply be run again.  Writes for the
+ * users being moved should be paused while this runs, and the router switched to the new ring with
+ * {@link ShardedGamesDatabase#setRing(ConsistentHashRing)} once it completes.
+ * 
+ * @author ac010168
+ */
+public class ShardMigrator {
+
+  /** The kinds of records we move */
+  public enum RecordType { USER, USER_DETAIL, COLLECTION, COLLECTION_ITEM, WISHLIST_ITEM, PLAYTHRU_ITEM, MEDIA_ITEM }
+  
+  private final List<GamesDatabase> shards;
+  private final ConsistentHashRing  newRing;
+  private final Map<RecordType, Integer> movedCounts;
+  
+  /**
+   * Constructor.
+   * 
+   * @param shards Every shard, old and new, in ring order.
+   * @param newRing The ring we are moving to.  It must have one entry per shard.
+   */
+  public ShardMigrator(List<GamesDatabase> shards, ConsistentHashRing newRing) {
+    if (newRing.getShardCount() != shards.size())
+      throw new IllegalArgumentException("The ring has " + newRing.getShardCount() + " shards, but " + shards.size() + " were provided");
+    this.shards      = shards;
+    this.newRing     = newRing;
+    this.movedCounts = new EnumMap<RecordType, Integer>(RecordType.class);
+    for (RecordType type : RecordType.values())
+      movedCounts.put(type, 0);
+  }
+  
+  /**
+   * Move every misplaced record on every shard.
+   * 
+   * @return The number of records moved, by type.
+   * 
+   * @throws ConfigurationException Throws this exception if a database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public Map<RecordType, Integer> migrate() throws ConfigurationException, DatabaseOperationException {
+    for (int i = 0; i < shards.size(); i++)
+      migrateShard(i);
+    return movedCounts;
+  }
+  
+  /**
+   * Move every misplaced record off of a single shard.
+   * 
+   * @param shardIndex The shard to move records off of.
+   * 
+   * @throws ConfigurationException Throws this exception if a database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public void migrateShard(int shardIndex) throws ConfigurationException, DatabaseOperationException {
+    GamesDatabase source = shards.get(shardIndex);
+    
+    //Items first, so users are only removed from the old shard once everything they own has moved
+    long maxID = source.getMaxCollectionItemID();
+    for (long id = 1; id <= maxID; id++) {
+      CollectionItem item = source.readCollectionItem(id);
+      GamesDatabase target = targetFor(item == null ? null : item.getUserID(), shardIndex);
+      if (target == null) continue;
+      if (target.readCollectionItem(id) == null) target.insertCollectionItem(item);
+      source.deleteCollectionItem(id);
+      moved(RecordType.COLLECTION_ITEM);
+    }
+    
+    maxID = source.getMaxWishlistItemID();
+    for (long id = 1; id <= maxID; id++) {
+      WishlistItem item = source.readWishlistItem(id);
+      GamesDatabase target = targetFor(item == null ? null : item.getUserID(), shardIndex);
+      if (target == null) continue;
+      if (target.readWishlistItem(id) == null) target.insertWishlistItem(item);
+      source.deleteWishlistItem(id);
+      moved(RecordType.WISHLIST_ITEM);
+    }
+    
+    maxID = source.getMaxPlaythruItemID();
+    for (long id = 1; id <= maxID; id++) {
+      PlaythruItem item = source.readPlaythruItem(id);
+      GamesDatabase target = targetFor(item == null ? null : item.getUserID(), shardIndex);
+      if (target == null) continue;
+      if (target.readPlaythruItem(id) == null) target.insertPlaythruItem(item);
+      source.deletePlaythruItem(id);
+      moved(RecordType.PLAYTHRU_ITEM);
+    }
+    
+    maxID = source.getMaxMediaItemID();
+    for (long id = 1; id <= maxID; id++) {
+      MediaItem item = source.readMediaItemByMediaID(id);
+      GamesDatabase target = targetFor(item == null ? null : item.getUserID(), shardIndex);
+      if (target == null) continue;
+      if (target.readMediaItemByMediaID(id) == null) target.insertMediaItem(item);
+      source.deleteMediaItem(id);
+      moved(RecordType.MEDIA_ITEM);
+    }
+    
+    maxID = source.getMaxCollectionID();
+    for (long id = 1; id <= maxID; id++) {
+      Collection collection = source.readCollection(id);
+      GamesDatabase target = targetFor(collection == null ? null : collection.getUserID(), shardIndex);
+      if (target == null) continue;
+      if (target.readCollection(id) == null) target.insertCollection(collection);
+      source.deleteCollection(id);
+      moved(RecordType.COLLECTION);
+    }
+    
+    maxID = source.getMaxUserID();
+    for (long userID = 1; userID <= maxID; userID++) {
+      GamesDatabase target = targetFor(userID, shardIndex);
+      if (target == null) continue;
+      
+      UserDetail detail = source.readUserDetail(userID);
+      if (detail != null) {
+        if (target.readUserDetail(userID) == null) target.insertUserDetail(detail);
+        source.deleteUserDetail(userID);
+        moved(RecordType.USER_DETAIL);
+      }
+      
+      User user = source.readUser(userID);
+      if (user != null) {
+        if (target.readUser(userID) == null) target.insertUser(user);
+        source.deleteUser(userID);
+        moved(RecordType.USER);
+      }
+    }
+  }
+  
+  /**
+   * Gets the new home for a record.
+   * 
+   * @return The target shard, or null if the record is missing or doesn't need to move.
+   */
+  private GamesDatabase targetFor(Long userID, int shardIndex) {
+    if (userID == null) return null;
+    int newShard = newRing.shardFor(userID);
+    return newShard == shardIndex ? null : shards.get(newShard);
+  }
+  
+  private void moved(RecordType type) {
+    movedCounts.put(type, movedCounts.get(type) + 1);
+  }
+}
@@ -0,0 +1,518 @@
+package com.ac.games.db.shard;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.ac.games.data.Collection;
+import com.ac.games.data.CollectionItem;
+import com.ac.games.data.MediaItem;
+import com.ac.games.data.PlaythruItem;
+import com.ac.games.data.User;
+import com.ac.games.data.UserCollectionStats;
+import com.ac.games.data.UserDetail;
+import com.ac.games.data.WishlistItem;
+import com.ac.games.db.DatabaseFutures;
+import com.ac.games.db.DelegatingGamesDatabase;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.dashboard.UserDashboard;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * {@link GamesDatabase} that spreads user-owned data across several backends.
+ * <p>
+ * Catalog data (games, relations, BGG, CSI and MM data, and the stats rows) stays on a single shared backend.
+ * {@link User}, {@link UserDetail}, {@link Collection}, {@link CollectionItem}, {@link WishlistItem},
+ * {@link PlaythruItem} and {@link MediaItem} data lives on the shard picked for its userID by a
+ * {@link ConsistentHashRing}.  Calls that carry a userID (or an object with one) go straight to that shard.
+ * Calls that don't, such as {@link #readWishlistByGame(long)}, {@link #readMediaItemsByGameID(long)},
+ * {@link #readUser(String)} and the reads by item ID, are sent to every shard in parallel and the results
+ * are combined.  Callers that know the userID should prefer the user-scoped calls.
+ * <p>
+ * The shared backend may also be one of the shards.  Use {@link ShardMigrator} to move data when the
+ * ring changes, and {@link #setRing(ConsistentHashRing)} to switch over once it completes.
+ * 
+ * @author ac010168
+ */
+public class ShardedGamesDatabase extends DelegatingGamesDatabase {
+
+  private final List<GamesDatabase> shards;
+  private final ExecutorService     executor;
+  private volatile ConsistentHashRing ring;
+  
+  /**
+   * Constructor.
+   * 
+   * @param catalog The backend for all catalog data.
+   * @param shards The backends for user-owned data, in ring order.
+   * @param ring The ring used to pick a shard for each userID.  It must have one entry per shard.
+   * @param executor The executor used for scatter-gather calls.
+   */
+  public ShardedGamesDatabase(GamesDatabase catalog, List<GamesDatabase> shards, ConsistentHashRing ring, ExecutorService executor) {
+    super(catalog);
+    if (shards.isEmpty())
+      throw new IllegalArgumentException("At least one shard is required");
+    this.shards   = Collections.unmodifiableList(new ArrayList<GamesDatabase>(shards));
+    this.executor = executor;
+    setRing(ring);
+  }
+  
+  /**
+   * Switch to a new ring.  This should only be done after {@link ShardMigrator} has moved the data.
+   * 
+   * @param ring The new ring, which must have one entry per shard.
+   */
+  public void setRing(ConsistentHashRing ring) {
+    if (ring.getShardCount() != shards.size())
+      throw new IllegalArgumentException("The ring has " + ring.getShardCount() + " shards, but " + shards.size() + " were provided");
+    this.ring = ring;
+  }
+  
+  public ConsistentHashRing getRing() {
+    return ring;
+  }
+  
+  public List<GamesDatabase> getShards() {
+    return shards;
+  }
+  
+  /**
+   * Gets the shard that owns this user's data.
+   * 
+   * @param userID The userID.
+   * @return The owning shard.
+   */
+  public GamesDatabase shardFor(long userID) {
+    return shards.get(ring.shardFor(userID));
+  }
+  
+  //**********  Connection Management  **********
+  @Override
+  public void initializeDBConnection() throws ConfigurationException {
+    for (GamesDatabase backend : allBackends())
+      backend.initializeDBConnection();
+  }
+  
+  @Override
+  public void closeDBConnection() throws ConfigurationException {
+    ConfigurationException failure = null;
+    for (GamesDatabase backend : allBackends()) {
+      try {
+        backend.closeDBConnection();
+      } catch (ConfigurationException ce) {
+        if (failure == null) failure = ce;
+      }
+    }
+    if (failure != null) throw failure;
+  }
+  
+  //**********  User Operations  **********
+  @Override
+  public User readUser(long userID) throws ConfigurationException, DatabaseOperationException {
+    return shardFor(userID).readUser(userID);
+  }
+  
+  @Override
+  public User readUser(final String userName) throws ConfigurationException, DatabaseOperationException {
+    return firstFound(scatter(new ShardCall<User>() {
+      @Override
+      public User call(GamesDatabase shard) throws ConfigurationException, DatabaseOperationException {
+        return shard.readUser(userName);
+      }
+    }));
+  }
+  
+  @Override
+  public void insertUser(User user) throws ConfigurationException, DatabaseOperationException {
+    shardFor(user.getUserID()).insertUser(user);
+  }
+  
+  @Override
+  public void updateUser(User user) throws ConfigurationException, DatabaseOperationException {
+    shardFor(user.getUserID()).updateUser(user);
+  }
+  
+  @Override
+  public void deleteUser(long userID) throws ConfigurationException, DatabaseOperationException {
+    shardFor(userID).deleteUser(userID);
+  }
+  
+  @Override
+  public long getMaxUserID() throws ConfigurationException, DatabaseOperationException {
+    return max(scatter(new ShardCall<Long>() {
+      @Override
+      public Long call(GamesDatabase shard) throws ConfigurationException, DatabaseOperationException {
+        return shard.getMaxUserID();
+      }
+    }));
+  }
+  
+  @Override
+  public UserDetail readUserDetail(long userID) throws ConfigurationException, DatabaseOperationException {
+    return shardFor(userID).readUserDetail(userID);
+  }
+  
+  @Override
+  public void insertUserDetail(UserDetail userDetail) throws ConfigurationException, DatabaseOperationException {
+    shardFor(userDetail.getUserID()).insertUserDetail(userDetail);
+  }
+  
+  @Override
+  public void updateUserDetail(UserDetail userDetail) throws ConfigurationException, DatabaseOperationException {
+    shardFor(userDetail.getUserID()).updateUserDetail(userDetail);
+  }
+  
+  @Override
+  public void deleteUserDetail(long userID) throws ConfigurationException, DatabaseOperationException {
+    shardFor(userID).deleteUserDetail(userID);
+  }
+  
+  @Override
+  public UserDashboard readUserDashboard(long userID, int topX) throws ConfigurationException, DatabaseOperationException {
+    return shardFor(userID).readUserDashboard(userID, topX);
+  }
+  
+  //**********  Collection Operations  **********
+  @Override
+  public Collection readCollection(final long collectionID) throws ConfigurationException, DatabaseOperationException {
+    return firstFound(scatter(new ShardCall<Collection>() {
+      @Override
+      public Collection call(GamesDatabase shard) throws ConfigurationException, DatabaseOperationException {
+        return shard.readCollection(collectionID);
+      }
+    }));
+  }
+  
+  @Override
+  public void insertCollection(Collection collection) throws ConfigurationException, DatabaseOperationException {
+    shardFor(collection.getUserID()).insertCollection(collection);
+  }
+  
+  @Override
+  public void updateCollection(Collection collection) throws ConfigurationException, DatabaseOperationException {
+    shardFor(collection.getUserID()).updateCollection(collection);
+  }
+  
+  @Override
+  public void deleteCollection(long collectionID) throws ConfigurationException, DatabaseOperationException {
+    Collection collection = readCollection(collectionID);
+    if (collection == null)
+      throw new DatabaseOperationException("Unable to find Collection " + collectionID + " on any shard");
+    shardFor(collection.getUserID()).deleteCollection(collectionID);
+  }
+  
+  @Override
+  public long getMaxCollectionID() throws ConfigurationException, DatabaseOperationException {
+    return max(scatter(new ShardCall<Long>() {
+      @Override
+      public Long call(GamesDatabase shard) throws ConfigurationException, DatabaseOperationException {
+        return shard.getMaxCollectionID();
+      }
+    }));
+  }
+  
+  @Override
+  public UserCollectionStats readCollectionStats(long userID) throws ConfigurationException, DatabaseOperationException {
+    return shardFor(userID).readCollectionStats(userID);
+  }
+  
+  //**********  CollectionItem Operations  **********
+  @Override
+  public CollectionItem readCollectionItem(final long itemID) throws ConfigurationException, DatabaseOperationException {
+    return firstFound(scatter(new ShardCall<CollectionItem>() {
+      @Override
+      public CollectionItem call(GamesDatabase shard) throws ConfigurationException, DatabaseOperationException {
+        return shard.readCollectionItem(itemID);
+      }
+    }));
+  }
+  
+  @Override
+  public void insertCollectionItem(CollectionItem item) throws ConfigurationException, DatabaseOperationException {
+    shardFor(item.getUserID()).insertCollectionItem(item);
+  }
+  
+  @Override
+  public void updateCollectionItem(CollectionItem item) throws ConfigurationException, DatabaseOperationException {
+    shardFor(item.getUserID()).updateCollectionItem(item);
+  }
+  
+  @Override
+  public void deleteCollectionItem(long itemID) throws ConfigurationException, DatabaseOperationException {
+    CollectionItem item = readCollectionItem(itemID);
+    if (item == null)
+      throw new DatabaseOperationException("Unable to find CollectionItem " + itemID + " on any shard");
+    shardFor(item.getUserID()).deleteCollectionItem(itemID);
+  }
+  
+  @Override
+  public long getMaxCollectionItemID() throws ConfigurationException, DatabaseOperationException {
+    return max(scatter(new ShardCall<Long>() {
+      @Override
+      public Long call(GamesDatabase shard) throws ConfigurationException, DatabaseOperationException {
+        return shard.getMaxCollectionItemID();
+      }
+    }));
+  }
+  
+  @Override
+  public List<CollectionItem> getNewestCollectionItems(long userID, int topX) throws ConfigurationException, DatabaseOperationException {
+    return shardFor(userID).getNewestCollectionItems(userID, topX);
+  }
+  
+  //**********  MediaItem Operations  **********
+  @Override
+  public MediaItem readMediaItemByMediaID(final long mediaID) throws ConfigurationException, DatabaseOperationException {
+    return firstFound(scatter(new ShardCall<MediaItem>() {
+      @Override
+      public MediaItem call(GamesDatabase shard) throws ConfigurationException, DatabaseOperationException {
+        return shard.readMediaItemByMediaID(mediaID);
+      }
+    }));
+  }
+  
+  @Override
+  public List<MediaItem> readMediaItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    return shardFor(userID).readMediaItemsByUserID(userID);
+  }
+  
+  @Override
+  public List<MediaItem> readMediaItemsByGameID(final long gameID) throws ConfigurationException, DatabaseOperationException {
+    return concat(scatter(new ShardCall<List<MediaItem>>() {
+      @Override
+      public List<MediaItem> call(GamesDatabase shard) throws ConfigurationException, DatabaseOperationException {
+        return shard.readMediaItemsByGameID(gameID);
+      }
+    }));
+  }
+  
+  @Override
+  public void insertMediaItem(MediaItem item) throws ConfigurationException, DatabaseOperationException {
+    shardFor(item.getUserID()).insertMediaItem(item);
+  }
+  
+  @Override
+  public void updateMediaItem(MediaItem item) throws ConfigurationException, DatabaseOperationException {
+    shardFor(item.getUserID()).updateMediaItem(item);
+  }
+  
+  @Override
+  public void deleteMediaItem(long mediaID) throws ConfigurationException, DatabaseOperationException {
+    MediaItem item = readMediaItemByMediaID(mediaID);
+    if (item == null)
+      throw new DatabaseOperationException("Unable to find MediaItem " + mediaID + " on any shard");
+    shardFor(item.getUserID()).deleteMediaItem(mediaID);
+  }
+  
+  @Override
+  public long getMaxMediaItemID() throws ConfigurationException, DatabaseOperationException {
+    return max(scatter(new ShardCall<Long>() {
+      @Override
+      public Long call(GamesDatabase shard) throws ConfigurationException, DatabaseOperationException {
+        return shard.getMaxMediaItemID();
+      }
+    }));
+  }
+  
+  //**********  WishlistItem Operations  **********
+  @Override
+  public WishlistItem readWishlistItem(final long wishID) throws ConfigurationException, DatabaseOperationException {
+    return firstFound(scatter(new ShardCall<WishlistItem>() {
+      @Override
+      public WishlistItem call(GamesDatabase shard) throws ConfigurationException, DatabaseOperationException {
+        return shard.readWishlistItem(wishID);
+      }
+    }));
+  }
+  
+  @Override
+  public WishlistItem readWishlistItem(long userID, long gameID) throws ConfigurationException, DatabaseOperationException {
+    return shardFor(userID).readWishlistItem(userID, gameID);
+  }
+  
+  @Override
+  public List<WishlistItem> readWishlistForUser(long userID) throws ConfigurationException, DatabaseOperationException {
+    return shardFor(userID).readWishlistForUser(userID);
+  }
+  
+  @Override
+  public List<WishlistItem> readWishlistByGame(final long gameID) throws ConfigurationException, DatabaseOperationException {
+    return concat(scatter(new ShardCall<List<WishlistItem>>() {
+      @Override
+      public List<WishlistItem> call(GamesDatabase shard) throws ConfigurationException, DatabaseOperationException {
+        return shard.readWishlistByGame(gameID);
+      }
+    }));
+  }
+  
+  @Override
+  public void insertWishlistItem(WishlistItem item) throws ConfigurationException, DatabaseOperationException {
+    shardFor(item.getUserID()).insertWishlistItem(item);
+  }
+  
+  @Override
+  public void updateWishlistItem(WishlistItem item) throws ConfigurationException, DatabaseOperationException {
+    shardFor(item.getUserID()).updateWishlistItem(item);
+  }
+  
+  @Override
+  public void deleteWishlistItem(long wishID) throws ConfigurationException, DatabaseOperationException {
+    WishlistItem item = readWishlistItem(wishID);
+    if (item == null)
+      throw new DatabaseOperationException("Unable to find WishlistItem " + wishID + " on any shard");
+    shardFor(item.getUserID()).deleteWishlistItem(wishID);
+  }
+  
+  @Override
+  public long getMaxWishlistItemID() throws ConfigurationException, DatabaseOperationException {
+    return max(scatter(new ShardCall<Long>() {
+      @Override
+      public Long call(GamesDatabase shard) throws ConfigurationException, DatabaseOperationException {
+        return shard.getMaxWishlistItemID();
+      }
+    }));
+  }
+  
+  //**********  PlaythruItem Operations  **********
+  @Override
+  public PlaythruItem readPlaythruItem(final long playthruID) throws ConfigurationException, DatabaseOperationException {
+    return firstFound(scatter(new ShardCall<PlaythruItem>() {
+      @Override
+      public PlaythruItem call(GamesDatabase shard) throws ConfigurationException, DatabaseOperationException {
+        return shard.readPlaythruItem(playthruID);
+      }
+    }));
+  }
+  
+  @Override
+  public void insertPlaythruItem(PlaythruItem item) throws ConfigurationException, DatabaseOperationException {
+    shardFor(item.getUserID()).insertPlaythruItem(item);
+  }
+  
+  @Override
+  public void updatePlaythruItem(PlaythruItem item) throws ConfigurationException, DatabaseOperationException {
+    shardFor(item.getUserID()).updatePlaythruItem(item);
+  }
+  
+  @Override
+  public void deletePlaythruItem(long playthruID) throws ConfigurationException, DatabaseOperationException {
+    PlaythruItem item = readPlaythruItem(playthruID);
+    if (item == null)
+      throw new DatabaseOperationException("Unable to find PlaythruItem " + playthruID + " on any shard");
+    shardFor(item.getUserID()).deletePlaythruItem(playthruID);
+  }
+  
+  @Override
+  public long getMaxPlaythruItemID() throws ConfigurationException, DatabaseOperationException {
+    return max(scatter(new ShardCall<Long>() {
+      @Override
+      public Long call(GamesDatabase shard) throws ConfigurationException, DatabaseOperationException {
+        return shard.getMaxPlaythruItemID();
+      }
+    }));
+  }
+  
+  //**********  Per-User Bulk Operations  **********
+  @Override
+  public List<PlaythruItem> readPlaythruItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    return shardFor(userID).readPlaythruItemsByUserID(userID);
+  }
+  
+  @Override
+  public List<Collection> deleteCollectionsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    return shardFor(userID).deleteCollectionsByUserID(userID);
+  }
+  
+  @Override
+  public List<CollectionItem> deleteCollectionItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    return shardFor(userID).deleteCollectionItemsByUserID(userID);
+  }
+  
+  @Override
+  public List<WishlistItem> deleteWishlistItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    return shardFor(userID).deleteWishlistItemsByUserID(userID);
+  }
+  
+  @Override
+  public List<PlaythruItem> deletePlaythruItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    return shardFor(userID).deletePlaythruItemsByUserID(userID);
+  }
+  
+  @Override
+  public List<MediaItem> deleteMediaItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    return shardFor(userID).deleteMediaItemsByUserID(userID);
+  }
+  
+  //**********  Scatter-Gather Support  **********
+  /**
+   * A call to be made against a single shard.
+   */
+  private interface ShardCall<T> {
+    public T call(GamesDatabase shard) throws ConfigurationException, DatabaseOperationException;
+  }
+  
+  /**
+   * Run a call against every shard in parallel.
+   * 
+   * @return The results, in shard order.
+   */
+  private <T> List<T> scatter(final ShardCall<T> call) throws ConfigurationException, DatabaseOperationException {
+    List<Future<T>> futures = new ArrayList<Future<T>>(shards.size());
+    for (final GamesDatabase shard : shards) {
+      futures.add(executor.submit(new Callable<T>() {
+        @Override
+        public T call() throws Exception {
+          return call.call(shard);
+        }
+      }));
+    }
+    
+    List<T> results = new ArrayList<T>(shards.size());
+    try {
+      for (Future<T> future : futures)
+        results.add(DatabaseFutures.get(future));
+    } finally {
+      for (Future<T> future : futures)
+        future.cancel(true);
+    }
+    return results;
+  }
+  
+  private static <T> T firstFound(List<T> results) {
+    for (T result : results)
+      if (result != null) return result;
+    return null;
+  }
+  
+  private static <T> List<T> concat(List<List<T>> results) {
+    List<T> combined = new ArrayList<T>();
+    for (List<T> result : results)
+      if (result != null) combined.addAll(result);
+    return combined;
+  }
+  
+  private static long max(List<Long> results) {
+    long max = -1;
+    for (Long result : results)
+      max = Math.max(max, result);
+    return max;
+  }
+  
+  /**
+   * Gets the catalog backend and every shard, without duplicates.
+   */
+  private List<GamesDatabase> allBackends() {
+    Set<GamesDatabase> seen = Collections.newSetFromMap(new IdentityHashMap<GamesDatabase, Boolean>());
+    List<GamesDatabase> backends = new ArrayList<GamesDatabase>();
+    if (seen.add(delegate)) backends.add(delegate);
+    for (GamesDatabase shard : shards)
+      if (seen.add(shard)) backends.add(shard);
+    return backends;
+  }
+}
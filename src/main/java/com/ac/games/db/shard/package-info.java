@@ -0,0 +1,6 @@
+/**
+ * This package holds the router used to spread user-owned data across several database backends.
+ * 
+ * @author ac010168
+ */
+package com.ac.games.db.shard;
@@ -0,0 +1,39 @@
+package com.ac.games.db.stats;
+
+import java.util.Map;
+
+import com.ac.games.data.BGGGame;
+import com.ac.games.data.BGGGameStats;
+import com.ac.games.data.GameType;
+
+/**
+ * {@link StatsAccumulator} for {@link BGGGame} records, producing {@link BGGGameStats}.
+ * 
+ * @author ac010168
+ */
+public class BGGGameStatsAccumulator extends StatsAccumulator<BGGGame, BGGGameStats> {
+
+  @Override
+  public BGGGameStatsAccumulator newPartition() {
+    return new BGGGameStatsAccumulator();
+  }
+
+  @Override
+  protected long getRecordID(BGGGame record) {
+    return record.getBggID();
+  }
+
+  @Override
+  protected GameType getRecordType(BGGGame record) {
+    return record.getGameType();
+  }
+
+  @Override
+  protected BGGGameStats buildStats(int totalCount, long maxID, Map<GameType, Integer> typeCounts) {
+    BGGGameStats stats = new BGGGameStats();
+    stats.setTotalCount(totalCount);
+    stats.setMaxID(maxID);
+    stats.setTypeCounts(typeCounts);
+    return stats;
+  }
+}
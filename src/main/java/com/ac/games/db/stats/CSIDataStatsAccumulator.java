@@ -0,0 +1,39 @@
+package com.ac.games.db.stats;
+
+import java.util.Map;
+
+import com.ac.games.data.CoolStuffIncPriceData;
+import com.ac.games.data.CSIDataStats;
+import com.ac.games.data.GameType;
+
+/**
+ * {@link StatsAccumulator} for {@link CoolStuffIncPriceData} records, producing {@link CSIDataStats}.
+ * 
+ * @author ac010168
+ */
+public class CSIDataStatsAccumulator extends StatsAccumulator<CoolStuffIncPriceData, CSIDataStats> {
+
+  @Override
+  public CSIDataStatsAccumulator newPartition() {
+    return new CSIDataStatsAccumulator();
+  }
+
+  @Override
+  protected long getRecordID(CoolStuffIncPriceData record) {
+    return record.getCsiID();
+  }
+
+  @Override
+  protected GameType getRecordType(CoolStuffIncPriceData record) {
+    return record.getGameType();
+  }
+
+  @Override
+  protected CSIDataStats buildStats(int totalCount, long maxID, Map<GameType, Integer> typeCounts) {
+    CSIDataStats stats = new CSIDataStats();
+    stats.setTotalCount(totalCount);
+    stats.setMaxID(maxID);
+    stats.setTypeCounts(typeCounts);
+    return stats;
+  }
+}
@@ -0,0 +1,39 @@
+package com.ac.games.db.stats;
+
+import java.util.Map;
+
+import com.ac.games.data.MiniatureMarketPriceData;
+import com.ac.games.data.MMDataStats;
+import com.ac.games.data.GameType;
+
+/**
+ * {@link StatsAccumulator} for {@link MiniatureMarketPriceData} records, producing {@link MMDataStats}.
+ * 
+ * @author ac010168
+ */
+public class MMDataStatsAccumulator extends StatsAccumulator<MiniatureMarketPriceData, MMDataStats> {
+
+  @Override
+  public MMDataStatsAccumulator newPartition() {
+    return new MMDataStatsAccumulator();
+  }
+
+  @Override
+  protected long getRecordID(MiniatureMarketPriceData record) {
+    return record.getMmID();
+  }
+
+  @Override
+  protected GameType getRecordType(MiniatureMarketPriceData record) {
+    return record.getGameType();
+  }
+
+  @Override
+  protected MMDataStats buildStats(int totalCount, long maxID, Map<GameType, Integer> typeCounts) {
+    MMDataStats stats = new MMDataStats();
+    stats.setTotalCount(totalCount);
+    stats.setMaxID(maxID);
+    stats.setTypeCounts(typeCounts);
+    return stats;
+  }
+}
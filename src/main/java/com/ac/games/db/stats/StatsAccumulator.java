@@ -0,0 +1,125 @@
+package com.ac.games.db.stats;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.ac.games.data.GameType;
+
+/**
+ * Mergeable accumulator for one of our stats rows.  Each scan partition gets its own accumulator, and
+ * the partial results are merged together once the partitions complete.  Records can also be added
+ * or removed one at a time, so a merged accumulator can be kept current as records change.
+ * <p>
+ * This class is not thread-safe.  Callers are responsible for guarding shared accumulators.
+ * 
+ * @author ac010168
+ *
+ * @param <R> The record type being counted, such as {@link com.ac.games.data.BGGGame}
+ * @param <S> The stats type produced, such as {@link com.ac.games.data.BGGGameStats}
+ */
+public abstract class StatsAccumulator<R, S> {
+
+  /** The number of records currently counted */
+  private int totalCount;
+  /** The highest record ID seen.  This is a high-water mark, and is not lowered on removal */
+  private long maxID;
+  /** Record counts by {@link GameType} ordinal */
+  private final int[] typeCounts;
+  
+  protected StatsAccumulator() {
+    totalCount = 0;
+    maxID      = -1;
+    typeCounts = new int[GameType.values().length];
+  }
+  
+  /**
+   * Add a single record to this accumulator.
+   * 
+   * @param record The record to count.  Null values are ignored.
+   */
+  public void add(R record) {
+    if (record == null) return;
+    totalCount++;
+    maxID = Math.max(maxID, getRecordID(record));
+    GameType type = getRecordType(record);
+    if (type != null) typeCounts[type.ordinal()]++;
+  }
+  
+  /**
+   * Remove a single record from this accumulator.  The record should be the version that was
+   * previously added, otherwise the type counts will drift.
+   * 
+   * @param record The record to remove.  Null values are ignored.
+   */
+  public void remove(R record) {
+    if (record == null) return;
+    totalCount--;
+    GameType type = getRecordType(record);
+    if (type != null) typeCounts[type.ordinal()]--;
+  }
+  
+  /**
+   * Fold the partial results of another accumulator into this one.
+   * 
+   * @param other The accumulator to merge.  It is not modified.
+   */
+  public void merge(StatsAccumulator<R, S> other) {
+    totalCount += other.totalCount;
+    maxID = Math.max(maxID, other.maxID);
+    for (int i = 0; i < typeCounts.length; i++)
+      typeCounts[i] += other.typeCounts[i];
+  }
+  
+  /**
+   * Build the stats object for the current state of this accumulator.
+   * 
+   * @return A new stats object.
+   */
+  public S toStats() {
+    Map<GameType, Integer> counts = new EnumMap<GameType, Integer>(GameType.class);
+    for (GameType type : GameType.values())
+      counts.put(type, typeCounts[type.ordinal()]);
+    return buildStats(totalCount, maxID, counts);
+  }
+  
+  public int getTotalCount() {
+    return totalCount;
+  }
+  
+  public long getMaxID() {
+    return maxID;
+  }
+  
+  /**
+   * Create an empty accumulator of the same type, to be used for a new partition.
+   * 
+   * @return A new, empty accumulator.
+   */
+  public abstract StatsAccumulator<R, S> newPartition();
+  
+  /**
+   * Get the primary ID for this record.
+   * 
+   * @param record The record
+   * @return The ID value for the record.
+   */
+  protected abstract long getRecordID(R record);
+  
+  /**
+   * Get the {@link GameType} for this record.
+   * 
+   * @param record The record
+   * @return The GameType, which may be null if not yet reviewed.
+   */
+  protected abstract GameType getRecordType(R record);
+  
+  /**
+   * Translate the accumulated values into the actual stats object.
+   * 
+   * @param totalCount The total record count
+   * @param maxID The highest ID seen
+   * @param typeCounts The record count by {@link GameType}
+   * @return A new stats object.
+   */
+  protected abstract S buildStats(int totalCount, long maxID, Map<GameType, Integer> typeCounts);
+}
@@ -0,0 +1,485 @@
+package com.ac.games.db.stats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.ac.games.data.BGGGame;
+import com.ac.games.data.BGGGameStats;
+import com.ac.games.data.CSIDataStats;
+import com.ac.games.data.CoolStuffIncPriceData;
+import com.ac.games.data.MMDataStats;
+import com.ac.games.data.MiniatureMarketPriceData;
+import com.ac.games.db.DatabaseFutures;
+import com.ac.games.db.EntityType;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * Computes the {@link BGGGameStats}, {@link CSIDataStats} and {@link MMDataStats} rows together.
+ * <p>
+ * A full {@link #rebuild()} splits the BGG, CSI and MM id lists into partitions and walks all three
+ * in one pass, with each partition filling its own set of {@link StatsAccumulator}s.  The partial
+ * results are merged once every partition is done.  After that, the merged accumulators can be kept
+ * current with the <code>*Changed</code> methods, and written with {@link #publish()}, which uses the
+ * <code>replace*Stats</code> calls so readers never see a missing stats row.
+ * <p>
+ * Writers wrap each read-old, write, apply sequence for a record in {@link #beginChange(EntityType, long)}
+ * and {@link #endChange(EntityType, long)}, which lock that record's stripe, so two writes to the same
+ * record can't both back out the same old version.  Writes to different records run side by side, and
+ * only take the engine's own lock for the moment it takes to apply the delta.
+ * <p>
+ * A rebuild does not hold writers back.  Each id is scanned under its stripe lock, and the scan keeps a
+ * position per type and partition, so a write knows whether the scan has already read its record.  While
+ * the scan runs, writes to records it has already read are logged as deltas, and for records missing from
+ * the scanned id lists the latest version is kept.  Both are applied to the new accumulators before they
+ * replace the current ones.  Writes to records not yet read are left for the scan to pick up.  Until the
+ * first rebuild has finished there is no base to apply deltas to, so {@link #publish()} does nothing.
+ * 
+ * @author ac010168
+ */
+public class StatsAggregationEngine {
+
+  /** Number of record lock stripes */
+  private static final int STRIPE_COUNT = 64;
+  /** The types a rebuild scans */
+  private static final EntityType[] SCANNED_TYPES = { EntityType.BGG_GAME, EntityType.CSI_DATA, EntityType.MM_DATA };
+  
+  /** The database we scan and publish to */
+  private final GamesDatabase database;
+  /** The number of partitions (and threads) used for a full rebuild */
+  private final int partitionCount;
+  
+  /** The current accumulators and dirty flags, guarded by this object's monitor */
+  private BGGGameStatsAccumulator bggStats;
+  private CSIDataStatsAccumulator csiStats;
+  private MMDataStatsAccumulator  mmStats;
+  
+  /** Held by writers for a read-old, write, apply sequence on one record, and by a rebuild for each read */
+  private final ReentrantLock[] stripes;
+  /** Serializes rebuilds */
+  private final Object rebuildMonitor = new Object();
+  /** Serializes publishes, so stats are written in the order they were taken */
+  private final Object publishMonitor = new Object();
+  /** The running rebuild, or null; guarded by this object's monitor */
+  private Scan scan;
+  /** Set once the first rebuild has finished */
+  private boolean rebuilt;
+  
+  private boolean bggDirty;
+  private boolean csiDirty;
+  private boolean mmDirty;
+  
+  /**
+   * Basic Constructor.  Uses one partition per available processor.
+   * 
+   * @param database The database to scan and publish to.
+   */
+  public StatsAggregationEngine(GamesDatabase database) {
+    this(database, Runtime.getRuntime().availableProcessors());
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param database The database to scan and publish to.
+   * @param partitionCount The number of partitions to split the full scan into.
+   */
+  public StatsAggregationEngine(GamesDatabase database, int partitionCount) {
+    if (partitionCount < 1)
+      throw new IllegalArgumentException("partitionCount must be at least 1");
+    this.database       = database;
+    this.partitionCount = partitionCount;
+    
+    bggStats = new BGGGameStatsAccumulator();
+    csiStats = new CSIDataStatsAccumulator();
+    mmStats  = new MMDataStatsAccumulator();
+    
+    stripes = new ReentrantLock[STRIPE_COUNT];
+    for (int i = 0; i < STRIPE_COUNT; i++)
+      stripes[i] = new ReentrantLock();
+  }
+  
+  /**
+   * Recompute all three stats types from scratch with a single partitioned scan, then publish them.
+   * Tracked writes carry on while the rebuild runs.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public void rebuild() throws ConfigurationException, DatabaseOperationException {
+    synchronized (rebuildMonitor) {
+      Scan current = new Scan();
+      synchronized (this) {
+        scan = current;
+      }
+      try {
+        List<Long> bggIDs = database.getBggIDList();
+        List<Long> csiIDs = database.getCSIIDList();
+        List<Long> mmIDs  = database.getMMIDList();
+        synchronized (this) {
+          current.start(bggIDs, csiIDs, mmIDs);
+        }
+        scanAndSwap(current);
+      } finally {
+        synchronized (this) {
+          scan = null;
+        }
+      }
+    }
+    publish();
+  }
+  
+  private void scanAndSwap(Scan current) throws ConfigurationException, DatabaseOperationException {
+    ExecutorService executor = Executors.newFixedThreadPool(partitionCount);
+    try {
+      List<Future<ScanPartition>> futures = new ArrayList<Future<ScanPartition>>(partitionCount);
+      for (int i = 0; i < partitionCount; i++)
+        futures.add(executor.submit(new ScanPartition(i, current)));
+      
+      BGGGameStatsAccumulator newBGGStats = new BGGGameStatsAccumulator();
+      CSIDataStatsAccumulator newCSIStats = new CSIDataStatsAccumulator();
+      MMDataStatsAccumulator  newMMStats  = new MMDataStatsAccumulator();
+      for (Future<ScanPartition> future : futures) {
+        ScanPartition partition = DatabaseFutures.get(future);
+        newBGGStats.merge(partition.bggStats);
+        newCSIStats.merge(partition.csiStats);
+        newMMStats.merge(partition.mmStats);
+      }
+      
+      synchronized (this) {
+        for (Change change : current.log) {
+          switch (change.type) {
+            case BGG_GAME:
+              newBGGStats.remove((BGGGame)change.oldRecord);
+              newBGGStats.add((BGGGame)change.newRecord);
+              break;
+            case CSI_DATA:
+              newCSIStats.remove((CoolStuffIncPriceData)change.oldRecord);
+              newCSIStats.add((CoolStuffIncPriceData)change.newRecord);
+              break;
+            default:
+              newMMStats.remove((MiniatureMarketPriceData)change.oldRecord);
+              newMMStats.add((MiniatureMarketPriceData)change.newRecord);
+              break;
+          }
+        }
+        //Records the scan never read count as whatever they are now; null means deleted, and adds nothing
+        for (Object record : current.unlisted(EntityType.BGG_GAME))
+          newBGGStats.add((BGGGame)record);
+        for (Object record : current.unlisted(EntityType.CSI_DATA))
+          newCSIStats.add((CoolStuffIncPriceData)record);
+        for (Object record : current.unlisted(EntityType.MM_DATA))
+          newMMStats.add((MiniatureMarketPriceData)record);
+        bggStats = newBGGStats;
+        csiStats = newCSIStats;
+        mmStats  = newMMStats;
+        bggDirty = csiDirty = mmDirty = true;
+        rebuilt  = true;
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+  
+  /**
+   * Start a tracked write to one record.  Blocks while another tracked write to a record in the same
+   * stripe is running, or while a rebuild reads one.  Must be followed by
+   * {@link #endChange(EntityType, long)}, in a finally block.
+   * 
+   * @param type {@link EntityType#BGG_GAME}, {@link EntityType#CSI_DATA} or {@link EntityType#MM_DATA}.
+   * @param id The bggID, csiID or mmID being written.
+   */
+  public void beginChange(EntityType type, long id) {
+    stripeFor(type, id).lock();
+  }
+  
+  /**
+   * Finish a tracked write started with {@link #beginChange(EntityType, long)}.
+   * 
+   * @param type The type passed to beginChange.
+   * @param id The id passed to beginChange.
+   */
+  public void endChange(EntityType type, long id) {
+    stripeFor(type, id).unlock();
+  }
+  
+  /**
+   * Write any stats types that have changed since the last publish.  Does nothing until the first
+   * {@link #rebuild()} has finished.  The stats are copied under the engine's lock and written after
+   * it is released, so tracked writes are not held up by the database calls.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public void publish() throws ConfigurationException, DatabaseOperationException {
+    synchronized (publishMonitor) {
+      BGGGameStats bggSnapshot = null;
+      CSIDataStats csiSnapshot = null;
+      MMDataStats  mmSnapshot  = null;
+      synchronized (this) {
+        if (!rebuilt) return;
+        if (bggDirty) bggSnapshot = bggStats.toStats();
+        if (csiDirty) csiSnapshot = csiStats.toStats();
+        if (mmDirty)  mmSnapshot  = mmStats.toStats();
+        bggDirty = csiDirty = mmDirty = false;
+      }
+      
+      boolean written = false;
+      try {
+        if (bggSnapshot != null) database.replaceBGGGameStats(bggSnapshot);
+        if (csiSnapshot != null) database.replaceCSIDataStats(csiSnapshot);
+        if (mmSnapshot != null)  database.replaceMMDataStats(mmSnapshot);
+        written = true;
+      } finally {
+        if (!written) {
+          //Try every type again next time, rather than working out which write failed
+          synchronized (this) {
+            bggDirty |= bggSnapshot != null;
+            csiDirty |= csiSnapshot != null;
+            mmDirty  |= mmSnapshot != null;
+          }
+        }
+      }
+    }
+  }
+  
+  /**
+   * Apply a change to a {@link BGGGame} record.  The caller must hold the record's stripe through
+   * {@link #beginChange(EntityType, long)}.
+   * 
+   * @param oldGame The previous version of the record, or null if this was an insert.
+   * @param newGame The new version of the record, or null if this was a delete.
+   */
+  public synchronized void bggGameChanged(BGGGame oldGame, BGGGame newGame) {
+    BGGGame either = newGame != null ? newGame : oldGame;
+    if (either == null) return;
+    if (rebuilt) {
+      bggStats.remove(oldGame);
+      bggStats.add(newGame);
+      bggDirty = true;
+    }
+    logChange(EntityType.BGG_GAME, either.getBggID(), oldGame, newGame);
+  }
+  
+  /**
+   * Apply a change to a {@link CoolStuffIncPriceData} record.  The caller must hold the record's stripe
+   * through {@link #beginChange(EntityType, long)}.
+   * 
+   * @param oldData The previous version of the record, or null if this was an insert.
+   * @param newData The new version of the record, or null if this was a delete.
+   */
+  public synchronized void csiDataChanged(CoolStuffIncPriceData oldData, CoolStuffIncPriceData newData) {
+    CoolStuffIncPriceData either = newData != null ? newData : oldData;
+    if (either == null) return;
+    if (rebuilt) {
+      csiStats.remove(oldData);
+      csiStats.add(newData);
+      csiDirty = true;
+    }
+    logChange(EntityType.CSI_DATA, either.getCsiID(), oldData, newData);
+  }
+  
+  /**
+   * Apply a change to a {@link MiniatureMarketPriceData} record.  The caller must hold the record's stripe
+   * through {@link #beginChange(EntityType, long)}.
+   * 
+   * @param oldData The previous version of the record, or null if this was an insert.
+   * @param newData The new version of the record, or null if this was a delete.
+   */
+  public synchronized void mmDataChanged(MiniatureMarketPriceData oldData, MiniatureMarketPriceData newData) {
+    MiniatureMarketPriceData either = newData != null ? newData : oldData;
+    if (either == null) return;
+    if (rebuilt) {
+      mmStats.remove(oldData);
+      mmStats.add(newData);
+      mmDirty = true;
+    }
+    logChange(EntityType.MM_DATA, either.getMmID(), oldData, newData);
+  }
+  
+  public synchronized BGGGameStats getBGGGameStats() {
+    return bggStats.toStats();
+  }
+  
+  public synchronized CSIDataStats getCSIDataStats() {
+    return csiStats.toStats();
+  }
+  
+  public synchronized MMDataStats getMMDataStats() {
+    return mmStats.toStats();
+  }
+  
+  /**
+   * Record a change for the running rebuild, if there is one.  Must be called holding this object's
+   * monitor and the record's stripe.
+   */
+  private void logChange(EntityType type, long id, Object oldRecord, Object newRecord) {
+    if (scan != null) scan.record(new Change(type, id, oldRecord, newRecord));
+  }
+  
+  private ReentrantLock stripeFor(EntityType type, long id) {
+    int hash = (int)(id ^ (id >>> 32)) * 31 + type.ordinal();
+    hash ^= (hash >>> 16);
+    return stripes[(hash & 0x7fffffff) % STRIPE_COUNT];
+  }
+  
+  //**********  Rebuild Support  **********
+  /**
+   * The state of one rebuild: the sorted id lists being scanned, how far each partition has got through
+   * each of them, and the changes to apply once the scan is done.  Everything but the scan positions is
+   * guarded by the engine's monitor.
+   */
+  private final class Scan {
+    /** Deltas for records the scan had already read when they changed */
+    private final List<Change> log = new ArrayList<Change>();
+    /** The latest version of each changed record missing from the id lists, by type and id */
+    private final Map<EntityType, Map<Long, Object>> unlisted = new EnumMap<EntityType, Map<Long, Object>>(EntityType.class);
+    /** Changes made before the id lists were read */
+    private List<Change> early = new ArrayList<Change>();
+    /** Sorted ids, by type ordinal; null until the lists are read */
+    private volatile long[][] ids;
+    /** The next index each partition will scan, by type ordinal and partition */
+    private final AtomicIntegerArray[] positions;
+    
+    private Scan() {
+      positions = new AtomicIntegerArray[EntityType.values().length];
+      for (EntityType type : SCANNED_TYPES) {
+        positions[type.ordinal()] = new AtomicIntegerArray(partitionCount);
+        unlisted.put(type, new HashMap<Long, Object>());
+      }
+    }
+    
+    /**
+     * Take the id lists, and sort out the changes made while they were read.  Those changes all came
+     * before the scan reads anything, so a listed record will be read with the change in it; only
+     * records missing from the lists need keeping.
+     */
+    private void start(List<Long> bggIDs, List<Long> csiIDs, List<Long> mmIDs) {
+      long[][] sorted = new long[EntityType.values().length][];
+      sorted[EntityType.BGG_GAME.ordinal()] = sortedArray(bggIDs);
+      sorted[EntityType.CSI_DATA.ordinal()] = sortedArray(csiIDs);
+      sorted[EntityType.MM_DATA.ordinal()]  = sortedArray(mmIDs);
+      for (EntityType type : SCANNED_TYPES) {
+        for (int i = 0; i < partitionCount; i++)
+          positions[type.ordinal()].set(i, i);
+      }
+      ids = sorted;
+      
+      List<Change> changes = early;
+      early = null;
+      for (Change change : changes)
+        record(change);
+    }
+    
+    /**
+     * Keep a change if the scan will not see it: the record has already been read, so the change is a
+     * delta on what was read, or the record is not in the lists at all, so only its latest version
+     * matters.  A change to a record the scan has yet to read is dropped, since the read will include it.
+     */
+    private void record(Change change) {
+      if (early != null) {
+        early.add(change);
+        return;
+      }
+      int index = Arrays.binarySearch(ids[change.type.ordinal()], change.id);
+      if (index < 0)
+        unlisted.get(change.type).put(change.id, change.newRecord);
+      else if (positions[change.type.ordinal()].get(index % partitionCount) > index)
+        log.add(change);
+    }
+    
+    private Collection<Object> unlisted(EntityType type) {
+      return unlisted.get(type).values();
+    }
+    
+    /**
+     * Read one record for the scan under its stripe, then move the partition on past it.
+     */
+    private Object read(EntityType type, int partition, int index) throws ConfigurationException, DatabaseOperationException {
+      long id = ids[type.ordinal()][index];
+      ReentrantLock stripe = stripeFor(type, id);
+      stripe.lock();
+      try {
+        Object record;
+        switch (type) {
+          case BGG_GAME: record = database.readBGGGameData(id);  break;
+          case CSI_DATA: record = database.readCSIPriceData(id); break;
+          default:       record = database.readMMPriceData(id);  break;
+        }
+        positions[type.ordinal()].set(partition, index + partitionCount);
+        return record;
+      } finally {
+        stripe.unlock();
+      }
+    }
+  }
+  
+  private static long[] sortedArray(List<Long> ids) {
+    long[] sorted = new long[ids.size()];
+    for (int i = 0; i < sorted.length; i++)
+      sorted[i] = ids.get(i);
+    Arrays.sort(sorted);
+    return sorted;
+  }
+  
+  /** A logged write: the record before and after, either of which may be null */
+  private static final class Change {
+    private final EntityType type;
+    private final long       id;
+    private final Object     oldRecord;
+    private final Object     newRecord;
+    
+    private Change(EntityType type, long id, Object oldRecord, Object newRecord) {
+      this.type      = type;
+      this.id        = id;
+      this.oldRecord = oldRecord;
+      this.newRecord = newRecord;
+    }
+  }
+  
+  /**
+   * One slice of the full scan.  Each partition takes every Nth id from each of the three lists, so
+   * the work stays balanced even when one data type is much larger than the others.
+   */
+  private class ScanPartition implements Callable<ScanPartition> {
+    private final int  partitionIndex;
+    private final Scan scan;
+    
+    private final BGGGameStatsAccumulator bggStats = new BGGGameStatsAccumulator();
+    private final CSIDataStatsAccumulator csiStats = new CSIDataStatsAccumulator();
+    private final MMDataStatsAccumulator  mmStats  = new MMDataStatsAccumulator();
+    
+    private ScanPartition(int partitionIndex, Scan scan) {
+      this.partitionIndex = partitionIndex;
+      this.scan           = scan;
+    }
+
+    @Override
+    public ScanPartition call() throws Exception {
+      long[] bggIDs = scan.ids[EntityType.BGG_GAME.ordinal()];
+      long[] csiIDs = scan.ids[EntityType.CSI_DATA.ordinal()];
+      long[] mmIDs  = scan.ids[EntityType.MM_DATA.ordinal()];
+      int longest = Math.max(bggIDs.length, Math.max(csiIDs.length, mmIDs.length));
+      for (int i = partitionIndex; i < longest; i += partitionCount) {
+        if (i < bggIDs.length) bggStats.add((BGGGame)scan.read(EntityType.BGG_GAME, partitionIndex, i));
+        if (i < csiIDs.length) csiStats.add((CoolStuffIncPriceData)scan.read(EntityType.CSI_DATA, partitionIndex, i));
+        if (i < mmIDs.length)  mmStats.add((MiniatureMarketPriceData)scan.read(EntityType.MM_DATA, partitionIndex, i));
+      }
+      return this;
+    }
+  }
+}
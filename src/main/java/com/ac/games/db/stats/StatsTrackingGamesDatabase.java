@@ -0,0 +1,147 @@
+package com.ac.games.db.stats;
+
+import com.ac.games.data.BGGGame;
+import com.ac.games.data.CoolStuffIncPriceData;
+import com.ac.games.data.MiniatureMarketPriceData;
+import com.ac.games.db.DelegatingGamesDatabase;
+import com.ac.games.db.EntityType;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * {@link GamesDatabase} decorator that feeds every BGG, CSI and MM write into a
+ * {@link StatsAggregationEngine}, so the stats rows can be kept current without a full rescan.
+ * Updates and deletes read the previous version of the record first so it can be backed out.  Each
+ * read, write and apply runs inside {@link StatsAggregationEngine#beginChange(EntityType, long)}, which
+ * locks just that record, so writes to different records, and a running rebuild, don't wait on each other.
+ * <p>
+ * The stats themselves are only written when {@link StatsAggregationEngine#publish()} is called,
+ * which is normally done at the end of a crawl run or on a timer.
+ * 
+ * @author ac010168
+ */
+public class StatsTrackingGamesDatabase extends DelegatingGamesDatabase {
+
+  private final StatsAggregationEngine engine;
+  
+  /**
+   * Basic Constructor.
+   * 
+   * @param delegate The database to wrap.
+   * @param engine The engine to feed changes into.
+   */
+  public StatsTrackingGamesDatabase(GamesDatabase delegate, StatsAggregationEngine engine) {
+    super(delegate);
+    this.engine = engine;
+  }
+  
+  public StatsAggregationEngine getEngine() {
+    return engine;
+  }
+  
+  @Override
+  public void insertBGGGameData(BGGGame game) throws ConfigurationException, DatabaseOperationException {
+    engine.beginChange(EntityType.BGG_GAME, game.getBggID());
+    try {
+      delegate.insertBGGGameData(game);
+      engine.bggGameChanged(null, game);
+    } finally {
+      engine.endChange(EntityType.BGG_GAME, game.getBggID());
+    }
+  }
+  
+  @Override
+  public void updateBGGGameData(BGGGame game) throws ConfigurationException, DatabaseOperationException {
+    engine.beginChange(EntityType.BGG_GAME, game.getBggID());
+    try {
+      BGGGame oldGame = delegate.readBGGGameData(game.getBggID());
+      delegate.updateBGGGameData(game);
+      engine.bggGameChanged(oldGame, game);
+    } finally {
+      engine.endChange(EntityType.BGG_GAME, game.getBggID());
+    }
+  }
+  
+  @Override
+  public void deleteBGGGameData(long bggID) throws ConfigurationException, DatabaseOperationException {
+    engine.beginChange(EntityType.BGG_GAME, bggID);
+    try {
+      BGGGame oldGame = delegate.readBGGGameData(bggID);
+      delegate.deleteBGGGameData(bggID);
+      engine.bggGameChanged(oldGame, null);
+    } finally {
+      engine.endChange(EntityType.BGG_GAME, bggID);
+    }
+  }
+  
+  @Override
+  public void insertCSIPriceData(CoolStuffIncPriceData csiData) throws ConfigurationException, DatabaseOperationException {
+    engine.beginChange(EntityType.CSI_DATA, csiData.getCsiID());
+    try {
+      delegate.insertCSIPriceData(csiData);
+      engine.csiDataChanged(null, csiData);
+    } finally {
+      engine.endChange(EntityType.CSI_DATA, csiData.getCsiID());
+    }
+  }
+  
+  @Override
+  public void updateCSIPriceData(CoolStuffIncPriceData csiData) throws ConfigurationException, DatabaseOperationException {
+    engine.beginChange(EntityType.CSI_DATA, csiData.getCsiID());
+    try {
+      CoolStuffIncPriceData oldData = delegate.readCSIPriceData(csiData.getCsiID());
+      delegate.updateCSIPriceData(csiData);
+      engine.csiDataChanged(oldData, csiData);
+    } finally {
+      engine.endChange(EntityType.CSI_DATA, csiData.getCsiID());
+    }
+  }
+  
+  @Override
+  public void deleteCSIPriceData(long csiID) throws ConfigurationException, DatabaseOperationException {
+    engine.beginChange(EntityType.CSI_DATA, csiID);
+    try {
+      CoolStuffIncPriceData oldData = delegate.readCSIPriceData(csiID);
+      delegate.deleteCSIPriceData(csiID);
+      engine.csiDataChanged(oldData, null);
+    } finally {
+      engine.endChange(EntityType.CSI_DATA, csiID);
+    }
+  }
+  
+  @Override
+  public void insertMMPriceData(MiniatureMarketPriceData mmData) throws ConfigurationException, DatabaseOperationException {
+    engine.beginChange(EntityType.MM_DATA, mmData.getMmID());
+    try {
+      delegate.insertMMPriceData(mmData);
+      engine.mmDataChanged(null, mmData);
+    } finally {
+      engine.endChange(EntityType.MM_DATA, mmData.getMmID());
+    }
+  }
+  
+  @Override
+  public void updateMMPriceData(MiniatureMarketPriceData mmData) throws ConfigurationException, DatabaseOperationException {
+    engine.beginChange(EntityType.MM_DATA, mmData.getMmID());
+    try {
+      MiniatureMarketPriceData oldData = delegate.readMMPriceData(mmData.getMmID());
+      delegate.updateMMPriceData(mmData);
+      engine.mmDataChanged(oldData, mmData);
+    } finally {
+      engine.endChange(EntityType.MM_DATA, mmData.getMmID());
+    }
+  }
+  
+  @Override
+  public void deleteMMPriceData(long mmID) throws ConfigurationException, DatabaseOperationException {
+    engine.beginChange(EntityType.MM_DATA, mmID);
+    try {
+      MiniatureMarketPriceData oldData = delegate.readMMPriceData(mmID);
+      delegate.deleteMMPriceData(mmID);
+      engine.mmDataChanged(oldData, null);
+    } finally {
+      engine.endChange(EntityType.MM_DATA, mmID);
+    }
+  }
+}
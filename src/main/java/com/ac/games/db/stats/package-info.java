@@ -0,0 +1,7 @@
+/**
+ * This package holds the stats aggregation engine used to build the {@link com.ac.games.data.BGGGameStats},
+ * {@link com.ac.games.data.CSIDataStats} and {@link com.ac.games.data.MMDataStats} rows.
+ * 
+ * @author ac010168
+ */
+package com.ac.games.db.stats;
@@ -0,0 +1,127 @@
+package com.ac.games.db.synthetic;
+
+/**
+ * The shape of a synthetic dataset: how many games and users, and how the per-user item counts and game
+ * popularity are distributed.
+ * 
+ * @author ac010168
+ */
+public class DatasetSpec {
+
+  /** Number of {@link com.ac.games.data.BGGGame}s, with a matching {@link com.ac.games.data.Game} each */
+  private final int    gameCount;
+  /** Fraction of games that are expansions of an earlier game */
+  private final double expansionFraction;
+  /** Fraction of games with CoolStuffInc price data */
+  private final double csiCoverage;
+  /** Fraction of games with Miniature Market price data */
+  private final double mmCoverage;
+  /** Number of users */
+  private final int    userCount;
+  /** Zipf exponent for the number of items each user has */
+  private final double itemCountExponent;
+  /** Zipf exponent for how often each game is chosen */
+  private final double gamePopularityExponent;
+  /** Maximum collection items per user */
+  private final int    maxCollectionItems;
+  /** Maximum wishlist items per user */
+  private final int    maxWishlistItems;
+  /** Maximum playthru items per user */
+  private final int    maxPlaythruItems;
+  /** Maximum media items per user */
+  private final int    maxMediaItems;
+  
+  /**
+   * Constructor.
+   * 
+   * @param gameCount Number of games.
+   * @param expansionFraction Fraction of games that are expansions of an earlier game.
+   * @param csiCoverage Fraction of games with CoolStuffInc price data.
+   * @param mmCoverage Fraction of games with Miniature Market price data.
+   * @param userCount Number of users.
+   * @param itemCountExponent Zipf exponent for the number of items each user has.
+   * @param gamePopularityExponent Zipf exponent for how often each game is chosen.
+   * @param maxCollectionItems Maximum collection items per user.
+   * @param maxWishlistItems Maximum wishlist items per user.
+   * @param maxPlaythruItems Maximum playthru items per user.
+   * @param maxMediaItems Maximum media items per user.
+   */
+  public DatasetSpec(int gameCount, double expansionFraction, double csiCoverage, double mmCoverage, int userCount,
+                     double itemCountExponent, double gamePopularityExponent, int maxCollectionItems, int maxWishlistItems,
+                     int maxPlaythruItems, int maxMediaItems) {
+    if (gameCount < 1) throw new IllegalArgumentException("gameCount must be at least 1");
+    this.gameCount              = gameCount;
+    this.expansionFraction      = expansionFraction;
+    this.csiCoverage            = csiCoverage;
+    this.mmCoverage             = mmCoverage;
+    this.userCount              = userCount;
+    this.itemCountExponent      = itemCountExponent;
+    this.gamePopularityExponent = gamePopularityExponent;
+    this.maxCollectionItems     = Math.min(maxCollectionItems, gameCount);
+    this.maxWishlistItems       = Math.min(maxWishlistItems, gameCount);
+    this.maxPlaythruItems       = maxPlaythruItems;
+    this.maxMediaItems          = maxMediaItems;
+  }
+  
+  /**
+   * Production scale: 300k games and 100k users.
+   * 
+   * @return The spec.
+   */
+  public static DatasetSpec productionScale() {
+    return new DatasetSpec(300000, 0.35, 0.25, 0.20, 100000, 1.1, 0.9, 2000, 500, 3000, 200);
+  }
+  
+  /**
+   * A small dataset for quick local runs: 3k games and 1k users.
+   * 
+   * @return The spec.
+   */
+  public static DatasetSpec smallScale() {
+    return new DatasetSpec(3000, 0.35, 0.25, 0.20, 1000, 1.1, 0.9, 200, 50, 300, 20);
+  }
+
+  public int getGameCount() {
+    return gameCount;
+  }
+
+  public double getExpansionFraction() {
+    return expansionFraction;
+  }
+
+  public double getCsiCoverage() {
+    return csiCoverage;
+  }
+
+  public double getMmCoverage() {
+    return mmCoverage;
+  }
+
+  public int getUserCount() {
+    return userCount;
+  }
+
+  public double getItemCountExponent() {
+    return itemCountExponent;
+  }
+
+  public double getGamePopularityExponent() {
+    return gamePopularityExponent;
+  }
+
+  public int getMaxCollectionItems() {
+    return maxCollectionItems;
+  }
+
+  public int getMaxWishlistItems() {
+    return maxWishlistItems;
+  }
+
+  public int getMaxPlaythruItems() {
+    return maxPlaythruItems;
+  }
+
+  public int getMaxMediaItems() {
+    return maxMediaItems;
+  }
+}
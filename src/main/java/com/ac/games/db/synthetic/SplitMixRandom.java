@@ -0,0 +1,73 @@
+package com.ac.games.db.synthetic;
+
+/**
+ * Small, fast SplitMix64 random number generator.  {@link #forStream(long, long, long)} gives every record
+ * its own independent stream, so a dataset comes out the same no matter how the work is split across threads.
+ * Not thread safe.
+ * 
+ * @author ac010168
+ */
+public final class SplitMixRandom {
+
+  private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+  
+  private long state;
+  
+  public SplitMixRandom(long seed) {
+    this.state = seed;
+  }
+  
+  /**
+   * Create the random stream for one record.
+   * 
+   * @param seed The dataset seed.
+   * @param stream Which kind of record this is for.
+   * @param index The record index.
+   * @return A new generator.
+   */
+  public static SplitMixRandom forStream(long seed, long stream, long index) {
+    return new SplitMixRandom(mix(mix(seed ^ mix(stream)) + index * GOLDEN_GAMMA));
+  }
+  
+  public long nextLong() {
+    state += GOLDEN_GAMMA;
+    return mix(state);
+  }
+  
+  /**
+   * @return A uniform value from 0 (inclusive) to 1 (exclusive).
+   */
+  public double nextDouble() {
+    return (nextLong() >>> 11) * 0x1.0p-53;
+  }
+  
+  /**
+   * @param bound The upper bound (exclusive), which must be positive.
+   * @return A uniform value from 0 to bound - 1.
+   */
+  public int nextInt(int bound) {
+    return (int)(nextDouble() * bound);
+  }
+  
+  /**
+   * @param probability The chance of true.
+   * @return true with the given probability.
+   */
+  public boolean chance(double probability) {
+    return nextDouble() < probability;
+  }
+  
+  /**
+   * @param values The values to choose from.
+   * @return One of the values, chosen uniformly.
+   */
+  public <T> T pick(T[] values) {
+    return values[nextInt(values.length)];
+  }
+  
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
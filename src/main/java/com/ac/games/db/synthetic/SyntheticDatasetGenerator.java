@@ -0,0 +1,471 @@
+package com.ac.games.db.synthetic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ac.games.data.BGGGame;
+import com.ac.games.data.Collection;
+import com.ac.games.data.CollectionItem;
+import com.ac.games.data.CoolStuffIncPriceData;
+import com.ac.games.data.Game;
+import com.ac.games.data.GameReltn;
+import com.ac.games.data.GameType;
+import com.ac.games.data.MediaItem;
+import com.ac.games.data.MiniatureMarketPriceData;
+import com.ac.games.data.PlaythruItem;
+import com.ac.games.data.User;
+import com.ac.games.data.UserDetail;
+import com.ac.games.data.WishlistItem;
+import com.ac.games.db.DatabaseFutures;
+import com.ac.games.db.EntityType;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * Populates a {@link GamesDatabase} with a synthetic dataset shaped by a {@link DatasetSpec}.
+ * <p>
+ * Games are numbered from 1, with the same value used for gameID and bggID.  Expansions hang off a recent
+ * earlier game, which may itself be an expansion, so {@link GameReltn} trees have some depth.  Each user gets
+ * a {@link User}, {@link UserDetail} and {@link Collection} (with collectionID equal to userID), and Zipf
+ * distributed numbers of collection, wishlist, playthru and media items, choosing games by a Zipf popularity
+ * ranking that is shuffled so it doesn't follow gameID.  Wishlists avoid games already collected, and plays
+ * and media mostly come from the user's collection.
+ * <p>
+ * Everything is a pure function of the seed: the small planning steps (game types, parents, years, price
+ * coverage and item counts) run in one thread, and every record then draws from its own random stream, so
+ * the records are the same however the loading is split across threads.  Loading runs one phase per record
+ * type, each phase spread over <code>partitionCount</code> threads making single inserts, since
+ * {@link GamesDatabase} has no bulk insert calls.
+ * 
+ * @author ac010168
+ */
+public class SyntheticDatasetGenerator {
+
+  private static final long PLAN_STREAM      = 1L;
+  private static final long NAME_STREAM      = 2L;
+  private static final long PUBLISHER_STREAM = 3L;
+  private static final long PRICE_STREAM     = 4L;
+  private static final long USER_STREAM      = 5L;
+  
+  /** Latest date given to generated items, 2026-01-01 UTC, fixed so the dataset doesn't depend on when it is run */
+  private static final long END_TIME   = 1767225600000L;
+  /** Items are dated over the 15 years before {@link #END_TIME} */
+  private static final long DATE_SPAN  = 15L * 365L * 24L * 60L * 60L * 1000L;
+  /** Expansions attach to one of this many games before them */
+  private static final int  PARENT_WINDOW = 2000;
+  private static final double COLLECTIBLE_FRACTION = 0.03;
+  private static final int  FIRST_YEAR = 1980;
+  private static final int  LAST_YEAR  = 2025;
+  
+  private static final String[] ADJECTIVES = { "Ancient", "Brass", "Crimson", "Distant", "Eldritch", "Forgotten", "Golden", "Hidden",
+                                               "Iron", "Jade", "Lost", "Mystic", "Northern", "Obsidian", "Painted", "Quiet", "Rising",
+                                               "Silent", "Twilight", "Verdant", "Wandering", "Wild", "Burning", "Frozen", "Sunken" };
+  private static final String[] NOUNS      = { "Empires", "Harbors", "Kingdoms", "Railways", "Orchards", "Dungeons", "Galaxies", "Castles",
+                                               "Merchants", "Legends", "Villages", "Rivers", "Dragons", "Colonies", "Gardens", "Towers",
+                                               "Frontiers", "Islands", "Caravans", "Spires", "Outposts", "Canals", "Forges", "Observatories" };
+  private static final String[] SUBTITLES  = { "Expansion", "Seafarers", "Beyond the Veil", "The Lost Chapter", "Promo Pack", "Legacy",
+                                               "Rise of the North", "Second Edition Upgrade", "New Horizons", "Dark Tides", "Heroes",
+                                               "Into the Deep", "Stretch Goals", "The Gathering Storm", "Allies" };
+  private static final String[] PUBLISHER_PREFIXES = { "Red", "Blue", "Stone", "Lucky", "Clever", "Grand", "Tiny", "Bold", "Northern", "Paper" };
+  private static final String[] PUBLISHER_SUFFIXES = { "Games", "Board Games", "Studios", "Entertainment", "Publishing", "Workshop" };
+  
+  private final DatasetSpec spec;
+  private final long        seed;
+  private final int         partitionCount;
+  
+  /**
+   * Constructor.
+   * 
+   * @param spec The shape of the dataset.
+   * @param seed The seed; the same seed and spec always produce the same dataset.
+   * @param partitionCount The number of loader threads.
+   */
+  public SyntheticDatasetGenerator(DatasetSpec spec, long seed, int partitionCount) {
+    this.spec           = spec;
+    this.seed           = seed;
+    this.partitionCount = partitionCount;
+  }
+  
+  /**
+   * Generate the dataset and insert it into a database.
+   * 
+   * @param database The database to load.  It should not already hold records with the generated ids.
+   * @return The number of records inserted, by entity type.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public Map<EntityType, Long> generate(final GamesDatabase database) throws ConfigurationException, DatabaseOperationException {
+    final Plan plan = new Plan();
+    final Map<EntityType, AtomicLong> counts = new EnumMap<EntityType, AtomicLong>(EntityType.class);
+    for (EntityType type : EntityType.values())
+      counts.put(type, new AtomicLong());
+    
+    ExecutorService executor = Executors.newFixedThreadPool(partitionCount);
+    try {
+      runPhase(executor, spec.getGameCount(), new IndexTask() {
+        @Override
+        public void run(int index) throws ConfigurationException, DatabaseOperationException {
+          long gameID = index + 1;
+          database.insertBGGGameData(newBGGGame(plan, gameID));
+          counts.get(EntityType.BGG_GAME).incrementAndGet();
+          database.insertGame(newGame(plan, gameID));
+          counts.get(EntityType.GAME).incrementAndGet();
+        }
+      });
+      
+      final List<Long> baseIDs = new ArrayList<Long>(plan.childrenByBase.keySet());
+      Collections.sort(baseIDs);
+      runPhase(executor, baseIDs.size(), new IndexTask() {
+        @Override
+        public void run(int index) throws ConfigurationException, DatabaseOperationException {
+          long baseID = baseIDs.get(index);
+          GameReltn relation = new GameReltn();
+          relation.setReltnID(baseID);
+          relation.setGameID(baseID);
+          relation.setExpansionIDs(plan.childrenByBase.get(baseID));
+          database.insertGameReltn(relation);
+          counts.get(EntityType.GAME_RELTN).incrementAndGet();
+        }
+      });
+      
+      runPhase(executor, plan.csiGameIDs.size(), new IndexTask() {
+        @Override
+        public void run(int index) throws ConfigurationException, DatabaseOperationException {
+          long gameID = plan.csiGameIDs.get(index);
+          SplitMixRandom random = SplitMixRandom.forStream(seed, PRICE_STREAM, gameID * 2);
+          CoolStuffIncPriceData csiData = new CoolStuffIncPriceData();
+          csiData.setCsiID(index + 1);
+          csiData.setGameID(gameID);
+          csiData.setTitle(nameOf(plan, gameID));
+          csiData.setGameType(plan.types[(int)gameID]);
+          csiData.setCurPrice(price(random));
+          database.insertCSIPriceData(csiData);
+          counts.get(EntityType.CSI_DATA).incrementAndGet();
+        }
+      });
+      
+      runPhase(executor, plan.mmGameIDs.size(), new IndexTask() {
+        @Override
+        public void run(int index) throws ConfigurationException, DatabaseOperationException {
+          long gameID = plan.mmGameIDs.get(index);
+          SplitMixRandom random = SplitMixRandom.forStream(seed, PRICE_STREAM, gameID * 2 + 1);
+          MiniatureMarketPriceData mmData = new MiniatureMarketPriceData();
+          mmData.setMmID(index + 1);
+          mmData.setGameID(gameID);
+          mmData.setTitle(nameOf(plan, gameID));
+          mmData.setGameType(plan.types[(int)gameID]);
+          mmData.setCurPrice(price(random));
+          database.insertMMPriceData(mmData);
+          counts.get(EntityType.MM_DATA).incrementAndGet();
+        }
+      });
+      
+      runPhase(executor, spec.getUserCount(), new IndexTask() {
+        @Override
+        public void run(int index) throws ConfigurationException, DatabaseOperationException {
+          long userID = index + 1;
+          SplitMixRandom random = SplitMixRandom.forStream(seed, NAME_STREAM, -userID);
+          User user = new User();
+          user.setUserID(userID);
+          user.setUserName(random.pick(ADJECTIVES).toLowerCase(Locale.ENGLISH) + random.pick(NOUNS).toLowerCase(Locale.ENGLISH) + userID);
+          database.insertUser(user);
+          counts.get(EntityType.USER).incrementAndGet();
+          
+          UserDetail detail = new UserDetail();
+          detail.setUserID(userID);
+          database.insertUserDetail(detail);
+          counts.get(EntityType.USER_DETAIL).incrementAndGet();
+          
+          Collection collection = new Collection();
+          collection.setCollectionID(userID);
+          collection.setUserID(userID);
+          database.insertCollection(collection);
+          counts.get(EntityType.COLLECTION).incrementAndGet();
+        }
+      });
+      
+      runPhase(executor, spec.getUserCount(), new IndexTask() {
+        @Override
+        public void run(int index) throws ConfigurationException, DatabaseOperationException {
+          loadUserItems(database, plan, index, counts);
+        }
+      });
+    } finally {
+      executor.shutdownNow();
+    }
+    
+    Map<EntityType, Long> result = new EnumMap<EntityType, Long>(EntityType.class);
+    for (Map.Entry<EntityType, AtomicLong> entry : counts.entrySet())
+      if (entry.getValue().get() > 0) result.put(entry.getKey(), entry.getValue().get());
+    return Collections.unmodifiableMap(result);
+  }
+  
+  /**
+   * Insert every item for one user.  Item ids come from the ranges reserved in the plan.
+   */
+  private void loadUserItems(GamesDatabase database, Plan plan, int userIndex, Map<EntityType, AtomicLong> counts) throws ConfigurationException, DatabaseOperationException {
+    long userID = userIndex + 1;
+    SplitMixRandom random = SplitMixRandom.forStream(seed, USER_STREAM, userID);
+    
+    List<Long> owned = pickDistinctGames(plan, random, plan.collectionCounts[userIndex], null);
+    long itemID = plan.collectionStarts[userIndex];
+    for (Long gameID : owned) {
+      CollectionItem item = new CollectionItem();
+      item.setItemID(itemID++);
+      item.setUserID(userID);
+      item.setGameID(gameID);
+      item.setDateAdded(randomDate(random));
+      database.insertCollectionItem(item);
+      counts.get(EntityType.COLLECTION_ITEM).incrementAndGet();
+    }
+    
+    List<Long> wished = pickDistinctGames(plan, random, plan.wishlistCounts[userIndex], new HashSet<Long>(owned));
+    long wishID = plan.wishlistStarts[userIndex];
+    for (Long gameID : wished) {
+      WishlistItem item = new WishlistItem();
+      item.setWishID(wishID++);
+      item.setUserID(userID);
+      item.setGameID(gameID);
+      item.setDateAdded(randomDate(random));
+      database.insertWishlistItem(item);
+      counts.get(EntityType.WISHLIST_ITEM).incrementAndGet();
+    }
+    
+    long playthruID = plan.playthruStarts[userIndex];
+    for (int i = 0; i < plan.playthruCounts[userIndex]; i++) {
+      PlaythruItem item = new PlaythruItem();
+      item.setPlaythruID(playthruID++);
+      item.setUserID(userID);
+      item.setGameID(ownedOrPopular(plan, random, owned));
+      item.setPlayDate(randomDate(random));
+      database.insertPlaythruItem(item);
+      counts.get(EntityType.PLAYTHRU_ITEM).incrementAndGet();
+    }
+    
+    long mediaID = plan.mediaStarts[userIndex];
+    for (int i = 0; i < plan.mediaCounts[userIndex]; i++) {
+      MediaItem item = new MediaItem();
+      item.setMediaID(mediaID++);
+      item.setUserID(userID);
+      item.setGameID(ownedOrPopular(plan, random, owned));
+      database.insertMediaItem(item);
+      counts.get(EntityType.MEDIA_ITEM).incrementAndGet();
+    }
+  }
+  
+  private BGGGame newBGGGame(Plan plan, long gameID) {
+    BGGGame game = new BGGGame();
+    game.setBggID(gameID);
+    game.setName(nameOf(plan, gameID));
+    game.setYearPublished(plan.years[(int)gameID]);
+    game.setGameType(plan.types[(int)gameID]);
+    return game;
+  }
+  
+  private Game newGame(Plan plan, long gameID) {
+    Game game = new Game();
+    game.setGameID(gameID);
+    game.setBggID(gameID);
+    game.setName(nameOf(plan, gameID));
+    game.setPrimaryPublisher(publisherOf(plan, gameID));
+    game.setYearPublished(plan.years[(int)gameID]);
+    game.setGameType(plan.types[(int)gameID]);
+    return game;
+  }
+  
+  /**
+   * Base games get an "Adjective Nouns" title; expansions add a subtitle to their parent's base title.
+   */
+  private String nameOf(Plan plan, long gameID) {
+    long parentID = plan.parents[(int)gameID];
+    if (parentID == 0) return baseTitle(gameID);
+    SplitMixRandom random = SplitMixRandom.forStream(seed, NAME_STREAM, gameID);
+    return baseTitle(rootOf(plan, gameID)) + ": " + random.pick(SUBTITLES);
+  }
+  
+  private String baseTitle(long gameID) {
+    SplitMixRandom random = SplitMixRandom.forStream(seed, NAME_STREAM, gameID);
+    return random.pick(ADJECTIVES) + " " + random.pick(NOUNS);
+  }
+  
+  /**
+   * Expansions share the publisher of their root game.
+   */
+  private String publisherOf(Plan plan, long gameID) {
+    SplitMixRandom random = SplitMixRandom.forStream(seed, PUBLISHER_STREAM, rootOf(plan, gameID));
+    return random.pick(PUBLISHER_PREFIXES) + " " + random.pick(PUBLISHER_SUFFIXES);
+  }
+  
+  private static long rootOf(Plan plan, long gameID) {
+    while (plan.parents[(int)gameID] != 0)
+      gameID = plan.parents[(int)gameID];
+    return gameID;
+  }
+  
+  private List<Long> pickDistinctGames(Plan plan, SplitMixRandom random, int count, Set<Long> excluded) {
+    List<Long> picked = new ArrayList<Long>(count);
+    Set<Long> seen = new HashSet<Long>();
+    int attempts = count * 10;
+    while (picked.size() < count && attempts-- > 0) {
+      long gameID = plan.gameByRank[plan.popularity.sample(random) - 1];
+      if ((excluded != null && excluded.contains(gameID)) || !seen.add(gameID)) continue;
+      picked.add(gameID);
+    }
+    return picked;
+  }
+  
+  private static long ownedOrPopular(Plan plan, SplitMixRandom random, List<Long> owned) {
+    if (!owned.isEmpty() && random.chance(0.9)) return owned.get(random.nextInt(owned.size()));
+    return plan.gameByRank[plan.popularity.sample(random) - 1];
+  }
+  
+  private static Date randomDate(SplitMixRandom random) {
+    return new Date(END_TIME - (long)(random.nextDouble() * DATE_SPAN));
+  }
+  
+  /**
+   * Prices cluster around $20-40, with a long tail up to about $160.
+   */
+  private static double price(SplitMixRandom random) {
+    double r = random.nextDouble();
+    return Math.round((9.99 + 150.0 * r * r * r + 20.0 * random.nextDouble()) * 100.0) / 100.0;
+  }
+  
+  /**
+   * Run <code>task</code> for every index from 0 to <code>count - 1</code>, split across the loader threads.
+   */
+  private void runPhase(ExecutorService executor, final int count, final IndexTask task) throws ConfigurationException, DatabaseOperationException {
+    List<Future<Void>> futures = new ArrayList<Future<Void>>(partitionCount);
+    for (int i = 0; i < partitionCount; i++) {
+      final int partition = i;
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          for (int index = partition; index < count; index += partitionCount)
+            task.run(index);
+          return null;
+        }
+      }));
+    }
+    for (Future<Void> future : futures)
+      DatabaseFutures.get(future);
+  }
+  
+  private interface IndexTask {
+    public void run(int index) throws ConfigurationException, DatabaseOperationException;
+  }
+  
+  /**
+   * Everything decided up front in one thread: game types, parents and years, price coverage, the
+   * popularity ranking, and each user's item counts and id ranges.
+   */
+  private final class Plan {
+    private final long[]     parents;
+    private final GameType[] types;
+    private final int[]      years;
+    private final Map<Long, List<Long>> childrenByBase;
+    private final long[]     gameByRank;
+    private final ZipfDistribution popularity;
+    private final List<Long> csiGameIDs;
+    private final List<Long> mmGameIDs;
+    private final int[]  collectionCounts;
+    private final int[]  wishlistCounts;
+    private final int[]  playthruCounts;
+    private final int[]  mediaCounts;
+    private final long[] collectionStarts;
+    private final long[] wishlistStarts;
+    private final long[] playthruStarts;
+    private final long[] mediaStarts;
+    
+    private Plan() {
+      SplitMixRandom random = SplitMixRandom.forStream(seed, PLAN_STREAM, 0);
+      int gameCount = spec.getGameCount();
+      
+      parents        = new long[gameCount + 1];
+      types          = new GameType[gameCount + 1];
+      years          = new int[gameCount + 1];
+      childrenByBase = new HashMap<Long, List<Long>>();
+      csiGameIDs     = new ArrayList<Long>();
+      mmGameIDs      = new ArrayList<Long>();
+      for (int gameID = 1; gameID <= gameCount; gameID++) {
+        if (gameID > 1 && random.chance(spec.getExpansionFraction())) {
+          long parentID = gameID - 1 - random.nextInt(Math.min(gameID - 1, PARENT_WINDOW));
+          parents[gameID] = parentID;
+          types[gameID]   = GameType.EXPANSION;
+          years[gameID]   = Math.min(LAST_YEAR, years[(int)parentID] + random.nextInt(4));
+          List<Long> children = childrenByBase.get(parentID);
+          if (children == null) {
+            children = new ArrayList<Long>();
+            childrenByBase.put(parentID, children);
+          }
+          children.add((long)gameID);
+        } else {
+          types[gameID] = random.chance(COLLECTIBLE_FRACTION) ? GameType.COLLECTIBLE : GameType.BASE;
+          double r = random.nextDouble();
+          years[gameID] = LAST_YEAR - (int)((LAST_YEAR - FIRST_YEAR) * r * r);
+        }
+        if (random.chance(spec.getCsiCoverage())) csiGameIDs.add((long)gameID);
+        if (random.chance(spec.getMmCoverage()))  mmGameIDs.add((long)gameID);
+      }
+      
+      gameByRank = new long[gameCount];
+      for (int i = 0; i < gameCount; i++)
+        gameByRank[i] = i + 1;
+      for (int i = gameCount - 1; i > 0; i--) {
+        int j = random.nextInt(i + 1);
+        long swap = gameByRank[i];
+        gameByRank[i] = gameByRank[j];
+        gameByRank[j] = swap;
+      }
+      popularity = new ZipfDistribution(gameCount, spec.getGamePopularityExponent());
+      
+      int userCount = spec.getUserCount();
+      collectionCounts = drawCounts(random, userCount, spec.getMaxCollectionItems());
+      wishlistCounts   = drawCounts(random, userCount, spec.getMaxWishlistItems());
+      playthruCounts   = drawCounts(random, userCount, spec.getMaxPlaythruItems());
+      mediaCounts      = drawCounts(random, userCount, spec.getMaxMediaItems());
+      collectionStarts = startIDs(collectionCounts);
+      wishlistStarts   = startIDs(wishlistCounts);
+      playthruStarts   = startIDs(playthruCounts);
+      mediaStarts      = startIDs(mediaCounts);
+    }
+    
+    /**
+     * Zipf over 1 to max + 1, shifted down so users can have no items at all.
+     */
+    private int[] drawCounts(SplitMixRandom random, int userCount, int max) {
+      int[] drawn = new int[userCount];
+      if (max < 1) return drawn;
+      ZipfDistribution distribution = new ZipfDistribution(max + 1, spec.getItemCountExponent());
+      for (int i = 0; i < userCount; i++)
+        drawn[i] = distribution.sample(random) - 1;
+      return drawn;
+    }
+    
+    private long[] startIDs(int[] itemCounts) {
+      long[] starts = new long[itemCounts.length];
+      long next = 1;
+      for (int i = 0; i < itemCounts.length; i++) {
+        starts[i] = next;
+        next += itemCounts[i];
+      }
+      return starts;
+    }
+  }
+}
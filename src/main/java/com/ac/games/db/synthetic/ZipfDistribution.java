@@ -0,0 +1,49 @@
+package com.ac.games.db.synthetic;
+
+import java.util.Arrays;
+
+/**
+ * Zipf distribution over the ranks 1 to n, where rank k has probability proportional to 1 / k<sup>s</sup>.
+ * Sampling is a binary search of the precomputed cumulative distribution.  Immutable, so one instance
+ * can be shared across threads.
+ * 
+ * @author ac010168
+ */
+public final class ZipfDistribution {
+
+  private final double[] cumulative;
+  
+  /**
+   * Constructor.
+   * 
+   * @param n The number of ranks.
+   * @param exponent The exponent s; larger values concentrate more of the weight on the first ranks.
+   */
+  public ZipfDistribution(int n, double exponent) {
+    if (n < 1) throw new IllegalArgumentException("n must be at least 1");
+    cumulative = new double[n];
+    double total = 0.0;
+    for (int k = 1; k <= n; k++) {
+      total += 1.0 / Math.pow(k, exponent);
+      cumulative[k - 1] = total;
+    }
+    for (int i = 0; i < n; i++)
+      cumulative[i] /= total;
+  }
+  
+  /**
+   * Draw a rank.
+   * 
+   * @param random The random source.
+   * @return A rank from 1 to n.
+   */
+  public int sample(SplitMixRandom random) {
+    int index = Arrays.binarySearch(cumulative, random.nextDouble());
+    if (index < 0) index = -index - 1;
+    return Math.min(index, cumulative.length - 1) + 1;
+  }
+  
+  public int size() {
+    return cumulative.length;
+  }
+}
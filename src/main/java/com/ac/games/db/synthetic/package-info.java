@@ -0,0 +1,6 @@
+/**
+ * This package holds the seedable synthetic dataset generator used for benchmarks and capacity planning.
+ * 
+ * @author ac010168
+ */
+package com.ac.games.db.synthetic;
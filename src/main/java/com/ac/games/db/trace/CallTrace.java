@@ -0,0 +1,93 @@
+package com.ac.games.db.trace;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * One traced {@link com.ac.games.db.GamesDatabase} call.
+ * 
+ * @author ac010168
+ */
+public final class CallTrace {
+
+  private final long    sequence;
+  private final long    startTime;
+  private final String  methodName;
+  private final String  arguments;
+  private final int     resultSize;
+  private final long    elapsedNanos;
+  private final String  failure;
+  private final boolean slow;
+  
+  /**
+   * Constructor.
+   * 
+   * @param sequence The position of this trace in its ring buffer, or -1 if it was never stored in one.
+   * @param startTime When the call started, in milliseconds since the epoch.
+   * @param methodName The method called.
+   * @param arguments The formatted arguments.
+   * @param resultSize The number of results, 1 for a single object, 0 for null, or -1 for a void method or failure.
+   * @param elapsedNanos How long the call took.
+   * @param failure The exception class the call threw, or null.
+   * @param slow true if the call was over the slow-call threshold.
+   */
+  public CallTrace(long sequence, long startTime, String methodName, String arguments, int resultSize, long elapsedNanos, String failure, boolean slow) {
+    this.sequence     = sequence;
+    this.startTime    = startTime;
+    this.methodName   = methodName;
+    this.arguments    = arguments;
+    this.resultSize   = resultSize;
+    this.elapsedNanos = elapsedNanos;
+    this.failure      = failure;
+    this.slow         = slow;
+  }
+  
+  CallTrace withSequence(long newSequence) {
+    return new CallTrace(newSequence, startTime, methodName, arguments, resultSize, elapsedNanos, failure, slow);
+  }
+  
+  public long getSequence() {
+    return sequence;
+  }
+  
+  public long getStartTime() {
+    return startTime;
+  }
+  
+  public String getMethodName() {
+    return methodName;
+  }
+  
+  public String getArguments() {
+    return arguments;
+  }
+  
+  public int getResultSize() {
+    return resultSize;
+  }
+  
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+  
+  public String getFailure() {
+    return failure;
+  }
+  
+  public boolean isSlow() {
+    return slow;
+  }
+  
+  @Override
+  public String toString() {
+    StringBuilder line = new StringBuilder();
+    line.append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date(startTime)));
+    line.append(slow ? " SLOW " : " ").append(methodName).append('(').append(arguments).append(')');
+    line.append(" -> ");
+    if (failure != null)      line.append(failure);
+    else if (resultSize >= 0) line.append(resultSize).append(resultSize == 1 ? " result" : " results");
+    else                      line.append("void");
+    line.append(" in ").append(String.format("%.3f", elapsedNanos / 1000000.0)).append(" ms");
+    return line.toString();
+  }
+}
@@ -0,0 +1,83 @@
+package com.ac.games.db.trace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-size ring buffer of the most recent {@link CallTrace}s.
+ * <p>
+ * Writers claim a slot with a single atomic increment and overwrite whatever is there, so recording never
+ * blocks or takes a lock.  Each trace carries its sequence number, so {@link #dump()} can return the
+ * surviving traces in order and drop any slot that has already been reused by a newer trace.
+ * 
+ * @author ac010168
+ */
+public class TraceRing {
+
+  private static final Comparator<CallTrace> BY_SEQUENCE = new Comparator<CallTrace>() {
+    @Override
+    public int compare(CallTrace a, CallTrace b) {
+      return a.getSequence() < b.getSequence() ? -1 : (a.getSequence() == b.getSequence() ? 0 : 1);
+    }
+  };
+  
+  private final AtomicReferenceArray<CallTrace> slots;
+  private final AtomicLong cursor;
+  private final int mask;
+  
+  /**
+   * Constructor.
+   * 
+   * @param capacity The number of traces to keep, rounded up to a power of two.
+   */
+  public TraceRing(int capacity) {
+    int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+    slots  = new AtomicReferenceArray<CallTrace>(size);
+    cursor = new AtomicLong();
+    mask   = size - 1;
+  }
+  
+  /**
+   * Record a trace, replacing the oldest one if the ring is full.
+   * 
+   * @param trace The trace.
+   */
+  public void record(CallTrace trace) {
+    long sequence = cursor.getAndIncrement();
+    slots.set((int)(sequence & mask), trace.withSequence(sequence));
+  }
+  
+  /**
+   * Gets the traces currently held, oldest first.
+   * 
+   * @return A copy of the traces.
+   */
+  public List<CallTrace> dump() {
+    long end   = cursor.get();
+    long start = Math.max(0, end - slots.length());
+    List<CallTrace> traces = new ArrayList<CallTrace>((int)(end - start));
+    for (int i = 0; i < slots.length(); i++) {
+      CallTrace trace = slots.get(i);
+      if (trace != null && trace.getSequence() >= start && trace.getSequence() < end) traces.add(trace);
+    }
+    Collections.sort(traces, BY_SEQUENCE);
+    return traces;
+  }
+  
+  /**
+   * Gets the total number of traces ever recorded.
+   * 
+   * @return The count, including those since overwritten.
+   */
+  public long getRecordedCount() {
+    return cursor.get();
+  }
+  
+  public int getCapacity() {
+    return slots.length();
+  }
+}
@@ -0,0 +1,120 @@
+package com.ac.games.db.trace;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.GamesDatabaseProxy;
+
+/**
+ * {@link GamesDatabase} decorator that logs every call slower than a threshold, and samples a fraction of
+ * the other calls into a {@link TraceRing} that can be dumped on demand.
+ * <p>
+ * Each trace holds the method name, its arguments, the result size and the elapsed time, so a slow wildcard
+ * search shows the exact name, wildcard flag and {@link com.ac.games.data.GameType} used.  Strings and
+ * primitives are written out in full (long strings are cut short), lists and maps as their size, and data
+ * objects as their class name.  Slow calls are logged at WARNING and always go into the ring.  Calls that
+ * aren't slow or sampled only cost two clock reads and a random draw.
+ * 
+ * @author ac010168
+ */
+public final class TracingGamesDatabase implements InvocationHandler {
+
+  private static final Logger LOGGER = Logger.getLogger(TracingGamesDatabase.class.getName());
+  
+  /** Default ring size */
+  public static final int DEFAULT_RING_SIZE = 4096;
+  
+  private static final int MAX_STRING_LENGTH = 100;
+  
+  private final GamesDatabase delegate;
+  private final long          slowThresholdNanos;
+  private final double        sampleRate;
+  private final TraceRing     ring;
+  
+  private TracingGamesDatabase(GamesDatabase delegate, long slowThresholdMillis, double sampleRate, TraceRing ring) {
+    this.delegate           = delegate;
+    this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+    this.sampleRate         = sampleRate;
+    this.ring               = ring;
+  }
+  
+  /**
+   * Wrap a database with tracing.
+   * 
+   * @param delegate The database to wrap.
+   * @param slowThresholdMillis Calls taking at least this long are logged.
+   * @param sampleRate The fraction of other calls to record in the ring, from 0 to 1.
+   * @param ring The ring to record traces in.
+   * @return The traced database.
+   */
+  public static GamesDatabase wrap(GamesDatabase delegate, long slowThresholdMillis, double sampleRate, TraceRing ring) {
+    return GamesDatabaseProxy.create(new TracingGamesDatabase(delegate, slowThresholdMillis, sampleRate, ring));
+  }
+  
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    if (method.getDeclaringClass() == Object.class) return method.invoke(this, args);
+    
+    long startTime = System.currentTimeMillis();
+    long start     = System.nanoTime();
+    Object result  = null;
+    Throwable failure = null;
+    try {
+      result = GamesDatabaseProxy.invoke(delegate, method, args);
+      return result;
+    } catch (Throwable t) {
+      failure = t;
+      throw t;
+    } finally {
+      long elapsed = System.nanoTime() - start;
+      boolean slow = elapsed >= slowThresholdNanos;
+      if (slow || (sampleRate > 0.0 && ThreadLocalRandom.current().nextDouble() < sampleRate)) {
+        int resultSize = (failure != null || method.getReturnType() == void.class) ? -1 : sizeOf(result);
+        CallTrace trace = new CallTrace(-1L, startTime, method.getName(), formatArguments(args), resultSize, elapsed,
+                                        failure == null ? null : failure.getClass().getSimpleName(), slow);
+        ring.record(trace);
+        if (slow && LOGGER.isLoggable(Level.WARNING)) LOGGER.warning(trace.toString());
+      }
+    }
+  }
+  
+  private static int sizeOf(Object result) {
+    if (result == null)                    return 0;
+    if (result instanceof Collection<?>)   return ((Collection<?>)result).size();
+    if (result instanceof Map<?, ?>)       return ((Map<?, ?>)result).size();
+    if (result.getClass().isArray())       return Array.getLength(result);
+    return 1;
+  }
+  
+  private static String formatArguments(Object[] args) {
+    if (args == null || args.length == 0) return "";
+    StringBuilder formatted = new StringBuilder();
+    for (Object arg : args) {
+      if (formatted.length() > 0) formatted.append(", ");
+      if (arg == null) {
+        formatted.append("null");
+      } else if (arg instanceof String) {
+        String value = (String)arg;
+        formatted.append('"');
+        if (value.length() > MAX_STRING_LENGTH) formatted.append(value, 0, MAX_STRING_LENGTH).append("...");
+        else                                    formatted.append(value);
+        formatted.append('"');
+      } else if (arg instanceof Number || arg instanceof Boolean || arg instanceof Enum<?>) {
+        formatted.append(arg);
+      } else if (arg instanceof Collection<?>) {
+        formatted.append("Collection[").append(((Collection<?>)arg).size()).append(']');
+      } else {
+        formatted.append(arg.getClass().getSimpleName());
+      }
+    }
+    return formatted.toString();
+  }
+}
@@ -0,0 +1,6 @@
+/**
+ * This package holds the slow-call log and sampled call tracing for {@link com.ac.games.db.GamesDatabase}.
+ * 
+ * @author ac010168
+ */
+package com.ac.games.db.trace;
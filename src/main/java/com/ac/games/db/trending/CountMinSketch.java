@@ -0,0 +1,87 @@
+package com.ac.games.db.trending;
+
+import java.util.Arrays;
+
+/**
+ * Count-min sketch over long keys.  Estimates are never below the true count, and are above it by at most
+ * <code>epsilon</code> times the total count with probability <code>1 - delta</code>, using
+ * <code>e / epsilon</code> by <code>ln(1 / delta)</code> counters no matter how many keys are seen.
+ * <p>
+ * Counts may be decremented, as long as no key's count goes below zero.  Not thread safe.
+ * 
+ * @author ac010168
+ */
+public class CountMinSketch {
+
+  private final long[][] counters;
+  private final long[]   rowSeeds;
+  private final int      width;
+  private long total;
+  
+  /**
+   * Constructor.
+   * 
+   * @param epsilon Error bound, as a fraction of the total count.
+   * @param delta Probability of exceeding the error bound.
+   */
+  public CountMinSketch(double epsilon, double delta) {
+    width = (int)Math.ceil(Math.E / epsilon);
+    int depth = (int)Math.ceil(Math.log(1.0 / delta));
+    counters = new long[depth][width];
+    rowSeeds = new long[depth];
+    for (int row = 0; row < depth; row++)
+      rowSeeds[row] = mix(0x632BE59BD9B4E019L * (row + 1));
+  }
+  
+  /**
+   * Add to a key's count.
+   * 
+   * @param key The key.
+   * @param delta The amount to add, which may be negative.
+   * @return The new estimate for the key.
+   */
+  public long add(long key, long delta) {
+    long estimate = Long.MAX_VALUE;
+    for (int row = 0; row < counters.length; row++) {
+      int column = column(key, row);
+      counters[row][column] += delta;
+      estimate = Math.min(estimate, counters[row][column]);
+    }
+    total += delta;
+    return estimate;
+  }
+  
+  /**
+   * Estimate a key's count.
+   * 
+   * @param key The key.
+   * @return The estimate.
+   */
+  public long estimate(long key) {
+    long estimate = Long.MAX_VALUE;
+    for (int row = 0; row < counters.length; row++)
+      estimate = Math.min(estimate, counters[row][column(key, row)]);
+    return estimate;
+  }
+  
+  public long getTotal() {
+    return total;
+  }
+  
+  public void clear() {
+    for (long[] row : counters)
+      Arrays.fill(row, 0L);
+    total = 0;
+  }
+  
+  private int column(long key, int row) {
+    long hash = mix(key ^ rowSeeds[row]);
+    return (int)((hash >>> 1) % width);
+  }
+  
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
@@ -0,0 +1,35 @@
+package com.ac.games.db.trending;
+
+/**
+ * A game and its estimated count in a {@link SlidingTopK} window.
+ * 
+ * @author ac010168
+ */
+public final class GameCount {
+
+  private final long gameID;
+  private final long count;
+  
+  public GameCount(long gameID, long count) {
+    this.gameID = gameID;
+    this.count  = count;
+  }
+  
+  public long getGameID() {
+    return gameID;
+  }
+  
+  /**
+   * Gets the estimated count, which may be slightly high but is never low.
+   * 
+   * @return The count.
+   */
+  public long getCount() {
+    return count;
+  }
+  
+  @Override
+  public String toString() {
+    return gameID + "=" + count;
+  }
+}
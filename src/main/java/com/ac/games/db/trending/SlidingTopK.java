@@ -0,0 +1,173 @@
+package com.ac.games.db.trending;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Approximate top-K games by count over a sliding time window.
+ * <p>
+ * The window is a ring of fixed-length time buckets; the oldest bucket is cleared as time moves into a new
+ * one.  Each bucket holds a {@link CountMinSketch} of every game's count, plus the <code>candidateCapacity</code>
+ * games with the highest estimates seen in that bucket.  A query sums the sketch estimates of every candidate
+ * across the requested buckets and returns the best <code>k</code>, so it never looks at more than
+ * <code>candidateCapacity</code> games per bucket.  A game can only be missed if it never ranked among the
+ * candidates of any bucket, which takes a candidate capacity well above <code>k</code>.
+ * 
+ * @author ac010168
+ */
+public class SlidingTopK {
+
+  private static final Comparator<GameCount> LOWEST_FIRST = new Comparator<GameCount>() {
+    @Override
+    public int compare(GameCount a, GameCount b) {
+      if (a.getCount() != b.getCount()) return a.getCount() < b.getCount() ? -1 : 1;
+      return a.getGameID() < b.getGameID() ? -1 : (a.getGameID() == b.getGameID() ? 0 : 1);
+    }
+  };
+  
+  private final long     bucketMillis;
+  private final Bucket[] buckets;
+  private final int      candidateCapacity;
+  private long newestEpoch;
+  
+  /**
+   * Constructor.
+   * 
+   * @param bucketMillis The length of each bucket, in milliseconds.
+   * @param bucketCount The number of buckets in the full window.
+   * @param candidateCapacity The number of candidate games tracked per bucket.
+   * @param epsilon Sketch error bound, as a fraction of a bucket's total count.
+   * @param delta Probability of a sketch estimate exceeding the error bound.
+   */
+  public SlidingTopK(long bucketMillis, int bucketCount, int candidateCapacity, double epsilon, double delta) {
+    this.bucketMillis      = bucketMillis;
+    this.buckets           = new Bucket[bucketCount];
+    this.candidateCapacity = Math.max(1, candidateCapacity);
+    for (int i = 0; i < bucketCount; i++)
+      buckets[i] = new Bucket(new CountMinSketch(epsilon, delta));
+    this.newestEpoch = Long.MIN_VALUE;
+  }
+  
+  /**
+   * Count an event.  Events newer than now are counted now, and events older than the window are ignored.
+   * 
+   * @param gameID The game.
+   * @param eventTime When the event happened, in milliseconds since the epoch.
+   * @param delta +1 for an addition, -1 to take back an earlier addition made at the same eventTime.
+   */
+  public synchronized void add(long gameID, long eventTime, long delta) {
+    long nowEpoch = advance(System.currentTimeMillis());
+    long epoch = Math.min(eventTime / bucketMillis, nowEpoch);
+    if (epoch <= nowEpoch - buckets.length) return;
+    buckets[index(epoch)].add(gameID, delta, candidateCapacity);
+  }
+  
+  /**
+   * Gets the top games over the full window.
+   * 
+   * @param k The number of games wanted.
+   * @return The games, highest count first.
+   */
+  public List<GameCount> top(int k) {
+    return top(k, buckets.length);
+  }
+  
+  /**
+   * Gets the top games over the most recent buckets.
+   * 
+   * @param k The number of games wanted.
+   * @param bucketCount The number of buckets to include, counting back from the current one.
+   * @return The games, highest count first.
+   */
+  public synchronized List<GameCount> top(int k, int bucketCount) {
+    long nowEpoch = advance(System.currentTimeMillis());
+    int included = Math.min(bucketCount, buckets.length);
+    
+    Set<Long> candidates = new HashSet<Long>();
+    for (int i = 0; i < included; i++)
+      candidates.addAll(buckets[index(nowEpoch - i)].candidates.keySet());
+    
+    List<GameCount> counts = new ArrayList<GameCount>(candidates.size());
+    for (Long gameID : candidates) {
+      long total = 0;
+      for (int i = 0; i < included; i++)
+        total += buckets[index(nowEpoch - i)].sketch.estimate(gameID);
+      if (total > 0) counts.add(new GameCount(gameID, total));
+    }
+    Collections.sort(counts, Collections.reverseOrder(LOWEST_FIRST));
+    return counts.size() > k ? new ArrayList<GameCount>(counts.subList(0, k)) : counts;
+  }
+  
+  public long getBucketMillis() {
+    return bucketMillis;
+  }
+  
+  public int getBucketCount() {
+    return buckets.length;
+  }
+  
+  /**
+   * Move the window forward to the current time, clearing buckets that have fallen out of it.
+   * 
+   * @return The current epoch.
+   */
+  private long advance(long now) {
+    long nowEpoch = now / bucketMillis;
+    if (newestEpoch == Long.MIN_VALUE || nowEpoch - newestEpoch >= buckets.length) {
+      for (Bucket bucket : buckets)
+        bucket.clear();
+    } else {
+      for (long epoch = newestEpoch + 1; epoch <= nowEpoch; epoch++)
+        buckets[index(epoch)].clear();
+    }
+    if (nowEpoch > newestEpoch) newestEpoch = nowEpoch;
+    return newestEpoch;
+  }
+  
+  private int index(long epoch) {
+    return (int)(((epoch % buckets.length) + buckets.length) % buckets.length);
+  }
+  
+  /**
+   * One time bucket: the sketch, and the games with the highest estimates.
+   */
+  private static final class Bucket {
+    private final CountMinSketch          sketch;
+    private final Map<Long, GameCount>    candidates;
+    private final TreeSet<GameCount>      byCount;
+    
+    private Bucket(CountMinSketch sketch) {
+      this.sketch     = sketch;
+      this.candidates = new HashMap<Long, GameCount>();
+      this.byCount    = new TreeSet<GameCount>(LOWEST_FIRST);
+    }
+    
+    private void add(long gameID, long delta, int capacity) {
+      long estimate = sketch.add(gameID, delta);
+      GameCount current = candidates.remove(gameID);
+      if (current != null) byCount.remove(current);
+      if (estimate <= 0) return;
+      
+      if (current == null && candidates.size() >= capacity) {
+        if (estimate <= byCount.first().getCount()) return;
+        candidates.remove(byCount.pollFirst().getGameID());
+      }
+      GameCount updated = new GameCount(gameID, estimate);
+      candidates.put(gameID, updated);
+      byCount.add(updated);
+    }
+    
+    private void clear() {
+      sketch.clear();
+      candidates.clear();
+      byCount.clear();
+    }
+  }
+}
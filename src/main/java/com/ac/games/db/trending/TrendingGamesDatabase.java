@@ -0,0 +1,290 @@
+package com.ac.games.db.trending;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.ac.games.data.CollectionItem;
+import com.ac.games.data.WishlistItem;
+import com.ac.games.db.DelegatingGamesDatabase;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+import com.ac.games.db.util.LongLongHashMap;
+
+/**
+ * {@link GamesDatabase} decorator that feeds {@link WishlistItem} and {@link CollectionItem} inserts and
+ * deletes into a pair of {@link SlidingTopK} counters, to answer "most wishlisted this week" and "most
+ * owned this week" from memory.
+ * <p>
+ * Items are counted in the bucket for their <code>dateAdded</code>, so a window's count is the number of
+ * items added during it that still exist.  A delete has to know the item's game and date, so it reads the
+ * item first.  Updates are not counted.  Items without a <code>dateAdded</code> are not counted.
+ * <p>
+ * {@link #initializeDBConnection()} seeds the counters from the items already in the window, walking each
+ * table back from its highest id until {@link #SEED_STOP_RUN} ids in a row are missing or dated before the
+ * window.  From then on, items dated anywhere in the window are counted on insert and delete alike.  Writes
+ * are not held up by a seed: they keep counting into the current counters and are logged, and the log is
+ * replayed into the seeded counters before they are swapped in.  The seed remembers which ids it counted, so
+ * a logged insert it already saw is not counted twice, and a logged delete only takes back a count that was
+ * made.  Without a seed, only items dated after this object was
+ * created are counted, so a delete never takes back a count that was never made.
+ * <p>
+ * Counts are per node: each instance only sees the writes made through it, plus whatever it seeded.  With
+ * several nodes behind a load balancer, each reports the trend of its own traffic on top of the seed; call
+ * {@link #seedWindows()} periodically to pull in the other nodes' writes.
+ * 
+ * @author ac010168
+ */
+public class TrendingGamesDatabase extends DelegatingGamesDatabase {
+
+  /** Default bucket length: one day */
+  public static final long   DEFAULT_BUCKET_MILLIS      = TimeUnit.DAYS.toMillis(1);
+  /** Default window: seven daily buckets */
+  public static final int    DEFAULT_BUCKET_COUNT       = 7;
+  /** Default candidate games tracked per bucket */
+  public static final int    DEFAULT_CANDIDATE_CAPACITY = 1000;
+  /** Missing or out-of-window ids in a row after which a seed stops walking back */
+  public static final int    SEED_STOP_RUN              = 1000;
+  private static final double SKETCH_EPSILON = 0.0005;
+  private static final double SKETCH_DELTA   = 0.01;
+  
+  private final long bucketMillis;
+  private final int  bucketCount;
+  private final int  candidateCapacity;
+  private volatile SlidingTopK wishlisted;
+  private volatile SlidingTopK owned;
+  /** Only items dated from here on are counted */
+  private volatile long countedSince;
+  /** Guards counted writes against the swap at the end of a seed */
+  private final Object mirrorLock = new Object();
+  /** Counted writes made while a seed runs; null otherwise */
+  private List<CountedWrite> seedLog;
+  
+  /**
+   * Basic Constructor, using a seven day window of daily buckets.
+   * 
+   * @param delegate The database to wrap.
+   */
+  public TrendingGamesDatabase(GamesDatabase delegate) {
+    this(delegate, DEFAULT_BUCKET_MILLIS, DEFAULT_BUCKET_COUNT, DEFAULT_CANDIDATE_CAPACITY);
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param delegate The database to wrap.
+   * @param bucketMillis The length of each bucket, in milliseconds.
+   * @param bucketCount The number of buckets in the full window.
+   * @param candidateCapacity The number of candidate games tracked per bucket.
+   */
+  public TrendingGamesDatabase(GamesDatabase delegate, long bucketMillis, int bucketCount, int candidateCapacity) {
+    super(delegate);
+    this.bucketMillis      = bucketMillis;
+    this.bucketCount       = bucketCount;
+    this.candidateCapacity = candidateCapacity;
+    wishlisted   = newCounter();
+    owned        = newCounter();
+    countedSince = System.currentTimeMillis();
+  }
+  
+  @Override
+  public void initializeDBConnection() throws ConfigurationException {
+    delegate.initializeDBConnection();
+    seedWindows();
+  }
+  
+  /**
+   * Replace the counters with counts of the wishlist and collection items already in the window.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public synchronized void seedWindows() throws ConfigurationException, DatabaseOperationException {
+    synchronized (mirrorLock) {
+      seedLog = new ArrayList<CountedWrite>();
+    }
+    try {
+      long windowStart = (System.currentTimeMillis() / bucketMillis - bucketCount + 1) * bucketMillis;
+      SlidingTopK seededWishlisted = newCounter();
+      SlidingTopK seededOwned      = newCounter();
+      LongLongHashMap seededWishIDs = new LongLongHashMap();
+      LongLongHashMap seededItemIDs = new LongLongHashMap();
+      
+      int run = 0;
+      for (long wishID = delegate.getMaxWishlistItemID(); wishID > 0 && run < SEED_STOP_RUN; wishID--) {
+        WishlistItem item = delegate.readWishlistItem(wishID);
+        Date dateAdded = item == null ? null : item.getDateAdded();
+        if (dateAdded == null || dateAdded.getTime() < windowStart) {
+          run++;
+        } else {
+          run = 0;
+          seededWishlisted.add(item.getGameID(), dateAdded.getTime(), 1);
+          seededWishIDs.put(wishID, 1L);
+        }
+      }
+      
+      run = 0;
+      for (long itemID = delegate.getMaxCollectionItemID(); itemID > 0 && run < SEED_STOP_RUN; itemID--) {
+        CollectionItem item = delegate.readCollectionItem(itemID);
+        Date dateAdded = item == null ? null : item.getDateAdded();
+        if (dateAdded == null || dateAdded.getTime() < windowStart) {
+          run++;
+        } else {
+          run = 0;
+          seededOwned.add(item.getGameID(), dateAdded.getTime(), 1);
+          seededItemIDs.put(itemID, 1L);
+        }
+      }
+      
+      synchronized (mirrorLock) {
+        for (CountedWrite write : seedLog) {
+          if (write.wishlist) replay(write, seededWishlisted, seededWishIDs, windowStart);
+          else                replay(write, seededOwned, seededItemIDs, windowStart);
+        }
+        wishlisted   = seededWishlisted;
+        owned        = seededOwned;
+        countedSince = windowStart;
+      }
+    } finally {
+      synchronized (mirrorLock) {
+        seedLog = null;
+      }
+    }
+  }
+  
+  /**
+   * Gets the games added to the most wishlists over the full window.
+   * 
+   * @param k The number of games wanted.
+   * @return The games, highest count first.
+   */
+  public List<GameCount> readMostWishlisted(int k) {
+    return wishlisted.top(k);
+  }
+  
+  /**
+   * Gets the games added to the most wishlists over the most recent buckets.
+   * 
+   * @param k The number of games wanted.
+   * @param bucketCount The number of buckets to include, counting back from the current one.
+   * @return The games, highest count first.
+   */
+  public List<GameCount> readMostWishlisted(int k, int bucketCount) {
+    return wishlisted.top(k, bucketCount);
+  }
+  
+  /**
+   * Gets the games added to the most collections over the full window.
+   * 
+   * @param k The number of games wanted.
+   * @return The games, highest count first.
+   */
+  public List<GameCount> readMostOwned(int k) {
+    return owned.top(k);
+  }
+  
+  /**
+   * Gets the games added to the most collections over the most recent buckets.
+   * 
+   * @param k The number of games wanted.
+   * @param bucketCount The number of buckets to include, counting back from the current one.
+   * @return The games, highest count first.
+   */
+  public List<GameCount> readMostOwned(int k, int bucketCount) {
+    return owned.top(k, bucketCount);
+  }
+  
+  @Override
+  public void insertWishlistItem(WishlistItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertWishlistItem(item);
+    count(new CountedWrite(true, item.getWishID(), item.getGameID(), item.getDateAdded(), 1));
+  }
+  
+  @Override
+  public void deleteWishlistItem(long wishID) throws ConfigurationException, DatabaseOperationException {
+    WishlistItem item = delegate.readWishlistItem(wishID);
+    delegate.deleteWishlistItem(wishID);
+    if (item != null) count(new CountedWrite(true, wishID, item.getGameID(), item.getDateAdded(), -1));
+  }
+  
+  @Override
+  public List<WishlistItem> deleteWishlistItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    List<WishlistItem> deleted = delegate.deleteWishlistItemsByUserID(userID);
+    for (WishlistItem item : deleted)
+      count(new CountedWrite(true, item.getWishID(), item.getGameID(), item.getDateAdded(), -1));
+    return deleted;
+  }
+  
+  @Override
+  public void insertCollectionItem(CollectionItem item) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertCollectionItem(item);
+    count(new CountedWrite(false, item.getItemID(), item.getGameID(), item.getDateAdded(), 1));
+  }
+  
+  @Override
+  public void deleteCollectionItem(long itemID) throws ConfigurationException, DatabaseOperationException {
+    CollectionItem item = delegate.readCollectionItem(itemID);
+    delegate.deleteCollectionItem(itemID);
+    if (item != null) count(new CountedWrite(false, itemID, item.getGameID(), item.getDateAdded(), -1));
+  }
+  
+  @Override
+  public List<CollectionItem> deleteCollectionItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    List<CollectionItem> deleted = delegate.deleteCollectionItemsByUserID(userID);
+    for (CollectionItem item : deleted)
+      count(new CountedWrite(false, item.getItemID(), item.getGameID(), item.getDateAdded(), -1));
+    return deleted;
+  }
+  
+  private SlidingTopK newCounter() {
+    return new SlidingTopK(bucketMillis, bucketCount, candidateCapacity, SKETCH_EPSILON, SKETCH_DELTA);
+  }
+  
+  /**
+   * Apply a write to the current counters, and log it if a seed is running.
+   */
+  private void count(CountedWrite write) {
+    synchronized (mirrorLock) {
+      if (write.dateAdded != null && write.dateAdded.getTime() >= countedSince)
+        (write.wishlist ? wishlisted : owned).add(write.gameID, write.dateAdded.getTime(), write.delta);
+      if (seedLog != null) seedLog.add(write);
+    }
+  }
+  
+  /**
+   * Apply a logged write to seeded counters.  An insert the seed already counted is skipped, and a delete
+   * only takes back a count that the seed or an earlier logged insert made.
+   * 
+   * @param seededIDs The ids counted so far, updated as writes are replayed.
+   */
+  private static void replay(CountedWrite write, SlidingTopK counter, LongLongHashMap seededIDs, long windowStart) {
+    if (write.dateAdded == null || write.dateAdded.getTime() < windowStart) return;
+    if (write.delta > 0) {
+      if (seededIDs.containsKey(write.id)) return;
+      seededIDs.put(write.id, 1L);
+    } else if (!seededIDs.remove(write.id)) {
+      return;
+    }
+    counter.add(write.gameID, write.dateAdded.getTime(), write.delta);
+  }
+  
+  /** An insert or delete of a wishlist or collection item, as counted */
+  private static final class CountedWrite {
+    private final boolean wishlist;
+    private final long    id;
+    private final long    gameID;
+    private final Date    dateAdded;
+    private final long    delta;
+    
+    private CountedWrite(boolean wishlist, long id, long gameID, Date dateAdded, long delta) {
+      this.wishlist  = wishlist;
+      this.id        = id;
+      this.gameID    = gameID;
+      this.dateAdded = dateAdded;
+      this.delta     = delta;
+    }
+  }
+}
@@ -0,0 +1,6 @@
+/**
+ * This package holds the streaming top-K counters behind the trending and most wanted lists.
+ * 
+ * @author ac010168
+ */
+package com.ac.games.db.trending;
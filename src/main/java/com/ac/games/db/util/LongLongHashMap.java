@@ -0,0 +1,180 @@
+package com.ac.games.db.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from long to long, with no boxing and two arrays of storage.  Uses linear
+ * probing with backward shift deletion, so there are no tombstones.  Not thread safe.
+ * 
+ * @author ac010168
+ */
+public class LongLongHashMap {
+
+  private static final long  FREE_KEY    = 0L;
+  private static final float LOAD_FACTOR = 0.6f;
+  
+  private long[] keys;
+  private long[] values;
+  private int    size;
+  private int    mask;
+  private int    resizeAt;
+  /** Key 0 marks a free slot, so it is stored on the side */
+  private boolean hasFreeKey;
+  private long    freeKeyValue;
+  
+  public LongLongHashMap() {
+    this(1024);
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param expectedSize The number of entries to size for.
+   */
+  public LongLongHashMap(int expectedSize) {
+    int capacity = Integer.highestOneBit(Math.max(16, (int)(expectedSize / LOAD_FACTOR)) - 1) << 1;
+    allocate(capacity);
+  }
+  
+  /**
+   * Gets the value for a key.
+   * 
+   * @param key The key.
+   * @param missingValue The value to return if the key is not present.
+   * @return The value, or <code>missingValue</code>.
+   */
+  public long get(long key, long missingValue) {
+    if (key == FREE_KEY) return hasFreeKey ? freeKeyValue : missingValue;
+    int slot = slot(key);
+    while (keys[slot] != FREE_KEY) {
+      if (keys[slot] == key) return values[slot];
+      slot = (slot + 1) & mask;
+    }
+    return missingValue;
+  }
+  
+  public boolean containsKey(long key) {
+    if (key == FREE_KEY) return hasFreeKey;
+    int slot = slot(key);
+    while (keys[slot] != FREE_KEY) {
+      if (keys[slot] == key) return true;
+      slot = (slot + 1) & mask;
+    }
+    return false;
+  }
+  
+  /**
+   * Add or replace an entry.
+   * 
+   * @param key The key.
+   * @param value The value.
+   */
+  public void put(long key, long value) {
+    if (key == FREE_KEY) {
+      if (!hasFreeKey) size++;
+      hasFreeKey   = true;
+      freeKeyValue = value;
+      return;
+    }
+    int slot = slot(key);
+    while (keys[slot] != FREE_KEY) {
+      if (keys[slot] == key) {
+        values[slot] = value;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    keys[slot]   = key;
+    values[slot] = value;
+    if (++size > resizeAt) allocateAndCopy(keys.length * 2);
+  }
+  
+  /**
+   * Remove an entry.
+   * 
+   * @param key The key.
+   * @return true if the key was present.
+   */
+  public boolean remove(long key) {
+    if (key == FREE_KEY) {
+      if (!hasFreeKey) return false;
+      hasFreeKey = false;
+      size--;
+      return true;
+    }
+    int slot = slot(key);
+    while (keys[slot] != key) {
+      if (keys[slot] == FREE_KEY) return false;
+      slot = (slot + 1) & mask;
+    }
+    //Shift later entries of the same run back into the gap
+    int gap = slot;
+    slot = (slot + 1) & mask;
+    while (keys[slot] != FREE_KEY) {
+      int home = slot(keys[slot]);
+      if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+        keys[gap]   = keys[slot];
+        values[gap] = values[slot];
+        gap = slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    keys[gap] = FREE_KEY;
+    size--;
+    return true;
+  }
+  
+  public int size() {
+    return size;
+  }
+  
+  public void clear() {
+    Arrays.fill(keys, FREE_KEY);
+    hasFreeKey = false;
+    size       = 0;
+  }
+  
+  /**
+   * Visit every entry, in no particular order.
+   * 
+   * @param visitor Called once per entry.
+   */
+  public void forEach(EntryVisitor visitor) {
+    if (hasFreeKey) visitor.visit(FREE_KEY, freeKeyValue);
+    for (int i = 0; i < keys.length; i++)
+      if (keys[i] != FREE_KEY) visitor.visit(keys[i], values[i]);
+  }
+  
+  /**
+   * Callback for {@link LongLongHashMap#forEach(EntryVisitor)}.
+   */
+  public interface EntryVisitor {
+    public void visit(long key, long value);
+  }
+  
+  private int slot(long key) {
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return (int)(hash ^ (hash >>> 32)) & mask;
+  }
+  
+  private void allocate(int capacity) {
+    keys     = new long[capacity];
+    values   = new long[capacity];
+    mask     = capacity - 1;
+    resizeAt = (int)(capacity * LOAD_FACTOR);
+  }
+  
+  private void allocateAndCopy(int capacity) {
+    long[] oldKeys   = keys;
+    long[] oldValues = values;
+    allocate(capacity);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] == FREE_KEY) continue;
+      int slot = slot(oldKeys[i]);
+      while (keys[slot] != FREE_KEY)
+        slot = (slot + 1) & mask;
+      keys[slot]   = oldKeys[i];
+      values[slot] = oldValues[i];
+    }
+  }
+}
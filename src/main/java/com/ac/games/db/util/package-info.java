@@ -0,0 +1,6 @@
+/**
+ * This package holds small data structures shared by the other packages.
+ * 
+ * @author ac010168
+ */
+package com.ac.games.db.util;
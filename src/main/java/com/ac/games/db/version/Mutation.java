@@ -0,0 +1,18 @@
+package com.ac.games.db.version;
+
+/**
+ * A change to apply to a freshly read record.  Used by the retrying updates in
+ * {@link VersionedGamesDatabase}, which may call it more than once, each time on a new copy of the record,
+ * so it should not have side effects outside that record.
+ * 
+ * @author ac010168
+ */
+public interface Mutation<T> {
+  
+  /**
+   * Apply the change.
+   * 
+   * @param current The current record, to be modified in place.
+   */
+  public void apply(T current);
+}
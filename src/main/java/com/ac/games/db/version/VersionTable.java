@@ -0,0 +1,222 @@
+package com.ac.games.db.version;
+
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.ac.games.db.EntityType;
+
+/**
+ * Version stamps for records, one counter per entity type and id.
+ * <p>
+ * Each counter works like a sequence lock.  It is even while the record is at rest, and a writer claims it
+ * by moving it to the next odd number with a compare-and-set, then moves it on to the next even number when
+ * its write is done.  Readers wait out an odd counter and check it is unchanged after reading, so no locks
+ * are taken, and writers to different records never contend.  Waiters spin briefly, then park for a short
+ * time that doubles up to {@link #MAX_PARK_NANOS}, rather than burning a core.
+ * <p>
+ * Once a type has more than <code>maxCounters</code> counters, counters at rest are evicted until it is back
+ * to half that.  An evicted counter is first moved to {@link #EVICTED} so anyone still holding it looks it up
+ * again, and the table keeps a floor above every version it has evicted.  New counters start at that floor,
+ * so a version can never be handed out twice for the same record.  The cost is that a version taken before
+ * its counter was evicted fails its check, which callers already handle as a conflict.  A record nobody has
+ * written is at the floor, which is 0 until something is evicted.
+ * 
+ * @author ac010168
+ */
+public class VersionTable {
+
+  /** Default number of counters kept per type before evicting */
+  public static final int  DEFAULT_MAX_COUNTERS = 100000;
+  /** Longest single park while waiting out a writer, in nanoseconds */
+  public static final long MAX_PARK_NANOS       = TimeUnit.MILLISECONDS.toNanos(1);
+  
+  /** Counter value marking an evicted counter; odd, so it can never be claimed */
+  private static final long EVICTED     = -1L;
+  /** Waits that spin before parking */
+  private static final int  SPIN_WAITS  = 64;
+  private static final long FIRST_PARK_NANOS = 1000L;
+  
+  private final Map<EntityType, ConcurrentMap<Long, AtomicLong>> counters;
+  private final int maxCounters;
+  /** Even, and above every version ever held by an evicted counter */
+  private final AtomicLong floor;
+  private final AtomicBoolean evicting;
+  
+  public VersionTable() {
+    this(DEFAULT_MAX_COUNTERS);
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param maxCounters The number of counters kept per type before counters at rest are evicted.
+   */
+  public VersionTable(int maxCounters) {
+    if (maxCounters < 2)
+      throw new IllegalArgumentException("maxCounters must be at least 2");
+    this.maxCounters = maxCounters;
+    this.floor       = new AtomicLong();
+    this.evicting    = new AtomicBoolean();
+    counters = new EnumMap<EntityType, ConcurrentMap<Long, AtomicLong>>(EntityType.class);
+    for (EntityType type : EntityType.values())
+      counters.put(type, new ConcurrentHashMap<Long, AtomicLong>());
+  }
+  
+  /**
+   * Gets the version of a record, waiting for any write in progress to finish.
+   * 
+   * @param type The entity type.
+   * @param id The record id.
+   * @return The current version, which is always even.
+   */
+  public long stableVersion(EntityType type, long id) {
+    AtomicLong counter = counter(type, id);
+    long version = counter.get();
+    for (int waits = 0; (version & 1L) != 0; waits++) {
+      if (version == EVICTED) counter = counter(type, id);
+      else                    pause(waits);
+      version = counter.get();
+    }
+    return version;
+  }
+  
+  /**
+   * Checks that a record has not been written since its version was taken.
+   * 
+   * @param type The entity type.
+   * @param id The record id.
+   * @param version A version from {@link #stableVersion(EntityType, long)}.
+   * @return true if the record is still at that version.
+   */
+  public boolean validate(EntityType type, long id, long version) {
+    return counter(type, id).get() == version;
+  }
+  
+  /**
+   * Claims a record for writing, if it is still at the expected version.
+   * 
+   * @param type The entity type.
+   * @param id The record id.
+   * @param expectedVersion The version the caller read.
+   * @return -1 if the claim succeeded, otherwise the version actually found.
+   */
+  public long tryBeginWrite(EntityType type, long id, long expectedVersion) {
+    while (true) {
+      AtomicLong counter = counter(type, id);
+      if ((expectedVersion & 1L) == 0 && counter.compareAndSet(expectedVersion, expectedVersion + 1))
+        return -1L;
+      long actual = counter.get();
+      if (actual != EVICTED) return actual;
+    }
+  }
+  
+  /**
+   * Claims a record for writing whatever its version, waiting for any write in progress to finish.
+   * 
+   * @param type The entity type.
+   * @param id The record id.
+   * @return The version the record was at when claimed.
+   */
+  public long beginWrite(EntityType type, long id) {
+    AtomicLong counter = counter(type, id);
+    for (int waits = 0; ; waits++) {
+      long version = counter.get();
+      if ((version & 1L) == 0 && counter.compareAndSet(version, version + 1))
+        return version;
+      if (version == EVICTED) counter = counter(type, id);
+      else                    pause(waits);
+    }
+  }
+  
+  /**
+   * Releases a claimed record, moving it to its next version.  This must be called even if the write
+   * failed, since it may still have reached the database.
+   * 
+   * @param type The entity type.
+   * @param id The record id.
+   * @param claimedVersion The version the record was at when claimed.
+   * @return The new version.
+   */
+  public long endWrite(EntityType type, long id, long claimedVersion) {
+    //A claimed counter is odd, so it can't have been evicted and this finds the same one
+    long newVersion = claimedVersion + 2;
+    counter(type, id).set(newVersion);
+    return newVersion;
+  }
+  
+  /**
+   * Gets the number of counters held for a type.
+   * 
+   * @param type The entity type.
+   * @return The number of counters.
+   */
+  public int size(EntityType type) {
+    return counters.get(type).size();
+  }
+  
+  private AtomicLong counter(EntityType type, long id) {
+    ConcurrentMap<Long, AtomicLong> typeCounters = counters.get(type);
+    while (true) {
+      AtomicLong counter = typeCounters.get(id);
+      if (counter == null) {
+        AtomicLong created = new AtomicLong(floor.get());
+        counter = typeCounters.putIfAbsent(id, created);
+        if (counter == null) {
+          if (typeCounters.size() > maxCounters) evict(typeCounters);
+          return created;
+        }
+      }
+      if (counter.get() != EVICTED) return counter;
+      //Caught between an eviction and its removal; finish the removal and look again
+      typeCounters.remove(id, counter);
+    }
+  }
+  
+  /**
+   * Evict counters at rest until the type is down to half of <code>maxCounters</code>.  Only one thread
+   * evicts at a time; the others carry on.
+   */
+  private void evict(ConcurrentMap<Long, AtomicLong> typeCounters) {
+    if (!evicting.compareAndSet(false, true)) return;
+    try {
+      int target = maxCounters / 2;
+      Iterator<Map.Entry<Long, AtomicLong>> entries = typeCounters.entrySet().iterator();
+      while (typeCounters.size() > target && entries.hasNext()) {
+        Map.Entry<Long, AtomicLong> entry = entries.next();
+        AtomicLong counter = entry.getValue();
+        long version = counter.get();
+        if ((version & 1L) != 0) continue;
+        //Raise the floor first, so a counter created once this one is gone starts above it
+        raiseFloor(version + 2);
+        if (counter.compareAndSet(version, EVICTED))
+          typeCounters.remove(entry.getKey(), counter);
+      }
+    } finally {
+      evicting.set(false);
+    }
+  }
+  
+  private void raiseFloor(long minimum) {
+    while (true) {
+      long current = floor.get();
+      if (current >= minimum || floor.compareAndSet(current, minimum)) return;
+    }
+  }
+  
+  /**
+   * Wait a little before checking a counter again: spin at first, then park for a time that doubles up
+   * to {@link #MAX_PARK_NANOS}.
+   */
+  private static void pause(int waits) {
+    if (waits < SPIN_WAITS) return;
+    int doublings = Math.min(waits - SPIN_WAITS, 10);
+    LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, FIRST_PARK_NANOS << doublings));
+  }
+}
@@ -0,0 +1,26 @@
+package com.ac.games.db.version;
+
+/**
+ * A record read together with its version stamp.  The version is passed back to a versioned update,
+ * which fails if the record has been written since.
+ * 
+ * @author ac010168
+ */
+public final class Versioned<T> {
+
+  private final T    value;
+  private final long version;
+  
+  public Versioned(T value, long version) {
+    this.value   = value;
+    this.version = version;
+  }
+  
+  public T getValue() {
+    return value;
+  }
+  
+  public long getVersion() {
+    return version;
+  }
+}
@@ -0,0 +1,459 @@
+package com.ac.games.db.version;
+
+import java.util.List;
+import java.util.Random;
+
+import com.ac.games.data.Collection;
+import com.ac.games.data.CollectionItem;
+import com.ac.games.data.Game;
+import com.ac.games.data.UserDetail;
+import com.ac.games.db.DelegatingGamesDatabase;
+import com.ac.games.db.EntityType;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+import com.ac.games.db.exception.VersionConflictException;
+
+/**
+ * {@link GamesDatabase} decorator that adds compare-and-set updates for {@link Game}, {@link UserDetail},
+ * {@link Collection} and {@link CollectionItem}, so concurrent editors can work optimistically instead of
+ * behind a shared lock.
+ * <p>
+ * Callers read a record with one of the <code>read*Versioned</code> calls, change it, and write it back with
+ * the matching versioned update, which throws {@link VersionConflictException} if anyone else wrote the record
+ * in between.  The <code>mutate*</code> calls wrap that loop, re-reading and reapplying a {@link Mutation}
+ * until it lands.  The plain update and delete calls still work, and move the version on like any other write.
+ * <p>
+ * Versions are kept in a {@link VersionTable} in this process, so every writer has to go through the same
+ * instance for the checks to hold.
+ * 
+ * @author ac010168
+ */
+public class VersionedGamesDatabase extends DelegatingGamesDatabase {
+
+  /** Default number of attempts made by the mutate calls */
+  public static final int DEFAULT_MAX_ATTEMPTS = 8;
+  /** Cap on the backoff between attempts, in milliseconds */
+  private static final long MAX_BACKOFF_MILLIS = 50L;
+  
+  private final VersionTable versions;
+  private final int          maxAttempts;
+  private final Random       random;
+  
+  /**
+   * Basic Constructor, using the default number of attempts.
+   * 
+   * @param delegate The database to wrap.
+   */
+  public VersionedGamesDatabase(GamesDatabase delegate) {
+    this(delegate, DEFAULT_MAX_ATTEMPTS);
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param delegate The database to wrap.
+   * @param maxAttempts The number of attempts the mutate calls make before giving up.
+   */
+  public VersionedGamesDatabase(GamesDatabase delegate, int maxAttempts) {
+    super(delegate);
+    this.versions    = new VersionTable();
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.random      = new Random();
+  }
+  
+  //**********  Game Operations  **********
+  /**
+   * Read a {@link Game} with its version stamp.
+   * 
+   * @param gameID The gameID for this Game in the database.
+   * @return The Game and version, or null if the Game does not exist.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public Versioned<Game> readGameVersioned(long gameID) throws ConfigurationException, DatabaseOperationException {
+    return gameAccess.readVersioned(gameID);
+  }
+  
+  /**
+   * Update a {@link Game}, if it has not been written since it was read at <code>expectedVersion</code>.
+   * 
+   * @param game The {@link Game} object to be written to the database.
+   * @param expectedVersion The version returned by {@link #readGameVersioned(long)}.
+   * @return The new version of the Game.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws VersionConflictException Throws this exception if the Game has been written since.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public long updateGame(Game game, long expectedVersion) throws ConfigurationException, DatabaseOperationException {
+    return gameAccess.compareAndSet(game, expectedVersion);
+  }
+  
+  /**
+   * Read a {@link Game}, apply a change to it, and write it back, retrying on conflict.
+   * 
+   * @param gameID The gameID for this Game in the database.
+   * @param mutation The change to make.
+   * @return The updated Game.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws VersionConflictException Throws this exception if every attempt conflicted.
+   * @throws DatabaseOperationException Throws this exception if the Game does not exist, or there are
+   * errors during the execution of the requested operation.
+   */
+  public Game mutateGame(long gameID, Mutation<Game> mutation) throws ConfigurationException, DatabaseOperationException {
+    return gameAccess.mutate(gameID, mutation);
+  }
+  
+  @Override
+  public void updateGame(Game game) throws ConfigurationException, DatabaseOperationException {
+    gameAccess.blindWrite(game);
+  }
+  
+  @Override
+  public void deleteGame(long gameID) throws ConfigurationException, DatabaseOperationException {
+    long claimed = versions.beginWrite(EntityType.GAME, gameID);
+    try {
+      delegate.deleteGame(gameID);
+    } finally {
+      versions.endWrite(EntityType.GAME, gameID, claimed);
+    }
+  }
+  
+  //**********  UserDetail Operations  **********
+  /**
+   * Read a {@link UserDetail} with its version stamp.
+   * 
+   * @param userID The userID for this UserDetail in the database.
+   * @return The UserDetail and version, or null if the UserDetail does not exist.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public Versioned<UserDetail> readUserDetailVersioned(long userID) throws ConfigurationException, DatabaseOperationException {
+    return userDetailAccess.readVersioned(userID);
+  }
+  
+  /**
+   * Update a {@link UserDetail}, if it has not been written since it was read at <code>expectedVersion</code>.
+   * 
+   * @param userDetail The {@link UserDetail} object to be written to the database.
+   * @param expectedVersion The version returned by {@link #readUserDetailVersioned(long)}.
+   * @return The new version of the UserDetail.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws VersionConflictException Throws this exception if the UserDetail has been written since.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public long updateUserDetail(UserDetail userDetail, long expectedVersion) throws ConfigurationException, DatabaseOperationException {
+    return userDetailAccess.compareAndSet(userDetail, expectedVersion);
+  }
+  
+  /**
+   * Read a {@link UserDetail}, apply a change to it, and write it back, retrying on conflict.
+   * 
+   * @param userID The userID for this UserDetail in the database.
+   * @param mutation The change to make.
+   * @return The updated UserDetail.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws VersionConflictException Throws this exception if every attempt conflicted.
+   * @throws DatabaseOperationException Throws this exception if the UserDetail does not exist, or there
+   * are errors during the execution of the requested operation.
+   */
+  public UserDetail mutateUserDetail(long userID, Mutation<UserDetail> mutation) throws ConfigurationException, DatabaseOperationException {
+    return userDetailAccess.mutate(userID, mutation);
+  }
+  
+  @Override
+  public void updateUserDetail(UserDetail userDetail) throws ConfigurationException, DatabaseOperationException {
+    userDetailAccess.blindWrite(userDetail);
+  }
+  
+  @Override
+  public void deleteUserDetail(long userID) throws ConfigurationException, DatabaseOperationException {
+    long claimed = versions.beginWrite(EntityType.USER_DETAIL, userID);
+    try {
+      delegate.deleteUserDetail(userID);
+    } finally {
+      versions.endWrite(EntityType.USER_DETAIL, userID, claimed);
+    }
+  }
+  
+  //**********  Collection Operations  **********
+  /**
+   * Read a {@link Collection} with its version stamp.
+   * 
+   * @param collectionID The collectionID for this Collection in the database.
+   * @return The Collection and version, or null if the Collection does not exist.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public Versioned<Collection> readCollectionVersioned(long collectionID) throws ConfigurationException, DatabaseOperationException {
+    return collectionAccess.readVersioned(collectionID);
+  }
+  
+  /**
+   * Update a {@link Collection}, if it has not been written since it was read at <code>expectedVersion</code>.
+   * 
+   * @param collection The {@link Collection} object to be written to the database.
+   * @param expectedVersion The version returned by {@link #readCollectionVersioned(long)}.
+   * @return The new version of the Collection.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws VersionConflictException Throws this exception if the Collection has been written since.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public long updateCollection(Collection collection, long expectedVersion) throws ConfigurationException, DatabaseOperationException {
+    return collectionAccess.compareAndSet(collection, expectedVersion);
+  }
+  
+  /**
+   * Read a {@link Collection}, apply a change to it, and write it back, retrying on conflict.
+   * 
+   * @param collectionID The collectionID for this Collection in the database.
+   * @param mutation The change to make.
+   * @return The updated Collection.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws VersionConflictException Throws this exception if every attempt conflicted.
+   * @throws DatabaseOperationException Throws this exception if the Collection does not exist, or there
+   * are errors during the execution of the requested operation.
+   */
+  public Collection mutateCollection(long collectionID, Mutation<Collection> mutation) throws ConfigurationException, DatabaseOperationException {
+    return collectionAccess.mutate(collectionID, mutation);
+  }
+  
+  @Override
+  public void updateCollection(Collection collection) throws ConfigurationException, DatabaseOperationException {
+    collectionAccess.blindWrite(collection);
+  }
+  
+  @Override
+  public void deleteCollection(long collectionID) throws ConfigurationException, DatabaseOperationException {
+    long claimed = versions.beginWrite(EntityType.COLLECTION, collectionID);
+    try {
+      delegate.deleteCollection(collectionID);
+    } finally {
+      versions.endWrite(EntityType.COLLECTION, collectionID, claimed);
+    }
+  }
+  
+  /**
+   * The deleted records are not known until the delete has run, so each is claimed and released afterwards,
+   * moving its version on for anyone holding a versioned read of it.
+   */
+  @Override
+  public List<Collection> deleteCollectionsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    List<Collection> deleted = delegate.deleteCollectionsByUserID(userID);
+    for (Collection collection : deleted)
+      bumpVersion(EntityType.COLLECTION, collection.getCollectionID());
+    return deleted;
+  }
+  
+  //**********  CollectionItem Operations  **********
+  /**
+   * Read a {@link CollectionItem} with its version stamp.
+   * 
+   * @param itemID The itemID for this CollectionItem in the database.
+   * @return The CollectionItem and version, or null if the CollectionItem does not exist.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public Versioned<CollectionItem> readCollectionItemVersioned(long itemID) throws ConfigurationException, DatabaseOperationException {
+    return collectionItemAccess.readVersioned(itemID);
+  }
+  
+  /**
+   * Update a {@link CollectionItem}, if it has not been written since it was read at <code>expectedVersion</code>.
+   * 
+   * @param item The {@link CollectionItem} object to be written to the database.
+   * @param expectedVersion The version returned by {@link #readCollectionItemVersioned(long)}.
+   * @return The new version of the CollectionItem.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws VersionConflictException Throws this exception if the CollectionItem has been written since.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public long updateCollectionItem(CollectionItem item, long expectedVersion) throws ConfigurationException, DatabaseOperationException {
+    return collectionItemAccess.compareAndSet(item, expectedVersion);
+  }
+  
+  /**
+   * Read a {@link CollectionItem}, apply a change to it, and write it back, retrying on conflict.
+   * 
+   * @param itemID The itemID for this CollectionItem in the database.
+   * @param mutation The change to make.
+   * @return The updated CollectionItem.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws VersionConflictException Throws this exception if every attempt conflicted.
+   * @throws DatabaseOperationException Throws this exception if the CollectionItem does not exist, or
+   * there are errors during the execution of the requested operation.
+   */
+  public CollectionItem mutateCollectionItem(long itemID, Mutation<CollectionItem> mutation) throws ConfigurationException, DatabaseOperationException {
+    return collectionItemAccess.mutate(itemID, mutation);
+  }
+  
+  @Override
+  public void updateCollectionItem(CollectionItem item) throws ConfigurationException, DatabaseOperationException {
+    collectionItemAccess.blindWrite(item);
+  }
+  
+  @Override
+  public void deleteCollectionItem(long itemID) throws ConfigurationException, DatabaseOperationException {
+    long claimed = versions.beginWrite(EntityType.COLLECTION_ITEM, itemID);
+    try {
+      delegate.deleteCollectionItem(itemID);
+    } finally {
+      versions.endWrite(EntityType.COLLECTION_ITEM, itemID, claimed);
+    }
+  }
+  
+  /**
+   * As {@link #deleteCollectionsByUserID(long)}, the deleted items are moved on a version after the delete.
+   */
+  @Override
+  public List<CollectionItem> deleteCollectionItemsByUserID(long userID) throws ConfigurationException, DatabaseOperationException {
+    List<CollectionItem> deleted = delegate.deleteCollectionItemsByUserID(userID);
+    for (CollectionItem item : deleted)
+      bumpVersion(EntityType.COLLECTION_ITEM, item.getItemID());
+    return deleted;
+  }
+  
+  private void bumpVersion(EntityType type, long id) {
+    versions.endWrite(type, id, versions.beginWrite(type, id));
+  }
+  
+  //**********  Versioned Access  **********
+  private final VersionedAccess<Game> gameAccess = new VersionedAccess<Game>(EntityType.GAME, "Game") {
+    @Override
+    Game read(long id) throws ConfigurationException { return delegate.readGame(id); }
+    @Override
+    void write(Game value) throws ConfigurationException { delegate.updateGame(value); }
+    @Override
+    long idOf(Game value) { return value.getGameID(); }
+  };
+  
+  private final VersionedAccess<UserDetail> userDetailAccess = new VersionedAccess<UserDetail>(EntityType.USER_DETAIL, "UserDetail") {
+    @Override
+    UserDetail read(long id) throws ConfigurationException { return delegate.readUserDetail(id); }
+    @Override
+    void write(UserDetail value) throws ConfigurationException { delegate.updateUserDetail(value); }
+    @Override
+    long idOf(UserDetail value) { return value.getUserID(); }
+  };
+  
+  private final VersionedAccess<Collection> collectionAccess = new VersionedAccess<Collection>(EntityType.COLLECTION, "Collection") {
+    @Override
+    Collection read(long id) throws ConfigurationException { return delegate.readCollection(id); }
+    @Override
+    void write(Collection value) throws ConfigurationException { delegate.updateCollection(value); }
+    @Override
+    long idOf(Collection value) { return value.getCollectionID(); }
+  };
+  
+  private final VersionedAccess<CollectionItem> collectionItemAccess = new VersionedAccess<CollectionItem>(EntityType.COLLECTION_ITEM, "CollectionItem") {
+    @Override
+    CollectionItem read(long id) throws ConfigurationException { return delegate.readCollectionItem(id); }
+    @Override
+    void write(CollectionItem value) throws ConfigurationException { delegate.updateCollectionItem(value); }
+    @Override
+    long idOf(CollectionItem value) { return value.getItemID(); }
+  };
+  
+  /**
+   * The versioned read, update and retry logic, shared by the four record types.
+   */
+  private abstract class VersionedAccess<T> {
+    private final EntityType type;
+    private final String     typeName;
+    
+    VersionedAccess(EntityType type, String typeName) {
+      this.type     = type;
+      this.typeName = typeName;
+    }
+    
+    abstract T read(long id) throws ConfigurationException;
+    abstract void write(T value) throws ConfigurationException;
+    abstract long idOf(T value);
+    
+    Versioned<T> readVersioned(long id) throws ConfigurationException {
+      while (true) {
+        long version = versions.stableVersion(type, id);
+        T value = read(id);
+        if (versions.validate(type, id, version))
+          return value == null ? null : new Versioned<T>(value, version);
+      }
+    }
+    
+    long compareAndSet(T value, long expectedVersion) throws ConfigurationException {
+      long id = idOf(value);
+      long actual = versions.tryBeginWrite(type, id, expectedVersion);
+      if (actual != -1L)
+        throw new VersionConflictException(typeName + " " + id + " is at version " + actual + ", expected " + expectedVersion,
+                                           expectedVersion, actual);
+      try {
+        write(value);
+      } finally {
+        expectedVersion = versions.endWrite(type, id, expectedVersion);
+      }
+      return expectedVersion;
+    }
+    
+    void blindWrite(T value) throws ConfigurationException {
+      long id = idOf(value);
+      long claimed = versions.beginWrite(type, id);
+      try {
+        write(value);
+      } finally {
+        versions.endWrite(type, id, claimed);
+      }
+    }
+    
+    T mutate(long id, Mutation<T> mutation) throws ConfigurationException {
+      VersionConflictException lastConflict = null;
+      for (int attempt = 0; attempt < maxAttempts; attempt++) {
+        if (attempt > 0) backoff(attempt);
+        Versioned<T> current = readVersioned(id);
+        if (current == null)
+          throw new DatabaseOperationException("No " + typeName + " found with id " + id);
+        mutation.apply(current.getValue());
+        try {
+          compareAndSet(current.getValue(), current.getVersion());
+          return current.getValue();
+        } catch (VersionConflictException e) {
+          lastConflict = e;
+        }
+      }
+      throw lastConflict;
+    }
+  }
+  
+  private void backoff(int attempt) {
+    long limit = Math.min(MAX_BACKOFF_MILLIS, 1L << Math.min(attempt, 6));
+    long millis;
+    synchronized (random) {
+      millis = (long)(random.nextDouble() * limit);
+    }
+    if (millis == 0) return;
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DatabaseOperationException("Interrupted while retrying a versioned update", e);
+    }
+  }
+}
@@ -0,0 +1,6 @@
+/**
+ * This package holds the version stamps and compare-and-set updates used by concurrent editors.
+ * 
+ * @author ac010168
+ */
+package com.ac.games.db.version;
@@ -0,0 +1,51 @@
+package com.ac.games.db.warm;
+
+import java.util.List;
+
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * The autocomplete lists a {@link GamesDatabase} can produce, each with the call that reads it.
+ * 
+ * @author ac010168
+ */
+public enum AutoCompleteSource {
+  GAME_NAMES {
+    @Override
+    public List<String> read(GamesDatabase database) throws ConfigurationException, DatabaseOperationException {
+      return database.readGameNamesForAutoComplete();
+    }
+  },
+  BGG_GAME_NAMES {
+    @Override
+    public List<String> read(GamesDatabase database) throws ConfigurationException, DatabaseOperationException {
+      return database.readBGGGameNamesForAutoComplete();
+    }
+  },
+  CSI_TITLES {
+    @Override
+    public List<String> read(GamesDatabase database) throws ConfigurationException, DatabaseOperationException {
+      return database.readCSITitlesForAutoComplete();
+    }
+  },
+  MM_TITLES {
+    @Override
+    public List<String> read(GamesDatabase database) throws ConfigurationException, DatabaseOperationException {
+      return database.readMMTitlesForAutoComplete();
+    }
+  };
+  
+  /**
+   * Read this list from the database.
+   * 
+   * @param database The database to read from.
+   * @return The autocomplete list.
+   * 
+   * @throws ConfigurationException Throws this exception if the database connection is not active.
+   * @throws DatabaseOperationException Throws this exception if there are errors during the execution
+   * of the requested operation.
+   */
+  public abstract List<String> read(GamesDatabase database) throws ConfigurationException, DatabaseOperationException;
+}
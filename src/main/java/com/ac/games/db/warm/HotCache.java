@@ -0,0 +1,153 @@
+package com.ac.games.db.warm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Least recently used cache of records by id, whose access order doubles as the hot set saved in a
+ * {@link WarmSnapshot}.
+ * <p>
+ * Ids are spread over segments, each its own access-ordered map behind its own lock, so hits on different
+ * segments don't wait for each other.  Eviction is least recently used within a segment.  Each entry also
+ * keeps the time it was last read, which orders the ids across segments for {@link #hottestIDs(int)}.
+ * <p>
+ * Every invalidation bumps a generation counter.  A caller reads {@link #generation()} before going to the
+ * database and passes it to {@link #put(long, Object, long)}, which drops the value if anything was
+ * invalidated in between, so a read that raced a write can't cache the old record.  The counter is bumped
+ * before the segment is cleared and checked under the segment lock, so either the put sees the new
+ * generation or the invalidation removes what the put added.
+ * 
+ * @author ac010168
+ */
+final class HotCache<V> {
+
+  private static final int SEGMENT_COUNT = 16;
+  
+  /** Most recently used first */
+  private static final Comparator<long[]> HOTTEST_FIRST = new Comparator<long[]>() {
+    @Override
+    public int compare(long[] a, long[] b) {
+      return a[1] < b[1] ? 1 : (a[1] == b[1] ? 0 : -1);
+    }
+  };
+  
+  private final List<LinkedHashMap<Long, Cached<V>>> segments;
+  private final AtomicLong generation;
+  
+  HotCache(int maxEntries) {
+    final int segmentEntries = Math.max(1, (maxEntries + SEGMENT_COUNT - 1) / SEGMENT_COUNT);
+    segments = new ArrayList<LinkedHashMap<Long, Cached<V>>>(SEGMENT_COUNT);
+    for (int i = 0; i < SEGMENT_COUNT; i++) {
+      segments.add(new LinkedHashMap<Long, Cached<V>>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Cached<V>> eldest) {
+          return size() > segmentEntries;
+        }
+      });
+    }
+    generation = new AtomicLong();
+  }
+  
+  V get(long id) {
+    LinkedHashMap<Long, Cached<V>> segment = segmentFor(id);
+    synchronized (segment) {
+      Cached<V> entry = segment.get(id);
+      if (entry == null) return null;
+      entry.lastRead = System.nanoTime();
+      return entry.value;
+    }
+  }
+  
+  long generation() {
+    return generation.get();
+  }
+  
+  /**
+   * Cache a value read from the database.
+   * 
+   * @param id The record id.
+   * @param value The record.
+   * @param readGeneration The {@link #generation()} from before the read.
+   * @return true if the value was cached.
+   */
+  boolean put(long id, V value, long readGeneration) {
+    LinkedHashMap<Long, Cached<V>> segment = segmentFor(id);
+    synchronized (segment) {
+      if (readGeneration != generation.get()) return false;
+      segment.put(id, new Cached<V>(value));
+      return true;
+    }
+  }
+  
+  void invalidate(long id) {
+    generation.incrementAndGet();
+    LinkedHashMap<Long, Cached<V>> segment = segmentFor(id);
+    synchronized (segment) {
+      segment.remove(id);
+    }
+  }
+  
+  void clear() {
+    generation.incrementAndGet();
+    for (LinkedHashMap<Long, Cached<V>> segment : segments) {
+      synchronized (segment) {
+        segment.clear();
+      }
+    }
+  }
+  
+  int size() {
+    int size = 0;
+    for (LinkedHashMap<Long, Cached<V>> segment : segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+  
+  /**
+   * Gets the cached ids, most recently used first.
+   * 
+   * @param limit The most ids wanted.
+   * @return The ids.
+   */
+  List<Long> hottestIDs(int limit) {
+    List<long[]> reads = new ArrayList<long[]>();
+    for (LinkedHashMap<Long, Cached<V>> segment : segments) {
+      synchronized (segment) {
+        for (Map.Entry<Long, Cached<V>> entry : segment.entrySet())
+          reads.add(new long[] { entry.getKey(), entry.getValue().lastRead });
+      }
+    }
+    Collections.sort(reads, HOTTEST_FIRST);
+    List<Long> hottest = new ArrayList<Long>(Math.min(limit, reads.size()));
+    for (int i = 0; i < reads.size() && hottest.size() < limit; i++)
+      hottest.add(reads.get(i)[0]);
+    return hottest;
+  }
+  
+  private LinkedHashMap<Long, Cached<V>> segmentFor(long id) {
+    int hash = (int)(id ^ (id >>> 32));
+    hash ^= (hash >>> 16);
+    return segments.get((hash & 0x7fffffff) % SEGMENT_COUNT);
+  }
+  
+  /** A cached value, and when it was last read from System.nanoTime() */
+  private static final class Cached<V> {
+    private final V value;
+    private long    lastRead;
+    
+    private Cached(V value) {
+      this.value    = value;
+      this.lastRead = System.nanoTime();
+    }
+  }
+}
@@ -0,0 +1,580 @@
+package com.ac.games.db.warm;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ac.games.data.BGGGame;
+import com.ac.games.data.CompactSearchData;
+import com.ac.games.data.CoolStuffIncPriceData;
+import com.ac.games.data.Game;
+import com.ac.games.data.MiniatureMarketPriceData;
+import com.ac.games.db.DatabaseFutures;
+import com.ac.games.db.DelegatingGamesDatabase;
+import com.ac.games.db.GamesDatabase;
+import com.ac.games.db.exception.ConfigurationException;
+import com.ac.games.db.exception.DatabaseOperationException;
+import com.ac.games.db.invalidation.InvalidationKey;
+import com.ac.games.db.invalidation.InvalidationListener;
+
+/**
+ * {@link GamesDatabase} decorator that caches {@link #readGame(long)}, {@link #readGamesCompact(String)} and
+ * the four <code>read*ForAutoComplete</code> lists, and saves the hot part of those caches to a local
+ * {@link WarmSnapshot} file so a freshly started node doesn't begin cold.
+ * <p>
+ * {@link #initializeDBConnection()} returns as soon as the delegate is connected.  A background thread then
+ * loads the snapshot, installs its autocomplete lists straight away, and re-reads its games and compact
+ * records on a pool of prefetch threads.  The autocomplete lists are then read again from the database to
+ * replace the saved copies.  {@link #awaitWarm(long, TimeUnit)} waits for all of this to finish.  Warm-up is
+ * best effort; failures are logged and the caches fill from normal reads instead.  Once warm, a snapshot
+ * is saved on a fixed interval, and again by {@link #closeDBConnection()}.
+ * <p>
+ * Games and compact records are invalidated by id on every {@link Game} write.  A write to the records an
+ * autocomplete list is built from only marks the list stale: the old list is still served, and it is read
+ * again in the background once the refresh delay has passed, however many writes arrived meanwhile.  A
+ * crawl updating thousands of listings therefore costs one reload per list per delay, not one per write.
+ * Cached {@link Game} and {@link CompactSearchData} objects are shared between callers and must not be
+ * modified.  {@link #readGamesCompact(String)} returns its results in the order the ids were requested.  As
+ * an {@link InvalidationListener}, it applies the same invalidations for writes made on other nodes.
+ * 
+ * @author ac010168
+ */
+public class WarmCacheGamesDatabase extends DelegatingGamesDatabase implements InvalidationListener {
+
+  private static final Logger LOGGER = Logger.getLogger(WarmCacheGamesDatabase.class.getName());
+  
+  /** Default number of games, and of compact records, held */
+  public static final int  DEFAULT_MAX_ENTRIES      = 20000;
+  /** Default number of ids of each kind saved in a snapshot */
+  public static final int  DEFAULT_SNAPSHOT_SIZE    = 5000;
+  /** Default time between snapshots, in milliseconds */
+  public static final long DEFAULT_SNAPSHOT_INTERVAL = 5L * 60L * 1000L;
+  /** Default number of threads used to prefetch on startup */
+  public static final int  DEFAULT_PREFETCH_THREADS = 8;
+  /** Default time a stale autocomplete list is served before it is read again, in milliseconds */
+  public static final long DEFAULT_AUTO_COMPLETE_REFRESH_DELAY = 60L * 1000L;
+  /** Compact records are prefetched this many ids per call */
+  private static final int COMPACT_BATCH_SIZE = 100;
+  
+  private final Path snapshotFile;
+  private final int  snapshotSize;
+  private final long snapshotInterval;
+  private final int  prefetchThreads;
+  private final long autoCompleteRefreshDelay;
+  
+  private final HotCache<Game>              games;
+  private final HotCache<CompactSearchData> compactData;
+  private final ConcurrentHashMap<AutoCompleteSource, List<String>> autoCompleteLists;
+  /** Bumped when a list is dropped, so a read that raced the write can't install the old list */
+  private final Map<AutoCompleteSource, AtomicLong> autoCompleteGenerations;
+  /** Set while a reload of a stale list is scheduled */
+  private final Map<AutoCompleteSource, AtomicBoolean> autoCompleteRefreshes;
+  
+  private final AtomicLong hitCount;
+  private final AtomicLong missCount;
+  
+  private final ScheduledExecutorService scheduler;
+  private final CountDownLatch           warmed;
+  
+  /**
+   * Basic Constructor, using the default sizes and interval.
+   * 
+   * @param delegate The database to wrap.
+   * @param snapshotFile The local file snapshots are saved to and loaded from.
+   */
+  public WarmCacheGamesDatabase(GamesDatabase delegate, Path snapshotFile) {
+    this(delegate, snapshotFile, DEFAULT_MAX_ENTRIES, DEFAULT_SNAPSHOT_SIZE, DEFAULT_SNAPSHOT_INTERVAL, DEFAULT_PREFETCH_THREADS);
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param delegate The database to wrap.
+   * @param snapshotFile The local file snapshots are saved to and loaded from.
+   * @param maxEntries The number of games, and of compact records, held.
+   * @param snapshotSize The number of ids of each kind saved in a snapshot.
+   * @param snapshotInterval The time between snapshots, in milliseconds.
+   * @param prefetchThreads The number of threads used to prefetch on startup.
+   */
+  public WarmCacheGamesDatabase(GamesDatabase delegate, Path snapshotFile, int maxEntries, int snapshotSize, long snapshotInterval, int prefetchThreads) {
+    this(delegate, snapshotFile, maxEntries, snapshotSize, snapshotInterval, prefetchThreads, DEFAULT_AUTO_COMPLETE_REFRESH_DELAY);
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param delegate The database to wrap.
+   * @param snapshotFile The local file snapshots are saved to and loaded from.
+   * @param maxEntries The number of games, and of compact records, held.
+   * @param snapshotSize The number of ids of each kind saved in a snapshot.
+   * @param snapshotInterval The time between snapshots, in milliseconds.
+   * @param prefetchThreads The number of threads used to prefetch on startup.
+   * @param autoCompleteRefreshDelay The time a stale autocomplete list is served before it is read again,
+   * in milliseconds.
+   */
+  public WarmCacheGamesDatabase(GamesDatabase delegate, Path snapshotFile, int maxEntries, int snapshotSize, long snapshotInterval,
+                                int prefetchThreads, long autoCompleteRefreshDelay) {
+    super(delegate);
+    this.snapshotFile             = snapshotFile;
+    this.snapshotSize             = snapshotSize;
+    this.snapshotInterval         = snapshotInterval;
+    this.prefetchThreads          = prefetchThreads;
+    this.autoCompleteRefreshDelay = autoCompleteRefreshDelay;
+    
+    games       = new HotCache<Game>(maxEntries);
+    compactData = new HotCache<CompactSearchData>(maxEntries);
+    autoCompleteLists       = new ConcurrentHashMap<AutoCompleteSource, List<String>>();
+    autoCompleteGenerations = new EnumMap<AutoCompleteSource, AtomicLong>(AutoCompleteSource.class);
+    autoCompleteRefreshes   = new EnumMap<AutoCompleteSource, AtomicBoolean>(AutoCompleteSource.class);
+    for (AutoCompleteSource source : AutoCompleteSource.values()) {
+      autoCompleteGenerations.put(source, new AtomicLong());
+      autoCompleteRefreshes.put(source, new AtomicBoolean());
+    }
+    
+    hitCount  = new AtomicLong();
+    missCount = new AtomicLong();
+    warmed    = new CountDownLatch(1);
+    scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "games-db-warm-cache");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+  
+  @Override
+  public void initializeDBConnection() throws ConfigurationException {
+    delegate.initializeDBConnection();
+    scheduler.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          warmUp();
+        } finally {
+          warmed.countDown();
+        }
+        try {
+          scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+              try {
+                saveSnapshot();
+              } catch (DatabaseOperationException doe) {
+                LOGGER.log(Level.WARNING, "Unable to save warm cache snapshot", doe);
+              }
+            }
+          }, snapshotInterval, snapshotInterval, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ree) {
+          //Closed while warming up
+        }
+      }
+    });
+  }
+  
+  @Override
+  public void closeDBConnection() throws ConfigurationException {
+    try {
+      scheduler.shutdownNow();
+      if (warmed.getCount() == 0) saveSnapshot();
+    } finally {
+      delegate.closeDBConnection();
+    }
+  }
+  
+  /**
+   * Wait for startup warm-up to finish.
+   * 
+   * @param timeout The longest time to wait.
+   * @param unit The unit of the timeout.
+   * @return true if warm-up finished, false if the timeout ran out first.
+   * 
+   * @throws InterruptedException If interrupted while waiting.
+   */
+  public boolean awaitWarm(long timeout, TimeUnit unit) throws InterruptedException {
+    return warmed.await(timeout, unit);
+  }
+  
+  /**
+   * Save the current hot set to the snapshot file.
+   * 
+   * @throws DatabaseOperationException Throws this exception if the file cannot be written.
+   */
+  public void saveSnapshot() throws DatabaseOperationException {
+    new WarmSnapshot(System.currentTimeMillis(), games.hottestIDs(snapshotSize), compactData.hottestIDs(snapshotSize),
+                     new EnumMap<AutoCompleteSource, List<String>>(autoCompleteLists)).save(snapshotFile);
+  }
+  
+  public long getHitCount() {
+    return hitCount.get();
+  }
+  
+  public long getMissCount() {
+    return missCount.get();
+  }
+  
+  /**
+   * Load the snapshot and prefetch everything in it.
+   */
+  private void warmUp() {
+    Map<AutoCompleteSource, Long> startGenerations = new EnumMap<AutoCompleteSource, Long>(AutoCompleteSource.class);
+    for (AutoCompleteSource source : AutoCompleteSource.values())
+      startGenerations.put(source, autoCompleteGenerations.get(source).get());
+    
+    WarmSnapshot snapshot;
+    try {
+      snapshot = WarmSnapshot.load(snapshotFile);
+    } catch (DatabaseOperationException doe) {
+      LOGGER.log(Level.WARNING, "Ignoring unreadable warm cache snapshot", doe);
+      snapshot = null;
+    }
+    if (snapshot != null) {
+      for (Map.Entry<AutoCompleteSource, List<String>> entry : snapshot.getAutoCompleteLists().entrySet())
+        installAutoComplete(entry.getKey(), entry.getValue(), startGenerations.get(entry.getKey()));
+    }
+    
+    ExecutorService executor = Executors.newFixedThreadPool(prefetchThreads);
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      if (snapshot != null) {
+        final List<Long> gameIDs = snapshot.getGameIDs();
+        for (int i = 0; i < prefetchThreads; i++) {
+          final int partition = i;
+          futures.add(executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+              for (int j = partition; j < gameIDs.size(); j += prefetchThreads)
+                readGame(gameIDs.get(j));
+              return null;
+            }
+          }));
+        }
+        List<Long> compactGameIDs = snapshot.getCompactGameIDs();
+        for (int start = 0; start < compactGameIDs.size(); start += COMPACT_BATCH_SIZE) {
+          final String idList = joinIDs(compactGameIDs.subList(start, Math.min(start + COMPACT_BATCH_SIZE, compactGameIDs.size())));
+          futures.add(executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+              readGamesCompact(idList);
+              return null;
+            }
+          }));
+        }
+      }
+      for (final AutoCompleteSource source : AutoCompleteSource.values()) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            loadAutoComplete(source);
+            return null;
+          }
+        }));
+      }
+      
+      for (Future<Void> future : futures) {
+        try {
+          DatabaseFutures.get(future);
+        } catch (ConfigurationException ce) {
+          LOGGER.log(Level.WARNING, "Warm cache prefetch failed", ce);
+        } catch (DatabaseOperationException doe) {
+          LOGGER.log(Level.WARNING, "Warm cache prefetch failed", doe);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+  
+  //**********  Cached Reads  **********
+  @Override
+  public Game readGame(long gameID) throws ConfigurationException, DatabaseOperationException {
+    Game game = games.get(gameID);
+    if (game != null) {
+      hitCount.incrementAndGet();
+      return game;
+    }
+    missCount.incrementAndGet();
+    long generation = games.generation();
+    game = delegate.readGame(gameID);
+    if (game != null) games.put(gameID, game, generation);
+    return game;
+  }
+  
+  @Override
+  public List<CompactSearchData> readGamesCompact(String gameIDs) throws ConfigurationException, DatabaseOperationException {
+    List<Long> ids = parseIDs(gameIDs);
+    if (ids == null) return delegate.readGamesCompact(gameIDs);
+    
+    Map<Long, CompactSearchData> found = new HashMap<Long, CompactSearchData>();
+    List<Long> missing = new ArrayList<Long>();
+    for (Long id : ids) {
+      CompactSearchData data = compactData.get(id);
+      if (data != null) found.put(id, data);
+      else              missing.add(id);
+    }
+    
+    if (missing.isEmpty()) {
+      hitCount.incrementAndGet();
+    } else {
+      missCount.incrementAndGet();
+      long generation = compactData.generation();
+      for (CompactSearchData data : delegate.readGamesCompact(joinIDs(missing))) {
+        compactData.put(data.getGameID(), data, generation);
+        found.put(data.getGameID(), data);
+      }
+    }
+    
+    List<CompactSearchData> results = new ArrayList<CompactSearchData>(ids.size());
+    for (Long id : ids) {
+      CompactSearchData data = found.get(id);
+      if (data != null) results.add(data);
+    }
+    return results;
+  }
+  
+  @Override
+  public List<String> readGameNamesForAutoComplete() throws ConfigurationException, DatabaseOperationException {
+    return readAutoComplete(AutoCompleteSource.GAME_NAMES);
+  }
+  
+  @Override
+  public List<String> readBGGGameNamesForAutoComplete() throws ConfigurationException, DatabaseOperationException {
+    return readAutoComplete(AutoCompleteSource.BGG_GAME_NAMES);
+  }
+  
+  @Override
+  public List<String> readCSITitlesForAutoComplete() throws ConfigurationException, DatabaseOperationException {
+    return readAutoComplete(AutoCompleteSource.CSI_TITLES);
+  }
+  
+  @Override
+  public List<String> readMMTitlesForAutoComplete() throws ConfigurationException, DatabaseOperationException {
+    return readAutoComplete(AutoCompleteSource.MM_TITLES);
+  }
+  
+  private List<String> readAutoComplete(AutoCompleteSource source) throws ConfigurationException, DatabaseOperationException {
+    List<String> cached = autoCompleteLists.get(source);
+    if (cached != null) {
+      hitCount.incrementAndGet();
+      return new ArrayList<String>(cached);
+    }
+    missCount.incrementAndGet();
+    return new ArrayList<String>(loadAutoComplete(source));
+  }
+  
+  private List<String> loadAutoComplete(AutoCompleteSource source) throws ConfigurationException, DatabaseOperationException {
+    long generation = autoCompleteGenerations.get(source).get();
+    List<String> values = source.read(delegate);
+    installAutoComplete(source, values, generation);
+    return values;
+  }
+  
+  private void installAutoComplete(AutoCompleteSource source, List<String> values, long generation) {
+    AtomicLong current = autoCompleteGenerations.get(source);
+    synchronized (current) {
+      if (current.get() == generation)
+        autoCompleteLists.put(source, Collections.unmodifiableList(new ArrayList<String>(values)));
+    }
+  }
+  
+  /**
+   * Drop a list outright, so the next read goes to the database.
+   */
+  private void dropAutoComplete(AutoCompleteSource source) {
+    AtomicLong current = autoCompleteGenerations.get(source);
+    synchronized (current) {
+      current.incrementAndGet();
+      autoCompleteLists.remove(source);
+    }
+  }
+  
+  /**
+   * Mark a list stale.  It keeps being served until a reload, which is scheduled unless one already is.
+   */
+  private void invalidateAutoComplete(final AutoCompleteSource source) {
+    //A read already running may have missed this write, so it must not install its list
+    AtomicLong current = autoCompleteGenerations.get(source);
+    synchronized (current) {
+      current.incrementAndGet();
+    }
+    final AtomicBoolean scheduled = autoCompleteRefreshes.get(source);
+    if (!scheduled.compareAndSet(false, true)) return;
+    try {
+      scheduler.schedule(new Runnable() {
+        @Override
+        public void run() {
+          scheduled.set(false);
+          try {
+            loadAutoComplete(source);
+          } catch (ConfigurationException ce) {
+            LOGGER.log(Level.WARNING, "Unable to reload " + source + " autocomplete list", ce);
+            dropAutoComplete(source);
+          } catch (DatabaseOperationException doe) {
+            LOGGER.log(Level.WARNING, "Unable to reload " + source + " autocomplete list", doe);
+            dropAutoComplete(source);
+          }
+        }
+      }, autoCompleteRefreshDelay, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException ree) {
+      //Closed, so there is nothing left to serve
+      scheduled.set(false);
+      dropAutoComplete(source);
+    }
+  }
+  
+  //**********  Invalidating Writes  **********
+  @Override
+  public void insertGame(Game game) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertGame(game);
+    invalidateGame(game.getGameID());
+  }
+  
+  @Override
+  public void updateGame(Game game) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateGame(game);
+    invalidateGame(game.getGameID());
+  }
+  
+  @Override
+  public void deleteGame(long gameID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteGame(gameID);
+    invalidateGame(gameID);
+  }
+  
+  private void invalidateGame(long gameID) {
+    games.invalidate(gameID);
+    compactData.invalidate(gameID);
+    invalidateAutoComplete(AutoCompleteSource.GAME_NAMES);
+  }
+  
+  @Override
+  public void invalidate(List<InvalidationKey> keys) {
+    for (InvalidationKey key : keys) {
+      switch (key.getEntityType()) {
+        case GAME:
+          if (key.isAllIDs()) {
+            games.clear();
+            compactData.clear();
+            invalidateAutoComplete(AutoCompleteSource.GAME_NAMES);
+          } else {
+            invalidateGame(key.getID());
+          }
+          break;
+        case BGG_GAME: invalidateAutoComplete(AutoCompleteSource.BGG_GAME_NAMES); break;
+        case CSI_DATA: invalidateAutoComplete(AutoCompleteSource.CSI_TITLES);     break;
+        case MM_DATA:  invalidateAutoComplete(AutoCompleteSource.MM_TITLES);      break;
+        default:       break;
+      }
+    }
+  }
+  
+  @Override
+  public void invalidateAll() {
+    games.clear();
+    compactData.clear();
+    for (AutoCompleteSource source : AutoCompleteSource.values())
+      dropAutoComplete(source);
+  }
+  
+  @Override
+  public void insertBGGGameData(BGGGame game) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertBGGGameData(game);
+    invalidateAutoComplete(AutoCompleteSource.BGG_GAME_NAMES);
+  }
+  
+  @Override
+  public void updateBGGGameData(BGGGame game) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateBGGGameData(game);
+    invalidateAutoComplete(AutoCompleteSource.BGG_GAME_NAMES);
+  }
+  
+  @Override
+  public void deleteBGGGameData(long bggID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteBGGGameData(bggID);
+    invalidateAutoComplete(AutoCompleteSource.BGG_GAME_NAMES);
+  }
+  
+  @Override
+  public void insertCSIPriceData(CoolStuffIncPriceData csiData) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertCSIPriceData(csiData);
+    invalidateAutoComplete(AutoCompleteSource.CSI_TITLES);
+  }
+  
+  @Override
+  public void updateCSIPriceData(CoolStuffIncPriceData csiData) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateCSIPriceData(csiData);
+    invalidateAutoComplete(AutoCompleteSource.CSI_TITLES);
+  }
+  
+  @Override
+  public void deleteCSIPriceData(long csiID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteCSIPriceData(csiID);
+    invalidateAutoComplete(AutoCompleteSource.CSI_TITLES);
+  }
+  
+  @Override
+  public void insertMMPriceData(MiniatureMarketPriceData mmData) throws ConfigurationException, DatabaseOperationException {
+    delegate.insertMMPriceData(mmData);
+    invalidateAutoComplete(AutoCompleteSource.MM_TITLES);
+  }
+  
+  @Override
+  public void updateMMPriceData(MiniatureMarketPriceData mmData) throws ConfigurationException, DatabaseOperationException {
+    delegate.updateMMPriceData(mmData);
+    invalidateAutoComplete(AutoCompleteSource.MM_TITLES);
+  }
+  
+  @Override
+  public void deleteMMPriceData(long mmID) throws ConfigurationException, DatabaseOperationException {
+    delegate.deleteMMPriceData(mmID);
+    invalidateAutoComplete(AutoCompleteSource.MM_TITLES);
+  }
+  
+  /**
+   * Parse a comma separated id list.
+   * 
+   * @return The ids, or null if the list is not made up only of numbers.
+   */
+  private static List<Long> parseIDs(String gameIDs) {
+    if (gameIDs == null) return null;
+    List<Long> ids = new ArrayList<Long>();
+    for (String token : gameIDs.split(",")) {
+      String trimmed = token.trim();
+      if (trimmed.length() == 0) continue;
+      try {
+        ids.add(Long.parseLong(trimmed));
+      } catch (NumberFormatException nfe) {
+        return null;
+      }
+    }
+    return ids;
+  }
+  
+  private static String joinIDs(List<Long> ids) {
+    StringBuilder idList = new StringBuilder();
+    for (Long id : ids) {
+      if (idList.length() > 0) idList.append(",");
+      idList.append(id);
+    }
+    return idList.toString();
+  }
+}
@@ -0,0 +1,163 @@
+package com.ac.games.db.warm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * The hot working set of a {@link WarmCacheGamesDatabase} at one point in time: the most recently read
+ * gameIDs, the most recently read compact gameIDs, and the autocomplete lists.  Records are saved by id
+ * only and read again on startup; the autocomplete lists are saved whole, since each one is a single call
+ * that is expensive to make.
+ * <p>
+ * The file holds a magic number and format version, the time it was taken, the two id lists, then each
+ * autocomplete list by name.  Saves go to a temp file which is then moved into place, so a crash mid-save
+ * leaves the previous file intact.
+ * 
+ * @author ac010168
+ */
+public class WarmSnapshot {
+
+  private static final int MAGIC          = 0x41435753;
+  private static final int FORMAT_VERSION = 1;
+  
+  private final long                                  takenTime;
+  private final List<Long>                            gameIDs;
+  private final List<Long>                            compactGameIDs;
+  private final Map<AutoCompleteSource, List<String>> autoCompleteLists;
+  
+  /**
+   * Constructor.
+   * 
+   * @param takenTime When the snapshot was taken, in milliseconds since the epoch.
+   * @param gameIDs The hot gameIDs, hottest first.
+   * @param compactGameIDs The hot compact gameIDs, hottest first.
+   * @param autoCompleteLists The autocomplete lists that were loaded.
+   */
+  public WarmSnapshot(long takenTime, List<Long> gameIDs, List<Long> compactGameIDs, Map<AutoCompleteSource, List<String>> autoCompleteLists) {
+    this.takenTime         = takenTime;
+    this.gameIDs           = Collections.unmodifiableList(new ArrayList<Long>(gameIDs));
+    this.compactGameIDs    = Collections.unmodifiableList(new ArrayList<Long>(compactGameIDs));
+    this.autoCompleteLists = Collections.unmodifiableMap(new EnumMap<AutoCompleteSource, List<String>>(autoCompleteLists));
+  }
+  
+  public long getTakenTime() {
+    return takenTime;
+  }
+  
+  public List<Long> getGameIDs() {
+    return gameIDs;
+  }
+  
+  public List<Long> getCompactGameIDs() {
+    return compactGameIDs;
+  }
+  
+  public Map<AutoCompleteSource, List<String>> getAutoCompleteLists() {
+    return autoCompleteLists;
+  }
+  
+  /**
+   * Write this snapshot to a file, replacing it.
+   * 
+   * @param file The file to write.
+   * 
+   * @throws DatabaseOperationException Throws this exception if the file cannot be written.
+   */
+  public void save(Path file) throws DatabaseOperationException {
+    Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+    try {
+      if (file.getParent() != null) Files.createDirectories(file.getParent());
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(takenTime);
+        writeIDs(out, gameIDs);
+        writeIDs(out, compactGameIDs);
+        out.writeInt(autoCompleteLists.size());
+        for (Map.Entry<AutoCompleteSource, List<String>> entry : autoCompleteLists.entrySet()) {
+          out.writeUTF(entry.getKey().name());
+          out.writeInt(entry.getValue().size());
+          for (String value : entry.getValue())
+            out.writeUTF(value == null ? "" : value);
+        }
+      } finally {
+        out.close();
+      }
+      Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException ioe) {
+      throw new DatabaseOperationException("Unable to save warm cache snapshot to " + file, ioe);
+    }
+  }
+  
+  /**
+   * Read a snapshot from a file.
+   * 
+   * @param file The file to read.
+   * @return The snapshot, or null if the file does not exist.
+   * 
+   * @throws DatabaseOperationException Throws this exception if the file cannot be read or is not a
+   * snapshot file.
+   */
+  public static WarmSnapshot load(Path file) throws DatabaseOperationException {
+    if (!Files.exists(file)) return null;
+    
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+      try {
+        if (in.readInt() != MAGIC)
+          throw new DatabaseOperationException(file + " is not a warm cache snapshot");
+        int version = in.readInt();
+        if (version != FORMAT_VERSION)
+          throw new DatabaseOperationException(file + " has unsupported format version " + version);
+        long takenTime = in.readLong();
+        List<Long> gameIDs        = readIDs(in);
+        List<Long> compactGameIDs = readIDs(in);
+        Map<AutoCompleteSource, List<String>> autoCompleteLists = new EnumMap<AutoCompleteSource, List<String>>(AutoCompleteSource.class);
+        int listCount = in.readInt();
+        for (int i = 0; i < listCount; i++) {
+          AutoCompleteSource source = AutoCompleteSource.valueOf(in.readUTF());
+          int size = in.readInt();
+          List<String> values = new ArrayList<String>(size);
+          for (int j = 0; j < size; j++)
+            values.add(in.readUTF());
+          autoCompleteLists.put(source, values);
+        }
+        return new WarmSnapshot(takenTime, gameIDs, compactGameIDs, autoCompleteLists);
+      } finally {
+        in.close();
+      }
+    } catch (IOException ioe) {
+      throw new DatabaseOperationException("Unable to load warm cache snapshot from " + file, ioe);
+    } catch (IllegalArgumentException iae) {
+      throw new DatabaseOperationException("Unknown autocomplete list in " + file, iae);
+    }
+  }
+  
+  private static void writeIDs(DataOutputStream out, List<Long> ids) throws IOException {
+    out.writeInt(ids.size());
+    for (Long id : ids)
+      out.writeLong(id);
+  }
+  
+  private static List<Long> readIDs(DataInputStream in) throws IOException {
+    int size = in.readInt();
+    List<Long> ids = new ArrayList<Long>(size);
+    for (int i = 0; i < size; i++)
+      ids.add(in.readLong());
+    return ids;
+  }
+}
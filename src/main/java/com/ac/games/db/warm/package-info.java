@@ -0,0 +1,6 @@
+/**
+ * This package holds the read-through caches that are saved to a local snapshot file and reloaded on startup.
+ * 
+ * @author ac010168
+ */
+package com.ac.games.db.warm;
@@ -0,0 +1,129 @@
+package com.ac.games.db.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ac.games.data.PlaythruItem;
+
+/**
+ * Rough timing of {@link EntityCodec} frames against {@link ObjectOutputStream}, for spotting regressions by
+ * eye.  This is not a unit test, and surefire won't pick it up; run its <code>main</code> from the IDE or
+ * with <code>java -cp target/classes:target/test-classes:...</code>.
+ * <p>
+ * Two data sets are timed.  The first is a list of row maps holding the same field values as a
+ * {@link PlaythruItem}, which Java serialization can always handle.  The second is the {@link PlaythruItem}s
+ * themselves, timed against serialization only if that class is {@link Serializable}.  Each round runs a
+ * warm-up pass before the timed passes, and reports bytes and the mean time per pass.
+ * 
+ * @author ac010168
+ */
+public class CodecTimingHarness {
+
+  private static final int RECORDS       = 10000;
+  private static final int WARMUP_PASSES = 20;
+  private static final int TIMED_PASSES  = 50;
+  
+  public static void main(String[] args) throws Exception {
+    List<PlaythruItem> items = new ArrayList<PlaythruItem>(RECORDS);
+    ArrayList<Map<String, Object>> rows = new ArrayList<Map<String, Object>>(RECORDS);
+    for (long id = 1; id <= RECORDS; id++) {
+      Date playDate = new Date(1420070400000L + id * 3600000L);
+      items.add(EntityCodecTest.playthru(id, id % 500, id % 2000, playDate));
+      
+      Map<String, Object> row = new HashMap<String, Object>();
+      row.put("playthruID", id);
+      row.put("userID",     id % 500);
+      row.put("gameID",     id % 2000);
+      row.put("playDate",   playDate);
+      rows.add(row);
+    }
+    
+    report("row maps, codec", new CodecPass(rows));
+    report("row maps, ObjectOutputStream", new SerializationPass(rows));
+    report("PlaythruItem, codec", new FramePass(items));
+    if (Serializable.class.isAssignableFrom(PlaythruItem.class))
+      report("PlaythruItem, ObjectOutputStream", new SerializationPass(new ArrayList<PlaythruItem>(items)));
+    else
+      System.out.println(PlaythruItem.class.getName() + " is not Serializable; skipping its ObjectOutputStream run");
+  }
+  
+  private static void report(String label, Pass pass) throws Exception {
+    int size = 0;
+    for (int i = 0; i < WARMUP_PASSES; i++)
+      size = pass.run();
+    long start = System.nanoTime();
+    for (int i = 0; i < TIMED_PASSES; i++)
+      pass.run();
+    double millis = (System.nanoTime() - start) / 1e6 / TIMED_PASSES;
+    System.out.println(String.format("%-34s %10d bytes %10.2f ms/pass (encode + decode of %d records)", label, size, millis, RECORDS));
+  }
+  
+  /** One encode and decode of the whole data set */
+  private interface Pass {
+    /** @return The encoded size, in bytes. */
+    int run() throws Exception;
+  }
+  
+  private static final class CodecPass implements Pass {
+    private final Object       value;
+    private final EncodeBuffer out = new EncodeBuffer();
+    
+    private CodecPass(Object value) {
+      this.value = value;
+    }
+    
+    @Override
+    public int run() {
+      out.reset();
+      Values.write(out, value, 0);
+      Values.read(new DecodeBuffer(out.view()), 0);
+      return out.size();
+    }
+  }
+  
+  private static final class FramePass implements Pass {
+    private final List<PlaythruItem> items;
+    private final EncodeBuffer out = new EncodeBuffer();
+    
+    private FramePass(List<PlaythruItem> items) {
+      this.items = items;
+    }
+    
+    @Override
+    public int run() {
+      out.reset();
+      EntityCodecs.PLAYTHRU_ITEM.encodeAll(items, out);
+      EntityCodecs.PLAYTHRU_ITEM.decodeAll(new DecodeBuffer(out.view()));
+      return out.size();
+    }
+  }
+  
+  private static final class SerializationPass implements Pass {
+    private final Object value;
+    
+    private SerializationPass(Object value) {
+      this.value = value;
+    }
+    
+    @Override
+    public int run() throws IOException, ClassNotFoundException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(bytes);
+      out.writeObject(value);
+      out.close();
+      ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+      in.readObject();
+      in.close();
+      return bytes.size();
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package com.ac.games.db.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.ac.games.data.PlaythruItem;
+import com.ac.games.data.WishlistItem;
+import com.ac.games.db.EntityType;
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * Round-trip tests for {@link EntityCodec}, single records and frames.
+ * 
+ * @author ac010168
+ */
+public class EntityCodecTest {
+
+  @Test
+  public void recordRoundTrip() throws Exception {
+    PlaythruItem item = playthru(17L, 4L, 1234L, new Date(1420070400000L));
+    
+    EncodeBuffer out = new EncodeBuffer();
+    EntityCodecs.PLAYTHRU_ITEM.encode(item, out);
+    DecodeBuffer in = new DecodeBuffer(ByteBuffer.wrap(out.toByteArray()));
+    PlaythruItem read = EntityCodecs.PLAYTHRU_ITEM.decode(in);
+    
+    assertFalse(in.hasRemaining());
+    assertPlaythruEquals(item, read);
+  }
+  
+  @Test
+  public void nullFieldsRoundTrip() throws Exception {
+    WishlistItem item = new WishlistItem();
+    item.setWishID(9L);
+    
+    EncodeBuffer out = new EncodeBuffer();
+    EntityCodecs.WISHLIST_ITEM.encode(item, out);
+    WishlistItem read = EntityCodecs.WISHLIST_ITEM.decode(new DecodeBuffer(ByteBuffer.wrap(out.toByteArray())));
+    
+    assertEquals(9L, read.getWishID());
+    assertNull(read.getDateAdded());
+  }
+  
+  @Test
+  public void recordsShareOneBuffer() throws Exception {
+    EncodeBuffer out = new EncodeBuffer();
+    for (long id = 1; id <= 50; id++)
+      EntityCodecs.PLAYTHRU_ITEM.encode(playthru(id, id % 7, id % 3, new Date(id * 1000L)), out);
+    
+    DecodeBuffer in = new DecodeBuffer(ByteBuffer.wrap(out.toByteArray()));
+    for (long id = 1; id <= 50; id++)
+      assertPlaythruEquals(playthru(id, id % 7, id % 3, new Date(id * 1000L)), EntityCodecs.PLAYTHRU_ITEM.decode(in));
+    assertFalse(in.hasRemaining());
+  }
+  
+  @Test
+  public void frameRoundTrip() throws Exception {
+    List<PlaythruItem> items = new ArrayList<PlaythruItem>();
+    for (long id = 1; id <= 200; id++)
+      items.add(playthru(id, id % 11, id % 13, id % 5 == 0 ? null : new Date(id * 60000L)));
+    
+    EncodeBuffer out = new EncodeBuffer();
+    EntityCodecs.PLAYTHRU_ITEM.encodeAll(items, out);
+    List<PlaythruItem> read = EntityCodecs.PLAYTHRU_ITEM.decodeAll(new DecodeBuffer(ByteBuffer.wrap(out.toByteArray())));
+    
+    assertEquals(items.size(), read.size());
+    for (int i = 0; i < items.size(); i++)
+      assertPlaythruEquals(items.get(i), read.get(i));
+  }
+  
+  @Test
+  public void emptyFrameRoundTrip() throws Exception {
+    EncodeBuffer out = new EncodeBuffer();
+    EntityCodecs.PLAYTHRU_ITEM.encodeAll(new ArrayList<PlaythruItem>(), out);
+    assertEquals(0, EntityCodecs.PLAYTHRU_ITEM.decodeAll(new DecodeBuffer(ByteBuffer.wrap(out.toByteArray()))).size());
+  }
+  
+  @Test(expected = DatabaseOperationException.class)
+  public void otherSchemaIsRejected() throws Exception {
+    EncodeBuffer out = new EncodeBuffer();
+    EntityCodecs.PLAYTHRU_ITEM.encode(playthru(1L, 2L, 3L, new Date()), out);
+    EntityCodecs.WISHLIST_ITEM.decode(new DecodeBuffer(ByteBuffer.wrap(out.toByteArray())));
+  }
+  
+  @Test(expected = DatabaseOperationException.class)
+  public void truncatedRecordIsRejected() throws Exception {
+    EncodeBuffer out = new EncodeBuffer();
+    EntityCodecs.PLAYTHRU_ITEM.encode(playthru(1L, 2L, 3L, new Date()), out);
+    byte[] bytes = out.toByteArray();
+    ByteBuffer truncated = ByteBuffer.wrap(bytes, 0, bytes.length - 1).slice();
+    EntityCodecs.PLAYTHRU_ITEM.decode(new DecodeBuffer(truncated));
+  }
+  
+  @Test
+  public void everyEntityTypeHasACodec() {
+    for (EntityType type : EntityType.values()) {
+      EntityCodec<?> codec = EntityCodecs.forEntityType(type);
+      if (type == EntityType.STATS) {
+        //Stats rows are three different classes keyed by statType, and are never encoded
+        assertNull(codec);
+        continue;
+      }
+      assertNotNull(type + " has no codec", codec);
+      assertEquals(codec, EntityCodec.forClass(codec.getType()));
+    }
+    assertEquals(EntityCodecs.PLAYTHRU_ITEM, EntityCodecs.forEntityType(EntityType.PLAYTHRU_ITEM));
+  }
+  
+  static PlaythruItem playthru(long playthruID, long userID, long gameID, Date playDate) {
+    PlaythruItem item = new PlaythruItem();
+    item.setPlaythruID(playthruID);
+    item.setUserID(userID);
+    item.setGameID(gameID);
+    item.setPlayDate(playDate);
+    return item;
+  }
+  
+  private static void assertPlaythruEquals(PlaythruItem expected, PlaythruItem actual) {
+    assertEquals(expected.getPlaythruID(), actual.getPlaythruID());
+    assertEquals(expected.getUserID(),     actual.getUserID());
+    assertEquals(expected.getGameID(),     actual.getGameID());
+    assertEquals(expected.getPlayDate(),   actual.getPlayDate());
+  }
+}
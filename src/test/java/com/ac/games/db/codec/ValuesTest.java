@@ -0,0 +1,129 @@
+package com.ac.games.db.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.ac.games.db.exception.DatabaseOperationException;
+
+/**
+ * Round-trip and rejection tests for {@link Values}, the tagged encoding used for fields that aren't
+ * primitives.
+ * 
+ * @author ac010168
+ */
+public class ValuesTest {
+
+  @Test
+  public void scalarRoundTrip() {
+    Object[] values = { null, "", "plain", "é中😀", Long.MIN_VALUE, Long.MAX_VALUE, -1, 42,
+                        (short)-7, (byte)-128, Boolean.TRUE, Boolean.FALSE, 3.25, Double.NaN, -0.5f, 'x',
+                        new Date(0L), new Date(-86400000L), new Date(1420070400000L) };
+    for (Object value : values)
+      assertEquals(value, roundTrip(value));
+  }
+  
+  @Test
+  public void collectionRoundTrip() {
+    List<Object> list = new ArrayList<Object>(Arrays.<Object>asList(1L, "two", null, 3.0));
+    Set<Object> set = new LinkedHashSet<Object>(Arrays.<Object>asList("a", "b", "c"));
+    Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+    map.put("list", list);
+    map.put("set", set);
+    map.put(7L, new Date(1000L));
+    
+    assertEquals(list, roundTrip(list));
+    assertEquals(set, roundTrip(set));
+    assertEquals(map, roundTrip(map));
+  }
+  
+  @Test
+  public void repeatedStringsShareOneCopy() {
+    EncodeBuffer once = new EncodeBuffer();
+    Values.write(once, "a fairly long string value", 0);
+    EncodeBuffer twice = new EncodeBuffer();
+    Values.write(twice, Arrays.asList("a fairly long string value", "a fairly long string value"), 0);
+    assertTrue(twice.size() < once.size() * 2);
+  }
+  
+  @Test(expected = IllegalArgumentException.class)
+  public void unsupportedTypeIsRejected() {
+    Values.write(new EncodeBuffer(), new StringBuilder("not a supported value"), 0);
+  }
+  
+  @Test(expected = IllegalArgumentException.class)
+  public void enumOutsideDataPackageIsRejected() {
+    Values.write(new EncodeBuffer(), Thread.State.NEW, 0);
+  }
+  
+  @Test(expected = IllegalArgumentException.class)
+  public void cycleIsRejected() {
+    List<Object> cyclic = new ArrayList<Object>();
+    cyclic.add(cyclic);
+    Values.write(new EncodeBuffer(), cyclic, 0);
+  }
+  
+  @Test
+  public void objectOutsideDataPackageIsNotDecoded() {
+    EncodeBuffer out = new EncodeBuffer();
+    out.putByte(Values.OBJECT);
+    out.putString("java.util.ArrayList");
+    out.putInt(0);
+    assertRefused(out);
+  }
+  
+  @Test
+  public void enumOutsideDataPackageIsNotDecoded() {
+    EncodeBuffer out = new EncodeBuffer();
+    out.putByte(Values.ENUM);
+    out.putString("java.lang.Thread$State");
+    out.putString("NEW");
+    assertRefused(out);
+  }
+  
+  @Test
+  public void onlyDirectMembersOfDataPackageAreDataClasses() {
+    assertTrue(Values.isDataClass("com.ac.games.data.Game"));
+    assertFalse(Values.isDataClass("com.ac.games.data.sub.Game"));
+    assertFalse(Values.isDataClass("com.ac.games.dataX.Game"));
+    assertFalse(Values.isDataClass("com.ac.games.db.codec.Values"));
+    assertFalse(Values.isDataClass("java.lang.Runtime"));
+  }
+  
+  @Test
+  public void nullRoundTripsAsNull() {
+    assertNull(roundTrip(null));
+  }
+  
+  private static Object roundTrip(Object value) {
+    EncodeBuffer out = new EncodeBuffer();
+    Values.write(out, value, 0);
+    DecodeBuffer in = new DecodeBuffer(ByteBuffer.wrap(out.toByteArray()));
+    Object read = Values.read(in, 0);
+    assertFalse(in.hasRemaining());
+    return read;
+  }
+  
+  private static void assertRefused(EncodeBuffer out) {
+    try {
+      Values.read(new DecodeBuffer(ByteBuffer.wrap(out.toByteArray())), 0);
+      fail("Decoded a class outside " + Values.DATA_PACKAGE);
+    } catch (DatabaseOperationException expected) {
+      assertTrue(expected.getMessage(), expected.getMessage().contains("Refusing"));
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package com.ac.games.db.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Round-trip tests for {@link VarInts}.
+ * 
+ * @author ac010168
+ */
+public class VarIntsTest {
+
+  private static final long[] VALUES = { 0L, 1L, 127L, 128L, 16383L, 16384L, Integer.MAX_VALUE, 1L << 56,
+                                         Long.MAX_VALUE, -1L, -64L, -65L, Integer.MIN_VALUE, Long.MIN_VALUE };
+  
+  @Test
+  public void unsignedRoundTrip() {
+    for (long value : VALUES) {
+      ByteBuffer buffer = ByteBuffer.allocate(VarInts.MAX_VAR_LONG_BYTES);
+      VarInts.putVarLong(buffer, value);
+      assertEquals("size of " + value, VarInts.varLongSize(value), buffer.position());
+      buffer.flip();
+      assertEquals(value, VarInts.getVarLong(buffer));
+      assertFalse(buffer.hasRemaining());
+    }
+  }
+  
+  @Test
+  public void signedRoundTrip() {
+    for (long value : VALUES) {
+      ByteBuffer buffer = ByteBuffer.allocate(VarInts.MAX_VAR_LONG_BYTES);
+      VarInts.putSignedVarLong(buffer, value);
+      buffer.flip();
+      assertEquals(value, VarInts.getSignedVarLong(buffer));
+      assertFalse(buffer.hasRemaining());
+    }
+  }
+  
+  @Test
+  public void smallValuesTakeOneByte() {
+    assertEquals(1, VarInts.varLongSize(0L));
+    assertEquals(1, VarInts.varLongSize(127L));
+    assertEquals(2, VarInts.varLongSize(128L));
+    assertEquals(VarInts.MAX_VAR_LONG_BYTES, VarInts.varLongSize(-1L));
+  }
+}
@@ -0,0 +1,172 @@
+package com.ac.games.db.match;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.ac.games.data.CompactSearchData;
+import com.ac.games.data.Game;
+import com.ac.games.db.GamesDatabase;
+
+/**
+ * Checks that {@link MatchingGamesDatabase} gives the same auto name results as the database it wraps.
+ * 
+ * @author ac010168
+ */
+public class MatchingGamesDatabaseTest {
+
+  private static final String[] WORDS = { "dominion", "catan", "ticket", "ride", "pandemic", "legacy", "castle",
+                                          "forest", "dragon", "empire", "island", "star", "realm", "king" };
+  private static final String[] PUBLISHERS = { "Rio Grande", "Days of Wonder", "Z-Man", "Fantasy Flight" };
+  
+  @Test
+  public void resultsMatchTheDatabase() throws Exception {
+    Random random = new Random(42L);
+    GamesDatabase database = fakeDatabase(randomGames(random, 300));
+    MatchingGamesDatabase exact  = matching(database, true);
+    MatchingGamesDatabase narrow = matching(database, false);
+    
+    List<AutoNameQuery> queries = randomQueries(random, database, 2000);
+    for (AutoNameQuery query : queries) {
+      Long expected = gameID(database.readGameFromAutoName(query.getGameName(), query.getPrimaryPublisher(), query.getYearPublished()));
+      assertEquals(expected, gameID(exact.readGameFromAutoName(query.getGameName(), query.getPrimaryPublisher(), query.getYearPublished())));
+      assertEquals(expected, gameID(narrow.readGameFromAutoName(query.getGameName(), query.getPrimaryPublisher(), query.getYearPublished())));
+    }
+  }
+  
+  @Test
+  public void batchMatchesSingleLookups() throws Exception {
+    Random random = new Random(7L);
+    GamesDatabase database = fakeDatabase(randomGames(random, 200));
+    MatchingGamesDatabase matching = matching(database, false);
+    
+    List<AutoNameQuery> queries = randomQueries(random, database, 500);
+    List<CompactSearchData> batch = matching.readGamesFromAutoNames(queries);
+    assertEquals(queries.size(), batch.size());
+    for (int i = 0; i < queries.size(); i++) {
+      AutoNameQuery query = queries.get(i);
+      assertEquals(gameID(database.readGameFromAutoName(query.getGameName(), query.getPrimaryPublisher(), query.getYearPublished())),
+                   gameID(batch.get(i)));
+    }
+  }
+  
+  @Test
+  public void closeNameDoesNotReplaceTheDatabaseResult() throws Exception {
+    Map<Long, Game> games = new TreeMap<Long, Game>();
+    games.put(1L, game(1L, "Dominion", "Rio Grande", 2008));
+    GamesDatabase database = fakeDatabase(games);
+    MatchingGamesDatabase matching = matching(database, false);
+    
+    //Close enough for the matcher alone, but not the same name
+    assertEquals(1L, matching.getMatcher().match("Dominion!", "Rio Grande", 2008));
+    assertNull(matching.readGameFromAutoName("Dominion!", "Rio Grande", 2008));
+    assertEquals(Long.valueOf(1L), gameID(matching.readGameFromAutoName("DOMINION", null, 0)));
+  }
+  
+  private static MatchingGamesDatabase matching(GamesDatabase database, boolean fallBackToDatabase) throws Exception {
+    MatchingGamesDatabase matching = new MatchingGamesDatabase(database, 4, GameMatcher.DEFAULT_THRESHOLD,
+                                                               GameMatcher.DEFAULT_MAX_BLOCK_SIZE, fallBackToDatabase);
+    matching.rebuildMatcher();
+    return matching;
+  }
+  
+  private static Map<Long, Game> randomGames(Random random, int count) {
+    Map<Long, Game> games = new TreeMap<Long, Game>();
+    for (long gameID = 1; gameID <= count; gameID++)
+      games.put(gameID, game(gameID, randomName(random), PUBLISHERS[random.nextInt(PUBLISHERS.length)], 1995 + random.nextInt(20)));
+    return games;
+  }
+  
+  /**
+   * Exact names in other cases, names with a typo, names of unknown words, and names of known words in new
+   * orders, with or without publisher and year.
+   */
+  private static List<AutoNameQuery> randomQueries(Random random, GamesDatabase database, int count) throws Exception {
+    List<Long> gameIDs = database.getGameIDList();
+    List<AutoNameQuery> queries = new ArrayList<AutoNameQuery>(count);
+    for (int i = 0; i < count; i++) {
+      Game game = database.readGame(gameIDs.get(random.nextInt(gameIDs.size())));
+      String name;
+      switch (random.nextInt(4)) {
+        case 0:  name = game.getName().toUpperCase(); break;
+        case 1:  name = game.getName().substring(0, game.getName().length() - 1); break;
+        case 2:  name = "Deluxe Sleeves " + random.nextInt(100); break;
+        default: name = randomName(random); break;
+      }
+      String publisher = random.nextBoolean() ? game.getPrimaryPublisher() : null;
+      int year = random.nextBoolean() ? game.getYearPublished() : 0;
+      queries.add(new AutoNameQuery(name, publisher, year));
+    }
+    return queries;
+  }
+  
+  private static String randomName(Random random) {
+    StringBuilder name = new StringBuilder();
+    int words = 1 + random.nextInt(3);
+    for (int i = 0; i < words; i++) {
+      if (i > 0) name.append(' ');
+      String word = WORDS[random.nextInt(WORDS.length)];
+      name.append(Character.toUpperCase(word.charAt(0))).append(word.substring(1));
+    }
+    return name.toString();
+  }
+  
+  private static Game game(long gameID, String name, String publisher, int year) {
+    Game game = new Game();
+    game.setGameID(gameID);
+    game.setName(name);
+    game.setPrimaryPublisher(publisher);
+    game.setYearPublished(year);
+    return game;
+  }
+  
+  private static Long gameID(CompactSearchData data) {
+    return data == null ? null : data.getGameID();
+  }
+  
+  /**
+   * A database holding only games, whose auto name lookup takes the games with the same name ignoring case,
+   * then prefers the publisher, then the year, then the lowest gameID.
+   */
+  private static GamesDatabase fakeDatabase(final Map<Long, Game> games) {
+    InvocationHandler handler = new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if (name.equals("getGameIDList")) return new ArrayList<Long>(games.keySet());
+        if (name.equals("readGame"))      return games.get(args[0]);
+        if (name.equals("readGameFromAutoName")) return autoName((String)args[0], (String)args[1], (Integer)args[2]);
+        throw new UnsupportedOperationException(name);
+      }
+      
+      private CompactSearchData autoName(String gameName, String publisher, int year) {
+        Game best = null;
+        int bestRank = -1;
+        for (Game game : games.values()) {
+          if (!game.getName().equalsIgnoreCase(gameName)) continue;
+          int rank = (publisher != null && publisher.equals(game.getPrimaryPublisher()) ? 2 : 0)
+                   + (year == game.getYearPublished() ? 1 : 0);
+          if (rank > bestRank) {
+            best     = game;
+            bestRank = rank;
+          }
+        }
+        if (best == null) return null;
+        CompactSearchData data = new CompactSearchData();
+        data.setGameID(best.getGameID());
+        return data;
+      }
+    };
+    return (GamesDatabase)Proxy.newProxyInstance(GamesDatabase.class.getClassLoader(), new Class<?>[] { GamesDatabase.class }, handler);
+  }
+}